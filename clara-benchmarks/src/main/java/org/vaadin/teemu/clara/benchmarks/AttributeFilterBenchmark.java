@@ -0,0 +1,81 @@
+package org.vaadin.teemu.clara.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vaadin.teemu.clara.inflater.LayoutInflater;
+import org.vaadin.teemu.clara.inflater.LayoutInflaterException;
+import org.vaadin.teemu.clara.inflater.filter.AttributeContext;
+import org.vaadin.teemu.clara.inflater.filter.AttributeFilter;
+import org.vaadin.teemu.clara.inflater.template.LayoutTemplate;
+
+import com.vaadin.ui.Component;
+
+/**
+ * Measures the cost of the {@link AttributeFilter} chain by inflating the
+ * medium layout with 0, 1 and 5 filters. The filters look at the value the
+ * way a typical i18n filter would and then proceed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AttributeFilterBenchmark {
+
+    @Param({ "0", "1", "5" })
+    private int filters;
+
+    private LayoutTemplate template;
+    private LayoutInflater inflater;
+
+    @Setup
+    public void setUp() {
+        template = LayoutXml.parse(LayoutXml.bytes(LayoutXml
+                .generate(LayoutXml.rowsFor("medium"))));
+        inflater = new LayoutInflater();
+        for (int i = 0; i < filters; i++) {
+            inflater.addAttributeFilter(new PrefixFilter("{i18n:"));
+        }
+    }
+
+    @Benchmark
+    public Component inflate() {
+        return inflater.inflate(template);
+    }
+
+    private static class PrefixFilter implements AttributeFilter {
+
+        private final String prefix;
+
+        PrefixFilter(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public void filter(AttributeContext attributeContext) {
+            Object value = attributeContext.getValue();
+            if (value instanceof String
+                    && ((String) value).startsWith(prefix)) {
+                attributeContext.setValue(((String) value).substring(prefix
+                        .length()));
+            }
+            try {
+                attributeContext.proceed();
+            } catch (Exception e) {
+                throw new LayoutInflaterException(e.getMessage(), e);
+            }
+        }
+    }
+}
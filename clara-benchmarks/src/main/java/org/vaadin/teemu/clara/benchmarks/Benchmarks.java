@@ -0,0 +1,26 @@
+package org.vaadin.teemu.clara.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.openjdk.jmh.Main;
+
+/**
+ * Entry point of {@code benchmarks.jar}. Runs JMH with the given arguments and
+ * adds the GC profiler ({@code -prof gc}) unless another profiler is given,
+ * so the allocation rate per operation is always reported next to the
+ * throughput.
+ */
+public class Benchmarks {
+
+    public static void main(String[] args) throws Exception {
+        List<String> arguments = new ArrayList<String>(Arrays.asList(args));
+        if (!arguments.contains("-prof") && !arguments.contains("-h")
+                && !arguments.contains("-l")) {
+            arguments.add(0, "-prof");
+            arguments.add(1, "gc");
+        }
+        Main.main(arguments.toArray(new String[arguments.size()]));
+    }
+}
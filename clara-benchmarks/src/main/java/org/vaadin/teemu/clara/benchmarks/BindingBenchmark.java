@@ -0,0 +1,215 @@
+package org.vaadin.teemu.clara.benchmarks;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vaadin.teemu.clara.binder.Binder;
+import org.vaadin.teemu.clara.binder.annotation.UiField;
+import org.vaadin.teemu.clara.binder.annotation.UiHandler;
+import org.vaadin.teemu.clara.inflater.InflationResult;
+import org.vaadin.teemu.clara.inflater.LayoutInflater;
+import org.vaadin.teemu.clara.inflater.template.LayoutTemplate;
+
+import com.vaadin.ui.Button;
+import com.vaadin.ui.Button.ClickEvent;
+import com.vaadin.ui.Component;
+import com.vaadin.ui.Label;
+
+/**
+ * Measures {@link Binder#bind(Component, Object)} on a controller with 20
+ * {@link UiField} and 10 {@link UiHandler} members bound to the medium
+ * layout.
+ *
+ * Binding handlers adds listeners to the components, so handlers are bound
+ * to a freshly inflated layout on every invocation. Subtract
+ * {@link #inflate()} from {@link #inflateAndBind()} to get the cost of the
+ * binding.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BindingBenchmark {
+
+    private static final Map<String, Component> NO_OVERRIDES = Collections
+            .emptyMap();
+
+    private LayoutTemplate template;
+    private LayoutInflater inflater;
+    private Binder binder;
+    private Component root;
+    private InflationResult inflationResult;
+
+    @Setup
+    public void setUp() {
+        template = LayoutXml.parse(LayoutXml.bytes(LayoutXml
+                .generate(LayoutXml.rowsFor("medium"))));
+        inflater = new LayoutInflater();
+        binder = new Binder();
+        inflationResult = inflater.inflateWithIndex(template,
+                NO_OVERRIDES);
+        root = inflationResult.getRoot();
+    }
+
+    @Benchmark
+    public Object bindFields() {
+        // Fields only, the same tree can be reused. Ids are resolved by
+        // walking the tree.
+        FieldController controller = new FieldController();
+        binder.bind(root, controller);
+        return controller;
+    }
+
+    @Benchmark
+    public Object bindFieldsWithIndex() {
+        FieldController controller = new FieldController();
+        binder.bind(inflationResult, controller);
+        return controller;
+    }
+
+    @Benchmark
+    public Object inflate() {
+        return inflater.inflateWithIndex(template,
+                NO_OVERRIDES);
+    }
+
+    @Benchmark
+    public Object inflateAndBind() {
+        InflationResult result = inflater.inflateWithIndex(template,
+                NO_OVERRIDES);
+        HandlerController controller = new HandlerController();
+        binder.bind(result, controller);
+        return controller;
+    }
+
+    public static class FieldController {
+
+        @UiField("label-0")
+        public Label label0;
+
+        @UiField("label-1")
+        public Label label1;
+
+        @UiField("label-2")
+        public Label label2;
+
+        @UiField("label-3")
+        public Label label3;
+
+        @UiField("label-4")
+        public Label label4;
+
+        @UiField("label-5")
+        public Label label5;
+
+        @UiField("label-6")
+        public Label label6;
+
+        @UiField("label-7")
+        public Label label7;
+
+        @UiField("label-8")
+        public Label label8;
+
+        @UiField("label-9")
+        public Label label9;
+
+        @UiField("button-0")
+        public Button button0;
+
+        @UiField("button-1")
+        public Button button1;
+
+        @UiField("button-2")
+        public Button button2;
+
+        @UiField("button-3")
+        public Button button3;
+
+        @UiField("button-4")
+        public Button button4;
+
+        @UiField("button-5")
+        public Button button5;
+
+        @UiField("button-6")
+        public Button button6;
+
+        @UiField("button-7")
+        public Button button7;
+
+        @UiField("button-8")
+        public Button button8;
+
+        @UiField("button-9")
+        public Button button9;
+    }
+
+    public static class HandlerController extends FieldController {
+
+        public int clicks;
+
+        @UiHandler("button-10")
+        public void handleButton10Click(ClickEvent event) {
+            clicks++;
+        }
+
+        @UiHandler("button-11")
+        public void handleButton11Click(ClickEvent event) {
+            clicks++;
+        }
+
+        @UiHandler("button-12")
+        public void handleButton12Click(ClickEvent event) {
+            clicks++;
+        }
+
+        @UiHandler("button-13")
+        public void handleButton13Click(ClickEvent event) {
+            clicks++;
+        }
+
+        @UiHandler("button-14")
+        public void handleButton14Click(ClickEvent event) {
+            clicks++;
+        }
+
+        @UiHandler("button-15")
+        public void handleButton15Click(ClickEvent event) {
+            clicks++;
+        }
+
+        @UiHandler("button-16")
+        public void handleButton16Click(ClickEvent event) {
+            clicks++;
+        }
+
+        @UiHandler("button-17")
+        public void handleButton17Click(ClickEvent event) {
+            clicks++;
+        }
+
+        @UiHandler("button-18")
+        public void handleButton18Click(ClickEvent event) {
+            clicks++;
+        }
+
+        @UiHandler("button-19")
+        public void handleButton19Click(ClickEvent event) {
+            clicks++;
+        }
+    }
+}
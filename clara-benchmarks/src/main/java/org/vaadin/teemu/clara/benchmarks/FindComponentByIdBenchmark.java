@@ -0,0 +1,89 @@
+package org.vaadin.teemu.clara.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vaadin.teemu.clara.Clara;
+
+import com.vaadin.ui.Component;
+import com.vaadin.ui.CssLayout;
+import com.vaadin.ui.Label;
+
+/**
+ * Measures {@link Clara#findComponentById(Component, String)} on a deep tree
+ * (a chain of 500 nested layouts) and a wide tree (one layout with 2000
+ * children). The searched component is the last one visited.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FindComponentByIdBenchmark {
+
+    private static final int DEPTH = 500;
+    private static final int WIDTH = 2000;
+
+    @Param({ "deep", "wide" })
+    private String shape;
+
+    private Component root;
+
+    @Setup
+    public void setUp() {
+        if ("deep".equals(shape)) {
+            root = deepTree();
+        } else {
+            root = wideTree();
+        }
+    }
+
+    @Benchmark
+    public Component findLast() {
+        return Clara.findComponentById(root, "last");
+    }
+
+    @Benchmark
+    public Component findMissing() {
+        return Clara.findComponentById(root, "missing");
+    }
+
+    private static Component deepTree() {
+        CssLayout root = new CssLayout();
+        CssLayout parent = root;
+        for (int i = 0; i < DEPTH; i++) {
+            CssLayout child = new CssLayout();
+            child.setId("layout-" + i);
+            parent.addComponent(child);
+            parent = child;
+        }
+        Label last = new Label();
+        last.setId("last");
+        parent.addComponent(last);
+        return root;
+    }
+
+    private static Component wideTree() {
+        CssLayout root = new CssLayout();
+        for (int i = 0; i < WIDTH - 1; i++) {
+            Label label = new Label();
+            label.setId("label-" + i);
+            root.addComponent(label);
+        }
+        Label last = new Label();
+        last.setId("last");
+        root.addComponent(last);
+        return root;
+    }
+}
@@ -0,0 +1,62 @@
+package org.vaadin.teemu.clara.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vaadin.teemu.clara.inflater.LayoutInflater;
+import org.vaadin.teemu.clara.inflater.template.LayoutTemplate;
+
+import com.vaadin.ui.Component;
+
+/**
+ * Measures {@link LayoutInflater} on small (10 components), medium (100) and
+ * large (2000) layouts, both from XML and from an already parsed
+ * {@link LayoutTemplate}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InflationBenchmark {
+
+    @Param({ "small", "medium", "large" })
+    private String size;
+
+    private byte[] xml;
+    private LayoutTemplate template;
+    private LayoutInflater inflater;
+
+    @Setup
+    public void setUp() {
+        xml = LayoutXml.bytes(LayoutXml.generate(LayoutXml.rowsFor(size)));
+        template = LayoutXml.parse(xml);
+        inflater = new LayoutInflater();
+    }
+
+    @Benchmark
+    public Component inflateXml() {
+        return inflater.inflate(LayoutXml.stream(xml));
+    }
+
+    @Benchmark
+    public Component inflateTemplate() {
+        return inflater.inflate(template);
+    }
+
+    @Benchmark
+    public LayoutTemplate parseTemplate() {
+        return LayoutXml.parse(xml);
+    }
+}
@@ -0,0 +1,83 @@
+package org.vaadin.teemu.clara.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+
+import org.vaadin.teemu.clara.inflater.template.LayoutTemplate;
+import org.vaadin.teemu.clara.inflater.template.LayoutTemplateParser;
+
+/**
+ * Generates layout XML of different sizes for the benchmarks. Every layout is
+ * a {@code VerticalLayout} of {@code HorizontalLayout} rows that contain
+ * {@code Button}s and {@code Label}s with a typical mix of attributes.
+ */
+final class LayoutXml {
+
+    /** Number of components in a row. */
+    static final int ROW_SIZE = 10;
+
+    private LayoutXml() {
+    }
+
+    /**
+     * Returns the number of rows for the given size name ({@code small},
+     * {@code medium} or {@code large}).
+     */
+    static int rowsFor(String size) {
+        if ("small".equals(size)) {
+            return 1;
+        } else if ("medium".equals(size)) {
+            return 10;
+        } else if ("large".equals(size)) {
+            return 200;
+        }
+        throw new IllegalArgumentException("Unknown layout size: " + size);
+    }
+
+    /**
+     * Returns layout XML with the given number of rows. Buttons get the ids
+     * {@code button-<n>} and labels {@code label-<n>}.
+     */
+    static String generate(int rows) {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        xml.append("<VerticalLayout xmlns=\"urn:import:com.vaadin.ui\""
+                + " xmlns:l=\"urn:vaadin:parent\" id=\"root\""
+                + " width=\"100%\" margin=\"true\" spacing=\"true\">\n");
+        int n = 0;
+        for (int row = 0; row < rows; row++) {
+            xml.append("  <HorizontalLayout id=\"row-").append(row)
+                    .append("\" width=\"100%\" l:componentAlignment=\"TOP_LEFT\">\n");
+            for (int i = 0; i < ROW_SIZE / 2; i++, n++) {
+                xml.append("    <Label id=\"label-").append(n)
+                        .append("\" value=\"Label ").append(n)
+                        .append("\" width=\"100px\" />\n");
+                xml.append("    <Button id=\"button-").append(n)
+                        .append("\" caption=\"Button ").append(n)
+                        .append("\" enabled=\"true\" tabIndex=\"").append(n)
+                        .append("\" l:expandRatio=\"1.0\""
+                                + " l:componentAlignment=\"MIDDLE_CENTER\" />\n");
+            }
+            xml.append("  </HorizontalLayout>\n");
+        }
+        xml.append("</VerticalLayout>\n");
+        return xml.toString();
+    }
+
+    static byte[] bytes(String xml) {
+        try {
+            return xml.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    static InputStream stream(byte[] xml) {
+        return new ByteArrayInputStream(xml);
+    }
+
+    static LayoutTemplate parse(byte[] xml) {
+        return new LayoutTemplateParser().parse(stream(xml), null);
+    }
+}
@@ -0,0 +1,92 @@
+package org.vaadin.teemu.clara.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vaadin.teemu.clara.binder.Binder;
+import org.vaadin.teemu.clara.binder.annotation.UiHandler;
+
+import com.vaadin.ui.Button;
+import com.vaadin.ui.Button.ClickEvent;
+import com.vaadin.ui.Button.ClickListener;
+import com.vaadin.ui.VerticalLayout;
+
+/**
+ * Measures dispatching an event to a {@link UiHandler} method through the
+ * listener created by the {@link Binder}, compared to a hand written
+ * listener calling the same method.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListenerDispatchBenchmark {
+
+    private Controller controller;
+    private ClickEvent event;
+    private ClickListener boundListener;
+    private ClickListener directListener;
+    private Button boundButton;
+
+    @Setup
+    public void setUp() {
+        controller = new Controller();
+
+        boundButton = new Button();
+        boundButton.setId("button");
+        VerticalLayout layout = new VerticalLayout();
+        layout.addComponent(boundButton);
+        new Binder().bind(layout, controller);
+        boundListener = (ClickListener) boundButton.getListeners(
+                ClickEvent.class).iterator().next();
+
+        directListener = new ClickListener() {
+
+            @Override
+            public void buttonClick(ClickEvent event) {
+                controller.handleClick(event);
+            }
+        };
+        event = new ClickEvent(boundButton);
+    }
+
+    @Benchmark
+    public int boundListener() {
+        boundListener.buttonClick(event);
+        return controller.clicks;
+    }
+
+    @Benchmark
+    public int directListener() {
+        directListener.buttonClick(event);
+        return controller.clicks;
+    }
+
+    @Benchmark
+    public int buttonClick() {
+        // Includes the event object and the dispatch done by Vaadin.
+        boundButton.click();
+        return controller.clicks;
+    }
+
+    public static class Controller {
+
+        public int clicks;
+
+        @UiHandler("button")
+        public void handleClick(ClickEvent event) {
+            clicks++;
+        }
+    }
+}
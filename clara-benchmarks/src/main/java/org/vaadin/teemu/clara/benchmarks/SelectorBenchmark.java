@@ -0,0 +1,59 @@
+package org.vaadin.teemu.clara.benchmarks;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vaadin.teemu.clara.Clara;
+import org.vaadin.teemu.clara.inflater.LayoutInflater;
+
+import com.vaadin.ui.Component;
+
+/**
+ * Measures {@link Clara#select(Component, String)} on a layout of 500 rows
+ * (5501 components) with selectors answered by the id and type indexes and
+ * with a style name selector that walks the tree.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SelectorBenchmark {
+
+    private static final int ROWS = 500;
+
+    @Param({ "VerticalLayout > #row-499 > #button-2499",
+            "HorizontalLayout > .last", "#row-250 Button",
+            "Button[caption$=99]" })
+    public String selector;
+
+    private Component root;
+
+    @Setup
+    public void setUp() {
+        root = new LayoutInflater().inflate(
+                LayoutXml.stream(LayoutXml.bytes(LayoutXml.generate(ROWS))),
+                Collections.<String, Component> emptyMap());
+        Clara.findComponentById(root, "button-2499").addStyleName("last");
+        // Build the index outside of the measurements.
+        Clara.select(root, "#root");
+    }
+
+    @Benchmark
+    public List<Component> select() {
+        return Clara.select(root, selector);
+    }
+}
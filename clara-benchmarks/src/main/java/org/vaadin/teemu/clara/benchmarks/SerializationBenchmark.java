@@ -0,0 +1,232 @@
+package org.vaadin.teemu.clara.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vaadin.teemu.clara.binder.Binder;
+import org.vaadin.teemu.clara.binder.annotation.UiHandler;
+import org.vaadin.teemu.clara.inflater.InflationResult;
+import org.vaadin.teemu.clara.inflater.LayoutInflater;
+
+import com.vaadin.ui.Button.ClickEvent;
+import com.vaadin.ui.Component;
+
+/**
+ * Measures serializing and restoring a session holding the medium layout
+ * bound to a controller with 10 {@link UiHandler} methods, as done when
+ * sessions are replicated between nodes. The size of the serialized session
+ * is reported as the {@code bytes} secondary result of {@link #serialize}.
+ *
+ * With the {@code own} controller loader the controller class is loaded by a
+ * {@link ClassLoader} of its own, like the controllers of a web application
+ * using Clara from a shared library. The listeners created by the
+ * {@link Binder} are written the same way in both cases.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+    @Param({ "clara", "own" })
+    public String controllerLoader;
+
+    private Object session;
+    private byte[] serialized;
+    private ClassLoader controllerClassLoader;
+
+    @Setup
+    public void setUp() throws Exception {
+        controllerClassLoader = "own".equals(controllerLoader) ? new ControllerClassLoader()
+                : SerializationBenchmark.class.getClassLoader();
+        Object controller = controllerClassLoader.loadClass(
+                SessionController.class.getName()).getConstructor()
+                .newInstance();
+        InflationResult result = new LayoutInflater().inflateWithIndex(
+                LayoutXml.parse(LayoutXml.bytes(LayoutXml.generate(LayoutXml
+                        .rowsFor("medium")))), Collections
+                        .<String, Component> emptyMap());
+        new Binder().bind(result, controller);
+        session = new Object[] { result.getRoot(), controller };
+        serialized = writeSession();
+    }
+
+    @Benchmark
+    public byte[] serialize(SessionSize size) throws IOException {
+        byte[] bytes = writeSession();
+        size.bytes = bytes.length;
+        return bytes;
+    }
+
+    private byte[] writeSession() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(session);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public Object restore() throws IOException, ClassNotFoundException {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(
+                serialized)) {
+
+            @Override
+            protected Class<?> resolveClass(ObjectStreamClass desc)
+                    throws IOException, ClassNotFoundException {
+                try {
+                    return Class.forName(desc.getName(), false,
+                            controllerClassLoader);
+                } catch (ClassNotFoundException e) {
+                    // Primitive types.
+                    return super.resolveClass(desc);
+                }
+            }
+        };
+        try {
+            return in.readObject();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Size of the serialized session, reported with the results of
+     * {@link SerializationBenchmark#serialize(SessionSize)}.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class SessionSize {
+
+        public long bytes;
+    }
+
+    /**
+     * Defines its own copy of the {@link SessionController} class and
+     * delegates all other classes to the parent.
+     */
+    private static class ControllerClassLoader extends ClassLoader {
+
+        ControllerClassLoader() {
+            super(SerializationBenchmark.class.getClassLoader());
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve)
+                throws ClassNotFoundException {
+            if (!name.equals(SessionController.class.getName())) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> loaded = findLoadedClass(name);
+                if (loaded == null) {
+                    byte[] bytes = readClass(name);
+                    loaded = defineClass(name, bytes, 0, bytes.length);
+                }
+                return loaded;
+            }
+        }
+
+        private byte[] readClass(String name) throws ClassNotFoundException {
+            InputStream in = getParent().getResourceAsStream(
+                    name.replace('.', '/') + ".class");
+            if (in == null) {
+                throw new ClassNotFoundException(name);
+            }
+            try {
+                try {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    byte[] buffer = new byte[4096];
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        bytes.write(buffer, 0, read);
+                    }
+                    return bytes.toByteArray();
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                throw new ClassNotFoundException(name, e);
+            }
+        }
+    }
+
+    public static class SessionController implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        public int clicks;
+
+        @UiHandler("button-10")
+        public void handleButton10Click(ClickEvent event) {
+            clicks++;
+        }
+
+        @UiHandler("button-11")
+        public void handleButton11Click(ClickEvent event) {
+            clicks++;
+        }
+
+        @UiHandler("button-12")
+        public void handleButton12Click(ClickEvent event) {
+            clicks++;
+        }
+
+        @UiHandler("button-13")
+        public void handleButton13Click(ClickEvent event) {
+            clicks++;
+        }
+
+        @UiHandler("button-14")
+        public void handleButton14Click(ClickEvent event) {
+            clicks++;
+        }
+
+        @UiHandler("button-15")
+        public void handleButton15Click(ClickEvent event) {
+            clicks++;
+        }
+
+        @UiHandler("button-16")
+        public void handleButton16Click(ClickEvent event) {
+            clicks++;
+        }
+
+        @UiHandler("button-17")
+        public void handleButton17Click(ClickEvent event) {
+            clicks++;
+        }
+
+        @UiHandler("button-18")
+        public void handleButton18Click(ClickEvent event) {
+            clicks++;
+        }
+
+        @UiHandler("button-19")
+        public void handleButton19Click(ClickEvent event) {
+            clicks++;
+        }
+    }
+}
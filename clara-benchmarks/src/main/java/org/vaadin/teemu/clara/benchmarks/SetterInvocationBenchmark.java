@@ -0,0 +1,140 @@
+package org.vaadin.teemu.clara.benchmarks;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vaadin.teemu.clara.inflater.filter.AttributeFilter;
+import org.vaadin.teemu.clara.inflater.handler.AttributeSetter;
+import org.vaadin.teemu.clara.inflater.handler.DefaultAttributeHandler;
+import org.vaadin.teemu.clara.inflater.handler.LayoutAttributeHandler;
+
+import com.vaadin.ui.Button;
+import com.vaadin.ui.Component;
+import com.vaadin.ui.VerticalLayout;
+
+/**
+ * Compares invoking resolved attribute setters through
+ * {@link Method#invoke(Object, Object...)} (the way Clara used to do it) with
+ * the {@link AttributeSetter} invokers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SetterInvocationBenchmark {
+
+    private Button button;
+    private VerticalLayout layout;
+
+    private AttributeSetter captionSetter;
+    private AttributeSetter widthSetter;
+    private AttributeSetter enabledSetter;
+    private AttributeSetter expandRatioSetter;
+
+    private Method captionMethod;
+    private Method enabledMethod;
+    private Method expandRatioMethod;
+
+    @Setup
+    public void setUp() {
+        button = new Button();
+        layout = new VerticalLayout();
+        layout.addComponent(button);
+
+        SetterLookup defaultHandler = new SetterLookup();
+        LayoutSetterLookup layoutHandler = new LayoutSetterLookup();
+        captionSetter = defaultHandler.find(Button.class, "caption");
+        widthSetter = defaultHandler.find(Button.class, "width");
+        enabledSetter = defaultHandler.find(Button.class, "enabled");
+        expandRatioSetter = layoutHandler.find(VerticalLayout.class,
+                "expandRatio");
+
+        captionMethod = captionSetter.getMethod();
+        enabledMethod = enabledSetter.getMethod();
+        expandRatioMethod = expandRatioSetter.getMethod();
+    }
+
+    @Benchmark
+    public Object reflectiveObjectSetter() throws Exception {
+        captionMethod.invoke(button, "caption");
+        return button;
+    }
+
+    @Benchmark
+    public Object handleObjectSetter() throws InvocationTargetException {
+        captionSetter.invoke(button, button, "caption");
+        return button;
+    }
+
+    @Benchmark
+    public Object reflectiveBooleanSetter() throws Exception {
+        // Includes the parsing and boxing done by PrimitiveAttributeParser.
+        enabledMethod.invoke(button, Boolean.valueOf("true"));
+        return button;
+    }
+
+    @Benchmark
+    public Object handleBooleanSetter() throws InvocationTargetException {
+        enabledSetter.invokeLiteral(button, button, "true");
+        return button;
+    }
+
+    @Benchmark
+    public Object reflectiveLayoutSetter() throws Exception {
+        expandRatioMethod.invoke(layout, button, Float.valueOf("0.5"));
+        return layout;
+    }
+
+    @Benchmark
+    public Object handleLayoutSetter() throws InvocationTargetException {
+        expandRatioSetter.invokeLiteral(layout, button, "0.5");
+        return layout;
+    }
+
+    @Benchmark
+    public Object handleParsedSetter() throws InvocationTargetException {
+        widthSetter.invoke(button, button, widthSetter.getParser()
+                .getValueAs("100px", widthSetter.getValueType(), button));
+        return button;
+    }
+
+    private static class SetterLookup extends DefaultAttributeHandler {
+
+        SetterLookup() {
+            super(new ArrayList<AttributeFilter>());
+        }
+
+        AttributeSetter find(Class<? extends Component> componentClass,
+                String attributeName) {
+            return getSetter(getSetters(componentClass), attributeName,
+                    componentClass);
+        }
+    }
+
+    private static class LayoutSetterLookup extends LayoutAttributeHandler {
+
+        LayoutSetterLookup() {
+            super(new ArrayList<AttributeFilter>());
+        }
+
+        AttributeSetter find(Class<? extends Component> componentClass,
+                String attributeName) {
+            return getSetter(getSetters(componentClass), attributeName,
+                    componentClass);
+        }
+    }
+}
@@ -107,9 +107,13 @@ public class DemoUI extends UI {
 
     private void updateResultPanel(String xml) {
         try {
-            Component c = Clara.create(
+            // Only apply the changes to keep the state of the components.
+            Component current = resultPanel.getContent();
+            Component c = Clara.update(current,
                     new ByteArrayInputStream(xml.getBytes()), controller);
-            resultPanel.setContent(c);
+            if (c != current) {
+                resultPanel.setContent(c);
+            }
         } catch (BinderException e) {
             Notification.show(e.getMessage(), Notification.Type.ERROR_MESSAGE);
         }
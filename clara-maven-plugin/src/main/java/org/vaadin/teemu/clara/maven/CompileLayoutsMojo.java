@@ -0,0 +1,125 @@
+package org.vaadin.teemu.clara.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+
+/**
+ * Checks the layout XML files of the project and compiles them into the
+ * binary layout format read by Clara instead of the XML.
+ */
+@Mojo(name = "compile-layouts", defaultPhase = LifecyclePhase.PROCESS_CLASSES, requiresDependencyResolution = ResolutionScope.COMPILE, threadSafe = true)
+public class CompileLayoutsMojo extends AbstractMojo {
+
+    /**
+     * Directory of the layout XML files.
+     */
+    @Parameter(defaultValue = "${project.basedir}/src/main/resources")
+    private File sourceDirectory;
+
+    /**
+     * Directory to write the binary layouts to.
+     */
+    @Parameter(defaultValue = "${project.build.outputDirectory}")
+    private File outputDirectory;
+
+    /**
+     * Glob patterns of the layouts relative to the {@code sourceDirectory}.
+     * All {@code .xml} files by default. Only files that declare an
+     * {@code urn:import:} or the Clara namespace are compiled, other XML files
+     * are skipped.
+     */
+    @Parameter
+    private List<String> includes;
+
+    /**
+     * Glob patterns of the files not to compile.
+     */
+    @Parameter
+    private List<String> excludes;
+
+    /**
+     * Whether to check that the component classes of the layouts exist.
+     */
+    @Parameter(property = "clara.checkClasses", defaultValue = "true")
+    private boolean checkClasses;
+
+    @Parameter(property = "clara.skip", defaultValue = "false")
+    private boolean skip;
+
+    @Parameter(defaultValue = "${project.compileClasspathElements}", readonly = true, required = true)
+    private List<String> classpathElements;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        if (skip || !sourceDirectory.isDirectory()) {
+            return;
+        }
+        LayoutCompiler compiler = new LayoutCompiler();
+        if (includes != null) {
+            for (String include : includes) {
+                compiler.addInclude(include);
+            }
+        }
+        if (excludes != null) {
+            for (String exclude : excludes) {
+                compiler.addExclude(exclude);
+            }
+        }
+        URLClassLoader classLoader = null;
+        if (checkClasses) {
+            classLoader = createClassLoader();
+            compiler.setClassLoader(classLoader);
+        }
+        try {
+            List<String> compiled = compiler.compile(sourceDirectory,
+                    outputDirectory);
+            getLog().info(
+                    "Compiled " + compiled.size() + " layout(s) to "
+                            + outputDirectory);
+        } catch (LayoutCompilationException e) {
+            for (String error : e.getErrors()) {
+                getLog().error(error);
+            }
+            throw new MojoFailureException(e.getMessage());
+        } catch (IOException e) {
+            throw new MojoExecutionException("Cannot compile layouts.", e);
+        } finally {
+            close(classLoader);
+        }
+    }
+
+    private URLClassLoader createClassLoader() throws MojoExecutionException {
+        URL[] urls = new URL[classpathElements.size()];
+        try {
+            for (int i = 0; i < urls.length; i++) {
+                urls[i] = new File(classpathElements.get(i)).toURI().toURL();
+            }
+        } catch (MalformedURLException e) {
+            throw new MojoExecutionException("Invalid classpath element.", e);
+        }
+        // Component classes are only checked, never initialized.
+        return new URLClassLoader(urls, null);
+    }
+
+    private void close(URLClassLoader classLoader) {
+        if (classLoader != null) {
+            try {
+                classLoader.close();
+            } catch (IOException e) {
+                getLog().debug(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package org.vaadin.teemu.clara.maven;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Thrown by the {@link LayoutCompiler} if some of the layouts are invalid.
+ */
+public class LayoutCompilationException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<String> errors;
+
+    public LayoutCompilationException(List<String> errors) {
+        super(errors.size() + " invalid layout(s).");
+        this.errors = Collections.unmodifiableList(errors);
+    }
+
+    /**
+     * Returns the error messages prefixed with the relative path of the
+     * layout.
+     */
+    public List<String> getErrors() {
+        return errors;
+    }
+}
@@ -0,0 +1,226 @@
+package org.vaadin.teemu.clara.maven;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.vaadin.teemu.clara.inflater.LayoutInflaterException;
+import org.vaadin.teemu.clara.inflater.LayoutPreloader;
+import org.vaadin.teemu.clara.inflater.template.BinaryLayoutFormat;
+import org.vaadin.teemu.clara.inflater.template.ElementTemplate;
+import org.vaadin.teemu.clara.inflater.template.LayoutTemplate;
+import org.vaadin.teemu.clara.inflater.template.LayoutTemplateParser;
+
+/**
+ * Checks the layout XML files of a directory and writes them in the
+ * {@link BinaryLayoutFormat} next to the compiled classes. This is the part
+ * of the {@link CompileLayoutsMojo} that doesn't depend on Maven.
+ *
+ * <br />
+ * <br />
+ * Like the classpath scan of the {@link LayoutPreloader}, only files that
+ * declare an {@code urn:import:} or the Clara namespace are compiled, so other
+ * XML files (like {@code logback.xml} or {@code persistence.xml}) in the
+ * same directory are skipped. Layouts without any namespace declaration
+ * aren't compiled.
+ */
+public class LayoutCompiler {
+
+    private static final String COMPONENT_CLASS = "com.vaadin.ui.Component";
+
+    private final List<PathMatcher> includes = new ArrayList<PathMatcher>();
+    private final List<PathMatcher> excludes = new ArrayList<PathMatcher>();
+    private final LayoutTemplateParser parser = new LayoutTemplateParser();
+    private ClassLoader classLoader;
+
+    /**
+     * Adds a glob pattern (like {@code **}{@code /*.xml}) of the files to
+     * compile relative to the source directory. All {@code .xml} files are
+     * included if no patterns are added. Included files that aren't layouts
+     * are skipped.
+     */
+    public void addInclude(String pattern) {
+        includes.addAll(toMatchers(pattern));
+    }
+
+    /**
+     * Adds a glob pattern of the files not to compile relative to the source
+     * directory.
+     */
+    public void addExclude(String pattern) {
+        excludes.addAll(toMatchers(pattern));
+    }
+
+    /**
+     * Sets the {@link ClassLoader} to check the component classes of the
+     * layouts with. The classes aren't checked if the {@link ClassLoader} is
+     * {@code null} (default).
+     */
+    public void setClassLoader(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * Compiles the included layouts of the given source directory into the
+     * given output directory keeping their relative paths.
+     *
+     * @param sourceDirectory
+     * @param outputDirectory
+     * @return relative paths of the compiled layouts.
+     * @throws LayoutCompilationException
+     *             if any of the layouts is invalid. The valid layouts are
+     *             still compiled.
+     * @throws IOException
+     */
+    public List<String> compile(File sourceDirectory, File outputDirectory)
+            throws LayoutCompilationException, IOException {
+        List<String> compiled = new ArrayList<String>();
+        List<String> errors = new ArrayList<String>();
+        List<String> paths = new ArrayList<String>();
+        collectPaths(sourceDirectory, "", paths);
+        Collections.sort(paths);
+        for (String path : paths) {
+            byte[] xml = read(new File(sourceDirectory, path));
+            if (!LayoutPreloader.isLayout(new ByteArrayInputStream(xml))) {
+                continue;
+            }
+            LayoutTemplate template;
+            try {
+                template = parser.parse(new ByteArrayInputStream(xml), path);
+            } catch (LayoutInflaterException e) {
+                errors.add(path + ": " + e.getMessage());
+                continue;
+            }
+            if (template.getRoot() == null) {
+                continue;
+            }
+            int errorCount = errors.size();
+            if (classLoader != null) {
+                checkClasses(template.getRoot(), path, errors);
+            }
+            if (errors.size() == errorCount) {
+                write(template, new File(outputDirectory,
+                        BinaryLayoutFormat.getResourceName(path)));
+                compiled.add(path);
+            }
+        }
+        if (!errors.isEmpty()) {
+            throw new LayoutCompilationException(errors);
+        }
+        return compiled;
+    }
+
+    private void collectPaths(File directory, String prefix, List<String> paths) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String path = prefix + file.getName();
+            if (file.isDirectory()) {
+                collectPaths(file, path + "/", paths);
+            } else if (isIncluded(path)) {
+                paths.add(path);
+            }
+        }
+    }
+
+    private boolean isIncluded(String path) {
+        Path relativePath = FileSystems.getDefault().getPath(path);
+        if (includes.isEmpty() ? !path.endsWith(".xml") : !matches(includes,
+                relativePath)) {
+            return false;
+        }
+        return !matches(excludes, relativePath);
+    }
+
+    private static boolean matches(List<PathMatcher> matchers, Path path) {
+        for (PathMatcher matcher : matchers) {
+            if (matcher.matches(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<PathMatcher> toMatchers(String pattern) {
+        String glob = pattern.replace('\\', '/');
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher(
+                "glob:" + glob);
+        if (glob.startsWith("**/")) {
+            // Ant style: the leading directories are optional.
+            return Arrays.asList(matcher, FileSystems.getDefault()
+                    .getPathMatcher("glob:" + glob.substring(3)));
+        }
+        return Collections.singletonList(matcher);
+    }
+
+    private static byte[] read(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                content.write(buffer, 0, read);
+            }
+            return content.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private void checkClasses(ElementTemplate element, String path,
+            List<String> errors) {
+        if (element.isInclude()) {
+            // Included layouts are checked on their own.
+            return;
+        }
+        String className = element.getPackageName() + "."
+                + element.getClassName();
+        try {
+            Class<?> componentClass = Class.forName(className, false,
+                    classLoader);
+            Class<?> component = Class.forName(COMPONENT_CLASS, false,
+                    classLoader);
+            if (!component.isAssignableFrom(componentClass)) {
+                errors.add(path + ": " + className + " is not a component.");
+            }
+        } catch (ClassNotFoundException e) {
+            errors.add(path + ": Component class " + className
+                    + " not found.");
+        } catch (LinkageError e) {
+            errors.add(path + ": Component class " + className
+                    + " cannot be loaded: " + e);
+        }
+        for (ElementTemplate child : element.getChildren()) {
+            checkClasses(child, path, errors);
+        }
+    }
+
+    private static void write(LayoutTemplate template, File file)
+            throws IOException {
+        File directory = file.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create directory " + directory + ".");
+        }
+        OutputStream out = new FileOutputStream(file);
+        try {
+            BinaryLayoutFormat.write(template, out);
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package org.vaadin.teemu.clara.maven;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.vaadin.teemu.clara.inflater.template.BinaryLayoutFormat;
+import org.vaadin.teemu.clara.inflater.template.LayoutTemplate;
+
+public class LayoutCompilerTest {
+
+    private static final String LAYOUT = "<VerticalLayout xmlns=\"urn:import:com.vaadin.ui\" id=\"layout\">"
+            + "<Button id=\"button\" caption=\"Click\" />" + "</VerticalLayout>";
+
+    private File sources;
+    private File classes;
+
+    @Before
+    public void setUp() throws IOException {
+        sources = createDirectory();
+        classes = createDirectory();
+    }
+
+    @After
+    public void tearDown() {
+        delete(sources);
+        delete(classes);
+    }
+
+    @Test
+    public void compile_validLayouts_binaryWritten() throws Exception {
+        write("Main.xml", LAYOUT);
+        write("org/example/Sub.xml", LAYOUT);
+        write("settings.properties", "key=value");
+
+        LayoutCompiler compiler = new LayoutCompiler();
+        compiler.setClassLoader(getClass().getClassLoader());
+
+        assertEquals(Arrays.asList("Main.xml", "org/example/Sub.xml"),
+                compiler.compile(sources, classes));
+        LayoutTemplate template = read("org/example/Sub.xml");
+        assertEquals("VerticalLayout", template.getRoot().getClassName());
+        assertEquals("Button", template.getRoot().getChildren().get(0)
+                .getClassName());
+        assertFalse(new File(classes, "settings.properties"
+                + BinaryLayoutFormat.RESOURCE_SUFFIX).exists());
+    }
+
+    @Test
+    public void compile_excludedFile_skipped() throws Exception {
+        write("Main.xml", LAYOUT);
+        write("config/logging.xml", "<configuration />");
+
+        LayoutCompiler compiler = new LayoutCompiler();
+        compiler.addInclude("**/*.xml");
+        compiler.addExclude("config/**");
+
+        assertEquals(Collections.singletonList("Main.xml"),
+                compiler.compile(sources, classes));
+    }
+
+    @Test
+    public void compile_otherXmlFiles_skipped() throws Exception {
+        write("Main.xml", LAYOUT);
+        write("logback.xml", "<configuration><root level=\"INFO\" />"
+                + "</configuration>");
+        write("META-INF/persistence.xml",
+                "<persistence xmlns=\"http://xmlns.jcp.org/xml/ns/persistence\">"
+                        + "<persistence-unit name=\"default\" /></persistence>");
+
+        LayoutCompiler compiler = new LayoutCompiler();
+        compiler.setClassLoader(getClass().getClassLoader());
+
+        assertEquals(Collections.singletonList("Main.xml"),
+                compiler.compile(sources, classes));
+        assertFalse(new File(classes, "logback.xml"
+                + BinaryLayoutFormat.RESOURCE_SUFFIX).exists());
+    }
+
+    @Test
+    public void compile_noComponents_skipped() throws Exception {
+        write("other.xml", "<root xmlns=\"urn:other\"><child /></root>");
+
+        assertTrue(new LayoutCompiler().compile(sources, classes).isEmpty());
+    }
+
+    @Test
+    public void compile_unknownClass_errorReported() throws Exception {
+        write("Main.xml", LAYOUT);
+        write("Invalid.xml", "<VerticalLayout xmlns=\"urn:import:com.vaadin.ui\">"
+                + "<NoSuchButton /></VerticalLayout>");
+
+        LayoutCompiler compiler = new LayoutCompiler();
+        compiler.setClassLoader(getClass().getClassLoader());
+        try {
+            compiler.compile(sources, classes);
+            fail("Expected LayoutCompilationException");
+        } catch (LayoutCompilationException e) {
+            assertEquals(Collections
+                    .singletonList("Invalid.xml: Component class com.vaadin.ui.NoSuchButton not found."),
+                    e.getErrors());
+        }
+        assertTrue(new File(classes, "Main.xml"
+                + BinaryLayoutFormat.RESOURCE_SUFFIX).exists());
+        assertFalse(new File(classes, "Invalid.xml"
+                + BinaryLayoutFormat.RESOURCE_SUFFIX).exists());
+    }
+
+    @Test
+    public void compile_notComponent_errorReported() throws Exception {
+        write("Main.xml", "<String xmlns=\"urn:import:java.lang\" />");
+
+        LayoutCompiler compiler = new LayoutCompiler();
+        compiler.setClassLoader(getClass().getClassLoader());
+        try {
+            compiler.compile(sources, classes);
+            fail("Expected LayoutCompilationException");
+        } catch (LayoutCompilationException e) {
+            assertEquals(Collections
+                    .singletonList("Main.xml: java.lang.String is not a component."),
+                    e.getErrors());
+        }
+    }
+
+    @Test(expected = LayoutCompilationException.class)
+    public void compile_malformedXml_errorReported() throws Exception {
+        write("Main.xml", "<VerticalLayout xmlns=\"urn:import:com.vaadin.ui\">");
+
+        new LayoutCompiler().compile(sources, classes);
+    }
+
+    private LayoutTemplate read(String path) throws IOException {
+        InputStream in = new FileInputStream(new File(classes,
+                BinaryLayoutFormat.getResourceName(path)));
+        try {
+            return BinaryLayoutFormat.read(in, path);
+        } finally {
+            in.close();
+        }
+    }
+
+    private void write(String path, String content) throws IOException {
+        File file = new File(sources, path);
+        file.getParentFile().mkdirs();
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    private static File createDirectory() throws IOException {
+        File directory = File.createTempFile("clara-maven-plugin", "");
+        directory.delete();
+        directory.mkdirs();
+        return directory;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,922 @@
+package org.vaadin.teemu.clara.processor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+
+import org.vaadin.teemu.clara.LayoutFactory;
+import org.vaadin.teemu.clara.binder.annotation.UiDataSource;
+import org.vaadin.teemu.clara.binder.annotation.UiField;
+import org.vaadin.teemu.clara.binder.annotation.UiHandler;
+import org.vaadin.teemu.clara.inflater.LazyComponent;
+import org.vaadin.teemu.clara.inflater.template.ElementTemplate;
+import org.vaadin.teemu.clara.inflater.template.LayoutTemplate;
+
+/**
+ * Generates the Java source of a {@link LayoutFactory} for a single
+ * controller class. The generated code does the same as
+ * {@code LayoutInflater} and {@code Binder} would do at runtime: components
+ * are instantiated with {@code new}, attributes are set with direct setter
+ * calls using literals converted at compile time, {@link UiField} fields are
+ * assigned directly and {@link UiHandler} methods are registered with
+ * lambdas.
+ */
+class FactoryGenerator {
+
+    private static final String DEFAULT_NAMESPACE = "";
+    private static final String LAYOUT_NAMESPACE = "urn:vaadin:parent";
+    private static final String INDENT = "        ";
+
+    private static final Pattern ADD_LISTENER_PATTERN = Pattern
+            .compile("add(.*)Listener");
+
+    private final Elements elements;
+    private final Types types;
+    private final TypeElement controller;
+    private final String layoutName;
+    private final String packageName;
+    private final String factoryName;
+
+    private final TypeMirror componentType;
+    private final TypeMirror componentContainerType;
+    private final TypeMirror singleComponentContainerType;
+
+    private final List<String> errors = new ArrayList<String>();
+    private final StringBuilder body = new StringBuilder();
+    private final Map<String, ComponentVariable> componentsById = new HashMap<String, ComponentVariable>();
+    private final Map<String, List<VariableElement>> fieldsById = new LinkedHashMap<String, List<VariableElement>>();
+    private int variableCount;
+    private boolean positionHelperNeeded;
+
+    FactoryGenerator(ProcessingEnvironment environment,
+            TypeElement controller, String layoutName) {
+        this.elements = environment.getElementUtils();
+        this.types = environment.getTypeUtils();
+        this.controller = controller;
+        this.layoutName = layoutName;
+
+        packageName = elements.getPackageOf(controller).getQualifiedName()
+                .toString();
+        // Keeps the $ of nested classes like LayoutFactories expects.
+        String binaryName = elements.getBinaryName(controller).toString();
+        factoryName = binaryName.substring(
+                packageName.length() > 0 ? packageName.length() + 1 : 0)
+                + LayoutFactory.FACTORY_SUFFIX;
+
+        componentType = typeOf("com.vaadin.ui.Component");
+        componentContainerType = typeOf("com.vaadin.ui.ComponentContainer");
+        singleComponentContainerType = typeOf("com.vaadin.ui.SingleComponentContainer");
+    }
+
+    List<String> getErrors() {
+        return errors;
+    }
+
+    String getQualifiedFactoryName() {
+        return packageName.length() > 0 ? packageName + "." + factoryName
+                : factoryName;
+    }
+
+    /**
+     * Returns the source of the factory class. The source must not be used if
+     * {@link #getErrors()} is not empty afterwards.
+     */
+    String generate(LayoutTemplate template) {
+        if (componentType == null) {
+            errors.add("Vaadin Framework is not on the classpath.");
+            return null;
+        }
+        collectFields();
+
+        ComponentVariable root = generateElement(template.getRoot(), null,
+                null);
+        if (root == null) {
+            return null;
+        }
+        generateFieldBindings();
+        generateMethodBindings();
+        body.append(INDENT).append("return ").append(root.name)
+                .append(";\n");
+
+        return generateClass();
+    }
+
+    private String generateClass() {
+        String controllerName = controller.getQualifiedName().toString();
+        StringBuilder source = new StringBuilder();
+        if (packageName.length() > 0) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("/**\n * Generated by ")
+                .append(LayoutProcessor.class.getName())
+                .append(" from ").append(layoutName)
+                .append(". Do not edit.\n */\n");
+        source.append("public final class ").append(factoryName)
+                .append(" implements ")
+                .append(LayoutFactory.class.getName()).append("<")
+                .append(controllerName).append("> {\n\n");
+
+        source.append("    @Override\n");
+        source.append("    public String getLayoutName() {\n");
+        source.append("        return ").append(literal(layoutName))
+                .append(";\n");
+        source.append("    }\n\n");
+
+        source.append("    @Override\n");
+        source.append("    @SuppressWarnings({ \"unchecked\", \"rawtypes\" })\n");
+        source.append("    public com.vaadin.ui.Component create(final ")
+                .append(controllerName).append(" controller) {\n");
+        source.append(body);
+        source.append("    }\n");
+
+        if (positionHelperNeeded) {
+            source.append("\n    private static com.vaadin.ui.AbsoluteLayout.ComponentPosition position(\n");
+            source.append("            com.vaadin.ui.AbsoluteLayout layout, String css) {\n");
+            source.append("        com.vaadin.ui.AbsoluteLayout.ComponentPosition position = layout.new ComponentPosition();\n");
+            source.append("        position.setCSSString(css);\n");
+            source.append("        return position;\n");
+            source.append("    }\n");
+        }
+        source.append("}\n");
+        return source.toString();
+    }
+
+    /*
+     * Component tree.
+     */
+
+    private ComponentVariable generateElement(ElementTemplate element,
+            ComponentVariable parent, ComponentVariable currentContainer) {
+        if (element.isInclude()) {
+            // LayoutProcessor resolves the includes before generating.
+            errors.add("Unresolved " + element + ".");
+            return null;
+        }
+        String className = element.getPackageName() + "."
+                + element.getClassName().replace('$', '.');
+        TypeElement type = elements.getTypeElement(className);
+        if (type == null) {
+            errors.add("Component class " + className + " not found.");
+            return null;
+        }
+        if (!verifyInstantiable(type)) {
+            return null;
+        }
+
+        ComponentVariable component = new ComponentVariable("c"
+                + variableCount++, type);
+        String typeName = type.getQualifiedName().toString();
+        body.append(INDENT).append(typeName).append(" ")
+                .append(component.name).append(" = ");
+        VariableElement override = getOverrideField(element.getId());
+        if (override != null) {
+            // Use an already assigned field instead of a new instance.
+            String field = fieldAccess(override);
+            body.append(field).append(" != null ? ");
+            if (!types.isSameType(types.erasure(override.asType()),
+                    types.erasure(type.asType()))) {
+                body.append("(").append(typeName).append(") ");
+            }
+            body.append(field).append(" : ");
+        }
+        body.append("new ").append(typeName).append("();\n");
+        if (element.getId() != null) {
+            componentsById.put(element.getId(), component);
+        }
+
+        // Basic attributes -> attach -> layout attributes.
+        for (String namespace : element.getAttributeNamespaces()) {
+            if (namespace.equals(LazyComponent.CLARA_NAMESPACE)) {
+                errors.add("Lazy elements are not supported by generated factories.");
+            } else if (!namespace.equals(DEFAULT_NAMESPACE)
+                    && !namespace.equals(LAYOUT_NAMESPACE)) {
+                errors.add("Attributes of namespace " + namespace
+                        + " need an AttributeHandler at runtime.");
+            }
+        }
+        for (Map.Entry<String, String> attribute : element.getAttributes(
+                DEFAULT_NAMESPACE).entrySet()) {
+            generateSetter(component, attribute.getKey(),
+                    attribute.getValue());
+        }
+        ComponentVariable layout = generateAttach(component, parent,
+                currentContainer);
+        Map<String, String> layoutAttributes = element
+                .getAttributes(LAYOUT_NAMESPACE);
+        if (!layoutAttributes.isEmpty()) {
+            if (layout == null
+                    || !types.isAssignable(layout.type.asType(),
+                            componentContainerType)) {
+                errors.add("Layout attributes of " + describe(element)
+                        + " require the component to be attached to a ComponentContainer.");
+            } else {
+                for (Map.Entry<String, String> attribute : layoutAttributes
+                        .entrySet()) {
+                    generateLayoutSetter(layout, component,
+                            attribute.getKey(), attribute.getValue());
+                }
+            }
+        }
+
+        if (types.isAssignable(type.asType(), componentContainerType)) {
+            currentContainer = component;
+        }
+        for (ElementTemplate child : element.getChildren()) {
+            generateElement(child, component, currentContainer);
+        }
+        return component;
+    }
+
+    private boolean verifyInstantiable(TypeElement type) {
+        String name = type.getQualifiedName().toString();
+        if (!types.isAssignable(type.asType(), componentType)) {
+            errors.add("Class " + name + " is not a Component.");
+            return false;
+        }
+        if (!type.getModifiers().contains(Modifier.PUBLIC)
+                || type.getModifiers().contains(Modifier.ABSTRACT)) {
+            errors.add("Component class " + name
+                    + " must be public and not abstract.");
+            return false;
+        }
+        for (ExecutableElement constructor : ElementFilter
+                .constructorsIn(type.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty()
+                    && constructor.getModifiers().contains(Modifier.PUBLIC)) {
+                return true;
+            }
+        }
+        errors.add("Component class " + name
+                + " has no public no-argument constructor.");
+        return false;
+    }
+
+    /**
+     * Generates the attach code and returns the component the attached
+     * component ends up in or {@code null} if it isn't attached.
+     */
+    private ComponentVariable generateAttach(ComponentVariable component,
+            ComponentVariable parent, ComponentVariable currentContainer) {
+        if (parent != null
+                && types.isAssignable(parent.type.asType(),
+                        singleComponentContainerType)) {
+            body.append(INDENT).append(parent.name).append(".setContent(")
+                    .append(component.name).append(");\n");
+            return parent;
+        } else if (currentContainer != null) {
+            body.append(INDENT).append(currentContainer.name)
+                    .append(".addComponent(").append(component.name)
+                    .append(");\n");
+            return currentContainer;
+        }
+        return null;
+    }
+
+    /*
+     * Attributes.
+     */
+
+    private void generateSetter(ComponentVariable component,
+            String attribute, String value) {
+        List<ExecutableElement> candidates = new ArrayList<ExecutableElement>();
+        String setterName = getWriteMethodName(attribute);
+        for (ExecutableElement method : getPublicMethods(component.type)) {
+            if (method.getSimpleName().contentEquals(setterName)
+                    && method.getParameters().size() <= 1) {
+                candidates.add(method);
+            }
+        }
+        ExecutableElement setter = getPreferredMethod(candidates, 0);
+        if (setter == null) {
+            errors.add("Unknown attribute " + attribute + " for "
+                    + component.type.getQualifiedName() + ".");
+            return;
+        }
+
+        if (setter.getParameters().isEmpty()) {
+            body.append(INDENT).append(component.name).append(".")
+                    .append(setterName).append("();\n");
+            return;
+        }
+        String argument = convert(setter.getParameters().get(0).asType(),
+                value, null, attribute);
+        if (argument != null) {
+            body.append(INDENT).append(component.name).append(".")
+                    .append(setterName).append("(").append(argument)
+                    .append(");\n");
+        }
+    }
+
+    private void generateLayoutSetter(ComponentVariable layout,
+            ComponentVariable component, String attribute, String value) {
+        List<ExecutableElement> candidates = new ArrayList<ExecutableElement>();
+        String setterName = getWriteMethodName(attribute);
+        for (ExecutableElement method : getPublicMethods(layout.type)) {
+            if (method.getSimpleName().contentEquals(setterName)
+                    && method.getParameters().size() == 2
+                    && types.isAssignable(method.getParameters().get(0)
+                            .asType(), componentType)) {
+                candidates.add(method);
+            }
+        }
+        ExecutableElement setter = getPreferredMethod(candidates, 1);
+        if (setter == null) {
+            errors.add("Unknown layout attribute " + attribute + " for "
+                    + layout.type.getQualifiedName() + ".");
+            return;
+        }
+        String argument = convert(setter.getParameters().get(1).asType(),
+                value, layout, attribute);
+        if (argument != null) {
+            body.append(INDENT).append(layout.name).append(".")
+                    .append(setterName).append("(").append(component.name)
+                    .append(", ").append(argument).append(");\n");
+        }
+    }
+
+    private static String getWriteMethodName(String propertyName) {
+        if (propertyName.length() > 0) {
+            return "set" + propertyName.substring(0, 1).toUpperCase()
+                    + propertyName.substring(1);
+        }
+        return "";
+    }
+
+    /**
+     * Picks the setter the same way DefaultAttributeHandler does: setters
+     * taking Vaadin specific types first, deprecated setters last. Ties are
+     * resolved in favor of setters whose values can be converted.
+     */
+    private ExecutableElement getPreferredMethod(
+            List<ExecutableElement> candidates, final int valueIndex) {
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        Collections.sort(candidates, new Comparator<ExecutableElement>() {
+
+            @Override
+            public int compare(ExecutableElement method1,
+                    ExecutableElement method2) {
+                int result = rank(method1) - rank(method2);
+                return result != 0 ? result : convertibility(method1)
+                        - convertibility(method2);
+            }
+
+            private int rank(ExecutableElement method) {
+                boolean special = method.getParameters().size() > valueIndex
+                        && isSpecialType(method.getParameters()
+                                .get(valueIndex).asType());
+                boolean deprecated = elements.isDeprecated(method);
+                return (special ? 0 : 2) + (deprecated ? 1 : 0);
+            }
+
+            private int convertibility(ExecutableElement method) {
+                if (method.getParameters().size() <= valueIndex) {
+                    return 0;
+                }
+                return isConvertible(method.getParameters().get(valueIndex)
+                        .asType()) ? 0 : 1;
+            }
+        });
+        return candidates.get(0);
+    }
+
+    private boolean isSpecialType(TypeMirror type) {
+        if (type.getKind() != TypeKind.DECLARED) {
+            return false;
+        }
+        TypeElement element = (TypeElement) types.asElement(type);
+        String name = element.getQualifiedName().toString();
+        return element.getKind() == ElementKind.ENUM
+                || name.equals("com.vaadin.ui.Alignment")
+                || name.equals("com.vaadin.shared.ui.MarginInfo")
+                || name.equals("com.vaadin.ui.AbsoluteLayout.ComponentPosition");
+    }
+
+    private boolean isConvertible(TypeMirror type) {
+        if (type.getKind().isPrimitive() || isSpecialType(type)) {
+            return true;
+        }
+        if (type.getKind() != TypeKind.DECLARED) {
+            return false;
+        }
+        String name = ((TypeElement) types.asElement(type))
+                .getQualifiedName().toString();
+        return name.equals("java.lang.String")
+                || name.equals("java.lang.Object") || isBoxed(type);
+    }
+
+    private boolean isBoxed(TypeMirror type) {
+        try {
+            types.unboxedType(type);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Converts the given attribute value into a Java expression of the given
+     * type or records an error and returns {@code null}.
+     */
+    private String convert(TypeMirror type, String value,
+            ComponentVariable layout, String attribute) {
+        try {
+            String expression = convertOrNull(type, value, layout);
+            if (expression == null) {
+                errors.add("Can't convert value \"" + value
+                        + "\" of attribute " + attribute + " to " + type
+                        + ".");
+            }
+            return expression;
+        } catch (IllegalArgumentException e) {
+            errors.add("Invalid value \"" + value + "\" for attribute "
+                    + attribute + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private String convertOrNull(TypeMirror type, String value,
+            ComponentVariable layout) {
+        TypeKind kind = type.getKind();
+        if (kind == TypeKind.DECLARED && isBoxed(type)) {
+            kind = types.unboxedType(type).getKind();
+        } else if (kind == TypeKind.DECLARED) {
+            TypeElement element = (TypeElement) types.asElement(type);
+            String name = element.getQualifiedName().toString();
+            if (name.equals("java.lang.String")
+                    || name.equals("java.lang.Object")) {
+                return literal(value);
+            }
+            if (value.length() == 0) {
+                // Runtime passes empty values through without conversion.
+                return null;
+            }
+            if (element.getKind() == ElementKind.ENUM) {
+                return enumConstant(element, value);
+            }
+            if (name.equals("com.vaadin.ui.Alignment")) {
+                return alignment(value);
+            }
+            if (name.equals("com.vaadin.shared.ui.MarginInfo")) {
+                return marginInfo(value);
+            }
+            if (name.equals("com.vaadin.ui.AbsoluteLayout.ComponentPosition")
+                    && layout != null
+                    && types.isAssignable(layout.type.asType(),
+                            typeOf("com.vaadin.ui.AbsoluteLayout"))) {
+                positionHelperNeeded = true;
+                return "position(" + layout.name + ", " + literal(value)
+                        + ")";
+            }
+            return null;
+        }
+
+        switch (kind) {
+        case BOOLEAN:
+            return String.valueOf(Boolean.parseBoolean(value));
+        case INT:
+            return String.valueOf(Integer.parseInt(value));
+        case BYTE:
+            return "(byte) " + Byte.parseByte(value);
+        case SHORT:
+            return "(short) " + Short.parseShort(value);
+        case LONG:
+            return Long.parseLong(value) + "L";
+        case CHAR:
+            if (value.length() == 0) {
+                return null;
+            }
+            return "'" + escape(value.substring(0, 1), '\'') + "'";
+        case FLOAT:
+            return floatLiteral(Float.parseFloat(value));
+        case DOUBLE:
+            return doubleLiteral(Double.parseDouble(value));
+        default:
+            return null;
+        }
+    }
+
+    private String enumConstant(TypeElement enumType, String value) {
+        for (Element constant : enumType.getEnclosedElements()) {
+            if (constant.getKind() == ElementKind.ENUM_CONSTANT
+                    && constant.getSimpleName().contentEquals(value)) {
+                return enumType.getQualifiedName() + "." + value;
+            }
+        }
+        throw new IllegalArgumentException("No enum constant "
+                + enumType.getQualifiedName() + "." + value);
+    }
+
+    private String alignment(String value) {
+        TypeElement alignment = elements
+                .getTypeElement("com.vaadin.ui.Alignment");
+        for (VariableElement field : ElementFilter.fieldsIn(alignment
+                .getEnclosedElements())) {
+            if (field.getModifiers().contains(Modifier.STATIC)
+                    && field.getModifiers().contains(Modifier.PUBLIC)
+                    && field.getSimpleName().contentEquals(value)
+                    && types.isSameType(field.asType(), alignment.asType())) {
+                return "com.vaadin.ui.Alignment." + value;
+            }
+        }
+        throw new IllegalArgumentException("No alignment " + value);
+    }
+
+    private String marginInfo(String value) {
+        String[] margins = value.split(" ");
+        StringBuilder expression = new StringBuilder(
+                "new com.vaadin.shared.ui.MarginInfo(");
+        if (margins.length == 4) {
+            for (int i = 0; i < margins.length; i++) {
+                expression.append(i > 0 ? ", " : "").append(
+                        Boolean.parseBoolean(margins[i]));
+            }
+        } else {
+            expression.append(Boolean.parseBoolean(value));
+        }
+        return expression.append(")").toString();
+    }
+
+    private static String floatLiteral(float value) {
+        if (Float.isNaN(value)) {
+            return "Float.NaN";
+        } else if (Float.isInfinite(value)) {
+            return value > 0 ? "Float.POSITIVE_INFINITY"
+                    : "Float.NEGATIVE_INFINITY";
+        }
+        return Float.toString(value) + "f";
+    }
+
+    private static String doubleLiteral(double value) {
+        if (Double.isNaN(value)) {
+            return "Double.NaN";
+        } else if (Double.isInfinite(value)) {
+            return value > 0 ? "Double.POSITIVE_INFINITY"
+                    : "Double.NEGATIVE_INFINITY";
+        }
+        return Double.toString(value) + "d";
+    }
+
+    /*
+     * Binding.
+     */
+
+    private void collectFields() {
+        for (TypeElement type = controller; type != null; type = getSuperclass(type)) {
+            for (VariableElement field : ElementFilter.fieldsIn(type
+                    .getEnclosedElements())) {
+                UiField annotation = field.getAnnotation(UiField.class);
+                if (annotation == null) {
+                    continue;
+                }
+                String id = annotation.value().length() > 0 ? annotation
+                        .value() : field.getSimpleName().toString();
+                if (!verifyFieldAccess(field)) {
+                    continue;
+                }
+                List<VariableElement> fields = fieldsById.get(id);
+                if (fields == null) {
+                    fields = new ArrayList<VariableElement>();
+                    fieldsById.put(id, fields);
+                }
+                fields.add(field);
+            }
+        }
+    }
+
+    private boolean verifyFieldAccess(VariableElement field) {
+        String name = describe(field);
+        if (field.getModifiers().contains(Modifier.PRIVATE)) {
+            errors.add("@UiField " + name + " must not be private.");
+            return false;
+        }
+        if (field.getModifiers().contains(Modifier.FINAL)) {
+            errors.add("@UiField " + name + " must not be final.");
+            return false;
+        }
+        if (!field.getModifiers().contains(Modifier.PUBLIC)
+                && !isSamePackage(field)) {
+            errors.add("@UiField " + name
+                    + " must be public when declared in another package.");
+            return false;
+        }
+        return true;
+    }
+
+    private VariableElement getOverrideField(String id) {
+        if (id == null || !fieldsById.containsKey(id)) {
+            return null;
+        }
+        return fieldsById.get(id).get(0);
+    }
+
+    private void generateFieldBindings() {
+        for (Map.Entry<String, List<VariableElement>> entry : fieldsById
+                .entrySet()) {
+            ComponentVariable component = componentsById.get(entry.getKey());
+            for (VariableElement field : entry.getValue()) {
+                if (component == null) {
+                    errors.add("No component found for id: "
+                            + entry.getKey() + " (@UiField "
+                            + describe(field) + ").");
+                    continue;
+                }
+                if (!types.isAssignable(component.type.asType(),
+                        types.erasure(field.asType()))) {
+                    errors.add("@UiField " + describe(field)
+                            + " can't hold a "
+                            + component.type.getQualifiedName() + ".");
+                    continue;
+                }
+                String access = fieldAccess(field);
+                body.append(INDENT).append("if (").append(access)
+                        .append(" == null) {\n");
+                body.append(INDENT).append("    ").append(access)
+                        .append(" = ").append(component.name).append(";\n");
+                body.append(INDENT).append("}\n");
+            }
+        }
+    }
+
+    private void generateMethodBindings() {
+        for (ExecutableElement method : ElementFilter.methodsIn(elements
+                .getAllMembers(controller))) {
+            UiDataSource dataSource = method.getAnnotation(UiDataSource.class);
+            if (dataSource != null && verifyPublic(method, "@UiDataSource")) {
+                generateDataSource(method, dataSource.value());
+            }
+            UiHandler handler = method.getAnnotation(UiHandler.class);
+            if (handler != null && verifyPublic(method, "@UiHandler")) {
+                generateHandler(method, handler.value());
+            }
+        }
+    }
+
+    private boolean verifyPublic(ExecutableElement method, String annotation) {
+        if (!method.getModifiers().contains(Modifier.PUBLIC)) {
+            errors.add(annotation + " method " + describe(method)
+                    + " must be public.");
+            return false;
+        }
+        return true;
+    }
+
+    private void generateHandler(ExecutableElement method, String id) {
+        ComponentVariable component = findComponent(id, method);
+        if (component == null) {
+            return;
+        }
+        if (method.getParameters().size() != 1) {
+            errors.add("Couldn't figure out event type for method "
+                    + describe(method) + ".");
+            return;
+        }
+        TypeMirror eventType = types.erasure(method.getParameters().get(0)
+                .asType());
+
+        List<ExecutableElement> candidates = new ArrayList<ExecutableElement>();
+        for (ExecutableElement candidate : getPublicMethods(component.type)) {
+            if (candidate.getParameters().size() == 1
+                    && ADD_LISTENER_PATTERN.matcher(
+                            candidate.getSimpleName()).matches()) {
+                candidates.add(candidate);
+            }
+        }
+        // Deprecated methods last.
+        Collections.sort(candidates, new Comparator<ExecutableElement>() {
+
+            @Override
+            public int compare(ExecutableElement method1,
+                    ExecutableElement method2) {
+                return (elements.isDeprecated(method1) ? 1 : 0)
+                        - (elements.isDeprecated(method2) ? 1 : 0);
+            }
+        });
+
+        for (ExecutableElement addListener : candidates) {
+            TypeMirror listenerType = types.erasure(addListener
+                    .getParameters().get(0).asType());
+            if (listenerType.getKind() != TypeKind.DECLARED) {
+                continue;
+            }
+            TypeElement listener = (TypeElement) types.asElement(listenerType);
+            if (listener.getKind() != ElementKind.INTERFACE
+                    || !acceptsOnly(listener, eventType)) {
+                continue;
+            }
+            if (!isFunctional(listener)) {
+                errors.add("Listener " + listener.getQualifiedName()
+                        + " of " + describe(method)
+                        + " is not a functional interface.");
+                return;
+            }
+            body.append(INDENT).append(component.name).append(".")
+                    .append(addListener.getSimpleName()).append("((")
+                    .append(listener.getQualifiedName())
+                    .append(") event -> controller.")
+                    .append(method.getSimpleName()).append("(event));\n");
+            return;
+        }
+        errors.add("No listener for " + eventType + " found in "
+                + component.type.getQualifiedName() + " (@UiHandler "
+                + describe(method) + ").");
+    }
+
+    /**
+     * Returns {@code true} if the listener interface has exactly one method
+     * taking the given event type as its sole parameter.
+     */
+    private boolean acceptsOnly(TypeElement listener, TypeMirror eventType) {
+        int count = 0;
+        for (ExecutableElement method : ElementFilter.methodsIn(elements
+                .getAllMembers(listener))) {
+            if (method.getParameters().size() == 1
+                    && method.getModifiers().contains(Modifier.PUBLIC)
+                    && types.isAssignable(types.erasure(method
+                            .getParameters().get(0).asType()), eventType)) {
+                count++;
+            }
+        }
+        return count == 1;
+    }
+
+    private boolean isFunctional(TypeElement listener) {
+        int abstractMethods = 0;
+        for (ExecutableElement method : ElementFilter.methodsIn(elements
+                .getAllMembers(listener))) {
+            if (method.getModifiers().contains(Modifier.ABSTRACT)
+                    && !isObjectMethod(method)) {
+                abstractMethods++;
+            }
+        }
+        return abstractMethods == 1;
+    }
+
+    private boolean isObjectMethod(ExecutableElement method) {
+        TypeElement object = elements.getTypeElement("java.lang.Object");
+        for (ExecutableElement objectMethod : ElementFilter
+                .methodsIn(object.getEnclosedElements())) {
+            if (objectMethod.getModifiers().contains(Modifier.PUBLIC)
+                    && elements.overrides(method, objectMethod,
+                            (TypeElement) method.getEnclosingElement())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void generateDataSource(ExecutableElement method, String id) {
+        ComponentVariable component = findComponent(id, method);
+        if (component == null) {
+            return;
+        }
+        TypeMirror returnType = types.erasure(method.getReturnType());
+        TypeMirror viewedType = component.type.asType();
+        String[][] dataSources = {
+                { "com.vaadin.v7.data.Container",
+                        "com.vaadin.v7.data.Container.Viewer",
+                        "setContainerDataSource" },
+                { "com.vaadin.v7.data.Property",
+                        "com.vaadin.v7.data.Property.Viewer",
+                        "setPropertyDataSource" },
+                { "com.vaadin.v7.data.Item", "com.vaadin.v7.data.Item.Viewer",
+                        "setItemDataSource" } };
+        for (String[] dataSource : dataSources) {
+            TypeMirror sourceType = typeOf(dataSource[0]);
+            TypeMirror viewerType = typeOf(dataSource[1]);
+            if (sourceType != null && viewerType != null
+                    && types.isAssignable(returnType, sourceType)
+                    && types.isAssignable(viewedType, viewerType)) {
+                body.append(INDENT).append("((").append(dataSource[1])
+                        .append(") ").append(component.name).append(").")
+                        .append(dataSource[2]).append("(controller.")
+                        .append(method.getSimpleName()).append("());\n");
+                return;
+            }
+        }
+        errors.add("@UiDataSource " + describe(method)
+                + " doesn't match component "
+                + component.type.getQualifiedName() + ".");
+    }
+
+    private ComponentVariable findComponent(String id, Element binding) {
+        ComponentVariable component = componentsById.get(id);
+        if (component == null) {
+            errors.add("No component found for id: " + id + " ("
+                    + describe(binding) + ").");
+        }
+        return component;
+    }
+
+    /*
+     * Helpers.
+     */
+
+    private String fieldAccess(VariableElement field) {
+        TypeElement declaringType = (TypeElement) field.getEnclosingElement();
+        if (declaringType.equals(controller)) {
+            return "controller." + field.getSimpleName();
+        }
+        // Cast in case a subclass hides the field.
+        return "((" + declaringType.getQualifiedName() + ") controller)."
+                + field.getSimpleName();
+    }
+
+    private boolean isSamePackage(Element element) {
+        PackageElement elementPackage = elements.getPackageOf(element);
+        return elementPackage.getQualifiedName().contentEquals(packageName);
+    }
+
+    private List<ExecutableElement> getPublicMethods(TypeElement type) {
+        List<ExecutableElement> methods = new ArrayList<ExecutableElement>();
+        for (ExecutableElement method : ElementFilter.methodsIn(elements
+                .getAllMembers(type))) {
+            if (method.getModifiers().contains(Modifier.PUBLIC)
+                    && !method.getModifiers().contains(Modifier.STATIC)) {
+                methods.add(method);
+            }
+        }
+        return methods;
+    }
+
+    private TypeElement getSuperclass(TypeElement type) {
+        TypeMirror superclass = type.getSuperclass();
+        if (superclass.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        return (TypeElement) ((DeclaredType) superclass).asElement();
+    }
+
+    private TypeMirror typeOf(String qualifiedName) {
+        TypeElement type = elements.getTypeElement(qualifiedName);
+        return type != null ? types.erasure(type.asType()) : null;
+    }
+
+    private String describe(ElementTemplate element) {
+        return element.getClassName()
+                + (element.getId() != null ? " (id " + element.getId() + ")"
+                        : "");
+    }
+
+    private String describe(Element member) {
+        return ((TypeElement) member.getEnclosingElement()).getSimpleName()
+                + "." + member.getSimpleName();
+    }
+
+    static String literal(String value) {
+        return "\"" + escape(value, '"') + "\"";
+    }
+
+    private static String escape(String value, char quote) {
+        StringBuilder escaped = new StringBuilder(value.length() + 8);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == quote || c == '\\') {
+                escaped.append('\\').append(c);
+            } else if (c == '\n') {
+                escaped.append("\\n");
+            } else if (c == '\r') {
+                escaped.append("\\r");
+            } else if (c == '\t') {
+                escaped.append("\\t");
+            } else if (c < 0x20 || c > 0x7e) {
+                escaped.append(String.format("\\u%04x", (int) c));
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    private static class ComponentVariable {
+
+        final String name;
+        final TypeElement type;
+
+        ComponentVariable(String name, TypeElement type) {
+            this.name = name;
+            this.type = type;
+        }
+    }
+}
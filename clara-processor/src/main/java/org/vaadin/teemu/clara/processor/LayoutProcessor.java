@@ -0,0 +1,237 @@
+package org.vaadin.teemu.clara.processor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+
+import org.vaadin.teemu.clara.LayoutFactory;
+import org.vaadin.teemu.clara.binder.annotation.UiLayout;
+import org.vaadin.teemu.clara.inflater.LayoutInflaterException;
+import org.vaadin.teemu.clara.inflater.template.LayoutTemplate;
+import org.vaadin.teemu.clara.inflater.template.LayoutTemplateCache;
+import org.vaadin.teemu.clara.inflater.template.LayoutTemplateParser;
+
+/**
+ * Annotation processor that generates a {@link LayoutFactory} for every
+ * controller class annotated with {@link UiLayout}. The layout XML is read
+ * from the class output (where Maven copies the resources before compiling)
+ * or from the source path.
+ *
+ * Included layouts ({@code <clara:include>}) are read the same way and
+ * resolved like {@link LayoutTemplateCache} resolves them at runtime, so the
+ * generated factory creates the included components too.
+ *
+ * Problems that Clara would report at runtime, like unknown attributes or ids
+ * and handler methods without a matching listener, are reported as compile
+ * errors.
+ */
+@SupportedAnnotationTypes("org.vaadin.teemu.clara.binder.annotation.UiLayout")
+public class LayoutProcessor extends AbstractProcessor {
+
+    private final LayoutTemplateParser parser = new LayoutTemplateParser();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations,
+            RoundEnvironment roundEnv) {
+        // Included layouts are read once per round.
+        ResourceTemplateCache fragments = new ResourceTemplateCache();
+        for (Element element : roundEnv
+                .getElementsAnnotatedWith(UiLayout.class)) {
+            if (verifyController(element)) {
+                processController((TypeElement) element, fragments);
+            }
+        }
+        return true;
+    }
+
+    private boolean verifyController(Element element) {
+        if (element.getKind() != ElementKind.CLASS) {
+            error(element, "@UiLayout is only allowed on classes.");
+            return false;
+        }
+        TypeElement controller = (TypeElement) element;
+        if (!controller.getTypeParameters().isEmpty()) {
+            error(element, "@UiLayout classes must not be generic.");
+            return false;
+        }
+        for (Element e = controller; e.getKind().isClass(); e = e
+                .getEnclosingElement()) {
+            if (e.getModifiers().contains(Modifier.PRIVATE)) {
+                error(element, "@UiLayout classes must not be private.");
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void processController(TypeElement controller,
+            LayoutTemplateCache fragments) {
+        String layoutName = resolveLayoutName(controller,
+                controller.getAnnotation(UiLayout.class).value());
+
+        LayoutTemplate template = readTemplate(controller, layoutName,
+                fragments);
+        if (template == null) {
+            return;
+        }
+        if (template.getRoot() == null) {
+            error(controller, "Layout " + layoutName
+                    + " doesn't contain any components.");
+            return;
+        }
+
+        FactoryGenerator generator = new FactoryGenerator(processingEnv,
+                controller, layoutName);
+        String source = generator.generate(template);
+        if (!generator.getErrors().isEmpty()) {
+            for (String message : generator.getErrors()) {
+                error(controller, layoutName + ": " + message);
+            }
+            return;
+        }
+
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(
+                    generator.getQualifiedFactoryName(), controller);
+            Writer writer = file.openWriter();
+            try {
+                writer.write(source);
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            error(controller, "Couldn't write "
+                    + generator.getQualifiedFactoryName() + ": "
+                    + e.getMessage());
+        }
+    }
+
+    private LayoutTemplate readTemplate(TypeElement controller,
+            String layoutName, LayoutTemplateCache fragments) {
+        InputStream xml = openLayout(layoutName);
+        if (xml == null) {
+            error(controller, "Layout " + layoutName + " not found.");
+            return null;
+        }
+        LayoutTemplate template;
+        try {
+            template = parse(xml, layoutName);
+        } catch (LayoutInflaterException e) {
+            error(controller, "Couldn't parse layout " + layoutName + ": "
+                    + e.getMessage());
+            return null;
+        }
+        try {
+            return fragments.resolveIncludes(null, layoutName, template);
+        } catch (LayoutInflaterException e) {
+            error(controller, "Couldn't include layouts in " + layoutName
+                    + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Opens the given layout from the class output or the source path, or
+     * returns {@code null} if it isn't found.
+     */
+    private InputStream openLayout(String layoutName) {
+        InputStream xml = openResource(StandardLocation.CLASS_OUTPUT,
+                layoutName);
+        if (xml == null) {
+            xml = openResource(StandardLocation.SOURCE_PATH, layoutName);
+        }
+        return xml;
+    }
+
+    private LayoutTemplate parse(InputStream xml, String layoutName) {
+        try {
+            return parser.parse(xml, layoutName);
+        } finally {
+            try {
+                xml.close();
+            } catch (IOException e) {
+                // Nothing to do.
+            }
+        }
+    }
+
+    private InputStream openResource(StandardLocation location,
+            String resourceName) {
+        try {
+            FileObject resource = processingEnv.getFiler().getResource(
+                    location, "", resourceName);
+            return resource.openInputStream();
+        } catch (IOException e) {
+            return null;
+        } catch (IllegalArgumentException e) {
+            // Location not supported by this compiler.
+            return null;
+        }
+    }
+
+    /**
+     * Resolves the given layout file name the same way
+     * {@link Class#getResourceAsStream(String)} would for the controller.
+     */
+    static String resolveLayoutName(TypeElement controller, String name) {
+        if (name.startsWith("/")) {
+            return name.substring(1);
+        }
+        Element packageElement = controller;
+        while (packageElement.getKind() != ElementKind.PACKAGE) {
+            packageElement = packageElement.getEnclosingElement();
+        }
+        String packageName = ((PackageElement) packageElement)
+                .getQualifiedName().toString();
+        if (packageName.length() == 0) {
+            return name;
+        }
+        return packageName.replace('.', '/') + "/" + name;
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Kind.ERROR, message, element);
+    }
+
+    /**
+     * Reads the included layouts like the layouts of the controllers instead
+     * of loading them with a {@link ClassLoader}.
+     */
+    private class ResourceTemplateCache extends LayoutTemplateCache {
+
+        ResourceTemplateCache() {
+            super(DEFAULT_MAXIMUM_SIZE, parser);
+        }
+
+        @Override
+        protected LayoutTemplate load(ClassLoader classLoader,
+                String resourceName) {
+            InputStream xml = openLayout(resourceName);
+            if (xml == null) {
+                throw new LayoutInflaterException("Layout resource "
+                        + resourceName + " not found.");
+            }
+            return parse(xml, resourceName);
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package org.vaadin.teemu.clara.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.vaadin.teemu.clara.Clara;
+import org.vaadin.teemu.clara.LayoutFactory;
+
+import com.vaadin.ui.Button;
+import com.vaadin.ui.Component;
+import com.vaadin.ui.VerticalLayout;
+
+public class LayoutProcessorTest {
+
+    private static final String CONTROLLER = "package test;\n"
+            + "import org.vaadin.teemu.clara.binder.annotation.*;\n"
+            + "import com.vaadin.ui.*;\n"
+            + "@UiLayout(\"Controller.xml\")\n"
+            + "public class Controller {\n"
+            + "    @UiField Button button;\n"
+            + "    @UiField(\"layout\") public VerticalLayout root;\n"
+            + "    public int clicks;\n"
+            + "    @UiHandler(\"button\")\n"
+            + "    public void onClick(Button.ClickEvent event) { clicks++; }\n"
+            + "}\n";
+
+    private static final String LAYOUT = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+            + "<VerticalLayout xmlns=\"urn:import:com.vaadin.ui\" xmlns:l=\"urn:vaadin:parent\" id=\"layout\">\n"
+            + "    <Button id=\"button\" caption=\"Click &quot;me&quot;\" tabIndex=\"3\" l:expandRatio=\"1.0\" />\n"
+            + "</VerticalLayout>";
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("clara-processor", "");
+        directory.delete();
+        directory.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        delete(directory);
+    }
+
+    @Test
+    public void compile_validController_factoryGenerated() throws Exception {
+        List<Diagnostic<? extends JavaFileObject>> errors = compile(
+                CONTROLLER, LAYOUT);
+        assertTrue(errors.toString(), errors.isEmpty());
+
+        ClassLoader classLoader = new URLClassLoader(
+                new URL[] { new File(directory, "classes").toURI().toURL() },
+                getClass().getClassLoader());
+        Class<?> controllerClass = classLoader.loadClass("test.Controller");
+        @SuppressWarnings("unchecked")
+        LayoutFactory<Object> factory = (LayoutFactory<Object>) classLoader
+                .loadClass("test.Controller_ClaraFactory").newInstance();
+        assertEquals("test/Controller.xml", factory.getLayoutName());
+
+        Object controller = controllerClass.newInstance();
+        Component root = factory.create(controller);
+
+        VerticalLayout layout = (VerticalLayout) root;
+        Button button = (Button) layout.getComponent(0);
+        assertSame(layout, controllerClass.getField("root").get(controller));
+        assertEquals("Click \"me\"", button.getCaption());
+        assertEquals(3, button.getTabIndex());
+        assertEquals(1.0f, layout.getExpandRatio(button), 0.0f);
+
+        button.click();
+        assertEquals(1, controllerClass.getField("clicks").getInt(controller));
+    }
+
+    @Test
+    public void compile_validController_usedByClara() throws Exception {
+        assertTrue(compile(CONTROLLER, LAYOUT).isEmpty());
+
+        ClassLoader classLoader = new URLClassLoader(
+                new URL[] { new File(directory, "classes").toURI().toURL() },
+                getClass().getClassLoader());
+        Object controller = classLoader.loadClass("test.Controller")
+                .newInstance();
+        // Remove the XML to make sure it isn't read at runtime.
+        assertTrue(new File(directory, "classes/test/Controller.xml").delete());
+
+        Component root = Clara.create("Controller.xml", controller);
+        assertEquals(VerticalLayout.class, root.getClass());
+    }
+
+    @Test
+    public void compile_nestedAndTopLevelController_separateFactories()
+            throws Exception {
+        String controllers = "package test;\n"
+                + "import org.vaadin.teemu.clara.binder.annotation.*;\n"
+                + "public class Controller {\n"
+                + "    @UiLayout(\"Controller.xml\")\n"
+                + "    public static class Inner {}\n" + "}\n"
+                + "@UiLayout(\"/test/Controller.xml\")\n"
+                + "class Controller_Inner {}\n";
+        List<Diagnostic<? extends JavaFileObject>> errors = compile(
+                controllers, LAYOUT);
+        assertTrue(errors.toString(), errors.isEmpty());
+
+        ClassLoader classLoader = new URLClassLoader(
+                new URL[] { new File(directory, "classes").toURI().toURL() },
+                getClass().getClassLoader());
+        assertTrue(LayoutFactory.class.isAssignableFrom(classLoader
+                .loadClass("test.Controller$Inner_ClaraFactory")));
+        assertTrue(LayoutFactory.class.isAssignableFrom(classLoader
+                .loadClass("test.Controller_Inner_ClaraFactory")));
+    }
+
+    @Test
+    public void compile_unknownAttribute_compileError() throws Exception {
+        String message = compileForError(CONTROLLER,
+                LAYOUT.replace("tabIndex", "nonExisting"));
+        assertTrue(message, message.contains("Unknown attribute nonExisting"));
+    }
+
+    @Test
+    public void compile_unknownId_compileError() throws Exception {
+        String message = compileForError(
+                CONTROLLER.replace("@UiHandler(\"button\")",
+                        "@UiHandler(\"missing\")"), LAYOUT);
+        assertTrue(message, message.contains("No component found for id: missing"));
+    }
+
+    @Test
+    public void compile_privateField_compileError() throws Exception {
+        String message = compileForError(
+                CONTROLLER.replace("@UiField Button button",
+                        "@UiField private Button button"), LAYOUT);
+        assertTrue(message, message.contains("must not be private"));
+    }
+
+    @Test
+    public void compile_invalidNumber_compileError() throws Exception {
+        String message = compileForError(CONTROLLER,
+                LAYOUT.replace("tabIndex=\"3\"", "tabIndex=\"three\""));
+        assertTrue(message, message.contains("Invalid value \"three\""));
+    }
+
+    @Test
+    public void compile_lazyElement_compileError() throws Exception {
+        String message = compileForError(CONTROLLER, LAYOUT.replace(
+                "<Button ", "<Button xmlns:c=\"urn:vaadin:clara\" c:lazy=\"true\" "));
+        assertTrue(message, message.contains("Lazy elements are not supported"));
+    }
+
+    @Test
+    public void compile_layoutWithInclude_includedComponentsCreated()
+            throws Exception {
+        writeResource("test/fragments/Button.xml",
+                "<Button xmlns=\"urn:import:com.vaadin.ui\" id=\"button\" caption=\"Included\" />");
+        String layout = "<VerticalLayout xmlns=\"urn:import:com.vaadin.ui\" xmlns:c=\"urn:vaadin:clara\""
+                + " xmlns:l=\"urn:vaadin:parent\" id=\"layout\">\n"
+                + "    <c:include src=\"fragments/Button.xml\" l:expandRatio=\"1.0\" />\n"
+                + "</VerticalLayout>";
+        List<Diagnostic<? extends JavaFileObject>> errors = compile(
+                CONTROLLER, layout);
+        assertTrue(errors.toString(), errors.isEmpty());
+
+        ClassLoader classLoader = new URLClassLoader(
+                new URL[] { new File(directory, "classes").toURI().toURL() },
+                getClass().getClassLoader());
+        Class<?> controllerClass = classLoader.loadClass("test.Controller");
+        @SuppressWarnings("unchecked")
+        LayoutFactory<Object> factory = (LayoutFactory<Object>) classLoader
+                .loadClass("test.Controller_ClaraFactory").newInstance();
+        Object controller = controllerClass.newInstance();
+        VerticalLayout layoutRoot = (VerticalLayout) factory.create(controller);
+
+        Button button = (Button) layoutRoot.getComponent(0);
+        assertEquals("Included", button.getCaption());
+        assertEquals(1.0f, layoutRoot.getExpandRatio(button), 0.0f);
+        button.click();
+        assertEquals(1, controllerClass.getField("clicks").getInt(controller));
+    }
+
+    @Test
+    public void compile_missingInclude_compileError() throws Exception {
+        String message = compileForError(CONTROLLER, LAYOUT.replace(
+                "<Button ", "<c:include xmlns:c=\"urn:vaadin:clara\" src=\"Missing.xml\" /><Button "));
+        assertTrue(message, message.contains("Couldn't include layouts"));
+        assertTrue(message, message.contains("test/Missing.xml not found"));
+    }
+
+    private String compileForError(String controller, String layout)
+            throws IOException {
+        List<Diagnostic<? extends JavaFileObject>> errors = compile(
+                controller, layout);
+        assertFalse(errors.isEmpty());
+        assertFalse(new File(directory, "classes/test/Controller_ClaraFactory.class")
+                .exists());
+        return errors.get(0).getMessage(null);
+    }
+
+    private List<Diagnostic<? extends JavaFileObject>> compile(
+            String controller, String layout) throws IOException {
+        File sources = new File(directory, "src/test");
+        File classes = new File(directory, "classes");
+        File generated = new File(directory, "generated");
+        new File(classes, "test").mkdirs();
+        sources.mkdirs();
+        generated.mkdirs();
+
+        File controllerFile = new File(sources, "Controller.java");
+        write(controllerFile, controller);
+        // Resources are copied to the class output before compiling.
+        write(new File(classes, "test/Controller.xml"), layout);
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(
+                diagnostics, null, null);
+        try {
+            List<String> options = Arrays.asList("-classpath",
+                    System.getProperty("java.class.path"), "-d",
+                    classes.getPath(), "-s", generated.getPath(),
+                    "-processor", LayoutProcessor.class.getName());
+            compiler.getTask(null, fileManager, diagnostics, options, null,
+                    fileManager.getJavaFileObjects(controllerFile)).call();
+        } finally {
+            fileManager.close();
+        }
+
+        List<Diagnostic<? extends JavaFileObject>> errors = new ArrayList<Diagnostic<? extends JavaFileObject>>();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics
+                .getDiagnostics()) {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                errors.add(diagnostic);
+            }
+        }
+        return errors;
+    }
+
+    private void writeResource(String name, String content)
+            throws IOException {
+        File file = new File(directory, "classes/" + name);
+        file.getParentFile().mkdirs();
+        write(file, content);
+    }
+
+    private static void write(File file, String content) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file),
+                "UTF-8");
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -1,20 +1,120 @@
 package org.vaadin.teemu.clara;
 
+import java.io.File;
 import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
 
 import org.vaadin.teemu.clara.binder.Binder;
 import org.vaadin.teemu.clara.binder.BinderException;
+import org.vaadin.teemu.clara.binder.annotation.UiField;
+import org.vaadin.teemu.clara.inflater.ComponentProvider;
+import org.vaadin.teemu.clara.inflater.InflationResult;
 import org.vaadin.teemu.clara.inflater.LayoutInflater;
 import org.vaadin.teemu.clara.inflater.LayoutInflaterException;
+import org.vaadin.teemu.clara.inflater.LayoutPreloader;
+import org.vaadin.teemu.clara.inflater.PreloadReport;
 import org.vaadin.teemu.clara.inflater.filter.AttributeFilter;
+import org.vaadin.teemu.clara.inflater.filter.BulkAttributeFilter;
+import org.vaadin.teemu.clara.inflater.listener.InflationListener;
+import org.vaadin.teemu.clara.inflater.template.BinaryLayoutFormat;
+import org.vaadin.teemu.clara.inflater.template.LayoutTemplate;
+import org.vaadin.teemu.clara.inflater.template.LayoutTemplateCache;
+import org.vaadin.teemu.clara.inflater.template.LayoutTemplateParser;
+import org.vaadin.teemu.clara.inflater.template.ReloadingLayoutTemplateCache;
 
+import com.vaadin.server.ErrorHandlingRunnable;
 import com.vaadin.ui.Component;
 import com.vaadin.ui.ComponentContainer;
 import com.vaadin.ui.HasComponents;
+import com.vaadin.ui.UI;
 import org.vaadin.teemu.clara.inflater.handler.AttributeHandler;
 
 public class Clara {
 
+    // Templates of the component trees built with updates enabled or
+    // returned by an update, by their root.
+    private static final Map<Component, LayoutTemplate> inflatedTemplates = Collections
+            .synchronizedMap(new WeakHashMap<Component, LayoutTemplate>());
+
+    // Template cache used by default, replaced in development mode.
+    private static volatile LayoutTemplateCache defaultTemplateCache = LayoutTemplateCache
+            .getSharedInstance();
+
+    /**
+     * Enables the development mode: layouts given as file names are read from
+     * the given source directories (typically {@code src/main/resources} and
+     * {@code src/main/java}) and parsed again whenever they are edited. Use
+     * {@link ReloadingLayoutTemplateCache#addReloadListener} of the returned
+     * cache to re-inflate the open views after a change. Generated
+     * {@link LayoutFactory LayoutFactories} are not used in development mode.
+     *
+     * <br />
+     * <br />
+     * The development mode must not be used in production, the file system
+     * is only accessed in development mode.
+     *
+     * @param sourceRoots
+     *            directories to read the layouts from.
+     * @return the {@link ReloadingLayoutTemplateCache} used in development
+     *         mode.
+     */
+    public static synchronized ReloadingLayoutTemplateCache enableDevelopmentMode(
+            File... sourceRoots) {
+        disableDevelopmentMode();
+        ReloadingLayoutTemplateCache cache = new ReloadingLayoutTemplateCache(
+                sourceRoots);
+        defaultTemplateCache = cache;
+        return cache;
+    }
+
+    /**
+     * Disables the development mode and stops watching the layout files.
+     */
+    public static synchronized void disableDevelopmentMode() {
+        LayoutTemplateCache cache = defaultTemplateCache;
+        if (cache instanceof ReloadingLayoutTemplateCache) {
+            ((ReloadingLayoutTemplateCache) cache).close();
+        }
+        defaultTemplateCache = LayoutTemplateCache.getSharedInstance();
+    }
+
+    public static boolean isDevelopmentMode() {
+        return defaultTemplateCache instanceof ReloadingLayoutTemplateCache;
+    }
+
+    /**
+     * Parses and validates all layouts found under the given package prefixes
+     * of the given {@link ClassLoader} in parallel, filling the template
+     * cache and resolving the component classes and setters before the first
+     * layout is inflated. Call {@link PreloadReport#throwIfFailed()} on the
+     * result to fail the deployment if a layout is broken. Use a
+     * {@link LayoutPreloader} directly to also warm up the JIT with
+     * synthetic inflations.
+     *
+     * @param classLoader
+     *            {@link ClassLoader} of the layouts.
+     * @param packagePrefixes
+     *            packages to scan for layouts, including their sub packages.
+     * @return report of the preload time and the errors of each layout.
+     * @throws LayoutInflaterException
+     *             if the classpath cannot be scanned.
+     */
+    public static PreloadReport preload(ClassLoader classLoader,
+            String... packagePrefixes) {
+        LayoutPreloader preloader = new LayoutPreloader(classLoader);
+        preloader.setTemplateCache(defaultTemplateCache);
+        return preloader.preload(packagePrefixes);
+    }
+
     /**
      * Returns a {@link Component} that is read from the XML representation
      * given as {@link InputStream}. If you would like to bind the resulting
@@ -80,6 +180,14 @@ public class Clara {
      * 
      * <br />
      * <br />
+     * The file is parsed only once and then kept in the
+     * {@link LayoutTemplateCache#getSharedInstance() shared template cache},
+     * so subsequent calls for the same file only inflate the cached template.
+     * In {@link #enableDevelopmentMode(File...) development mode} the file is
+     * read from the source directories and parsed again after each change.
+     * 
+     * <br />
+     * <br />
      * Optionally you may also provide {@link AttributeFilter}s to do some
      * modifications (or example localized translations) to any attributes
      * present in the XML representation.
@@ -110,6 +218,51 @@ public class Clara {
                 .build();
     }
 
+    /**
+     * Updates the component hierarchy of the given {@code root} created by
+     * Clara to match the XML representation given as {@link InputStream}
+     * instead of creating a new hierarchy. Only the differences are applied:
+     * components are matched with the XML elements by their {@code id} and
+     * position, only the attributes whose values changed are assigned and
+     * components are added and removed as needed. The kept components keep
+     * their state and bindings, the controller is only bound to the new
+     * components.
+     * 
+     * <br />
+     * <br />
+     * Only hierarchies built with {@link Builder#enableUpdates()} or returned
+     * by an earlier update can be updated. If the root element changed or the
+     * hierarchy can't be updated (for example if it was created by
+     * {@link #create(InputStream, Object, AttributeFilter...)} or a
+     * generated {@link LayoutFactory}), a new hierarchy is created and
+     * returned instead.
+     * 
+     * @param root
+     *            root of a component hierarchy created by Clara.
+     * @param xml
+     *            the new XML representation.
+     * @param controller
+     *            controller object to bind the new {@code Component}s (
+     *            {@code null} allowed).
+     * @param attributeFilters
+     *            optional {@link AttributeFilter}s to do attribute
+     *            modifications.
+     * @return the updated {@code root} or the root of a new hierarchy.
+     * 
+     * @throws LayoutInflaterException
+     *             if an error is encountered during the layout inflation.
+     * @throws BinderException
+     *             if an error is encountered during the binding.
+     */
+    public static Component update(Component root, InputStream xml,
+            Object controller, AttributeFilter... attributeFilters) {
+        return new Builder()
+                .readFromStream(xml)
+                .bindToController(controller)
+                .addAttributeFilter(attributeFilters)
+                .update(root);
+    }
+
     /**
      * Searches the given component hierarchy {@code root} for a
      * {@link Component} with the given {@code componentId} as its {@code id}
@@ -118,10 +271,15 @@ public class Clara {
      * <br />
      * <br />
      * If the given {@code root} is a {@link ComponentContainer}, this method
-     * will recursively iterate the component hierarchy in search for the
+     * will iterate the whole component hierarchy in search for the
      * correct {@link Component}. Otherwise if the given {@code root} is a
      * single {@link Component}, only it is checked for its {@code id} value.
      * 
+     * <br />
+     * <br />
+     * The tree is walked on every call. Use {@link ComponentIndex#of(Component)}
+     * for repeated lookups in the same tree.
+     * 
      * @param root
      *            root of a component tree (non-{@code null}).
      * @param componentId
@@ -142,34 +300,79 @@ public class Clara {
                     "Root component must not be null.");
         }
 
-        // Recursively traverse the whole component tree starting from the given
-        // root component.
-        if (componentId.equals(root.getId())) {
-            return root;
-        } else if (root instanceof HasComponents) {
-            for (Component c : (HasComponents) root) {
-                Component result = findComponentById(c, componentId);
-                if (result != null) {
-                    return result;
-                }
+        // Traverse the whole component tree depth first starting from the
+        // given root component. A stack is used instead of recursion so that
+        // deep trees don't overflow the call stack.
+        Deque<Component> stack = new ArrayDeque<Component>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Component component = stack.pop();
+            if (componentId.equals(component.getId())) {
+                return component;
+            } else if (component instanceof HasComponents) {
+                ComponentIndex.pushChildren(stack, (HasComponents) component);
             }
         }
         return null;
     }
 
+    /**
+     * Returns the components of the tree under the given {@code root}
+     * matching the given CSS-like selector, like
+     * {@code "Panel > .toolbar Button[caption^=Save]"}, in tree order. See
+     * {@link ComponentSelector} for the supported syntax.
+     * 
+     * <br />
+     * <br />
+     * Ids and types are looked up from the {@link ComponentIndex} of the
+     * tree. Style names and other attributes are checked on the components
+     * themselves, so components whose style names changed after the previous
+     * call are selected without {@link ComponentIndex#refresh()}.
+     * 
+     * @param root
+     *            root of a component tree (non-{@code null}).
+     * @param selector
+     *            selector string (non-{@code null}).
+     * @return the matching components, empty if none match.
+     * @throws IllegalArgumentException
+     *             if either of the given parameters is {@code null} or the
+     *             selector is invalid.
+     */
+    public static List<Component> select(Component root, String selector) {
+        return ComponentSelector.compile(selector).select(root);
+    }
+
+    /**
+     * Returns the first component of the tree under the given {@code root}
+     * matching the given CSS-like selector.
+     * 
+     * @param root
+     *            root of a component tree (non-{@code null}).
+     * @param selector
+     *            selector string (non-{@code null}).
+     * @return the first matching component or {@code null} if none match.
+     * @throws IllegalArgumentException
+     *             if either of the given parameters is {@code null} or the
+     *             selector is invalid.
+     * @see #select(Component, String)
+     */
+    public static Component selectFirst(Component root, String selector) {
+        return ComponentSelector.compile(selector).selectFirst(root);
+    }
+
     public static class Builder {
 
         private InputStream xml;
         private String xmlClassResourceFileName;
         private Object controller;
+        private LayoutTemplateCache templateCache = defaultTemplateCache;
         private final Binder binder = new Binder();
         private final LayoutInflater inflater = new LayoutInflater();
+        private boolean customized;
+        private boolean updatable;
 
         public Builder readFromFile(String xmlClassResourceFileName) {
             this.xmlClassResourceFileName = xmlClassResourceFileName;
-            if (xml == null && controller != null) {
-                createStream();
-            }
             return this;
         }
 
@@ -180,20 +383,41 @@ public class Clara {
 
         public Builder bindToController(Object controller) {
             this.controller = controller;
-            if (xml == null && xmlClassResourceFileName != null) {
-                createStream();
-            }
             return this;
         }
 
-        private void createStream() {
-            xml = controller.getClass().getResourceAsStream(xmlClassResourceFileName);
+        /**
+         * Sets the {@link LayoutTemplateCache} used to look up layouts given
+         * with {@link #readFromFile(String)}. By default the
+         * {@link LayoutTemplateCache#getSharedInstance() shared cache} (or
+         * the reloading cache in development mode) is used, {@code null}
+         * disables caching.
+         */
+        public Builder useTemplateCache(LayoutTemplateCache templateCache) {
+            this.templateCache = templateCache;
+            return this;
         }
 
         public Builder addAttributeFilter(AttributeFilter... attributeFilters) {
             if (attributeFilters != null) {
                 for (AttributeFilter a : attributeFilters) {
                     inflater.addAttributeFilter(a);
+                    customized = true;
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Adds {@link BulkAttributeFilter}s that are given the attributes of
+         * each element at once before the {@link AttributeFilter}s.
+         */
+        public Builder addBulkAttributeFilter(
+                BulkAttributeFilter... bulkAttributeFilters) {
+            if (bulkAttributeFilters != null) {
+                for (BulkAttributeFilter b : bulkAttributeFilters) {
+                    inflater.addBulkAttributeFilter(b);
+                    customized = true;
                 }
             }
             return this;
@@ -203,17 +427,368 @@ public class Clara {
             if (attributeHandlers != null) {
                 for (AttributeHandler a : attributeHandlers) {
                     inflater.addAttributeHandler(a);
+                    customized = true;
                 }
             }
             return this;
         }
 
+        /**
+         * Adds an {@link InflationListener} notified of the parsing,
+         * inflation and binding steps, for example an
+         * {@link org.vaadin.teemu.clara.inflater.listener.InflationStatistics}
+         * instance. Layouts created by a generated {@link LayoutFactory} are
+         * not reported.
+         */
+        public Builder addInflationListener(InflationListener listener) {
+            inflater.addInflationListener(listener);
+            binder.setInflationListener(inflater.getInflationListener());
+            return this;
+        }
+
+        /**
+         * Makes the elements of the namespace {@code urn:import:<alias>}
+         * resolve to classes of the given {@code packageName}.
+         */
+        public Builder addNamespaceAlias(String alias, String packageName) {
+            inflater.addNamespaceAlias(alias, packageName);
+            customized = true;
+            return this;
+        }
+
+        /**
+         * Uses the given {@link ComponentProvider} to create the components
+         * of the given package.
+         */
+        public Builder addComponentProvider(String packageName,
+                ComponentProvider componentProvider) {
+            inflater.addComponentProvider(packageName, componentProvider);
+            customized = true;
+            return this;
+        }
+
+        /**
+         * Remembers the layout of the built hierarchy so that later changes
+         * of the layout can be applied to it with {@link #update(Component)}.
+         * Hierarchies returned by {@link #update(Component)} are always
+         * remembered, other hierarchies aren't updated in place.
+         */
+        public Builder enableUpdates() {
+            updatable = true;
+            return this;
+        }
+
+        /**
+         * Compiles layouts that have been inflated the given number of times
+         * from the same template into a form that is inflated without
+         * interpreting the XML elements and attributes.
+         * 
+         * @see LayoutInflater#setCompileThreshold(int)
+         */
+        public Builder compileAfter(int inflations) {
+            inflater.setCompileThreshold(inflations);
+            return this;
+        }
+
+        /**
+         * Builds the component hierarchy and binds it to the controller.
+         * 
+         * <br />
+         * <br />
+         * If the layout is read from a file and the controller class has a
+         * {@link LayoutFactory} generated for the same file, the factory is
+         * used instead of inflating the XML. Generated factories are not used
+         * when {@link AttributeFilter}s, {@link BulkAttributeFilter}s,
+         * {@link AttributeHandler}s, namespace aliases or
+         * {@link ComponentProvider}s are added, as those can only be applied
+         * at runtime.
+         * 
+         * @return root of the component hierarchy.
+         */
         public Component build() {
-            Component result = inflater.inflate(xml,
-                    binder.getAlreadyAssignedFields(controller));
-            binder.bind(result, controller);
+            LayoutFactory<Object> factory = getLayoutFactory();
+            InflationResult result = null;
+            if (factory == null) {
+                result = inflate(binder.getAlreadyAssignedFields(controller));
+            }
+            return bind(factory, result);
+        }
+
+        /**
+         * Builds the component hierarchy in the background using the given
+         * {@link Executor} and binds it to the controller on the executor
+         * thread. The returned {@link CompletableFuture} completes with the
+         * root of the detached component hierarchy, it must be attached to a
+         * {@link UI} while holding the session lock.
+         * 
+         * <br />
+         * <br />
+         * The {@link Builder} must not be modified before the returned
+         * {@link CompletableFuture} completes.
+         * 
+         * @param executor
+         *            {@link Executor} to inflate the layout with.
+         * @return {@link CompletableFuture} of the root of the component
+         *         hierarchy.
+         * @see #buildAsync(Executor, UI)
+         */
+        public CompletableFuture<Component> buildAsync(Executor executor) {
+            return buildAsync(executor, null);
+        }
+
+        /**
+         * Builds the component hierarchy in the background using the given
+         * {@link Executor} and then binds it to the controller in
+         * {@link UI#access(Runnable)} of the given {@link UI}. The returned
+         * {@link CompletableFuture} completes while the session is locked, so
+         * dependent actions like {@code thenAccept} that don't use another
+         * executor can attach the component directly.
+         * 
+         * <br />
+         * <br />
+         * The already assigned {@link UiField}s of the controller are read
+         * when this method is called. The {@link Builder} must not be
+         * modified before the returned {@link CompletableFuture} completes.
+         * 
+         * <br />
+         * <br />
+         * A {@link LayoutFactory} generated for the controller creates and
+         * binds the components in one step, so it's only used when no
+         * {@link UI} is given. With a {@link UI} the layout is inflated on the
+         * executor and only bound while the session is locked.
+         * 
+         * <br />
+         * <br />
+         * If the {@link UI} is detached before the binding runs, the returned
+         * {@link CompletableFuture} completes exceptionally with a
+         * {@link com.vaadin.ui.UIDetachedException}. Cancelling the returned
+         * {@link CompletableFuture} cancels the pending binding. The session
+         * doesn't run the pending tasks of a session that is closed before it
+         * is locked again, so callers that must not wait forever should wait
+         * with a timeout.
+         * 
+         * @param executor
+         *            {@link Executor} to inflate the layout with.
+         * @param ui
+         *            {@link UI} to bind the controller in or {@code null} to
+         *            bind on the executor thread.
+         * @return {@link CompletableFuture} of the root of the component
+         *         hierarchy.
+         */
+        public CompletableFuture<Component> buildAsync(Executor executor,
+                final UI ui) {
+            // Creating the components with a factory would need the lock.
+            final LayoutFactory<Object> factory = ui == null ? getLayoutFactory()
+                    : null;
+            final Map<String, Component> alreadyAssigned = factory == null ? binder
+                    .getAlreadyAssignedFields(controller) : null;
+            final CompletableFuture<Component> future = new CompletableFuture<Component>();
+
+            executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        InflationResult result = null;
+                        if (factory == null) {
+                            result = inflate(alreadyAssigned);
+                        }
+                        if (ui == null) {
+                            future.complete(bind(factory, result));
+                        } else {
+                            cancelWith(future, ui.access(new BindCommand(
+                                    future, result)));
+                        }
+                    } catch (Throwable e) {
+                        future.completeExceptionally(e);
+                    }
+                }
+            });
+            return future;
+        }
+
+        /**
+         * Updates the given component hierarchy created by Clara to match the
+         * layout and binds the controller to the new components.
+         * 
+         * @param root
+         *            root of a component hierarchy built with
+         *            {@link #enableUpdates()} or returned by an earlier
+         *            update.
+         * @return the updated {@code root} or the root of a new hierarchy if
+         *         it can't be updated.
+         * @see Clara#update(Component, InputStream, Object, AttributeFilter...)
+         */
+        public Component update(Component root) {
+            LayoutTemplate template = readTemplate();
+            LayoutTemplate previous = root != null ? inflatedTemplates
+                    .get(root) : null;
+            InflationResult result;
+            if (previous != null) {
+                result = inflater.update(root, previous, template);
+            } else {
+                // The fields of the controller point to the old hierarchy.
+                Map<String, Component> noOverrides = Collections.emptyMap();
+                result = inflater.inflateWithIndex(template, noOverrides);
+            }
+            rememberTemplate(result.getRoot(), template);
+
+            if (result.getRoot() == root) {
+                binder.bindIndexed(result, controller);
+            } else {
+                binder.bind(result, controller);
+            }
+            return result.getRoot();
+        }
+
+        private InflationResult inflate(Map<String, Component> alreadyAssigned) {
+            LayoutTemplate template = readTemplate();
+            InflationResult result = inflater.inflateWithIndex(template,
+                    alreadyAssigned);
+            if (updatable) {
+                rememberTemplate(result.getRoot(), template);
+            }
             return result;
         }
+
+        private LayoutTemplate readTemplate() {
+            if (xml == null && xmlClassResourceFileName != null) {
+                return getTemplate();
+            }
+            LayoutTemplate template = inflater.parse(xml, null);
+            // Includes of a stream are relative to the root of the classpath.
+            ClassLoader classLoader = (controller != null ? controller
+                    .getClass() : Clara.class).getClassLoader();
+            return (templateCache != null ? templateCache
+                    : new LayoutTemplateCache(1)).resolveIncludes(
+                    classLoader, null, template);
+        }
+
+        private void rememberTemplate(Component root, LayoutTemplate template) {
+            if (root != null) {
+                inflatedTemplates.put(root, template);
+            }
+        }
+
+        private Component bind(LayoutFactory<Object> factory,
+                InflationResult result) {
+            if (factory != null) {
+                return factory.create(controller);
+            }
+            binder.bind(result, controller);
+            return result.getRoot();
+        }
+
+        /**
+         * Cancels the given {@link UI#access(Runnable)} task when the given
+         * future is cancelled.
+         */
+        private void cancelWith(CompletableFuture<Component> future,
+                final Future<Void> access) {
+            future.whenComplete(new BiConsumer<Component, Throwable>() {
+
+                @Override
+                public void accept(Component root, Throwable e) {
+                    if (root == null) {
+                        access.cancel(false);
+                    }
+                }
+            });
+        }
+
+        /**
+         * Completes an asynchronous build in {@link UI#access(Runnable)}. The
+         * {@link UI} reports the failures of the access, for example a
+         * detached {@link UI}, to {@link #handleError(Exception)}.
+         */
+        private class BindCommand implements ErrorHandlingRunnable {
+
+            private static final long serialVersionUID = 1L;
+
+            private final CompletableFuture<Component> future;
+            private final InflationResult result;
+
+            BindCommand(CompletableFuture<Component> future,
+                    InflationResult result) {
+                this.future = future;
+                this.result = result;
+            }
+
+            @Override
+            public void run() {
+                if (future.isDone()) {
+                    return;
+                }
+                try {
+                    future.complete(bind(null, result));
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void handleError(Exception exception) {
+                future.completeExceptionally(exception);
+            }
+        }
+
+        private LayoutFactory<Object> getLayoutFactory() {
+            if (customized || xml != null || xmlClassResourceFileName == null
+                    || controller == null
+                    || templateCache instanceof ReloadingLayoutTemplateCache) {
+                return null;
+            }
+            Class<?> controllerClass = controller.getClass();
+            LayoutFactory<Object> factory = LayoutFactories
+                    .get(controllerClass);
+            if (factory != null
+                    && factory.getLayoutName().equals(
+                            LayoutTemplateCache.resolveName(controllerClass,
+                                    xmlClassResourceFileName))) {
+                return factory;
+            }
+            return null;
+        }
+
+        private LayoutTemplate getTemplate() {
+            if (controller == null) {
+                throw new LayoutInflaterException(
+                        "A controller is required to resolve the layout "
+                                + xmlClassResourceFileName + ".");
+            }
+            Class<?> controllerClass = controller.getClass();
+            if (templateCache != null) {
+                return templateCache.get(controllerClass,
+                        xmlClassResourceFileName);
+            }
+            String binaryName = BinaryLayoutFormat
+                    .getResourceName(xmlClassResourceFileName);
+            InputStream binary = null;
+            if (!BinaryLayoutFormat.isStale(
+                    controllerClass.getResource(binaryName),
+                    controllerClass.getResource(xmlClassResourceFileName))) {
+                binary = controllerClass.getResourceAsStream(binaryName);
+            }
+            LayoutTemplate template;
+            if (binary != null) {
+                template = BinaryLayoutFormat.read(binary,
+                        xmlClassResourceFileName);
+            } else {
+                InputStream stream = controllerClass
+                        .getResourceAsStream(xmlClassResourceFileName);
+                if (stream == null) {
+                    throw new LayoutInflaterException("Layout resource "
+                            + xmlClassResourceFileName + " not found.");
+                }
+                template = new LayoutTemplateParser().parse(stream,
+                        xmlClassResourceFileName);
+            }
+            // Included layouts aren't cached either.
+            return new LayoutTemplateCache(1).resolveIncludes(
+                    controllerClass.getClassLoader(), LayoutTemplateCache
+                            .resolveName(controllerClass,
+                                    xmlClassResourceFileName), template);
+        }
     }
 
 }
@@ -0,0 +1,371 @@
+package org.vaadin.teemu.clara;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import com.vaadin.shared.Registration;
+import com.vaadin.ui.Component;
+import com.vaadin.ui.HasComponents;
+import com.vaadin.ui.HasComponents.ComponentAttachDetachNotifier;
+import com.vaadin.ui.HasComponents.ComponentAttachEvent;
+import com.vaadin.ui.HasComponents.ComponentAttachListener;
+import com.vaadin.ui.HasComponents.ComponentDetachEvent;
+import com.vaadin.ui.HasComponents.ComponentDetachListener;
+
+/**
+ * Index of the components of a component tree by id, type and style name.
+ * The index is built on the first access with {@link #of(Component)} and
+ * kept up to date with {@link ComponentAttachListener}s and
+ * {@link ComponentDetachListener}s of the containers in the tree, so later
+ * lookups don't walk the tree.
+ *
+ * <br />
+ * <br />
+ * Components are indexed by the id and style names they have when they are
+ * added to the tree, call {@link #refresh()} after changing them. Lookups by
+ * id always check the id of the indexed component and walk the tree if it
+ * isn't found, so {@link #getById(String)} returns the same components as
+ * {@link Clara#findComponentById(Component, String)}. Containers that don't
+ * implement {@link ComponentAttachDetachNotifier} (like
+ * {@link com.vaadin.ui.CustomComponent}) can't be tracked, their subtrees are
+ * indexed as they were when the index was built or refreshed.
+ *
+ * <br />
+ * <br />
+ * Like the components, the index must only be accessed while holding the
+ * session lock.
+ */
+public class ComponentIndex implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // Indexes by their root. The listeners registered to the tree keep the
+    // index alive as long as the tree is.
+    private static final Map<Component, WeakReference<ComponentIndex>> indexes = Collections
+            .synchronizedMap(new WeakHashMap<Component, WeakReference<ComponentIndex>>());
+
+    private final Component root;
+    private final Listener listener = new Listener();
+    private final Map<String, Component> byId = new HashMap<String, Component>();
+    private final Map<Class<?>, Set<Component>> byType = new HashMap<Class<?>, Set<Component>>();
+    private final Map<String, Set<Component>> byStyleName = new HashMap<String, Set<Component>>();
+    // Id and style names each component was indexed with.
+    private final Map<Component, Keys> indexed = new IdentityHashMap<Component, Keys>();
+    private final Map<HasComponents, Registration[]> registrations = new IdentityHashMap<HasComponents, Registration[]>();
+    // Number of indexed containers whose changes aren't tracked.
+    private int untrackedContainers;
+
+    private ComponentIndex(Component root) {
+        this.root = root;
+        add(root);
+    }
+
+    /**
+     * Returns the index of the component tree under the given {@code root},
+     * building it if the tree hasn't been indexed yet.
+     *
+     * @param root
+     *            root of a component tree (non-{@code null}).
+     * @throws IllegalArgumentException
+     *             if the given root is {@code null}.
+     */
+    public static ComponentIndex of(Component root) {
+        if (root == null) {
+            throw new IllegalArgumentException(
+                    "Root component must not be null.");
+        }
+        synchronized (indexes) {
+            WeakReference<ComponentIndex> reference = indexes.get(root);
+            ComponentIndex index = reference != null ? reference.get() : null;
+            if (index == null) {
+                index = new ComponentIndex(root);
+                indexes.put(root, new WeakReference<ComponentIndex>(index));
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Returns the root of the indexed component tree.
+     */
+    public Component getRoot() {
+        return root;
+    }
+
+    /**
+     * Returns the component with the given id or {@code null} if the tree
+     * contains no such component.
+     *
+     * @param componentId
+     *            {@code id} of a component (non-{@code null}).
+     * @see Component#setId(String)
+     */
+    public Component getById(String componentId) {
+        if (componentId == null) {
+            throw new IllegalArgumentException("Component id must not be null.");
+        }
+        Component component = byId.get(componentId);
+        if (component != null && componentId.equals(component.getId())
+                && (untrackedContainers == 0 || isInTree(component))) {
+            return component;
+        }
+        component = Clara.findComponentById(root, componentId);
+        if (component != null) {
+            byId.put(componentId, component);
+        }
+        return component;
+    }
+
+    /**
+     * Returns the components of the given type, including subclasses, in the
+     * order they were indexed.
+     *
+     * @param type
+     *            a component class or interface.
+     */
+    public <T extends Component> List<T> getByType(Class<T> type) {
+        List<T> components = new ArrayList<T>();
+        Set<Component> exact = byType.get(type);
+        if (exact != null) {
+            for (Component component : exact) {
+                components.add(type.cast(component));
+            }
+        }
+        for (Map.Entry<Class<?>, Set<Component>> entry : byType.entrySet()) {
+            if (entry.getKey() != type
+                    && type.isAssignableFrom(entry.getKey())) {
+                for (Component component : entry.getValue()) {
+                    components.add(type.cast(component));
+                }
+            }
+        }
+        return components;
+    }
+
+    /**
+     * Returns the classes of the indexed components.
+     */
+    Set<Class<?>> getTypes() {
+        return byType.keySet();
+    }
+
+    /**
+     * Returns the components of exactly the given class.
+     */
+    Set<Component> getByExactType(Class<?> type) {
+        Set<Component> components = byType.get(type);
+        return components != null ? components : Collections
+                .<Component> emptySet();
+    }
+
+    /**
+     * Returns {@code true} if all containers in the tree are tracked, so the
+     * components by type are up to date.
+     */
+    boolean isTracked() {
+        return untrackedContainers == 0;
+    }
+
+    /**
+     * Returns the components with the given style name in the order they
+     * were indexed.
+     *
+     * @param styleName
+     *            a single style name.
+     * @see Component#addStyleName(String)
+     */
+    public List<Component> getByStyleName(String styleName) {
+        Set<Component> components = byStyleName.get(styleName);
+        if (components == null) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<Component>(components);
+    }
+
+    /**
+     * Indexes the whole tree again, picking up changed ids and style names
+     * and changes in containers that aren't tracked.
+     */
+    public void refresh() {
+        for (Registration[] registration : registrations.values()) {
+            registration[0].remove();
+            registration[1].remove();
+        }
+        registrations.clear();
+        byId.clear();
+        byType.clear();
+        byStyleName.clear();
+        indexed.clear();
+        untrackedContainers = 0;
+        add(root);
+    }
+
+    private boolean isInTree(Component component) {
+        for (Component c = component; c != null; c = c.getParent()) {
+            if (c == root) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Indexes the given component and its descendants.
+     */
+    private void add(Component component) {
+        Deque<Component> stack = new ArrayDeque<Component>();
+        stack.push(component);
+        while (!stack.isEmpty()) {
+            Component c = stack.pop();
+            if (indexed.containsKey(c)) {
+                continue;
+            }
+            Keys keys = new Keys(c);
+            indexed.put(c, keys);
+            if (keys.id != null && !byId.containsKey(keys.id)) {
+                byId.put(keys.id, c);
+            }
+            addTo(byType, c.getClass(), c);
+            for (String styleName : keys.styleNames) {
+                addTo(byStyleName, styleName, c);
+            }
+            if (c instanceof HasComponents) {
+                track((HasComponents) c);
+                pushChildren(stack, (HasComponents) c);
+            }
+        }
+    }
+
+    /**
+     * Removes the given component and its descendants from the index.
+     */
+    private void remove(Component component) {
+        Deque<Component> stack = new ArrayDeque<Component>();
+        stack.push(component);
+        while (!stack.isEmpty()) {
+            Component c = stack.pop();
+            Keys keys = indexed.remove(c);
+            if (keys == null) {
+                continue;
+            }
+            if (keys.id != null && byId.get(keys.id) == c) {
+                byId.remove(keys.id);
+            }
+            removeFrom(byType, c.getClass(), c);
+            for (String styleName : keys.styleNames) {
+                removeFrom(byStyleName, styleName, c);
+            }
+            if (c instanceof HasComponents) {
+                untrack((HasComponents) c);
+                pushChildren(stack, (HasComponents) c);
+            }
+        }
+    }
+
+    private void track(HasComponents container) {
+        if (container instanceof ComponentAttachDetachNotifier) {
+            ComponentAttachDetachNotifier notifier = (ComponentAttachDetachNotifier) container;
+            registrations.put(container, new Registration[] {
+                    notifier.addComponentAttachListener(listener),
+                    notifier.addComponentDetachListener(listener) });
+        } else {
+            untrackedContainers++;
+        }
+    }
+
+    private void untrack(HasComponents container) {
+        Registration[] registration = registrations.remove(container);
+        if (registration != null) {
+            registration[0].remove();
+            registration[1].remove();
+        } else {
+            untrackedContainers--;
+        }
+    }
+
+    private static <K> void addTo(Map<K, Set<Component>> map, K key,
+            Component component) {
+        Set<Component> components = map.get(key);
+        if (components == null) {
+            components = new LinkedHashSet<Component>();
+            map.put(key, components);
+        }
+        components.add(component);
+    }
+
+    private static <K> void removeFrom(Map<K, Set<Component>> map, K key,
+            Component component) {
+        Set<Component> components = map.get(key);
+        if (components != null && components.remove(component)
+                && components.isEmpty()) {
+            map.remove(key);
+        }
+    }
+
+    /**
+     * Pushes the children of the given container to the given stack so that
+     * they are popped in iteration order.
+     */
+    static void pushChildren(Deque<Component> stack, HasComponents container) {
+        List<Component> children = new ArrayList<Component>();
+        for (Component child : container) {
+            children.add(child);
+        }
+        for (int i = children.size() - 1; i >= 0; i--) {
+            stack.push(children.get(i));
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException,
+            ClassNotFoundException {
+        in.defaultReadObject();
+        indexes.put(root, new WeakReference<ComponentIndex>(this));
+    }
+
+    /**
+     * Id and style names of an indexed component.
+     */
+    private static class Keys implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        final String id;
+        final String[] styleNames;
+
+        Keys(Component component) {
+            id = component.getId();
+            String styleName = component.getStyleName();
+            styleNames = styleName == null || styleName.trim().length() == 0 ? new String[0]
+                    : styleName.trim().split(" +");
+        }
+    }
+
+    private class Listener implements ComponentAttachListener,
+            ComponentDetachListener {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void componentAttachedToContainer(ComponentAttachEvent event) {
+            add(event.getAttachedComponent());
+        }
+
+        @Override
+        public void componentDetachedFromContainer(ComponentDetachEvent event) {
+            remove(event.getDetachedComponent());
+        }
+    }
+}
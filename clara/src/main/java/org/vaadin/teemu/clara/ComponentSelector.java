@@ -0,0 +1,706 @@
+package org.vaadin.teemu.clara;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.vaadin.ui.Component;
+import com.vaadin.ui.HasComponents;
+
+/**
+ * Compiled CSS-like selector matching the components of a component tree.
+ * The supported syntax is:
+ * <ul>
+ * <li>{@code Button} &ndash; components of the class or any superclass or
+ * interface with the given simple name, {@code *} for any component,</li>
+ * <li>{@code #save} &ndash; the component with the given id,</li>
+ * <li>{@code .danger} &ndash; components with the given style name,</li>
+ * <li>{@code [caption]}, {@code [caption=Save]}, {@code [caption^="Sa"]},
+ * {@code [caption$=ve]}, {@code [caption*=av]} and {@code [styleName~=danger]}
+ * &ndash; components whose property (read with its {@code get} or
+ * {@code is} method) is not {@code null}, equal to, starts with, ends with or
+ * contains the given value, or contains it as a space separated word,</li>
+ * <li>{@code Panel Button} and {@code Panel > Button} &ndash; descendant and
+ * child combinators,</li>
+ * <li>{@code Button, Link} &ndash; components matching any of the
+ * selectors.</li>
+ * </ul>
+ * Selectors are matched from right to left: the candidates for the last part
+ * of a selector are taken from the {@link ComponentIndex} of the root by id
+ * or type where possible, and only their ancestors are checked against the
+ * rest of the selector. Otherwise the tree (or the subtree of a component
+ * selected by id) is walked. Style names and attributes are always checked
+ * on the components themselves, so changing them needs no
+ * {@link ComponentIndex#refresh()}. The root itself is included in the
+ * results if it matches.
+ *
+ * <br />
+ * <br />
+ * Compiled selectors are immutable and cached, so {@link #compile(String)}
+ * parses each selector only once.
+ */
+public final class ComponentSelector {
+
+    private static final int CACHE_SIZE = 256;
+
+    // Access ordered LinkedHashMap gives us the LRU eviction.
+    private static final Map<String, ComponentSelector> cache = Collections
+            .synchronizedMap(new LinkedHashMap<String, ComponentSelector>(16,
+                    0.75f, true) {
+
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<String, ComponentSelector> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            });
+
+    // Simple names of the classes and interfaces of each component class.
+    private static final ClassValue<Set<String>> typeNames = new ClassValue<Set<String>>() {
+
+        @Override
+        protected Set<String> computeValue(Class<?> type) {
+            Set<String> names = new HashSet<String>();
+            Deque<Class<?>> types = new ArrayDeque<Class<?>>();
+            types.push(type);
+            while (!types.isEmpty()) {
+                Class<?> t = types.pop();
+                if (names.add(t.getSimpleName())) {
+                    if (t.getSuperclass() != null) {
+                        types.push(t.getSuperclass());
+                    }
+                    for (Class<?> i : t.getInterfaces()) {
+                        types.push(i);
+                    }
+                }
+            }
+            return Collections.unmodifiableSet(names);
+        }
+    };
+
+    // Marks properties without a getter in the cache.
+    private static final MethodHandle NO_GETTER = MethodHandles.dropArguments(
+            MethodHandles.constant(Object.class, null), 0, Object.class);
+
+    private static final ClassValue<ConcurrentMap<String, MethodHandle>> getters = new ClassValue<ConcurrentMap<String, MethodHandle>>() {
+
+        @Override
+        protected ConcurrentMap<String, MethodHandle> computeValue(
+                Class<?> componentClass) {
+            return new ConcurrentHashMap<String, MethodHandle>();
+        }
+    };
+
+    private final String source;
+    private final List<Complex> alternatives;
+
+    private ComponentSelector(String source, List<Complex> alternatives) {
+        this.source = source;
+        this.alternatives = alternatives;
+    }
+
+    /**
+     * Returns the compiled form of the given selector.
+     *
+     * @param selector
+     *            selector string (non-{@code null}).
+     * @throws IllegalArgumentException
+     *             if the selector is {@code null} or invalid.
+     */
+    public static ComponentSelector compile(String selector) {
+        if (selector == null) {
+            throw new IllegalArgumentException("Selector must not be null.");
+        }
+        ComponentSelector compiled = cache.get(selector);
+        if (compiled == null) {
+            compiled = new ComponentSelector(selector,
+                    new Parser(selector).parse());
+            cache.put(selector, compiled);
+        }
+        return compiled;
+    }
+
+    /**
+     * Returns the components of the tree under the given {@code root}
+     * matching this selector in tree order (depth first).
+     *
+     * @param root
+     *            root of a component tree (non-{@code null}).
+     */
+    public List<Component> select(Component root) {
+        return select(root, false);
+    }
+
+    /**
+     * Returns the first component of the tree under the given {@code root}
+     * matching this selector in tree order, or {@code null} if none match.
+     *
+     * @param root
+     *            root of a component tree (non-{@code null}).
+     */
+    public Component selectFirst(Component root) {
+        List<Component> selected = select(root, true);
+        return selected.isEmpty() ? null : selected.get(0);
+    }
+
+    /**
+     * Returns {@code true} if the given component of the tree under the given
+     * {@code root} matches this selector.
+     */
+    public boolean matches(Component component, Component root) {
+        if (!isInTree(component, root)) {
+            return false;
+        }
+        for (Complex complex : alternatives) {
+            if (complex.matches(component, complex.compounds.length - 1, root)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<Component> select(Component root, boolean first) {
+        if (root == null) {
+            throw new IllegalArgumentException(
+                    "Root component must not be null.");
+        }
+        ComponentIndex index = ComponentIndex.of(root);
+        List<Component> result = new ArrayList<Component>();
+        Set<Component> selected = Collections
+                .newSetFromMap(new IdentityHashMap<Component, Boolean>());
+        boolean scanned = false;
+        for (Complex complex : alternatives) {
+            Collection<Component> candidates = complex.getCandidates(index);
+            if (candidates == null) {
+                scanned = true;
+                candidates = scan(complex.getScope(index), complex, root,
+                        first && alternatives.size() == 1);
+            }
+            for (Component candidate : candidates) {
+                if (!selected.contains(candidate)
+                        && isInTree(candidate, root)
+                        && complex.matches(candidate,
+                                complex.compounds.length - 1, root)) {
+                    selected.add(candidate);
+                    result.add(candidate);
+                }
+            }
+        }
+        if (result.size() > 1 && (!scanned || alternatives.size() > 1)) {
+            Collections.sort(result, new TreeOrder(root));
+        }
+        if (first && result.size() > 1) {
+            return result.subList(0, 1);
+        }
+        return result;
+    }
+
+    /**
+     * Walks the tree under {@code scope} collecting the components matching
+     * the given selector, stopping at the first one if {@code first} is
+     * {@code true}.
+     */
+    private static List<Component> scan(Component scope, Complex complex,
+            Component root, boolean first) {
+        List<Component> matching = new ArrayList<Component>();
+        if (scope == null) {
+            return matching;
+        }
+        Deque<Component> stack = new ArrayDeque<Component>();
+        stack.push(scope);
+        while (!stack.isEmpty()) {
+            Component component = stack.pop();
+            if (complex.matches(component, complex.compounds.length - 1, root)) {
+                matching.add(component);
+                if (first) {
+                    break;
+                }
+            }
+            if (component instanceof HasComponents) {
+                ComponentIndex.pushChildren(stack, (HasComponents) component);
+            }
+        }
+        return matching;
+    }
+
+    private static boolean isInTree(Component component, Component root) {
+        for (Component c = component; c != null; c = c.getParent()) {
+            if (c == root) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+
+    /**
+     * Selector without commas: compounds joined with combinators.
+     */
+    private static class Complex {
+
+        final Compound[] compounds;
+        // Whether the compound at the same index is a child of the previous
+        // compound, otherwise a descendant.
+        final boolean[] child;
+
+        Complex(List<Compound> compounds, List<Boolean> child) {
+            this.compounds = compounds.toArray(new Compound[compounds.size()]);
+            this.child = new boolean[child.size()];
+            for (int i = 0; i < this.child.length; i++) {
+                this.child[i] = child.get(i);
+            }
+        }
+
+        /**
+         * Returns the candidates for the last compound from the index, or
+         * {@code null} if the index can't be used. Ids are checked by the
+         * index itself. Style names aren't taken from the index, as they can
+         * change without notice, and neither are types if the index has
+         * containers whose changes it can't track.
+         */
+        Collection<Component> getCandidates(ComponentIndex index) {
+            Compound last = compounds[compounds.length - 1];
+            if (last.id != null) {
+                Component component = index.getById(last.id);
+                return component != null ? Collections.singletonList(component)
+                        : Collections.<Component> emptyList();
+            }
+            if (last.type == null || !index.isTracked()) {
+                return null;
+            }
+            List<Component> candidates = new ArrayList<Component>();
+            for (Class<?> type : index.getTypes()) {
+                if (typeNames.get(type).contains(last.type)) {
+                    candidates.addAll(index.getByExactType(type));
+                }
+            }
+            return candidates;
+        }
+
+        /**
+         * Returns the component to scan when the index can't be used: the
+         * component with the id of an earlier compound if there is one, as
+         * all matches are its descendants.
+         */
+        Component getScope(ComponentIndex index) {
+            for (int i = compounds.length - 2; i >= 0; i--) {
+                if (compounds[i].id != null) {
+                    return index.getById(compounds[i].id);
+                }
+            }
+            return index.getRoot();
+        }
+
+        /**
+         * Returns {@code true} if the given component matches the compounds
+         * up to the given index, looking at its ancestors up to the root.
+         */
+        boolean matches(Component component, int i, Component root) {
+            if (!compounds[i].matches(component)) {
+                return false;
+            }
+            if (i == 0) {
+                return true;
+            }
+            if (component == root) {
+                return false;
+            }
+            Component parent = component.getParent();
+            if (child[i]) {
+                return parent != null && matches(parent, i - 1, root);
+            }
+            for (Component ancestor = parent; ancestor != null; ancestor = ancestor
+                    .getParent()) {
+                if (matches(ancestor, i - 1, root)) {
+                    return true;
+                }
+                if (ancestor == root) {
+                    break;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Type, id, style names and attribute predicates of a single component.
+     */
+    private static class Compound {
+
+        String type;
+        String id;
+        final List<String> styleNames = new ArrayList<String>();
+        final List<Predicate> predicates = new ArrayList<Predicate>();
+
+        boolean matches(Component component) {
+            if (type != null
+                    && !typeNames.get(component.getClass()).contains(type)) {
+                return false;
+            }
+            if (id != null && !id.equals(component.getId())) {
+                return false;
+            }
+            if (!styleNames.isEmpty()) {
+                String styleName = component.getStyleName();
+                if (styleName == null) {
+                    return false;
+                }
+                for (String name : styleNames) {
+                    if (!containsWord(styleName, name)) {
+                        return false;
+                    }
+                }
+            }
+            for (Predicate predicate : predicates) {
+                if (!predicate.matches(component)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Attribute predicate like {@code [caption^=Save]}.
+     */
+    private static class Predicate {
+
+        final String property;
+        // Null if only the presence is checked.
+        final String operator;
+        final String value;
+
+        Predicate(String property, String operator, String value) {
+            this.property = property;
+            this.operator = operator;
+            this.value = value;
+        }
+
+        boolean matches(Component component) {
+            Object propertyValue = getProperty(component, property);
+            if (propertyValue == null) {
+                return false;
+            }
+            if (operator == null) {
+                return true;
+            }
+            String string = String.valueOf(propertyValue);
+            if (operator.equals("=")) {
+                return string.equals(value);
+            } else if (operator.equals("^=")) {
+                return string.startsWith(value);
+            } else if (operator.equals("$=")) {
+                return string.endsWith(value);
+            } else if (operator.equals("*=")) {
+                return string.contains(value);
+            } else {
+                return containsWord(string, value);
+            }
+        }
+    }
+
+    private static boolean containsWord(String words, String word) {
+        for (String w : words.trim().split(" +")) {
+            if (w.equals(word)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the value of the given property of the component or
+     * {@code null} if it has no such property. Getters are resolved once per
+     * component class.
+     */
+    private static Object getProperty(Component component, String property) {
+        ConcurrentMap<String, MethodHandle> classGetters = getters
+                .get(component.getClass());
+        MethodHandle getter = classGetters.get(property);
+        if (getter == null) {
+            getter = findGetter(component.getClass(), property);
+            classGetters.putIfAbsent(property, getter);
+        }
+        if (getter == NO_GETTER) {
+            return null;
+        }
+        try {
+            return getter.invokeExact((Object) component);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static MethodHandle findGetter(Class<?> componentClass,
+            String property) {
+        String suffix = Character.toUpperCase(property.charAt(0))
+                + property.substring(1);
+        for (String prefix : new String[] { "get", "is" }) {
+            try {
+                Method method = componentClass.getMethod(prefix + suffix);
+                if (method.getReturnType() == void.class
+                        || Modifier.isStatic(method.getModifiers())) {
+                    continue;
+                }
+                return MethodHandles.publicLookup().unreflect(method)
+                        .asType(MethodType.methodType(Object.class,
+                                Object.class));
+            } catch (NoSuchMethodException e) {
+                // Try the next prefix.
+            } catch (IllegalAccessException e) {
+                // Declared in a non-public class.
+            }
+        }
+        return NO_GETTER;
+    }
+
+    /**
+     * Orders the components of a tree depth first.
+     */
+    private static class TreeOrder implements Comparator<Component> {
+
+        private final Component root;
+        private final Map<Component, int[]> paths = new IdentityHashMap<Component, int[]>();
+        private final Map<HasComponents, Map<Component, Integer>> positions = new IdentityHashMap<HasComponents, Map<Component, Integer>>();
+
+        TreeOrder(Component root) {
+            this.root = root;
+        }
+
+        @Override
+        public int compare(Component c1, Component c2) {
+            int[] path1 = getPath(c1);
+            int[] path2 = getPath(c2);
+            for (int i = 0; i < path1.length && i < path2.length; i++) {
+                if (path1[i] != path2[i]) {
+                    return path1[i] < path2[i] ? -1 : 1;
+                }
+            }
+            // Ancestors come before their descendants.
+            return path1.length - path2.length;
+        }
+
+        /**
+         * Returns the positions of the component and its ancestors among
+         * their siblings, starting from the root.
+         */
+        private int[] getPath(Component component) {
+            int[] path = paths.get(component);
+            if (path == null) {
+                List<Integer> reversed = new ArrayList<Integer>();
+                for (Component c = component; c != root; c = c.getParent()) {
+                    reversed.add(getPosition(c.getParent(), c));
+                }
+                path = new int[reversed.size()];
+                for (int i = 0; i < path.length; i++) {
+                    path[i] = reversed.get(path.length - 1 - i);
+                }
+                paths.put(component, path);
+            }
+            return path;
+        }
+
+        private int getPosition(HasComponents parent, Component child) {
+            Map<Component, Integer> childPositions = positions.get(parent);
+            if (childPositions == null) {
+                childPositions = new IdentityHashMap<Component, Integer>();
+                int position = 0;
+                for (Component c : parent) {
+                    childPositions.put(c, position++);
+                }
+                positions.put(parent, childPositions);
+            }
+            Integer position = childPositions.get(child);
+            return position != null ? position : Integer.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Parses a selector string into {@link Complex} selectors.
+     */
+    private static class Parser {
+
+        private final String selector;
+        private int position;
+
+        Parser(String selector) {
+            this.selector = selector;
+        }
+
+        List<Complex> parse() {
+            List<Complex> alternatives = new ArrayList<Complex>();
+            do {
+                alternatives.add(parseComplex());
+            } while (consume(','));
+            if (position < selector.length()) {
+                throw error("Unexpected character '"
+                        + selector.charAt(position) + "'");
+            }
+            return Collections.unmodifiableList(alternatives);
+        }
+
+        private Complex parseComplex() {
+            List<Compound> compounds = new ArrayList<Compound>();
+            List<Boolean> child = new ArrayList<Boolean>();
+            skipWhitespace();
+            compounds.add(parseCompound());
+            child.add(false);
+            while (true) {
+                boolean whitespace = skipWhitespace();
+                if (consume('>')) {
+                    skipWhitespace();
+                    child.add(true);
+                } else if (whitespace && position < selector.length()
+                        && selector.charAt(position) != ',') {
+                    child.add(false);
+                } else {
+                    break;
+                }
+                compounds.add(parseCompound());
+            }
+            return new Complex(compounds, child);
+        }
+
+        private Compound parseCompound() {
+            Compound compound = new Compound();
+            int start = position;
+            if (consume('*')) {
+                // Any type.
+            } else if (position < selector.length()
+                    && Character.isJavaIdentifierStart(selector
+                            .charAt(position))) {
+                compound.type = readName();
+            }
+            while (position < selector.length()) {
+                if (consume('#')) {
+                    if (compound.id != null) {
+                        throw error("More than one id");
+                    }
+                    compound.id = readName();
+                } else if (consume('.')) {
+                    compound.styleNames.add(readName());
+                } else if (consume('[')) {
+                    compound.predicates.add(parsePredicate());
+                } else {
+                    break;
+                }
+            }
+            if (position == start) {
+                throw error("Expected a type, id, style name or attribute");
+            }
+            return compound;
+        }
+
+        private Predicate parsePredicate() {
+            skipWhitespace();
+            String property = readName();
+            skipWhitespace();
+            String operator = null;
+            String value = null;
+            if (!consume(']')) {
+                for (String op : new String[] { "=", "^=", "$=", "*=", "~=" }) {
+                    if (selector.startsWith(op, position)) {
+                        operator = op;
+                        position += op.length();
+                        break;
+                    }
+                }
+                if (operator == null) {
+                    throw error("Expected an attribute operator");
+                }
+                skipWhitespace();
+                value = readValue();
+                skipWhitespace();
+                if (!consume(']')) {
+                    throw error("Expected ']'");
+                }
+            }
+            return new Predicate(property, operator, value);
+        }
+
+        private String readName() {
+            int start = position;
+            while (position < selector.length()) {
+                char c = selector.charAt(position);
+                if (!Character.isLetterOrDigit(c) && c != '-' && c != '_') {
+                    break;
+                }
+                position++;
+            }
+            if (position == start) {
+                throw error("Expected a name");
+            }
+            return selector.substring(start, position);
+        }
+
+        private String readValue() {
+            if (position < selector.length()
+                    && (selector.charAt(position) == '"' || selector
+                            .charAt(position) == '\'')) {
+                char quote = selector.charAt(position++);
+                int end = selector.indexOf(quote, position);
+                if (end < 0) {
+                    throw error("Unterminated string");
+                }
+                String value = selector.substring(position, end);
+                position = end + 1;
+                return value;
+            }
+            int start = position;
+            while (position < selector.length()
+                    && selector.charAt(position) != ']'
+                    && !Character.isWhitespace(selector.charAt(position))) {
+                position++;
+            }
+            return selector.substring(start, position);
+        }
+
+        private boolean skipWhitespace() {
+            int start = position;
+            while (position < selector.length()
+                    && Character.isWhitespace(selector.charAt(position))) {
+                position++;
+            }
+            return position > start;
+        }
+
+        private boolean consume(char c) {
+            if (position < selector.length() && selector.charAt(position) == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position "
+                    + position + " of selector \"" + selector + "\".");
+        }
+    }
+}
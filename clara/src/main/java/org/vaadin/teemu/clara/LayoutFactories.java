@@ -0,0 +1,76 @@
+package org.vaadin.teemu.clara;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Looks up the generated {@link LayoutFactory} of controller classes. The
+ * result of the lookup, including the absence of a factory, is remembered per
+ * controller class.
+ */
+class LayoutFactories {
+
+    // A ClassValue caches null results too, so classes without a factory
+    // are only looked up once.
+    private static final ClassValue<LayoutFactory<Object>> factories = new ClassValue<LayoutFactory<Object>>() {
+
+        @Override
+        protected LayoutFactory<Object> computeValue(Class<?> controllerClass) {
+            return load(controllerClass);
+        }
+    };
+
+    private LayoutFactories() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Returns the generated {@link LayoutFactory} of the given controller
+     * class or {@code null} if the class has none.
+     */
+    static LayoutFactory<Object> get(Class<?> controllerClass) {
+        return factories.get(controllerClass);
+    }
+
+    /**
+     * Returns the name of the factory generated for the given controller
+     * class. The {@code $} of nested class names is kept, so that the
+     * factories of {@code a.Outer$Inner} and {@code a.Outer_Inner} don't
+     * collide.
+     */
+    static String getFactoryClassName(Class<?> controllerClass) {
+        return controllerClass.getName() + LayoutFactory.FACTORY_SUFFIX;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static LayoutFactory<Object> load(Class<?> controllerClass) {
+        if (controllerClass.isAnonymousClass()
+                || controllerClass.isLocalClass()) {
+            return null;
+        }
+        try {
+            Class<?> factoryClass = Class.forName(
+                    getFactoryClassName(controllerClass), true,
+                    controllerClass.getClassLoader());
+            if (!LayoutFactory.class.isAssignableFrom(factoryClass)) {
+                return null;
+            }
+            return (LayoutFactory<Object>) factoryClass.newInstance();
+        } catch (ClassNotFoundException e) {
+            // No generated factory -> inflate at runtime.
+            return null;
+        } catch (InstantiationException e) {
+            getLogger().log(Level.WARNING,
+                    "Couldn't instantiate the layout factory.", e);
+            return null;
+        } catch (IllegalAccessException e) {
+            getLogger().log(Level.WARNING,
+                    "Couldn't instantiate the layout factory.", e);
+            return null;
+        }
+    }
+
+    private static Logger getLogger() {
+        return Logger.getLogger(LayoutFactories.class.getName());
+    }
+}
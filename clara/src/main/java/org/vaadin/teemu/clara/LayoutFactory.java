@@ -0,0 +1,45 @@
+package org.vaadin.teemu.clara;
+
+import org.vaadin.teemu.clara.binder.annotation.UiLayout;
+
+import com.vaadin.ui.Component;
+
+/**
+ * Creates and binds the component hierarchy of a single layout without
+ * reflection. Implementations are generated at compile time by the
+ * {@code clara-processor} annotation processor for controller classes
+ * annotated with {@link UiLayout}. A generated factory is named after its
+ * controller class with a {@value #FACTORY_SUFFIX} suffix, in the same package
+ * (the factory of a nested class {@code Outer.Inner} is
+ * {@code Outer$Inner_ClaraFactory}).
+ *
+ * @param <T>
+ *            type of the controller.
+ */
+public interface LayoutFactory<T> {
+
+    /**
+     * Suffix appended to the controller class name to get the name of the
+     * generated factory.
+     */
+    String FACTORY_SUFFIX = "_ClaraFactory";
+
+    /**
+     * Returns the absolute resource name (without the leading {@code /}) of
+     * the layout XML this factory was generated from.
+     */
+    String getLayoutName();
+
+    /**
+     * Creates the component hierarchy and binds it to the given controller.
+     * {@link org.vaadin.teemu.clara.binder.annotation.UiField} fields that
+     * already have a value are used in the hierarchy instead of new
+     * components.
+     *
+     * @param controller
+     *            controller to bind (non-{@code null}).
+     * @return root of the component hierarchy.
+     */
+    Component create(T controller);
+
+}
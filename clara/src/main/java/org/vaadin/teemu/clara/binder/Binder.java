@@ -4,24 +4,34 @@ import static org.vaadin.teemu.clara.util.ReflectionUtils.findMethods;
 
 import java.io.Externalizable;
 import java.io.IOException;
+import java.io.InvalidObjectException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
-import java.lang.reflect.Field;
+import java.lang.invoke.MethodHandle;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.lang.reflect.Proxy;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.vaadin.teemu.clara.Clara;
+import org.vaadin.teemu.clara.binder.BindingPlan.FieldBinding;
+import org.vaadin.teemu.clara.binder.BindingPlan.MethodBinding;
 import org.vaadin.teemu.clara.binder.annotation.UiDataSource;
 import org.vaadin.teemu.clara.binder.annotation.UiField;
 import org.vaadin.teemu.clara.binder.annotation.UiHandler;
+import org.vaadin.teemu.clara.inflater.InflationResult;
+import org.vaadin.teemu.clara.inflater.LazyComponent;
+import org.vaadin.teemu.clara.inflater.LazyComponent.InflateEvent;
+import org.vaadin.teemu.clara.inflater.LazyComponent.InflateListener;
+import org.vaadin.teemu.clara.inflater.listener.InflationListener;
+import org.vaadin.teemu.clara.jfr.ClaraEvents;
 import org.vaadin.teemu.clara.util.MethodComparator;
 import org.vaadin.teemu.clara.util.ReflectionUtils.ParamCount;
 
@@ -32,10 +42,32 @@ import com.vaadin.ui.Component;
 
 public class Binder {
 
+    // Marks event types without an add listener method in the cache.
+    private static final Object NO_ADD_LISTENER_METHOD = new Object();
+
+    private static final ClassValue<ConcurrentMap<Class<?>, Object>> addListenerMethods = new ClassValue<ConcurrentMap<Class<?>, Object>>() {
+
+        @Override
+        protected ConcurrentMap<Class<?>, Object> computeValue(
+                Class<?> componentClass) {
+            return new ConcurrentHashMap<Class<?>, Object>();
+        }
+    };
+
+    private InflationListener inflationListener;
+
     protected Logger getLogger() {
         return Logger.getLogger(Binder.class.getName());
     }
 
+    /**
+     * Sets the listener notified of each bound member ({@code null} for
+     * none).
+     */
+    public void setInflationListener(InflationListener inflationListener) {
+        this.inflationListener = inflationListener;
+    }
+
     /**
      * Binds fields and methods of the given {@code controller} instance to
      * {@link Component}s found in the given {@code componentRoot} component
@@ -53,141 +85,177 @@ public class Binder {
      * @see UiDataSource
      */
     public void bind(Component componentRoot, Object controller) {
+        Map<String, Component> noIndex = Collections.emptyMap();
+        bind(new InflationResult(componentRoot, noIndex), controller);
+    }
+
+    /**
+     * Binds fields and methods of the given {@code controller} instance to
+     * {@link Component}s of the given {@link InflationResult}. Component ids
+     * are resolved with the id index of the result, the component tree is
+     * only searched for ids missing from the index.
+     * 
+     * @param inflationResult
+     * @param controller
+     * 
+     * @throws BinderException
+     *             if an error is encountered during the binding.
+     * 
+     * @see #bind(Component, Object)
+     */
+    public void bind(InflationResult inflationResult, Object controller) {
         if (controller == null) {
             return;
         }
 
-        bindFields(componentRoot, controller, controller.getClass());
-        bindMethods(componentRoot, controller);
+        bind(inflationResult, controller, false);
+        bindLazyComponents(inflationResult, controller);
     }
 
     /**
-     * Returns a {@link Map} from {@link String} id to {@link Component} of all
-     * controller fields decorated with the {@link UiField} annotation that
-     * already have a {@link Component} reference assigned. If the given
-     * controller is {@code null}, an empty {@link Map} is returned.
+     * Binds only the members of the given {@code controller} that are bound
+     * to components in the id index of the given {@link InflationResult}, for
+     * example to the components created by
+     * {@link org.vaadin.teemu.clara.inflater.LayoutInflater#update
+     * LayoutInflater.update}. The fields are reassigned even if they
+     * already have a value, other members are left as they are.
      * 
+     * @param inflationResult
      * @param controller
      * 
-     * @see UiField
+     * @throws BinderException
+     *             if an error is encountered during the binding.
      */
-    public Map<String, Component> getAlreadyAssignedFields(Object controller) {
+    public void bindIndexed(InflationResult inflationResult, Object controller) {
         if (controller == null) {
-            return Collections.emptyMap();
+            return;
         }
 
-        Map<String, Component> assignedFields = new HashMap<String, Component>();
-        Field[] fields = controller.getClass().getDeclaredFields();
-        for (Field field : fields) {
-            if (field.isAnnotationPresent(UiField.class)) {
-                try {
-                    field.setAccessible(true);
-                    Object value = field.get(controller);
-                    if (value instanceof Component) {
-                        assignedFields.put(extractComponentId(field),
-                                (Component) value);
-                    }
-                } catch (IllegalAccessException e) {
-                    getLogger()
-                            .log(Level.WARNING,
-                                    "Exception while accessing controller object fields.",
-                                    e);
-                }
-            }
-        }
-        return assignedFields;
+        bind(inflationResult, controller, true);
+        bindLazyComponents(inflationResult, controller);
     }
 
-    private void bindFields(Component componentRoot, Object controller,
-            Class<?> clazz) {
-        Field[] fields = clazz.getDeclaredFields();
-        for (Field field : fields) {
-            if (field.isAnnotationPresent(UiField.class)) {
-                bindField(componentRoot, controller, field);
+    /**
+     * Binds the members bound to lazy elements once they are inflated.
+     */
+    private void bindLazyComponents(InflationResult inflationResult,
+            Object controller) {
+        for (LazyComponent lazyComponent : inflationResult.getLazyComponents()) {
+            if (!lazyComponent.isInflated()) {
+                lazyComponent.addInflateListener(new LazyBinding(controller,
+                        inflationListener));
             }
         }
-        Class<?> superclass = clazz.getSuperclass();
-        if (superclass != null) {
-            bindFields(componentRoot, controller, superclass);
-        }
     }
 
-    private void bindMethods(Component componentRoot, Object controller) {
-        Method[] methods = controller.getClass().getMethods();
-        for (Method method : methods) {
-            if (method.isAnnotationPresent(UiDataSource.class)) {
-                bindDataSource(componentRoot, controller, method);
+    /**
+     * Binds the members of the controller. If {@code partial} is
+     * {@code true}, only members with an id in the index of the
+     * {@link InflationResult} are bound and the fields are reassigned.
+     */
+    private void bind(InflationResult inflationResult, Object controller,
+            boolean partial) {
+        InflationListener listener = inflationListener;
+        Object event = ClaraEvents.get().beginBinding();
+        int fieldCount = 0;
+        int handlerCount = 0;
+        BindingPlan plan = BindingPlan.of(controller.getClass());
+        for (FieldBinding field : plan.getFieldBindings()) {
+            Component component = findComponent(inflationResult,
+                    field.getComponentId(), partial);
+            if (component != null) {
+                long start = listener != null ? System.nanoTime() : 0;
+                bindField(component, controller, field, partial);
+                fieldCount++;
+                if (listener != null) {
+                    listener.memberBound(controller, field.getComponentId(),
+                            field.getField(), start, System.nanoTime());
+                }
             }
-
-            if (method.isAnnotationPresent(UiHandler.class)) {
-                bindEventHandler(componentRoot, controller, method);
+        }
+        for (MethodBinding method : plan.getMethodBindings()) {
+            Component component = findComponent(inflationResult,
+                    method.getComponentId(), partial);
+            if (component == null) {
+                continue;
+            }
+            long start = listener != null ? System.nanoTime() : 0;
+            if (method.isHandler()) {
+                bindEventHandler(component, controller, method);
+                handlerCount++;
+            } else {
+                bindDataSource(component, controller, method.getMethod());
+            }
+            if (listener != null) {
+                listener.memberBound(controller, method.getComponentId(),
+                        method.getMethod(), start, System.nanoTime());
             }
         }
+        ClaraEvents.get().endBinding(event, controller.getClass(),
+                fieldCount, handlerCount);
     }
 
-    private void bindField(Component componentRoot, Object controller,
-            Field field) {
-        String componentId = extractComponentId(field);
-        Component component = tryToFindComponentById(componentRoot, componentId);
+    /**
+     * Returns a {@link Map} from {@link String} id to {@link Component} of all
+     * controller fields decorated with the {@link UiField} annotation that
+     * already have a {@link Component} reference assigned. If the given
+     * controller is {@code null}, an empty {@link Map} is returned.
+     * 
+     * @param controller
+     * 
+     * @see UiField
+     */
+    public Map<String, Component> getAlreadyAssignedFields(Object controller) {
+        if (controller == null) {
+            return Collections.emptyMap();
+        }
 
-        try {
-            field.setAccessible(true);
-            if (field.get(controller) == null) {
-                field.set(controller, component);
+        Map<String, Component> assignedFields = new HashMap<String, Component>();
+        for (FieldBinding field : BindingPlan.of(controller.getClass())
+                .getFieldBindings()) {
+            Object value = field.get(controller);
+            if (value instanceof Component) {
+                assignedFields.put(field.getComponentId(), (Component) value);
             }
-        } catch (IllegalArgumentException e) {
-            throw new BinderException(e);
-        } catch (IllegalAccessException e) {
-            throw new BinderException(e);
         }
+        return assignedFields;
     }
 
     /**
-     * Returns id of the {@link Component} that the given {@link Field} should
-     * be bound to. Assumes that the given {@code field} has {@link UiField}
-     * annotation. This should be checked before calling this method.
-     * 
-     * @return id of the component to bind the field.
+     * Assigns the component to the field unless the field already has a
+     * value. In a partial binding the field is always assigned, as the
+     * indexed components replace any components of the same id.
      */
-    private String extractComponentId(Field field) {
-        // Try the id from UiField annotation.
-        UiField annotation = field.getAnnotation(UiField.class);
-        String componentId = annotation.value();
-
-        if (componentId.length() == 0) {
-            // Default to the field name instead of annotated id.
-            componentId = field.getName();
+    private void bindField(Component component, Object controller,
+            FieldBinding field, boolean partial) {
+        if (partial || field.get(controller) == null) {
+            field.set(controller, component);
         }
-        return componentId;
     }
 
     /**
-     * Expects that the given {@link Method} is annotated with {@link UiHandler}
-     * annotation.
+     * Binds a {@link UiHandler} annotated method of the controller.
      * 
-     * @param componentRoot
+     * @param component
      * @param controller
-     * @param method
+     * @param binding
      */
-    private void bindEventHandler(Component componentRoot, Object controller,
-            Method method) {
-        String componentId = method.getAnnotation(UiHandler.class).value();
-        Component component = tryToFindComponentById(componentRoot, componentId);
-
-        Class<?> eventType = (method.getParameterTypes().length > 0 ? method
-                .getParameterTypes()[0] : null);
+    private void bindEventHandler(Component component, Object controller,
+            MethodBinding binding) {
+        Method method = binding.getMethod();
+        Class<?> eventType = binding.getEventType();
         if (eventType == null) {
             throw new BinderException(
                     "Couldn't figure out event type for method " + method + ".");
         }
 
-        Method addListenerMethod = getAddListenerMethod(component.getClass(),
-                eventType);
+        Method addListenerMethod = getCachedAddListenerMethod(
+                component.getClass(), eventType);
         if (addListenerMethod != null) {
             try {
-                Object listener = createListenerProxy(
+                Object listener = ListenerFactory.create(
                         addListenerMethod.getParameterTypes()[0], eventType,
-                        method, controller);
+                        method, controller, binding.getComponentId());
                 addListenerMethod.invoke(component, listener);
             } catch (IllegalAccessException e) {
                 throw new BinderException(e);
@@ -197,68 +265,132 @@ public class Binder {
         }
     }
 
-    private Object createListenerProxy(Class<?> listenerClass,
-            final Class<?> eventClass, final Method listenerMethod,
-            final Object controller) {
-        Object proxy = Proxy.newProxyInstance(listenerClass.getClassLoader(),
-                new Class<?>[]{listenerClass},
-                new ListenerInvocationHandler(listenerMethod, eventClass, controller));
-        getLogger().fine(
-                String.format("Created a proxy for %s.", listenerClass));
-        return proxy;
-    }
+    /**
+     * {@link InvocationHandler} of the listener proxies created by
+     * {@link ListenerFactory}. The handler method is called through the
+     * {@link MethodHandle} cached in the {@link BindingPlan} of the
+     * controller class.
+     *
+     * <br />
+     * <br />
+     * {@link UiHandler} methods are serialized as their index in the
+     * {@link BindingPlan} of the controller class with a hash of their
+     * signature, and resolved from the cached plan when read. Other methods
+     * are written with their declaring class, name and parameter types.
+     */
+    static class ListenerInvocationHandler implements InvocationHandler, Externalizable {
 
-    private static class ListenerInvocationHandler implements InvocationHandler, Externalizable {
+        private static final Logger logger = Logger
+                .getLogger(ListenerInvocationHandler.class.getName());
 
         private Method listenerMethod;
         private Class<?> eventClass;
         private Object controller;
+        // Reported in the handler dispatch events, not serialized.
+        private transient String componentId;
+        // Takes the controller and the event and returns the result, null if
+        // the handler method isn't accessible.
+        private transient MethodHandle listenerInvoker;
 
         public ListenerInvocationHandler(Method listenerMethod, Class<?> eventClass, Object controller) {
+            this(listenerMethod, eventClass, controller, null);
+        }
+
+        ListenerInvocationHandler(Method listenerMethod, Class<?> eventClass,
+                Object controller, String componentId) {
             this.listenerMethod = listenerMethod;
             this.eventClass = eventClass;
             this.controller = controller;
+            this.componentId = componentId;
+            bindListenerMethod();
         }
 
         public ListenerInvocationHandler() {
         }
 
+        private void bindListenerMethod() {
+            int index = getHandlerIndex();
+            listenerInvoker = index >= 0 ? BindingPlan.of(
+                    controller.getClass()).getHandlerInvoker(index)
+                    : BindingPlan.createInvoker(listenerMethod);
+        }
+
         @Override
         public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
             if (args != null
                     && args.length > 0
-                    && eventClass.isAssignableFrom(args[0]
-                            .getClass())) {
-                getLogger().fine(
-                        String.format(
-                                "Forwarding method call %s -> %s.",
-                                method.getName(),
-                                listenerMethod.getName()));
-                return listenerMethod.invoke(controller, args);
+                    && eventClass.isInstance(args[0])) {
+                if (logger.isLoggable(Level.FINE)) {
+                    logger.fine(String.format(
+                            "Forwarding method call %s -> %s.",
+                            method.getName(), listenerMethod.getName()));
+                }
+                Object event = ClaraEvents.get().beginHandlerDispatch();
+                try {
+                    if (listenerInvoker != null && args.length == 1) {
+                        return listenerInvoker.invokeExact(controller, args[0]);
+                    }
+                    return listenerMethod.invoke(controller, args);
+                } finally {
+                    ClaraEvents.get().endHandlerDispatch(event, componentId,
+                            args[0].getClass(), listenerMethod);
+                }
+            }
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine(String.format("Forwarding method call %s to %s.",
+                        method.getName(), controller.getClass()));
             }
-            getLogger()
-                    .fine(String.format(
-                                    "Forwarding method call %s to %s.",
-                                    method.getName(), controller.getClass()));
             return method.invoke(controller, args);
         }
 
-        private Logger getLogger() {
-            return Logger.getLogger(ListenerInvocationHandler.class.getName());
-        }
-
         @Override
         public void writeExternal(ObjectOutput out) throws IOException {
             out.writeObject(controller);
+            int index = getHandlerIndex();
+            out.writeInt(index);
+            if (index >= 0) {
+                out.writeInt(BindingPlan.of(controller.getClass())
+                        .getHandlerSignature(index));
+                return;
+            }
             out.writeObject(eventClass);
             out.writeObject(listenerMethod.getParameterTypes());
             out.writeObject(listenerMethod.getName());
             out.writeObject(listenerMethod.getDeclaringClass());
         }
 
+        /**
+         * Returns the index of the listener method in the binding plan of the
+         * controller, or {@code -1} if the method isn't a handler of the
+         * controller for the event class.
+         */
+        private int getHandlerIndex() {
+            Class<?>[] parameterTypes = listenerMethod.getParameterTypes();
+            if (controller == null || parameterTypes.length == 0
+                    || parameterTypes[0] != eventClass) {
+                return -1;
+            }
+            return BindingPlan.of(controller.getClass()).getHandlerIndex(
+                    listenerMethod);
+        }
+
         @Override
         public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
             controller = in.readObject();
+            int index = in.readInt();
+            if (index >= 0) {
+                int signature = in.readInt();
+                listenerMethod = BindingPlan.of(controller.getClass())
+                        .getHandler(index, signature);
+                if (listenerMethod == null) {
+                    throw new InvalidObjectException("Handler " + index
+                            + " of " + controller.getClass().getName()
+                            + " has changed.");
+                }
+                eventClass = listenerMethod.getParameterTypes()[0];
+                bindListenerMethod();
+                return;
+            }
             eventClass = (Class<?>) in.readObject();
             Class<?>[] parameterTypes = (Class<?>[]) in.readObject();
             String methodName = (String) in.readObject();
@@ -269,10 +401,30 @@ public class Binder {
                 throw new RuntimeException("Can't deserialize listener method " +
                         declaringClass.getCanonicalName()+":"+methodName, ex);
             }
+            bindListenerMethod();
         }
 
     }
 
+    /**
+     * Returns the add listener method of the given component class for the
+     * given event type. Resolved methods are cached per component class.
+     */
+    private Method getCachedAddListenerMethod(
+            Class<? extends Component> componentClass, Class<?> eventClass) {
+        ConcurrentMap<Class<?>, Object> methods = addListenerMethods
+                .get(componentClass);
+        Object method = methods.get(eventClass);
+        if (method == null) {
+            method = getAddListenerMethod(componentClass, eventClass);
+            if (method == null) {
+                method = NO_ADD_LISTENER_METHOD;
+            }
+            methods.putIfAbsent(eventClass, method);
+        }
+        return method != NO_ADD_LISTENER_METHOD ? (Method) method : null;
+    }
+
     private Method getAddListenerMethod(
             Class<? extends Component> componentClass, Class<?> eventClass) {
         List<Method> addListenerCandidates = findMethods(componentClass,
@@ -298,14 +450,12 @@ public class Binder {
      * Expects that the given {@link Method} is annotated with
      * {@link UiDataSource} annotation.
      * 
-     * @param componentRoot
+     * @param component
      * @param controller
      * @param method
      */
-    private void bindDataSource(Component componentRoot, Object controller,
+    private void bindDataSource(Component component, Object controller,
             Method method) {
-        String componentId = method.getAnnotation(UiDataSource.class).value();
-        Component component = tryToFindComponentById(componentRoot, componentId);
         Class<?> dataSourceClass = method.getReturnType();
 
         try {
@@ -333,14 +483,50 @@ public class Binder {
         }
     }
 
-    private Component tryToFindComponentById(Component root, String id) {
-        Component component = Clara.findComponentById(root, id);
+    /**
+     * Returns the component with the given id or {@code null} if the member
+     * bound to it should be skipped.
+     */
+    private Component findComponent(InflationResult inflationResult,
+            String id, boolean partial) {
+        Component component = inflationResult.getComponentById(id);
+        if (component != null || partial
+                || inflationResult.isDeferred(id)) {
+            return component;
+        }
+        // Not assigned in the layout XML, the component may still have been
+        // added to the tree programmatically.
+        component = Clara.findComponentById(inflationResult.getRoot(), id);
         if (component == null) {
             throw new BinderException("No component found for id: " + id + ".");
         }
         return component;
     }
 
+    /**
+     * Binds the controller to the components of a lazy element once it has
+     * been inflated.
+     */
+    private static class LazyBinding implements InflateListener {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Object controller;
+        private final transient InflationListener inflationListener;
+
+        LazyBinding(Object controller, InflationListener inflationListener) {
+            this.controller = controller;
+            this.inflationListener = inflationListener;
+        }
+
+        @Override
+        public void componentInflated(InflateEvent event) {
+            Binder binder = new Binder();
+            binder.setInflationListener(inflationListener);
+            binder.bindIndexed(event.getInflationResult(), controller);
+        }
+    }
+
     private boolean isContainer(Class<?> dataSourceClass) {
         return Container.class.isAssignableFrom(dataSourceClass);
     }
@@ -0,0 +1,349 @@
+package org.vaadin.teemu.clara.binder;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.vaadin.teemu.clara.binder.annotation.UiDataSource;
+import org.vaadin.teemu.clara.binder.annotation.UiField;
+import org.vaadin.teemu.clara.binder.annotation.UiHandler;
+
+/**
+ * Immutable description of how instances of a single controller class are
+ * bound: the {@link UiField} fields with their accessors and the
+ * {@link UiDataSource} and {@link UiHandler} methods, each with the id of the
+ * component it is bound to. Plans are computed once per controller class and
+ * cached in a {@link ClassValue}.
+ */
+final class BindingPlan {
+
+    private static final ClassValue<BindingPlan> plans = new ClassValue<BindingPlan>() {
+
+        @Override
+        protected BindingPlan computeValue(Class<?> controllerClass) {
+            return new BindingPlan(controllerClass);
+        }
+    };
+
+    private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+    private static final MethodType GETTER_TYPE = MethodType.methodType(
+            Object.class, Object.class);
+    private static final MethodType SETTER_TYPE = MethodType.methodType(
+            void.class, Object.class, Object.class);
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(
+            Object.class, Object.class, Object.class);
+
+    private final List<FieldBinding> fieldBindings;
+    private final List<MethodBinding> methodBindings;
+    private final Set<String> componentIds;
+    // UiHandler methods in signature order, independent of the order of
+    // Class.getMethods() so that the indexes match on all nodes.
+    private final Method[] handlers;
+    private final int[] handlerSignatures;
+    // Take the controller and the event, null if the handler isn't
+    // accessible.
+    private final MethodHandle[] handlerInvokers;
+
+    /**
+     * Returns the {@link BindingPlan} of the given controller class.
+     *
+     * @throws BinderException
+     *             if the plan cannot be created.
+     */
+    static BindingPlan of(Class<?> controllerClass) {
+        return plans.get(controllerClass);
+    }
+
+    private BindingPlan(Class<?> controllerClass) {
+        List<FieldBinding> fields = new ArrayList<FieldBinding>();
+        for (Class<?> clazz = controllerClass; clazz != null; clazz = clazz
+                .getSuperclass()) {
+            for (Field field : clazz.getDeclaredFields()) {
+                if (field.isAnnotationPresent(UiField.class)) {
+                    fields.add(new FieldBinding(field));
+                }
+            }
+        }
+
+        List<MethodBinding> methods = new ArrayList<MethodBinding>();
+        for (Method method : controllerClass.getMethods()) {
+            UiDataSource dataSource = method.getAnnotation(UiDataSource.class);
+            if (dataSource != null) {
+                methods.add(new MethodBinding(dataSource.value(), method,
+                        false));
+            }
+            UiHandler handler = method.getAnnotation(UiHandler.class);
+            if (handler != null) {
+                methods.add(new MethodBinding(handler.value(), method, true));
+            }
+        }
+
+        Set<String> ids = new LinkedHashSet<String>();
+        for (FieldBinding field : fields) {
+            ids.add(field.getComponentId());
+        }
+        for (MethodBinding method : methods) {
+            ids.add(method.getComponentId());
+        }
+
+        List<Method> handlerMethods = new ArrayList<Method>();
+        for (MethodBinding method : methods) {
+            if (method.isHandler()) {
+                handlerMethods.add(method.getMethod());
+            }
+        }
+        Collections.sort(handlerMethods, new Comparator<Method>() {
+
+            @Override
+            public int compare(Method method1, Method method2) {
+                return getSignature(method1).compareTo(getSignature(method2));
+            }
+        });
+        handlers = handlerMethods.toArray(new Method[handlerMethods.size()]);
+        handlerSignatures = new int[handlers.length];
+        handlerInvokers = new MethodHandle[handlers.length];
+        for (int i = 0; i < handlers.length; i++) {
+            handlerSignatures[i] = getSignature(handlers[i]).hashCode();
+            handlerInvokers[i] = createInvoker(handlers[i]);
+        }
+
+        fieldBindings = Collections.unmodifiableList(fields);
+        methodBindings = Collections.unmodifiableList(methods);
+        componentIds = Collections.unmodifiableSet(ids);
+    }
+
+    private static String getSignature(Method method) {
+        StringBuilder signature = new StringBuilder(method.getName())
+                .append('(');
+        for (Class<?> parameterType : method.getParameterTypes()) {
+            signature.append(parameterType.getName()).append(';');
+        }
+        return signature.append(')').append(method.getReturnType().getName())
+                .toString();
+    }
+
+    /**
+     * Returns a {@link MethodHandle} calling the given handler method with
+     * the controller and the event, both as {@link Object}, or {@code null}
+     * if the method doesn't take a single event or isn't accessible.
+     */
+    static MethodHandle createInvoker(Method method) {
+        if (method.getParameterTypes().length != 1) {
+            return null;
+        }
+        try {
+            MethodHandle handle = lookup.unreflect(method);
+            if (Modifier.isStatic(method.getModifiers())) {
+                // Ignore the controller instance.
+                handle = MethodHandles.dropArguments(handle, 0, Object.class);
+            }
+            return handle.asType(INVOKER_TYPE);
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the {@link UiField} fields of the controller class and all its
+     * superclasses, subclass fields first.
+     */
+    List<FieldBinding> getFieldBindings() {
+        return fieldBindings;
+    }
+
+    /**
+     * Returns the {@link UiDataSource} and {@link UiHandler} methods in the
+     * order they should be bound.
+     */
+    List<MethodBinding> getMethodBindings() {
+        return methodBindings;
+    }
+
+    /**
+     * Returns the ids of all components referenced by the controller class.
+     */
+    Set<String> getComponentIds() {
+        return componentIds;
+    }
+
+    /**
+     * Returns the index of the given {@link UiHandler} method among the
+     * handlers of the controller class, or {@code -1} if it isn't a handler
+     * of the class. The index identifies the method in serialized listeners.
+     */
+    int getHandlerIndex(Method method) {
+        for (int i = 0; i < handlers.length; i++) {
+            if (handlers[i].equals(method)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns a hash of the signature of the handler at the given index,
+     * written next to the index to detect a changed controller class.
+     */
+    int getHandlerSignature(int index) {
+        return handlerSignatures[index];
+    }
+
+    /**
+     * Returns the cached invoker of the handler at the given index, see
+     * {@link #createInvoker(Method)}.
+     */
+    MethodHandle getHandlerInvoker(int index) {
+        return handlerInvokers[index];
+    }
+
+    /**
+     * Returns the handler method at the given index if its signature has the
+     * given hash, otherwise {@code null}.
+     */
+    Method getHandler(int index, int signature) {
+        if (index < 0 || index >= handlers.length
+                || handlerSignatures[index] != signature) {
+            return null;
+        }
+        return handlers[index];
+    }
+
+    /**
+     * {@link UiField} annotated field with precompiled accessors.
+     */
+    static final class FieldBinding {
+
+        private final Field field;
+        private final String componentId;
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+
+        private FieldBinding(Field field) {
+            this.field = field;
+
+            String id = field.getAnnotation(UiField.class).value();
+            if (id.length() == 0) {
+                // Default to the field name instead of annotated id.
+                id = field.getName();
+            }
+            componentId = id;
+
+            field.setAccessible(true);
+            try {
+                getter = adapt(lookup.unreflectGetter(field), field,
+                        GETTER_TYPE);
+                setter = Modifier.isFinal(field.getModifiers()) ? null
+                        : adapt(lookup.unreflectSetter(field), field,
+                                SETTER_TYPE);
+            } catch (IllegalAccessException e) {
+                throw new BinderException(e);
+            }
+        }
+
+        private static MethodHandle adapt(MethodHandle handle, Field field,
+                MethodType type) {
+            if (Modifier.isStatic(field.getModifiers())) {
+                // Ignore the controller instance.
+                handle = MethodHandles.dropArguments(handle, 0, Object.class);
+            }
+            return handle.asType(type);
+        }
+
+        Field getField() {
+            return field;
+        }
+
+        String getComponentId() {
+            return componentId;
+        }
+
+        Object get(Object controller) {
+            try {
+                return getter.invokeExact(controller);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new BinderException(t);
+            }
+        }
+
+        void set(Object controller, Object value) {
+            try {
+                if (setter != null) {
+                    setter.invokeExact(controller, value);
+                } else {
+                    // Final fields can only be written through reflection.
+                    field.set(controller, value);
+                }
+            } catch (ClassCastException e) {
+                // Component type doesn't match the field type.
+                throw new BinderException(e);
+            } catch (IllegalArgumentException e) {
+                throw new BinderException(e);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new BinderException(t);
+            }
+        }
+    }
+
+    /**
+     * {@link UiDataSource} or {@link UiHandler} annotated method.
+     */
+    static final class MethodBinding {
+
+        private final String componentId;
+        private final Method method;
+        private final boolean handler;
+        private final Class<?> eventType;
+
+        private MethodBinding(String componentId, Method method,
+                boolean handler) {
+            this.componentId = componentId;
+            this.method = method;
+            this.handler = handler;
+
+            Class<?>[] parameterTypes = method.getParameterTypes();
+            eventType = handler && parameterTypes.length > 0 ? parameterTypes[0]
+                    : null;
+        }
+
+        String getComponentId() {
+            return componentId;
+        }
+
+        Method getMethod() {
+            return method;
+        }
+
+        /**
+         * Returns {@code true} for {@link UiHandler} methods and
+         * {@code false} for {@link UiDataSource} methods.
+         */
+        boolean isHandler() {
+            return handler;
+        }
+
+        /**
+         * Returns the event type of a {@link UiHandler} method or
+         * {@code null} if it cannot be determined.
+         */
+        Class<?> getEventType() {
+            return eventType;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package org.vaadin.teemu.clara.binder;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.vaadin.teemu.clara.binder.annotation.UiHandler;
+
+/**
+ * Creates the listeners that forward events to {@link UiHandler} methods.
+ *
+ * Listeners are {@link Proxy} instances of the listener interface. The proxy
+ * class of each listener interface is created once by the JDK and defined in
+ * the class loader of the interface, so no classes are generated per handler
+ * method. The {@link Binder.ListenerInvocationHandler} calls the handler
+ * through a {@link java.lang.invoke.MethodHandle} cached in the
+ * {@link BindingPlan} of the controller class.
+ *
+ * Listeners are serializable as long as the controller is. {@link UiHandler}
+ * methods are written as their index in the {@link BindingPlan} of the
+ * controller class with a hash of their signature.
+ */
+final class ListenerFactory {
+
+    private ListenerFactory() {
+    }
+
+    /**
+     * Returns a listener implementing the given {@code listenerClass} that
+     * forwards events of the given {@code eventClass} to the given
+     * {@code handlerMethod} of the {@code controller}.
+     */
+    static Object create(Class<?> listenerClass, Class<?> eventClass,
+            Method handlerMethod, Object controller) {
+        return create(listenerClass, eventClass, handlerMethod, controller,
+                null);
+    }
+
+    /**
+     * Returns a listener like
+     * {@link #create(Class, Class, Method, Object)}, the
+     * {@code componentId} is reported in the handler dispatch events.
+     */
+    static Object create(Class<?> listenerClass, Class<?> eventClass,
+            Method handlerMethod, Object controller, String componentId) {
+        return Proxy.newProxyInstance(listenerClass.getClassLoader(),
+                new Class<?>[] { listenerClass },
+                new Binder.ListenerInvocationHandler(handlerMethod,
+                        eventClass, controller, componentId));
+    }
+}
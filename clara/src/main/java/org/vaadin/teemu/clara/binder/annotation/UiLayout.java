@@ -0,0 +1,29 @@
+package org.vaadin.teemu.clara.binder.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Indicates that the annotated controller class is bound to the layout XML
+ * file given as the value of this annotation.
+ * 
+ * When the {@code clara-processor} annotation processor is on the compiler's
+ * processor path, a reflection-free factory is generated for the layout at
+ * compile time and used by
+ * {@link org.vaadin.teemu.clara.Clara#create(String, Object, org.vaadin.teemu.clara.inflater.filter.AttributeFilter...)}
+ * instead of parsing the XML at runtime. {@link UiField} fields of such
+ * controllers must not be {@code private}.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface UiLayout {
+
+    /**
+     * Filename of the layout XML, relative to the annotated class or an
+     * absolute ({@code /}-prefixed) classpath resource name.
+     */
+    String value();
+
+}
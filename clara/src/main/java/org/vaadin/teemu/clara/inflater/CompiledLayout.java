@@ -0,0 +1,283 @@
+package org.vaadin.teemu.clara.inflater;
+
+import java.lang.invoke.MethodHandle;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.vaadin.teemu.clara.inflater.handler.CompiledAttributes;
+import org.vaadin.teemu.clara.inflater.handler.DefaultAttributeHandler;
+import org.vaadin.teemu.clara.inflater.template.ElementTemplate;
+import org.vaadin.teemu.clara.inflater.template.LayoutTemplate;
+
+import com.vaadin.ui.Component;
+import com.vaadin.ui.ComponentContainer;
+import com.vaadin.ui.SingleComponentContainer;
+
+/**
+ * Compiled form of a frequently inflated {@link LayoutTemplate}. Once a
+ * template has been inflated the number of times given by the compile
+ * threshold of the {@link LayoutInflater}, its elements are resolved into a
+ * tree of constructor handles and {@link CompiledAttributes}, so that later
+ * inflations only instantiate the components, invoke the setters and add the
+ * components to their parents.
+ *
+ * <br />
+ * <br />
+ * Compiled layouts are only used by inflaters without attribute filters,
+ * custom attribute handlers, inflation listeners, namespace aliases or
+ * component providers, which makes them independent of the inflater. Lazy
+ * elements and elements with an override component are inflated by the
+ * {@link LayoutInflater}. If a layout cannot be compiled, or a compiled
+ * inflation fails, the template is inflated by the {@link LayoutInflater} from
+ * then on.
+ */
+final class CompiledLayout {
+
+    // Templates are compared by identity and released with their cache.
+    private static final Map<LayoutTemplate, Tier> tiers = Collections
+            .synchronizedMap(new WeakHashMap<LayoutTemplate, Tier>());
+
+    private final String name;
+    private final CompiledElement root;
+
+    private CompiledLayout(String name, CompiledElement root) {
+        this.name = name;
+        this.root = root;
+    }
+
+    /**
+     * Counts an inflation of the given template and returns its compiled form
+     * once the template has been inflated {@code threshold} times, or
+     * {@code null} if it hasn't been compiled (yet).
+     */
+    static CompiledLayout get(LayoutTemplate template, int threshold,
+            LayoutInflater inflater) {
+        Tier tier;
+        synchronized (tiers) {
+            tier = tiers.get(template);
+            if (tier == null) {
+                tier = new Tier();
+                tiers.put(template, tier);
+            }
+        }
+        CompiledLayout compiled = tier.compiled;
+        if (compiled != null || tier.failed) {
+            return compiled;
+        }
+        if (tier.inflations.incrementAndGet() == threshold) {
+            compiled = compile(template, inflater);
+            if (compiled != null) {
+                tier.compiled = compiled;
+            } else {
+                tier.failed = true;
+            }
+        }
+        return compiled;
+    }
+
+    /**
+     * Returns {@code true} if the given template has been compiled.
+     */
+    static boolean isCompiled(LayoutTemplate template) {
+        Tier tier = tiers.get(template);
+        return tier != null && tier.compiled != null;
+    }
+
+    private static CompiledLayout compile(LayoutTemplate template,
+            LayoutInflater inflater) {
+        List<?> handlers = inflater.getAttributeHandlers();
+        DefaultAttributeHandler defaultHandler = (DefaultAttributeHandler) handlers
+                .get(0);
+        DefaultAttributeHandler layoutHandler = (DefaultAttributeHandler) handlers
+                .get(1);
+        try {
+            CompiledElement root = compile(template.getRoot(), null, null,
+                    defaultHandler, layoutHandler);
+            if (root != null) {
+                getLogger().fine("Compiled layout " + template.getName() + ".");
+                return new CompiledLayout(template.getName(), root);
+            }
+        } catch (RuntimeException e) {
+            getLogger().log(Level.FINE,
+                    "Couldn't compile layout " + template.getName() + ".", e);
+        }
+        return null;
+    }
+
+    /**
+     * Compiles the given element attached to a component of the given
+     * {@code parentClass} with the given container class. Returns
+     * {@code null} if the element cannot be compiled.
+     */
+    private static CompiledElement compile(ElementTemplate element,
+            Class<? extends Component> parentClass,
+            Class<? extends Component> containerClass,
+            DefaultAttributeHandler defaultHandler,
+            DefaultAttributeHandler layoutHandler) {
+        if (LazyComponent.isLazy(element)) {
+            return new CompiledElement(element);
+        }
+
+        Map<String, String> layoutAttributes = element
+                .getAttributes(layoutHandler.getNamespace());
+        CompiledAttributes compiledLayoutAttributes = null;
+        if (!layoutAttributes.isEmpty()) {
+            Class<? extends Component> targetClass = parentClass != null
+                    && SingleComponentContainer.class
+                            .isAssignableFrom(parentClass) ? parentClass
+                    : containerClass;
+            if (targetClass == null
+                    || !ComponentContainer.class.isAssignableFrom(targetClass)) {
+                // Reported by the LayoutAttributeHandler.
+                return null;
+            }
+            compiledLayoutAttributes = CompiledAttributes.compile(
+                    layoutHandler, targetClass, layoutAttributes);
+            if (compiledLayoutAttributes == null) {
+                return null;
+            }
+        }
+
+        Class<? extends Component> componentClass;
+        MethodHandle constructor;
+        try {
+            componentClass = ComponentFactory.resolveComponentClass(
+                    element.getPackageName(), element.getClassName());
+            constructor = ComponentFactory.getConstructor(
+                    element.getPackageName(), element.getClassName());
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+        CompiledAttributes attributes = CompiledAttributes.compile(
+                defaultHandler, componentClass,
+                element.getAttributes(defaultHandler.getNamespace()));
+        if (attributes == null) {
+            return null;
+        }
+
+        if (ComponentContainer.class.isAssignableFrom(componentClass)) {
+            containerClass = componentClass;
+        }
+        CompiledElement[] children = new CompiledElement[element
+                .getChildren().size()];
+        for (int i = 0; i < children.length; i++) {
+            children[i] = compile(element.getChildren().get(i),
+                    componentClass, containerClass, defaultHandler,
+                    layoutHandler);
+            if (children[i] == null) {
+                return null;
+            }
+        }
+        return new CompiledElement(element, constructor, attributes,
+                compiledLayoutAttributes, children);
+    }
+
+    /**
+     * Inflates the compiled layout into the given index and list. Returns
+     * {@code null} and stops using the compiled form if the inflation fails,
+     * the index and list are cleared then.
+     */
+    Component inflate(LayoutInflater inflater,
+            Map<String, Component> componentOverrideMap,
+            Map<String, Component> componentsById,
+            List<LazyComponent> lazyComponents, LayoutTemplate template) {
+        try {
+            return root.inflate(inflater, null, null, componentOverrideMap,
+                    componentsById, lazyComponents);
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable e) {
+            Tier tier = tiers.get(template);
+            if (tier != null) {
+                tier.compiled = null;
+                tier.failed = true;
+            }
+            getLogger().log(Level.FINE,
+                    "Compiled layout " + name + " failed.", e);
+        }
+        componentsById.clear();
+        lazyComponents.clear();
+        return null;
+    }
+
+    private static Logger getLogger() {
+        return Logger.getLogger(CompiledLayout.class.getName());
+    }
+
+    /**
+     * Inflation count and compiled form of a template.
+     */
+    private static class Tier {
+
+        final AtomicInteger inflations = new AtomicInteger();
+        volatile CompiledLayout compiled;
+        volatile boolean failed;
+    }
+
+    private static class CompiledElement {
+
+        private final ElementTemplate element;
+        // Null for lazy elements.
+        private final MethodHandle constructor;
+        private final CompiledAttributes attributes;
+        private final CompiledAttributes layoutAttributes;
+        private final CompiledElement[] children;
+
+        CompiledElement(ElementTemplate element) {
+            this(element, null, null, null, null);
+        }
+
+        CompiledElement(ElementTemplate element, MethodHandle constructor,
+                CompiledAttributes attributes,
+                CompiledAttributes layoutAttributes,
+                CompiledElement[] children) {
+            this.element = element;
+            this.constructor = constructor;
+            this.attributes = attributes;
+            this.layoutAttributes = layoutAttributes;
+            this.children = children;
+        }
+
+        Component inflate(LayoutInflater inflater, Component parent,
+                ComponentContainer currentContainer,
+                Map<String, Component> componentOverrideMap,
+                Map<String, Component> componentsById,
+                List<LazyComponent> lazyComponents) throws Throwable {
+            if (constructor == null
+                    || componentOverrideMap.containsKey(element.getId())) {
+                // The override may be of any class.
+                return inflater.inflateElement(element, parent,
+                        currentContainer, componentOverrideMap,
+                        componentsById, lazyComponents);
+            }
+
+            Component component = (Component) constructor.invokeExact();
+            attributes.assign(component, component);
+            if (element.getId() != null) {
+                String id = component.getId();
+                if (id != null) {
+                    componentsById.put(id, component);
+                }
+            }
+            LayoutInflater.attachComponent(component, parent,
+                    currentContainer);
+            if (layoutAttributes != null) {
+                layoutAttributes.assign(component.getParent(), component);
+            }
+
+            if (component instanceof ComponentContainer) {
+                currentContainer = (ComponentContainer) component;
+            }
+            for (CompiledElement child : children) {
+                child.inflate(inflater, component, currentContainer,
+                        componentOverrideMap, componentsById, lazyComponents);
+            }
+            return component;
+        }
+    }
+}
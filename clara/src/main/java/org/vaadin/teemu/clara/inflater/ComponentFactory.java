@@ -2,10 +2,34 @@ package org.vaadin.teemu.clara.inflater;
 
 import static org.vaadin.teemu.clara.util.ReflectionUtils.isComponent;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import com.vaadin.ui.Component;
 
+/**
+ * Instantiates the {@link Component}s of layout elements. The no-arg
+ * constructors of resolved component classes are cached, so a class is only
+ * loaded once. Namespace aliases and {@link ComponentProvider}s can be
+ * registered per {@link ComponentFactory}.
+ */
 public class ComponentFactory {
 
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType
+            .methodType(Component.class);
+
+    // Package name -> class name -> no-arg constructor. Classes are always
+    // resolved with the class loader of Clara, so the cache can be shared.
+    private static final ConcurrentMap<String, ConcurrentMap<String, MethodHandle>> constructors = new ConcurrentHashMap<String, ConcurrentMap<String, MethodHandle>>();
+
+    private final Map<String, String> namespaceAliases = new HashMap<String, String>();
+    private final Map<String, ComponentProvider> componentProviders = new HashMap<String, ComponentProvider>();
+
     /**
      * Returns a new {@link Component} instance of given {@code namespace} and
      * {@code name} with fields populated from the {@code attributes} map. If
@@ -20,19 +44,115 @@ public class ComponentFactory {
      */
     public Component createComponent(String namespace, String name)
             throws ComponentInstantiationException {
+        String packageName = resolveAlias(namespace);
         try {
-            Class<? extends Component> componentClass = resolveComponentClass(
-                    namespace, name);
-            Component newComponent = componentClass.newInstance();
-            return newComponent;
-        } catch (Exception e) {
+            if (!componentProviders.isEmpty()) {
+                ComponentProvider provider = componentProviders
+                        .get(packageName);
+                if (provider != null) {
+                    Component component = provider.createComponent(
+                            packageName, name);
+                    if (component != null) {
+                        return component;
+                    }
+                }
+            }
+            return (Component) getConstructor(packageName, name)
+                    .invokeExact();
+        } catch (Error e) {
+            throw e;
+        } catch (ComponentInstantiationException e) {
+            throw e;
+        } catch (Throwable e) {
             throw createException(e, namespace, name);
         }
     }
 
+    /**
+     * Makes the elements of the namespace {@code urn:import:<alias>} resolve
+     * to classes of the given {@code packageName}.
+     * 
+     * @param alias
+     * @param packageName
+     */
+    public void addNamespaceAlias(String alias, String packageName) {
+        namespaceAliases.put(alias, packageName);
+    }
+
+    public void removeNamespaceAlias(String alias) {
+        namespaceAliases.remove(alias);
+    }
+
+    /**
+     * Registers a {@link ComponentProvider} for the elements of the given
+     * package. Only one provider per package is used, a later registration
+     * replaces the earlier one.
+     * 
+     * @param packageName
+     *            package name (an alias is resolved before the provider is
+     *            looked up).
+     * @param componentProvider
+     */
+    public void addComponentProvider(String packageName,
+            ComponentProvider componentProvider) {
+        componentProviders.put(packageName, componentProvider);
+    }
+
+    public void removeComponentProvider(String packageName) {
+        componentProviders.remove(packageName);
+    }
+
+    /**
+     * Returns {@code true} if no namespace aliases or
+     * {@link ComponentProvider}s are registered, so that every element is
+     * instantiated with the no-arg constructor of the class it names.
+     */
+    boolean isDefault() {
+        return namespaceAliases.isEmpty() && componentProviders.isEmpty();
+    }
+
+    private String resolveAlias(String namespace) {
+        if (namespaceAliases.isEmpty()) {
+            return namespace;
+        }
+        String packageName = namespaceAliases.get(namespace);
+        return packageName != null ? packageName : namespace;
+    }
+
+    /**
+     * Returns the no-arg constructor of the given class as a
+     * {@link MethodHandle} returning a {@link Component}. Resolved
+     * constructors are cached.
+     */
+    static MethodHandle getConstructor(String packageName, String name)
+            throws ClassNotFoundException, NoSuchMethodException,
+            IllegalAccessException {
+        ConcurrentMap<String, MethodHandle> classes = constructors
+                .get(packageName);
+        if (classes == null) {
+            classes = new ConcurrentHashMap<String, MethodHandle>();
+            ConcurrentMap<String, MethodHandle> existing = constructors
+                    .putIfAbsent(packageName, classes);
+            if (existing != null) {
+                classes = existing;
+            }
+        }
+        MethodHandle constructor = classes.get(name);
+        if (constructor == null) {
+            Class<? extends Component> componentClass = resolveComponentClass(
+                    packageName, name);
+            constructor = MethodHandles.publicLookup()
+                    .findConstructor(componentClass,
+                            MethodType.methodType(void.class))
+                    .asType(CONSTRUCTOR_TYPE);
+            classes.putIfAbsent(name, constructor);
+        }
+        return constructor;
+    }
+
     @SuppressWarnings("unchecked")
-    private Class<? extends Component> resolveComponentClass(String namespace,
-            String name) throws ClassNotFoundException {
+    static Class<? extends Component> resolveComponentClass(
+            String namespace, String name) throws ClassNotFoundException {
         String qualifiedClassName = namespace + "." + name;
         Class<?> componentClass = null;
         componentClass = Class.forName(qualifiedClassName);
@@ -47,7 +167,7 @@ public class ComponentFactory {
         }
     }
 
-    private ComponentInstantiationException createException(Exception e,
+    private ComponentInstantiationException createException(Throwable e,
             String namespace, String name) {
         String message = String
                 .format("Couldn't instantiate a component for namespace %s and name %s.",
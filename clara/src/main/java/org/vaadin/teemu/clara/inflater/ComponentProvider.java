@@ -0,0 +1,28 @@
+package org.vaadin.teemu.clara.inflater;
+
+import com.vaadin.ui.Component;
+
+/**
+ * Supplies {@link Component} instances for the elements of a package. A
+ * {@link ComponentProvider} can be registered to a {@link ComponentFactory} to
+ * return pre-configured instances or instances managed by a dependency
+ * injection container.
+ *
+ * @see ComponentFactory#addComponentProvider(String, ComponentProvider)
+ */
+public interface ComponentProvider {
+
+    /**
+     * Returns a new {@link Component} for the given element or {@code null}
+     * to let the {@link ComponentFactory} instantiate the class with its
+     * no-arg constructor.
+     *
+     * @param packageName
+     *            package name of the element (after resolving aliases).
+     * @param className
+     *            local name of the element.
+     * @return a new {@link Component} or {@code null}.
+     */
+    Component createComponent(String packageName, String className);
+
+}
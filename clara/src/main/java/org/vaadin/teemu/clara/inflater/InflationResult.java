@@ -0,0 +1,103 @@
+package org.vaadin.teemu.clara.inflater;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.vaadin.ui.Component;
+
+/**
+ * Result of inflating a layout: the root {@link Component} and an index from
+ * {@code id} to {@link Component} of all components that got an id from the
+ * layout XML. The index lets ids be resolved without walking the component
+ * tree.
+ */
+public final class InflationResult implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Component root;
+    private final Map<String, Component> componentsById;
+    private final List<LazyComponent> lazyComponents;
+
+    /**
+     * @param root
+     *            root of the inflated component tree ({@code null} for an
+     *            empty layout).
+     * @param componentsById
+     *            {@link Map} from {@code id} to {@link Component}.
+     */
+    public InflationResult(Component root,
+            Map<String, Component> componentsById) {
+        this(root, componentsById, Collections.<LazyComponent> emptyList());
+    }
+
+    /**
+     * @param root
+     *            root of the inflated component tree ({@code null} for an
+     *            empty layout).
+     * @param componentsById
+     *            {@link Map} from {@code id} to {@link Component}.
+     * @param lazyComponents
+     *            placeholders of the lazy elements of the layout.
+     */
+    public InflationResult(Component root,
+            Map<String, Component> componentsById,
+            List<LazyComponent> lazyComponents) {
+        this.root = root;
+        this.componentsById = Collections.unmodifiableMap(componentsById);
+        this.lazyComponents = Collections.unmodifiableList(lazyComponents);
+    }
+
+    /**
+     * Returns the root of the inflated component tree or {@code null} if the
+     * layout was empty.
+     */
+    public Component getRoot() {
+        return root;
+    }
+
+    /**
+     * Returns the inflated {@link Component} with the given {@code id} or
+     * {@code null} if the layout didn't assign such an id. Components added
+     * to the tree after the inflation are not included.
+     *
+     * @param componentId
+     * @return the {@link Component} or {@code null}.
+     */
+    public Component getComponentById(String componentId) {
+        return componentsById.get(componentId);
+    }
+
+    /**
+     * Returns an unmodifiable {@link Map} from {@code id} to {@link Component}
+     * of all components that got an id from the layout.
+     */
+    public Map<String, Component> getComponentsById() {
+        return componentsById;
+    }
+
+    /**
+     * Returns the placeholders of the lazy elements of the layout. Elements
+     * nested in a lazy element are not included.
+     */
+    public List<LazyComponent> getLazyComponents() {
+        return lazyComponents;
+    }
+
+    /**
+     * Returns {@code true} if the given {@code id} belongs to a component of
+     * a lazy element that hasn't been inflated yet.
+     *
+     * @param componentId
+     */
+    public boolean isDeferred(String componentId) {
+        for (LazyComponent lazyComponent : lazyComponents) {
+            if (lazyComponent.isDeferred(componentId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -1,37 +1,47 @@
 package org.vaadin.teemu.clara.inflater;
 
-import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.Stack;
 import java.util.logging.Logger;
 
 import org.vaadin.teemu.clara.inflater.filter.AttributeFilter;
+import org.vaadin.teemu.clara.inflater.filter.BulkAttributeFilter;
 import org.vaadin.teemu.clara.inflater.handler.DefaultAttributeHandler;
 import org.vaadin.teemu.clara.inflater.handler.LayoutAttributeHandler;
-import org.xml.sax.Attributes;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
-import org.xml.sax.XMLReader;
-import org.xml.sax.helpers.DefaultHandler;
-import org.xml.sax.helpers.XMLReaderFactory;
+import org.vaadin.teemu.clara.inflater.listener.CompositeInflationListener;
+import org.vaadin.teemu.clara.inflater.listener.InflationListener;
+import org.vaadin.teemu.clara.jfr.ClaraEvents;
+import org.vaadin.teemu.clara.inflater.template.ElementTemplate;
+import org.vaadin.teemu.clara.inflater.template.LayoutTemplate;
+import org.vaadin.teemu.clara.inflater.template.LayoutTemplateParser;
 
 import com.vaadin.ui.Component;
 import com.vaadin.ui.ComponentContainer;
 import com.vaadin.ui.SingleComponentContainer;
+import com.vaadin.ui.TabSheet;
 import org.vaadin.teemu.clara.inflater.handler.AttributeHandler;
 import org.vaadin.teemu.clara.inflater.handler.AttributeHandler.Phase;
 
 public class LayoutInflater {
 
+    // Attributes of a lazy element that are also assigned to its placeholder.
+    private static final List<String> PLACEHOLDER_ATTRIBUTES = Arrays.asList(
+            "caption", "icon", "width", "height");
+
     private List<AttributeFilter> attributeFilters = new ArrayList<AttributeFilter>();
     private List<AttributeHandler> attributeHandlers = new ArrayList<AttributeHandler>();
+    private BulkAttributeFilter[] bulkAttributeFilters = new BulkAttributeFilter[0];
+    private final LayoutTemplateParser templateParser = new LayoutTemplateParser();
+    private final ComponentFactory componentFactory = new ComponentFactory();
+    private final List<InflationListener> inflationListeners = new ArrayList<InflationListener>();
+    private InflationListener inflationListener;
+    private int compileThreshold;
 
     public LayoutInflater() {
         attributeHandlers.add(new DefaultAttributeHandler(attributeFilters));
@@ -70,182 +80,530 @@ public class LayoutInflater {
      */
     public Component inflate(InputStream xml,
             Map<String, Component> componentOverrideMap) {
+        return inflate(parse(xml, null), componentOverrideMap);
+    }
+
+    /**
+     * Parses the given {@code xml} into a {@link LayoutTemplate} that can be
+     * inflated any number of times.
+     * 
+     * @param xml
+     * @param name
+     *            name of the layout or {@code null}.
+     * @return the parsed {@link LayoutTemplate}.
+     * 
+     * @throws LayoutInflaterException
+     *             in case of an error in the parsing process.
+     */
+    public LayoutTemplate parse(InputStream xml, String name) {
+        InflationListener listener = inflationListener;
+        if (listener == null) {
+            return templateParser.parse(xml, name);
+        }
+        long start = System.nanoTime();
+        listener.parseStarted(name, start);
+        LayoutTemplate template = templateParser.parse(xml, name);
+        listener.parseFinished(template, start, System.nanoTime());
+        return template;
+    }
+
+    /**
+     * Inflates the given {@link LayoutTemplate} into a {@link Component}
+     * (hierarchy). The same {@link LayoutTemplate} can be inflated any number
+     * of times.
+     * 
+     * @param template
+     * @return the inflated {@link Component} (hierarchy).
+     * 
+     * @throws LayoutInflaterException
+     *             in case of an error in the inflation process.
+     */
+    public Component inflate(LayoutTemplate template) {
+        Map<String, Component> empty = Collections.emptyMap();
+        return inflate(template, empty);
+    }
+
+    /**
+     * Inflates the given {@link LayoutTemplate} into a {@link Component}
+     * (hierarchy).
+     * 
+     * @param template
+     * @param componentOverrideMap
+     *            {@link Map} of already existing {@link Component} instances
+     *            from their {@code id} properties.
+     * @return the inflated {@link Component} (hierarchy).
+     * 
+     * @throws LayoutInflaterException
+     *             in case of an error in the inflation process.
+     */
+    public Component inflate(LayoutTemplate template,
+            Map<String, Component> componentOverrideMap) {
+        return inflateWithIndex(template, componentOverrideMap).getRoot();
+    }
+
+    /**
+     * Inflates the given {@code xml} into a {@link Component} (hierarchy) and
+     * returns it together with an index of the components by their
+     * {@code id}.
+     * 
+     * @param xml
+     * @param componentOverrideMap
+     *            {@link Map} of already existing {@link Component} instances
+     *            from their {@code id} properties.
+     * @return the {@link InflationResult}.
+     * 
+     * @throws LayoutInflaterException
+     *             in case of an error in the inflation process.
+     */
+    public InflationResult inflateWithIndex(InputStream xml,
+            Map<String, Component> componentOverrideMap) {
+        return inflateWithIndex(parse(xml, null), componentOverrideMap);
+    }
+
+    /**
+     * Inflates the given {@link LayoutTemplate} into a {@link Component}
+     * (hierarchy) and returns it together with an index of the components by
+     * their {@code id}.
+     * 
+     * @param template
+     * @param componentOverrideMap
+     *            {@link Map} of already existing {@link Component} instances
+     *            from their {@code id} properties.
+     * @return the {@link InflationResult}.
+     * 
+     * @throws LayoutInflaterException
+     *             in case of an error in the inflation process.
+     */
+    public InflationResult inflateWithIndex(LayoutTemplate template,
+            Map<String, Component> componentOverrideMap) {
+        Map<String, Component> componentsById = new HashMap<String, Component>(
+                template.getIds().size() * 2);
+        List<LazyComponent> lazyComponents = new ArrayList<LazyComponent>();
+        if (template.getRoot() == null) {
+            return new InflationResult(null, componentsById, lazyComponents);
+        }
+        InflationListener listener = inflationListener;
+        long start = 0;
+        if (listener != null) {
+            start = System.nanoTime();
+            listener.inflationStarted(template, start);
+        }
+        Object event = ClaraEvents.get().beginInflation();
+        prepareBulkAttributeFilters(template);
         try {
-            LayoutInflaterContentHandler contentHandler = new LayoutInflaterContentHandler(
-                    componentOverrideMap);
+            Component root = null;
+            CompiledLayout compiled = getCompiledLayout(template);
+            if (compiled != null) {
+                root = compiled.inflate(this, componentOverrideMap,
+                        componentsById, lazyComponents, template);
+            }
+            if (root == null) {
+                root = inflateElement(template.getRoot(), null, null,
+                        componentOverrideMap, componentsById, lazyComponents);
+            }
+            if (listener != null) {
+                listener.inflationFinished(template, start, System.nanoTime());
+            }
+            if (event != null) {
+                int[] counts = new int[2];
+                countInflated(template.getRoot(), counts);
+                ClaraEvents.get().endInflation(event, template.getName(),
+                        counts[0], counts[1]);
+            }
+            return new InflationResult(root, componentsById, lazyComponents);
+        } catch (ComponentInstantiationException e) {
+            throw new LayoutInflaterException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the compiled form of the given template or {@code null} if it
+     * must be interpreted by this inflater.
+     */
+    private CompiledLayout getCompiledLayout(LayoutTemplate template) {
+        if (compileThreshold <= 0 || inflationListener != null
+                || !attributeFilters.isEmpty()
+                || bulkAttributeFilters.length > 0
+                || !componentFactory.isDefault()
+                || !hasDefaultAttributeHandlers()) {
+            return null;
+        }
+        return CompiledLayout.get(template, compileThreshold, this);
+    }
+
+    private boolean hasDefaultAttributeHandlers() {
+        return attributeHandlers.size() == 2
+                && attributeHandlers.get(0).getClass() == DefaultAttributeHandler.class
+                && attributeHandlers.get(1).getClass() == LayoutAttributeHandler.class;
+    }
+
+    /**
+     * Sets the number of inflations of a {@link LayoutTemplate} after which
+     * it is compiled into a form that is inflated without interpreting the
+     * elements and attributes. Layouts are never compiled if the threshold is
+     * {@code 0} (default) or this inflater has attribute filters, custom
+     * attribute handlers, inflation listeners, namespace aliases or component
+     * providers.
+     * 
+     * <br />
+     * <br />
+     * The inflations are counted per template instance, so only templates
+     * that are reused (like the ones from a {@link
+     * org.vaadin.teemu.clara.inflater.template.LayoutTemplateCache}) are
+     * compiled. Layouts that cannot be compiled are interpreted as before.
+     * 
+     * @param compileThreshold
+     *            number of inflations or {@code 0} to never compile.
+     */
+    public void setCompileThreshold(int compileThreshold) {
+        if (compileThreshold < 0) {
+            throw new IllegalArgumentException(
+                    "Compile threshold must not be negative.");
+        }
+        this.compileThreshold = compileThreshold;
+    }
+
+    public int getCompileThreshold() {
+        return compileThreshold;
+    }
+
+    /**
+     * Adds the number of components and attributes inflated from the given
+     * element to {@code counts}. The children of lazy elements aren't
+     * inflated.
+     */
+    private static void countInflated(ElementTemplate element, int[] counts) {
+        counts[0]++;
+        for (String namespace : element.getAttributeNamespaces()) {
+            counts[1] += element.getAttributes(namespace).size();
+        }
+        if (!LazyComponent.isLazy(element)) {
+            for (ElementTemplate child : element.getChildren()) {
+                countInflated(child, counts);
+            }
+        }
+    }
 
-            // Parse the XML and return root Component.
-            XMLReader parser = XMLReaderFactory.createXMLReader();
-            parser.setContentHandler(contentHandler);
-            parser.parse(new InputSource(xml));
-            return contentHandler.root;
-        } catch (SAXException e) {
-            throw new LayoutInflaterException(e);
-        } catch (IOException e) {
-            throw new LayoutInflaterException(e);
+    /**
+     * Inflates the element of a {@link LazyComponent}. The attributes handled
+     * after attaching have already been applied to the placeholder.
+     */
+    InflationResult inflateLazy(ElementTemplate element,
+            Map<String, Component> componentOverrideMap) {
+        Map<String, Component> componentsById = new HashMap<String, Component>();
+        List<LazyComponent> lazyComponents = new ArrayList<LazyComponent>();
+        try {
+            Component component = createComponent(element,
+                    componentOverrideMap, componentsById);
+            inflateChildren(element, component, null, componentOverrideMap,
+                    componentsById, lazyComponents);
+            return new InflationResult(component, componentsById,
+                    lazyComponents);
         } catch (ComponentInstantiationException e) {
             throw new LayoutInflaterException(e.getMessage(), e);
         }
     }
 
+    /**
+     * Updates the component tree of the given {@code root} that was inflated
+     * from the {@code previous} template to match the given {@code template}.
+     * Components are matched with the elements by their {@code id} and
+     * position, components of unchanged elements are kept and only the
+     * attributes whose values changed are assigned. Components of removed
+     * elements are removed and components of new elements are inflated.
+     * 
+     * <br />
+     * <br />
+     * The index of the returned {@link InflationResult} only contains the
+     * components created by the update. If the root element changed, a new
+     * component tree is inflated and returned instead.
+     * 
+     * @param root
+     *            root of the component tree to update.
+     * @param previous
+     *            the {@link LayoutTemplate} the {@code root} was inflated
+     *            from.
+     * @param template
+     *            the new {@link LayoutTemplate}.
+     * @return the {@link InflationResult} with the updated or new root.
+     * 
+     * @throws LayoutInflaterException
+     *             in case of an error in the inflation process.
+     */
+    public InflationResult update(Component root, LayoutTemplate previous,
+            LayoutTemplate template) {
+        if (root != null && previous.getRoot() != null
+                && template.getRoot() != null) {
+            prepareBulkAttributeFilters(template);
+            InflationResult result = new LayoutUpdater(this).update(root,
+                    previous.getRoot(), template.getRoot());
+            if (result != null) {
+                return result;
+            }
+        }
+        Map<String, Component> empty = Collections.emptyMap();
+        return inflateWithIndex(template, empty);
+    }
+
+    List<AttributeHandler> getAttributeHandlers() {
+        return attributeHandlers;
+    }
+
     public void addAttributeFilter(AttributeFilter attributeFilter) {
         attributeFilters.add(attributeFilter);
+        updateAttributeFilters();
     }
 
     public void removeAttributeFilter(AttributeFilter attributeFilter) {
         attributeFilters.remove(attributeFilter);
+        updateAttributeFilters();
+    }
+
+    private void updateAttributeFilters() {
+        for (AttributeHandler attributeHandler : attributeHandlers) {
+            if (attributeHandler instanceof DefaultAttributeHandler) {
+                ((DefaultAttributeHandler) attributeHandler)
+                        .updateAttributeFilters();
+            }
+        }
+    }
+
+    /**
+     * Adds a {@link BulkAttributeFilter} that is given the attributes of each
+     * element before they are assigned.
+     */
+    public void addBulkAttributeFilter(BulkAttributeFilter bulkAttributeFilter) {
+        BulkAttributeFilter[] filters = Arrays.copyOf(bulkAttributeFilters,
+                bulkAttributeFilters.length + 1);
+        filters[filters.length - 1] = bulkAttributeFilter;
+        bulkAttributeFilters = filters;
+    }
+
+    public void removeBulkAttributeFilter(
+            BulkAttributeFilter bulkAttributeFilter) {
+        List<BulkAttributeFilter> filters = new ArrayList<BulkAttributeFilter>(
+                Arrays.asList(bulkAttributeFilters));
+        filters.remove(bulkAttributeFilter);
+        bulkAttributeFilters = filters
+                .toArray(new BulkAttributeFilter[filters.size()]);
+    }
+
+    private void prepareBulkAttributeFilters(LayoutTemplate template) {
+        for (BulkAttributeFilter bulkAttributeFilter : bulkAttributeFilters) {
+            bulkAttributeFilter.prepare(template);
+        }
     }
 
     public void addAttributeHandler(AttributeHandler attributeHandler) {
         attributeHandlers.add(attributeHandler);
+        if (attributeHandler instanceof DefaultAttributeHandler) {
+            ((DefaultAttributeHandler) attributeHandler)
+                    .setInflationListener(inflationListener);
+            ((DefaultAttributeHandler) attributeHandler)
+                    .updateAttributeFilters();
+        }
     }
 
     public void removeAttributeHandler(AttributeHandler attributeHandler) {
         attributeHandlers.remove(attributeHandler);
     }
 
-    private class LayoutInflaterContentHandler extends DefaultHandler {
-
-        private static final String URN_NAMESPACE_ID = "import";
-        private static final String DEFAULT_NAMESPACE = "urn:"
-                + URN_NAMESPACE_ID + ":com.vaadin.ui";
-        private static final String ID_ATTRIBUTE = "id";
+    /**
+     * Adds an {@link InflationListener} notified of the parsing and inflation
+     * steps of this inflater.
+     */
+    public void addInflationListener(InflationListener listener) {
+        inflationListeners.add(listener);
+        updateInflationListener();
+    }
 
-        private Stack<Component> componentStack = new Stack<Component>();
-        private ComponentContainer currentContainer;
-        private Component root;
-        private final ComponentFactory componentFactory;
-        private final Set<String> assignedIds = new HashSet<String>();
-        private final Map<String, Component> componentOverrideMap;
+    public void removeInflationListener(InflationListener listener) {
+        inflationListeners.remove(listener);
+        updateInflationListener();
+    }
 
-        public LayoutInflaterContentHandler(
-                Map<String, Component> componentOverrideMap) {
-            this.componentOverrideMap = componentOverrideMap;
+    /**
+     * Returns a listener forwarding the events to all added
+     * {@link InflationListener}s or {@code null} if none have been added.
+     */
+    public InflationListener getInflationListener() {
+        return inflationListener;
+    }
 
-            componentFactory = new ComponentFactory();
+    private void updateInflationListener() {
+        inflationListener = CompositeInflationListener.of(inflationListeners);
+        for (AttributeHandler attributeHandler : attributeHandlers) {
+            if (attributeHandler instanceof DefaultAttributeHandler) {
+                ((DefaultAttributeHandler) attributeHandler)
+                        .setInflationListener(inflationListener);
+            }
         }
+    }
 
-        @Override
-        public void startDocument() throws SAXException {
-            super.startDocument();
-            assignedIds.clear();
-        }
+    /**
+     * @see ComponentFactory#addNamespaceAlias(String, String)
+     */
+    public void addNamespaceAlias(String alias, String packageName) {
+        componentFactory.addNamespaceAlias(alias, packageName);
+    }
 
-        @Override
-        public void startElement(String uri, String localName, String qName,
-                Attributes attributes) throws SAXException {
-            super.startElement(uri, localName, qName, attributes);
+    public void removeNamespaceAlias(String alias) {
+        componentFactory.removeNamespaceAlias(alias);
+    }
 
-            if (uri.length() == 0) {
-                uri = DEFAULT_NAMESPACE;
-            }
+    /**
+     * @see ComponentFactory#addComponentProvider(String, ComponentProvider)
+     */
+    public void addComponentProvider(String packageName,
+            ComponentProvider componentProvider) {
+        componentFactory.addComponentProvider(packageName, componentProvider);
+    }
 
-            if (uri.startsWith("urn:" + URN_NAMESPACE_ID + ":")) {
-                // Throw an exception if the id is already used.
-                verifyUniqueId(attributes);
+    public void removeComponentProvider(String packageName) {
+        componentFactory.removeComponentProvider(packageName);
+    }
 
-                Component component = instantiateComponent(uri, localName,
-                        attributes.getValue(ID_ATTRIBUTE));
+    Component inflateElement(ElementTemplate element,
+            Component parent, ComponentContainer currentContainer,
+            Map<String, Component> componentOverrideMap,
+            Map<String, Component> componentsById,
+            List<LazyComponent> lazyComponents) {
+        if (LazyComponent.isLazy(element)) {
+            LazyComponent placeholder = new LazyComponent(element, this,
+                    componentOverrideMap);
+            lazyComponents.add(placeholder);
+            assignPlaceholderAttributes(placeholder, element);
+            attachComponent(placeholder, parent, currentContainer);
+            runAttributeHandlerPhase(Phase.AFTER_ATTACH, placeholder, element);
+            return placeholder;
+        }
 
-                if (root == null) {
-                    // This was the first Component created -> root.
-                    root = component;
-                }
+        // Basic attributes -> attach -> layout attributes.
+        Component component = createComponent(element, componentOverrideMap,
+                componentsById);
+        attachComponent(component, parent, currentContainer);
+        runAttributeHandlerPhase(Phase.AFTER_ATTACH, component, element);
 
-                // Basic attributes -> attach -> layout attributes.
-                runAttributeHandlerPhase(Phase.BEFORE_ATTACH, component, attributes);
-                attachComponent(component);
-                runAttributeHandlerPhase(Phase.AFTER_ATTACH, component, attributes);
+        inflateChildren(element, component, currentContainer,
+                componentOverrideMap, componentsById, lazyComponents);
+        return component;
+    }
 
-                if (component instanceof ComponentContainer) {
-                    currentContainer = (ComponentContainer) component;
-                }
-                componentStack.push(component);
+    Component createComponent(ElementTemplate element,
+            Map<String, Component> componentOverrideMap,
+            Map<String, Component> componentsById) {
+        InflationListener listener = inflationListener;
+        long start = listener != null ? System.nanoTime() : 0;
+        Component component = instantiateComponent(element,
+                componentOverrideMap);
+        if (listener != null) {
+            listener.componentInstantiated(element, component, start,
+                    System.nanoTime());
+        }
+        runAttributeHandlerPhase(Phase.BEFORE_ATTACH, component, element);
+        if (element.getId() != null) {
+            // Index by the actual id in case a filter modified it.
+            String id = component.getId();
+            if (id != null) {
+                componentsById.put(id, component);
             }
         }
+        return component;
+    }
 
-        private void attachComponent(Component component) {
-            Component topComponent = componentStack.isEmpty() ? null
-                    : componentStack.peek();
-            if (topComponent instanceof SingleComponentContainer) {
-                ((SingleComponentContainer) topComponent).setContent(component);
-            } else if (currentContainer != null) {
-                currentContainer.addComponent(component);
-            }
+    void inflateChildren(ElementTemplate element,
+            Component component, ComponentContainer currentContainer,
+            Map<String, Component> componentOverrideMap,
+            Map<String, Component> componentsById,
+            List<LazyComponent> lazyComponents) {
+        if (component instanceof ComponentContainer) {
+            currentContainer = (ComponentContainer) component;
+        }
+        for (ElementTemplate child : element.getChildren()) {
+            inflateElement(child, component, currentContainer,
+                    componentOverrideMap, componentsById, lazyComponents);
         }
+    }
 
-        @Override
-        public void endElement(String uri, String localName, String qName)
-                throws SAXException {
-            super.endElement(uri, localName, qName);
-            Component component = componentStack.pop();
-            if (component instanceof ComponentContainer) {
-                Component parent = component.getParent();
-                while (parent != null
-                        && !(parent instanceof ComponentContainer)) {
-                    parent = parent.getParent();
-                }
-                currentContainer = (ComponentContainer) parent;
+    /**
+     * Assigns the attributes a placeholder needs to stand in for the
+     * component, like the tab caption of a {@link TabSheet}.
+     */
+    void assignPlaceholderAttributes(LazyComponent placeholder,
+            ElementTemplate element) {
+        Map<String, String> attributes = new LinkedHashMap<String, String>();
+        for (Map.Entry<String, String> attribute : element.getAttributes("")
+                .entrySet()) {
+            if (PLACEHOLDER_ATTRIBUTES.contains(attribute.getKey())) {
+                attributes.put(attribute.getKey(), attribute.getValue());
             }
         }
-
-        private Component instantiateComponent(String uri, String localName,
-                String id) {
-            // Check if we should use an override.
-            if (componentOverrideMap.containsKey(id)) {
-                return componentOverrideMap.get(id);
+        if (attributes.isEmpty()) {
+            return;
+        }
+        for (AttributeHandler attributeHandler : attributeHandlers) {
+            if (attributeHandler.getPhase() == Phase.BEFORE_ATTACH
+                    && attributeHandler.getNamespace().length() == 0) {
+                assignAttributes(attributeHandler, placeholder, attributes);
             }
-
-            // Extract the package and class names.
-            String packageName = uri
-                    .substring(("urn:" + URN_NAMESPACE_ID + ":").length());
-            String className = localName;
-
-            return componentFactory.createComponent(packageName, className);
         }
+    }
 
-        private void runAttributeHandlerPhase(Phase phase, Component component, Attributes attributes) {
-            for (AttributeHandler attributeHandler : attributeHandlers) {
-                if (attributeHandler.getPhase() == phase) {
-                    handleAttributes(component, attributes, attributeHandler);
-                }
-            }
+    static void attachComponent(Component component, Component parent,
+            ComponentContainer currentContainer) {
+        if (parent instanceof SingleComponentContainer) {
+            ((SingleComponentContainer) parent).setContent(component);
+        } else if (currentContainer != null) {
+            currentContainer.addComponent(component);
         }
+    }
 
-        private void handleAttributes(Component component,
-                Attributes attributes, AttributeHandler attributeHandler) {
-            // Get attributes for the namespace this AttributeHandler is
-            // interested in.
-            Map<String, String> attributeMap = getAttributeMap(attributes,
-                    attributeHandler.getNamespace());
-            attributeHandler.assignAttributes(component, attributeMap);
+    private Component instantiateComponent(ElementTemplate element,
+            Map<String, Component> componentOverrideMap) {
+        if (element.isInclude()) {
+            throw new LayoutInflaterException(element
+                    + " has not been resolved. Includes are resolved by the"
+                    + " LayoutTemplateCache.");
+        }
+        // Check if we should use an override.
+        String id = element.getId();
+        if (componentOverrideMap.containsKey(id)) {
+            return componentOverrideMap.get(id);
         }
+        return componentFactory.createComponent(element.getPackageName(),
+                element.getClassName());
+    }
 
-        private void verifyUniqueId(Attributes attributes)
-                throws LayoutInflaterException {
-            String id = attributes.getValue(ID_ATTRIBUTE);
-            if (id != null && id.length() > 0) {
-                boolean unique = assignedIds.add(id);
-                if (!unique) {
-                    throw new LayoutInflaterException(String.format(
-                            "Given id %s has already been assigned.", id));
+    void runAttributeHandlerPhase(Phase phase, Component component,
+            ElementTemplate element) {
+        InflationListener listener = inflationListener;
+        for (AttributeHandler attributeHandler : attributeHandlers) {
+            if (attributeHandler.getPhase() == phase) {
+                long start = listener != null ? System.nanoTime() : 0;
+                // Pass attributes for the namespace this AttributeHandler is
+                // interested in.
+                assignAttributes(attributeHandler, component,
+                        element.getAttributes(attributeHandler.getNamespace()));
+                if (listener != null) {
+                    listener.attributeHandlerFinished(element,
+                            attributeHandler, phase, start, System.nanoTime());
                 }
             }
         }
+    }
 
-        private Map<String, String> getAttributeMap(Attributes attributes,
-                String namespace) {
-            Map<String, String> attributeMap = new HashMap<String, String>(
-                    attributes.getLength());
-            for (int i = 0; i < attributes.getLength(); i++) {
-                if (attributes.getURI(i).equals(namespace)) {
-                    // Namespace matches -> add to map.
-                    String value = attributes.getValue(i);
-                    String name = attributes.getLocalName(i);
-                    attributeMap.put(name, value);
-                }
+    /**
+     * Passes the attributes through the {@link BulkAttributeFilter}s and
+     * assigns them with the given {@link AttributeHandler}.
+     */
+    void assignAttributes(AttributeHandler attributeHandler,
+            Component component, Map<String, String> attributes) {
+        if (!attributes.isEmpty()) {
+            for (BulkAttributeFilter bulkAttributeFilter : bulkAttributeFilters) {
+                attributes = bulkAttributeFilter.filter(component,
+                        attributeHandler.getNamespace(), attributes);
             }
-            return attributeMap;
         }
+        attributeHandler.assignAttributes(component, attributes);
     }
 }
@@ -0,0 +1,430 @@
+package org.vaadin.teemu.clara.inflater;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.logging.Logger;
+
+import org.vaadin.teemu.clara.inflater.handler.CompiledAttributes;
+import org.vaadin.teemu.clara.inflater.handler.DefaultAttributeHandler;
+import org.vaadin.teemu.clara.inflater.template.BinaryLayoutFormat;
+import org.vaadin.teemu.clara.inflater.template.ElementTemplate;
+import org.vaadin.teemu.clara.inflater.template.LayoutTemplate;
+import org.vaadin.teemu.clara.inflater.template.LayoutTemplateCache;
+
+import com.vaadin.ui.Component;
+import com.vaadin.ui.ComponentContainer;
+import com.vaadin.ui.SingleComponentContainer;
+
+/**
+ * Loads the layouts of an application at startup, so that broken layouts are
+ * found when the application is deployed and the first users don't pay for
+ * parsing the layouts and resolving the component classes and setters.
+ *
+ * <br />
+ * <br />
+ * The layouts are found by scanning the classpath under the given package
+ * prefixes for XML files that declare an {@code urn:import:} or the Clara
+ * namespace, and for compiled {@link BinaryLayoutFormat} layouts. Each layout
+ * is then, in parallel on a {@link ForkJoinPool}:
+ * <ol>
+ * <li>parsed into the {@link LayoutTemplateCache} (with its includes
+ * resolved),</li>
+ * <li>validated: all component classes are loaded and initialized, their
+ * constructors and the setters of the attributes are resolved and the
+ * attribute values of immutable types are converted,</li>
+ * <li>optionally inflated a number of times to warm up the JIT.</li>
+ * </ol>
+ * Validation doesn't instantiate any components. Layouts without any
+ * namespace declaration are not found by the scan, but can be preloaded by
+ * their resource names.
+ */
+public class LayoutPreloader {
+
+    private static final String IMPORT_MARKER = "urn:import:";
+    private static final String XML_SUFFIX = ".xml";
+
+    private final ClassLoader classLoader;
+    private LayoutTemplateCache templateCache = LayoutTemplateCache
+            .getSharedInstance();
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private int warmUpInflations;
+
+    /**
+     * Creates a preloader for the layouts of the given {@link ClassLoader}.
+     */
+    public LayoutPreloader(ClassLoader classLoader) {
+        if (classLoader == null) {
+            throw new IllegalArgumentException(
+                    "ClassLoader must not be null.");
+        }
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * Sets the {@link LayoutTemplateCache} to parse the layouts into. The
+     * shared instance is used by default.
+     */
+    public void setTemplateCache(LayoutTemplateCache templateCache) {
+        this.templateCache = templateCache;
+    }
+
+    /**
+     * Sets the number of threads to preload the layouts with. Defaults to
+     * the number of available processors.
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException(
+                    "Parallelism must be positive.");
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Sets the number of times each valid layout is inflated after it has
+     * been validated, to have the JIT compile the inflation code before the
+     * first users arrive. The inflated components are discarded. Defaults to
+     * {@code 0}.
+     */
+    public void setWarmUpInflations(int warmUpInflations) {
+        this.warmUpInflations = warmUpInflations;
+    }
+
+    /**
+     * Finds the layouts under the given package prefixes and preloads them.
+     *
+     * @param packagePrefixes
+     *            packages to scan (like {@code com.example.ui}), including
+     *            their sub packages.
+     * @return report of the preload time and the errors of each layout.
+     * @throws LayoutInflaterException
+     *             if the classpath cannot be scanned.
+     * @see PreloadReport#throwIfFailed()
+     */
+    public PreloadReport preload(String... packagePrefixes) {
+        return preload(findLayouts(packagePrefixes));
+    }
+
+    /**
+     * Preloads the layouts of the given absolute resource names.
+     *
+     * @param resourceNames
+     * @return report of the preload time and the errors of each layout.
+     */
+    public PreloadReport preload(Collection<String> resourceNames) {
+        long start = System.nanoTime();
+        List<Callable<PreloadReport.Layout>> tasks = new ArrayList<Callable<PreloadReport.Layout>>();
+        for (final String resourceName : resourceNames) {
+            tasks.add(new Callable<PreloadReport.Layout>() {
+
+                @Override
+                public PreloadReport.Layout call() {
+                    return preloadLayout(resourceName);
+                }
+            });
+        }
+        List<PreloadReport.Layout> layouts = new ArrayList<PreloadReport.Layout>();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            for (Future<PreloadReport.Layout> layout : pool.invokeAll(tasks)) {
+                layouts.add(layout.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LayoutInflaterException("Preloading was interrupted.",
+                    e);
+        } catch (ExecutionException e) {
+            throw new LayoutInflaterException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        PreloadReport report = new PreloadReport(layouts, System.nanoTime()
+                - start);
+        for (PreloadReport.Layout failure : report.getFailures()) {
+            getLogger().warning("Preloading layout " + failure.getName()
+                    + " failed: " + failure.getErrors());
+        }
+        getLogger().info(report.toString());
+        return report;
+    }
+
+    /**
+     * Returns the absolute resource names of the layouts under the given
+     * package prefixes in alphabetical order. Only directories and jar files
+     * of the classpath can be scanned, and jar files only if they contain
+     * entries for the scanned directories.
+     *
+     * @param packagePrefixes
+     * @throws LayoutInflaterException
+     *             if the classpath cannot be scanned.
+     */
+    public List<String> findLayouts(String... packagePrefixes) {
+        Set<String> resourceNames = new TreeSet<String>();
+        for (String packagePrefix : packagePrefixes) {
+            String path = packagePrefix.replace('.', '/');
+            if (path.length() > 0 && !path.endsWith("/")) {
+                path += "/";
+            }
+            try {
+                Enumeration<URL> urls = classLoader.getResources(path);
+                while (urls.hasMoreElements()) {
+                    scan(urls.nextElement(), path, resourceNames);
+                }
+            } catch (IOException e) {
+                throw new LayoutInflaterException("Couldn't scan package "
+                        + packagePrefix + " for layouts.", e);
+            }
+        }
+        return new ArrayList<String>(resourceNames);
+    }
+
+    private void scan(URL url, String path, Set<String> resourceNames)
+            throws IOException {
+        if ("file".equals(url.getProtocol())) {
+            try {
+                scanDirectory(new File(url.toURI()), path, resourceNames);
+            } catch (URISyntaxException e) {
+                throw new IOException(e);
+            }
+        } else if ("jar".equals(url.getProtocol())) {
+            URLConnection connection = url.openConnection();
+            connection.setUseCaches(false);
+            JarFile jar = ((JarURLConnection) connection).getJarFile();
+            try {
+                scanJar(jar, path, resourceNames);
+            } finally {
+                jar.close();
+            }
+        } else {
+            getLogger().warning("Cannot scan " + url + " for layouts.");
+        }
+    }
+
+    private void scanDirectory(File directory, String path,
+            Set<String> resourceNames) throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = path + file.getName();
+            if (file.isDirectory()) {
+                scanDirectory(file, name + "/", resourceNames);
+            } else if (isLayoutName(name)) {
+                InputStream in = new FileInputStream(file);
+                try {
+                    addLayout(name, in, resourceNames);
+                } finally {
+                    in.close();
+                }
+            }
+        }
+    }
+
+    private void scanJar(JarFile jar, String path, Set<String> resourceNames)
+            throws IOException {
+        Enumeration<JarEntry> entries = jar.entries();
+        while (entries.hasMoreElements()) {
+            JarEntry entry = entries.nextElement();
+            String name = entry.getName();
+            if (!entry.isDirectory() && name.startsWith(path)
+                    && isLayoutName(name)) {
+                InputStream in = jar.getInputStream(entry);
+                try {
+                    addLayout(name, in, resourceNames);
+                } finally {
+                    in.close();
+                }
+            }
+        }
+    }
+
+    private static boolean isLayoutName(String name) {
+        return name.endsWith(XML_SUFFIX)
+                || name.endsWith(XML_SUFFIX
+                        + BinaryLayoutFormat.RESOURCE_SUFFIX);
+    }
+
+    private static void addLayout(String name, InputStream in,
+            Set<String> resourceNames) throws IOException {
+        if (name.endsWith(BinaryLayoutFormat.RESOURCE_SUFFIX)) {
+            // Loaded through the name of the XML file.
+            resourceNames.add(name.substring(0, name.length()
+                    - BinaryLayoutFormat.RESOURCE_SUFFIX.length()));
+            return;
+        }
+        if (isLayout(in)) {
+            resourceNames.add(name);
+        }
+    }
+
+    /**
+     * Returns {@code true} if the given XML declares an {@code urn:import:}
+     * or the Clara namespace, that is, if it's found as a layout by the
+     * classpath scan. The stream is read to the end but not closed.
+     *
+     * @param in
+     *            the XML content.
+     * @return {@code true} if the XML is a layout.
+     * @throws IOException
+     */
+    public static boolean isLayout(InputStream in) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            content.write(buffer, 0, read);
+        }
+        // The namespaces are ASCII in all encodings used for XML in practice.
+        String xml = content.toString("ISO-8859-1");
+        return xml.contains(IMPORT_MARKER)
+                || xml.contains(LazyComponent.CLARA_NAMESPACE);
+    }
+
+    private PreloadReport.Layout preloadLayout(String resourceName) {
+        long start = System.nanoTime();
+        List<String> errors = new ArrayList<String>();
+        try {
+            LayoutTemplate template = templateCache.get(classLoader,
+                    resourceName);
+            if (template.getRoot() != null) {
+                LayoutInflater inflater = new LayoutInflater();
+                List<?> handlers = inflater.getAttributeHandlers();
+                validate(template.getRoot(), null, null,
+                        (DefaultAttributeHandler) handlers.get(0),
+                        (DefaultAttributeHandler) handlers.get(1), errors);
+                if (errors.isEmpty()) {
+                    warmUp(inflater, template, errors);
+                }
+            }
+        } catch (RuntimeException e) {
+            errors.add(getMessage(e));
+        }
+        return new PreloadReport.Layout(resourceName, System.nanoTime()
+                - start, errors);
+    }
+
+    /**
+     * Validates the given element attached to a component of the given
+     * {@code parentClass} with the given container class, the same way the
+     * elements are resolved by the {@link CompiledLayout}.
+     */
+    private static void validate(ElementTemplate element,
+            Class<? extends Component> parentClass,
+            Class<? extends Component> containerClass,
+            DefaultAttributeHandler defaultHandler,
+            DefaultAttributeHandler layoutHandler, List<String> errors) {
+        String className = element.getPackageName() + "."
+                + element.getClassName();
+        Class<? extends Component> componentClass;
+        try {
+            // Initializes the class as well.
+            componentClass = ComponentFactory.resolveComponentClass(
+                    element.getPackageName(), element.getClassName());
+        } catch (ClassNotFoundException e) {
+            errors.add("Component class " + className + " not found.");
+            return;
+        } catch (IllegalArgumentException e) {
+            errors.add(e.getMessage());
+            return;
+        } catch (LinkageError e) {
+            errors.add("Component class " + className
+                    + " cannot be loaded: " + e);
+            return;
+        }
+        try {
+            ComponentFactory.getConstructor(element.getPackageName(),
+                    element.getClassName());
+        } catch (ReflectiveOperationException e) {
+            // May be created by a ComponentProvider.
+        }
+
+        validateAttributes(element, defaultHandler, componentClass, errors);
+        Map<String, String> layoutAttributes = element
+                .getAttributes(layoutHandler.getNamespace());
+        if (parentClass != null && !layoutAttributes.isEmpty()) {
+            Class<? extends Component> targetClass = SingleComponentContainer.class
+                    .isAssignableFrom(parentClass) ? parentClass
+                    : containerClass;
+            if (targetClass == null
+                    || !ComponentContainer.class.isAssignableFrom(targetClass)) {
+                errors.add("Layout attributes of " + describe(element)
+                        + " require a ComponentContainer parent.");
+            } else {
+                validateAttributes(element, layoutHandler, targetClass, errors);
+            }
+        }
+
+        if (ComponentContainer.class.isAssignableFrom(componentClass)) {
+            containerClass = componentClass;
+        }
+        for (ElementTemplate child : element.getChildren()) {
+            validate(child, componentClass, containerClass, defaultHandler,
+                    layoutHandler, errors);
+        }
+    }
+
+    /**
+     * Compiles the attributes of the handler one by one to find the invalid
+     * values. Attributes without a setter are ignored as in the handlers.
+     */
+    private static void validateAttributes(ElementTemplate element,
+            DefaultAttributeHandler handler,
+            Class<? extends Component> targetClass, List<String> errors) {
+        for (Map.Entry<String, String> attribute : element.getAttributes(
+                handler.getNamespace()).entrySet()) {
+            if (CompiledAttributes.compile(handler, targetClass, Collections
+                    .singletonMap(attribute.getKey(), attribute.getValue())) == null) {
+                errors.add("Invalid value \"" + attribute.getValue()
+                        + "\" of attribute " + attribute.getKey() + " of "
+                        + describe(element) + ".");
+            }
+        }
+    }
+
+    private void warmUp(LayoutInflater inflater, LayoutTemplate template,
+            List<String> errors) {
+        for (int i = 0; i < warmUpInflations; i++) {
+            try {
+                inflater.inflate(template);
+            } catch (RuntimeException e) {
+                errors.add("Inflation failed: " + getMessage(e));
+                return;
+            }
+        }
+    }
+
+    private static String describe(ElementTemplate element) {
+        return element.getId() != null ? element.getClassName() + "#"
+                + element.getId() : element.getClassName();
+    }
+
+    private static String getMessage(Throwable e) {
+        return e.getMessage() != null ? e.getMessage() : e.toString();
+    }
+
+    protected Logger getLogger() {
+        return Logger.getLogger(LayoutPreloader.class.getName());
+    }
+}
@@ -0,0 +1,366 @@
+package org.vaadin.teemu.clara.inflater;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.vaadin.teemu.clara.inflater.handler.AttributeHandler;
+import org.vaadin.teemu.clara.inflater.handler.AttributeHandler.Phase;
+import org.vaadin.teemu.clara.inflater.template.ElementTemplate;
+
+import com.vaadin.ui.AbstractOrderedLayout;
+import com.vaadin.ui.Component;
+import com.vaadin.ui.ComponentContainer;
+import com.vaadin.ui.CssLayout;
+import com.vaadin.ui.SingleComponentContainer;
+
+/**
+ * Updates a component tree inflated from one template to match another
+ * template of the same layout.
+ *
+ * Child elements are matched with the previous ones by type and {@code id},
+ * elements without an id by their order. Matched components are kept and
+ * only the attributes whose values changed are assigned to them. Components
+ * of elements that were removed are removed from their parents and the
+ * components of new elements are inflated. A component is replaced instead
+ * of updated if an attribute was removed from its element, since there's no
+ * general way to restore the default value of an attribute.
+ *
+ * An instance updates a single tree and is discarded afterwards.
+ */
+class LayoutUpdater {
+
+    private final LayoutInflater inflater;
+    private final Map<String, Component> noOverrides = new HashMap<String, Component>();
+    private final Map<String, Component> componentsById = new HashMap<String, Component>();
+    private final List<LazyComponent> lazyComponents = new ArrayList<LazyComponent>();
+
+    LayoutUpdater(LayoutInflater inflater) {
+        this.inflater = inflater;
+    }
+
+    /**
+     * Updates the tree of the given {@code root} component inflated from the
+     * {@code previous} template to match the given {@code element} template.
+     *
+     * @return the components created by the update or {@code null} if the
+     *         root itself must be replaced.
+     */
+    InflationResult update(Component root, ElementTemplate previous,
+            ElementTemplate element) {
+        if (!isSameType(previous, element)
+                || !updateElement(root, previous, element, true)) {
+            return null;
+        }
+        return new InflationResult(root, componentsById, lazyComponents);
+    }
+
+    /**
+     * Updates the given {@code component} and its children. Returns
+     * {@code false} without modifying the component if it must be replaced.
+     */
+    private boolean updateElement(Component component,
+            ElementTemplate previous, ElementTemplate element, boolean root) {
+        if (LazyComponent.isLazy(previous) || LazyComponent.isLazy(element)) {
+            // Placeholders are only kept if nothing changed.
+            return isSameElement(previous, element);
+        }
+        Map<AttributeHandler, Map<String, String>> changedAttributes = getChangedAttributes(
+                previous, element, root);
+        if (changedAttributes == null) {
+            return false;
+        }
+
+        if (component instanceof ComponentContainer) {
+            if (!updateChildren((ComponentContainer) component, previous,
+                    element)) {
+                return false;
+            }
+        } else if (component instanceof SingleComponentContainer) {
+            if (!updateContent((SingleComponentContainer) component,
+                    previous, element)) {
+                return false;
+            }
+        } else if (!previous.getChildren().isEmpty()
+                || !element.getChildren().isEmpty()) {
+            // Children of other components are added to the closest
+            // container ancestor, they can't be updated here.
+            if (!isSameElement(previous, element)) {
+                return false;
+            }
+        }
+
+        for (Map.Entry<AttributeHandler, Map<String, String>> entry : changedAttributes
+                .entrySet()) {
+            inflater.assignAttributes(entry.getKey(), component,
+                    entry.getValue());
+        }
+        return true;
+    }
+
+    /**
+     * Returns the attributes whose value changed for each
+     * {@link AttributeHandler} or {@code null} if an attribute was removed.
+     * Like in inflation, the attributes handled after attaching are ignored
+     * for the root.
+     */
+    private Map<AttributeHandler, Map<String, String>> getChangedAttributes(
+            ElementTemplate previous, ElementTemplate element, boolean root) {
+        for (String namespace : previous.getAttributeNamespaces()) {
+            if (!element.getAttributes(namespace).keySet()
+                    .containsAll(previous.getAttributes(namespace).keySet())) {
+                return null;
+            }
+        }
+        Map<AttributeHandler, Map<String, String>> changed = new LinkedHashMap<AttributeHandler, Map<String, String>>();
+        for (AttributeHandler attributeHandler : inflater
+                .getAttributeHandlers()) {
+            if (root && attributeHandler.getPhase() == Phase.AFTER_ATTACH) {
+                continue;
+            }
+            String namespace = attributeHandler.getNamespace();
+            Map<String, String> previousAttributes = previous
+                    .getAttributes(namespace);
+            Map<String, String> attributes = null;
+            for (Map.Entry<String, String> attribute : element.getAttributes(
+                    namespace).entrySet()) {
+                if (!attribute.getValue().equals(
+                        previousAttributes.get(attribute.getKey()))) {
+                    if (attributes == null) {
+                        attributes = new LinkedHashMap<String, String>();
+                    }
+                    attributes.put(attribute.getKey(), attribute.getValue());
+                }
+            }
+            if (attributes != null) {
+                changed.put(attributeHandler, attributes);
+            }
+        }
+        return changed;
+    }
+
+    private boolean updateChildren(ComponentContainer container,
+            ElementTemplate previous, ElementTemplate element) {
+        List<Component> currentChildren = new ArrayList<Component>();
+        for (Component child : container) {
+            currentChildren.add(child);
+        }
+        List<ElementTemplate> previousChildren = previous.getChildren();
+        if (currentChildren.size() != previousChildren.size()) {
+            // Modified after inflation, can't tell which component is which.
+            return false;
+        }
+
+        List<ElementTemplate> children = element.getChildren();
+        Component[] matched = match(currentChildren, previousChildren,
+                children);
+        List<Component> kept = new ArrayList<Component>();
+        for (Component component : matched) {
+            if (component != null) {
+                kept.add(component);
+            }
+        }
+        List<Component> remaining = new ArrayList<Component>();
+        for (Component child : currentChildren) {
+            if (kept.contains(child)) {
+                remaining.add(child);
+            } else {
+                container.removeComponent(child);
+            }
+        }
+
+        boolean indexed = container instanceof AbstractOrderedLayout
+                || container instanceof CssLayout;
+        if (!indexed && !isAppendOnly(matched, remaining)) {
+            // Can't move components, add everything again in order.
+            container.removeAllComponents();
+            remaining.clear();
+        }
+        for (int i = 0; i < children.size(); i++) {
+            Component child = matched[i];
+            ElementTemplate childElement = children.get(i);
+            if (child == null) {
+                child = createDetached(childElement);
+            } else if (indexed ? getIndex(container, child) == i : remaining
+                    .contains(child)) {
+                // Already in place.
+                continue;
+            }
+            if (indexed) {
+                if (child.getParent() == container) {
+                    container.removeComponent(child);
+                }
+                addComponent(container, child, i);
+            } else {
+                container.addComponent(child);
+            }
+            inflater.runAttributeHandlerPhase(Phase.AFTER_ATTACH, child,
+                    childElement);
+        }
+        return true;
+    }
+
+    /**
+     * Returns {@code true} if the matched components are already in the
+     * right order and all new components come after them.
+     */
+    private static boolean isAppendOnly(Component[] matched,
+            List<Component> remaining) {
+        for (int i = 0; i < matched.length; i++) {
+            Component expected = i < remaining.size() ? remaining.get(i)
+                    : null;
+            if (matched[i] != expected) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean updateContent(SingleComponentContainer container,
+            ElementTemplate previous, ElementTemplate element) {
+        // The content is the last child element.
+        List<ElementTemplate> previousChildren = previous.getChildren();
+        List<ElementTemplate> children = element.getChildren();
+        ElementTemplate previousContent = previousChildren.isEmpty() ? null
+                : previousChildren.get(previousChildren.size() - 1);
+        ElementTemplate content = children.isEmpty() ? null : children
+                .get(children.size() - 1);
+        if (previousContent == null || content == null
+                || !isSameType(previousContent, content)
+                || !isSameId(previousContent, content)
+                || container.getContent() == null
+                || !updateElement(container.getContent(), previousContent,
+                        content, false)) {
+            if (previousContent == null && container.getContent() != null) {
+                // Modified after inflation.
+                return false;
+            }
+            Component component = content == null ? null
+                    : createDetached(content);
+            container.setContent(component);
+            if (component != null) {
+                inflater.runAttributeHandlerPhase(Phase.AFTER_ATTACH,
+                        component, content);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the components of the {@code previousChildren} to keep for each
+     * of the {@code children} in the same order, {@code null} for the
+     * elements that need a new component. Matched components have been
+     * updated already.
+     */
+    private Component[] match(List<Component> components,
+            List<ElementTemplate> previousChildren,
+            List<ElementTemplate> children) {
+        Component[] matched = new Component[children.size()];
+        boolean[] used = new boolean[previousChildren.size()];
+        int cursor = 0;
+        for (int i = 0; i < children.size(); i++) {
+            ElementTemplate child = children.get(i);
+            // Elements with an id may have moved, others are matched in order.
+            int start = child.getId() != null ? 0 : cursor;
+            for (int j = start; j < previousChildren.size(); j++) {
+                ElementTemplate previousChild = previousChildren.get(j);
+                if (!used[j] && isSameType(previousChild, child)
+                        && isSameId(previousChild, child)) {
+                    used[j] = true;
+                    if (updateElement(components.get(j), previousChild,
+                            child, false)) {
+                        matched[i] = components.get(j);
+                    }
+                    if (child.getId() == null) {
+                        cursor = j + 1;
+                    }
+                    break;
+                }
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * Inflates the given element without attaching it to a parent. The
+     * attributes handled after attaching are left to the caller.
+     */
+    private Component createDetached(ElementTemplate element) {
+        if (LazyComponent.isLazy(element)) {
+            LazyComponent placeholder = new LazyComponent(element, inflater,
+                    noOverrides);
+            lazyComponents.add(placeholder);
+            inflater.assignPlaceholderAttributes(placeholder, element);
+            return placeholder;
+        }
+        try {
+            Component component = inflater.createComponent(element,
+                    noOverrides, componentsById);
+            inflater.inflateChildren(element, component, null, noOverrides,
+                    componentsById, lazyComponents);
+            return component;
+        } catch (ComponentInstantiationException e) {
+            throw new LayoutInflaterException(e.getMessage(), e);
+        }
+    }
+
+    private static int getIndex(ComponentContainer container,
+            Component component) {
+        if (container instanceof AbstractOrderedLayout) {
+            return ((AbstractOrderedLayout) container)
+                    .getComponentIndex(component);
+        }
+        return ((CssLayout) container).getComponentIndex(component);
+    }
+
+    private static void addComponent(ComponentContainer container,
+            Component component, int index) {
+        if (container instanceof AbstractOrderedLayout) {
+            ((AbstractOrderedLayout) container).addComponent(component, index);
+        } else {
+            ((CssLayout) container).addComponent(component, index);
+        }
+    }
+
+    private static boolean isSameType(ElementTemplate previous,
+            ElementTemplate element) {
+        return previous.getNamespace().equals(element.getNamespace())
+                && previous.getClassName().equals(element.getClassName());
+    }
+
+    private static boolean isSameId(ElementTemplate previous,
+            ElementTemplate element) {
+        return previous.getId() == null ? element.getId() == null : previous
+                .getId().equals(element.getId());
+    }
+
+    /**
+     * Returns {@code true} if the given elements and their children are
+     * identical.
+     */
+    static boolean isSameElement(ElementTemplate previous,
+            ElementTemplate element) {
+        if (!isSameType(previous, element)
+                || !previous.getAttributeNamespaces().equals(
+                        element.getAttributeNamespaces())
+                || previous.getChildren().size() != element.getChildren()
+                        .size()) {
+            return false;
+        }
+        for (String namespace : element.getAttributeNamespaces()) {
+            if (!previous.getAttributes(namespace).equals(
+                    element.getAttributes(namespace))) {
+                return false;
+            }
+        }
+        for (int i = 0; i < element.getChildren().size(); i++) {
+            if (!isSameElement(previous.getChildren().get(i), element
+                    .getChildren().get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,234 @@
+package org.vaadin.teemu.clara.inflater;
+
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.vaadin.teemu.clara.inflater.template.ElementTemplate;
+
+import com.vaadin.shared.Registration;
+import com.vaadin.ui.Component;
+import com.vaadin.ui.CustomComponent;
+import com.vaadin.ui.HasComponents;
+import com.vaadin.ui.TabSheet;
+import com.vaadin.ui.TabSheet.SelectedTabChangeEvent;
+import com.vaadin.ui.TabSheet.SelectedTabChangeListener;
+
+/**
+ * Placeholder for a layout element marked with {@code clara:lazy="true"}
+ * (where the {@code clara} prefix is bound to {@value #CLARA_NAMESPACE}). The
+ * element and its children are inflated the first time the placeholder is
+ * shown: when it is sent to the client, when it becomes the selected tab of a
+ * {@link TabSheet} or when {@link #inflate()} is called. The inflated
+ * component becomes the composition root of the placeholder.
+ *
+ * The placeholder gets the {@code caption}, {@code icon}, {@code width} and
+ * {@code height} attributes of the element, so that a {@link TabSheet} can
+ * show the tab before the content is inflated. Attributes of the
+ * {@code urn:vaadin:parent} namespace are applied to the placeholder.
+ *
+ * If the placeholder is serialized before it has been inflated, it is
+ * inflated with a default {@link LayoutInflater} after deserialization, so
+ * attribute filters and handlers are not applied to it.
+ */
+public class LazyComponent extends CustomComponent {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Namespace of the Clara specific attributes.
+     */
+    public static final String CLARA_NAMESPACE = "urn:vaadin:clara";
+
+    /**
+     * Name of the attribute marking an element lazy.
+     */
+    public static final String LAZY_ATTRIBUTE = "lazy";
+
+    private static final Method INFLATE_METHOD;
+
+    static {
+        try {
+            INFLATE_METHOD = InflateListener.class.getDeclaredMethod(
+                    "componentInflated", InflateEvent.class);
+        } catch (NoSuchMethodException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private ElementTemplate template;
+    private Map<String, Component> componentOverrideMap;
+    private transient LayoutInflater inflater;
+    private Registration tabSelectionRegistration;
+    private boolean inflated;
+
+    LazyComponent(ElementTemplate template, LayoutInflater inflater,
+            Map<String, Component> componentOverrideMap) {
+        this.template = template;
+        this.inflater = inflater;
+        this.componentOverrideMap = componentOverrideMap;
+        setWidthUndefined();
+        setHeightUndefined();
+    }
+
+    protected Logger getLogger() {
+        return Logger.getLogger(LazyComponent.class.getName());
+    }
+
+    /**
+     * Returns {@code true} if the given element is marked lazy.
+     */
+    static boolean isLazy(ElementTemplate element) {
+        return "true".equals(element.getAttributes(CLARA_NAMESPACE).get(
+                LAZY_ATTRIBUTE));
+    }
+
+    /**
+     * Returns {@code true} if the given {@code id} is assigned to a component
+     * of this placeholder that hasn't been inflated yet.
+     */
+    public boolean isDeferred(String id) {
+        return !inflated && containsId(template, id);
+    }
+
+    private static boolean containsId(ElementTemplate element, String id) {
+        if (id.equals(element.getId())) {
+            return true;
+        }
+        for (ElementTemplate child : element.getChildren()) {
+            if (containsId(child, id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isInflated() {
+        return inflated;
+    }
+
+    /**
+     * Returns the inflated component or {@code null} if this placeholder
+     * hasn't been inflated yet.
+     */
+    public Component getInflatedComponent() {
+        return getCompositionRoot();
+    }
+
+    /**
+     * Inflates the element of this placeholder unless already inflated and
+     * notifies the {@link InflateListener}s.
+     *
+     * @throws LayoutInflaterException
+     *             in case of an error in the inflation process.
+     */
+    public void inflate() {
+        if (inflated) {
+            return;
+        }
+        if (inflater == null) {
+            getLogger().warning(
+                    "Inflating deserialized " + template
+                            + " without attribute filters and handlers.");
+            inflater = new LayoutInflater();
+        }
+        InflationResult result = inflater.inflateLazy(template,
+                componentOverrideMap);
+        inflated = true;
+        template = null;
+        componentOverrideMap = null;
+        inflater = null;
+        removeTabSelectionListener();
+
+        Component component = result.getRoot();
+        setWidth(component.getWidth(), component.getWidthUnits());
+        setHeight(component.getHeight(), component.getHeightUnits());
+        setCompositionRoot(component);
+        fireEvent(new InflateEvent(this, result));
+    }
+
+    @Override
+    public void setParent(HasComponents parent) {
+        removeTabSelectionListener();
+        super.setParent(parent);
+        if (parent instanceof TabSheet && !inflated) {
+            TabSheet tabSheet = (TabSheet) parent;
+            if (tabSheet.getSelectedTab() == this) {
+                inflate();
+            } else {
+                tabSelectionRegistration = tabSheet
+                        .addSelectedTabChangeListener(new TabSelectionListener(
+                                this));
+            }
+        }
+    }
+
+    @Override
+    public void beforeClientResponse(boolean initial) {
+        // Only called for components that are visible on the client.
+        inflate();
+        super.beforeClientResponse(initial);
+    }
+
+    private void removeTabSelectionListener() {
+        if (tabSelectionRegistration != null) {
+            tabSelectionRegistration.remove();
+            tabSelectionRegistration = null;
+        }
+    }
+
+    /**
+     * Adds a listener notified after this placeholder has been inflated.
+     */
+    public Registration addInflateListener(InflateListener listener) {
+        return addListener(InflateEvent.class, listener, INFLATE_METHOD);
+    }
+
+    /**
+     * Event fired after a {@link LazyComponent} has been inflated.
+     */
+    public static class InflateEvent extends Component.Event {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient InflationResult inflationResult;
+
+        public InflateEvent(LazyComponent source,
+                InflationResult inflationResult) {
+            super(source);
+            this.inflationResult = inflationResult;
+        }
+
+        /**
+         * Returns the result of inflating the element of the placeholder.
+         */
+        public InflationResult getInflationResult() {
+            return inflationResult;
+        }
+    }
+
+    public interface InflateListener extends Serializable {
+
+        void componentInflated(InflateEvent event);
+    }
+
+    private static class TabSelectionListener implements
+            SelectedTabChangeListener {
+
+        private static final long serialVersionUID = 1L;
+
+        private final LazyComponent placeholder;
+
+        TabSelectionListener(LazyComponent placeholder) {
+            this.placeholder = placeholder;
+        }
+
+        @Override
+        public void selectedTabChange(SelectedTabChangeEvent event) {
+            if (event.getTabSheet().getSelectedTab() == placeholder) {
+                placeholder.inflate();
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package org.vaadin.teemu.clara.inflater;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outcome of a {@link LayoutPreloader} run: the preload time and the errors
+ * of each layout.
+ */
+public class PreloadReport {
+
+    private final List<Layout> layouts;
+    private final long nanos;
+
+    PreloadReport(List<Layout> layouts, long nanos) {
+        this.layouts = Collections.unmodifiableList(layouts);
+        this.nanos = nanos;
+    }
+
+    /**
+     * Returns the preloaded layouts in the order of their resource names.
+     */
+    public List<Layout> getLayouts() {
+        return layouts;
+    }
+
+    /**
+     * Returns the layouts that failed to preload.
+     */
+    public List<Layout> getFailures() {
+        List<Layout> failures = new ArrayList<Layout>();
+        for (Layout layout : layouts) {
+            if (!layout.isSuccessful()) {
+                failures.add(layout);
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Returns {@code true} if all layouts were preloaded without errors.
+     */
+    public boolean isSuccessful() {
+        return getFailures().isEmpty();
+    }
+
+    /**
+     * Returns the wall-clock time of the whole preload in the given unit.
+     */
+    public long getTime(TimeUnit unit) {
+        return unit.convert(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Throws a {@link LayoutInflaterException} listing the errors of all
+     * failed layouts, if any. Call this at application startup to fail the
+     * deployment instead of the first request showing a broken layout.
+     *
+     * @throws LayoutInflaterException
+     *             if any of the layouts failed to preload.
+     */
+    public void throwIfFailed() {
+        List<Layout> failures = getFailures();
+        if (failures.isEmpty()) {
+            return;
+        }
+        StringBuilder message = new StringBuilder();
+        message.append(failures.size()).append(" of ").append(layouts.size())
+                .append(" layouts failed to preload:");
+        for (Layout failure : failures) {
+            for (String error : failure.getErrors()) {
+                message.append("\n").append(failure.getName()).append(": ")
+                        .append(error);
+            }
+        }
+        throw new LayoutInflaterException(message.toString());
+    }
+
+    @Override
+    public String toString() {
+        return "Preloaded " + layouts.size() + " layouts in "
+                + getTime(TimeUnit.MILLISECONDS) + " ms, "
+                + getFailures().size() + " failed.";
+    }
+
+    /**
+     * Preload time and errors of a single layout.
+     */
+    public static class Layout {
+
+        private final String name;
+        private final long nanos;
+        private final List<String> errors;
+
+        Layout(String name, long nanos, List<String> errors) {
+            this.name = name;
+            this.nanos = nanos;
+            this.errors = Collections.unmodifiableList(errors);
+        }
+
+        /**
+         * Returns the resource name of the layout.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the time it took to parse, validate and warm up the layout
+         * in the given unit.
+         */
+        public long getTime(TimeUnit unit) {
+            return unit.convert(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Returns the errors found in the layout, or an empty list.
+         */
+        public List<String> getErrors() {
+            return errors;
+        }
+
+        public boolean isSuccessful() {
+            return errors.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return name + " (" + getTime(TimeUnit.MICROSECONDS) + " us"
+                    + (errors.isEmpty() ? ")" : ", " + errors + ")");
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package org.vaadin.teemu.clara.inflater.filter;
+
+import java.util.Map;
+
+import org.vaadin.teemu.clara.inflater.template.LayoutTemplate;
+
+import com.vaadin.ui.Component;
+
+/**
+ * Filter that receives the attribute values as written in the layout XML, all
+ * attributes of an element at once, before they are converted and assigned.
+ * Unlike an {@link AttributeFilter} it is not called for each value, so it can
+ * for example look up the translations of all captions of a layout in a single
+ * batch and skip the attributes that don't need filtering.
+ * 
+ * <br />
+ * <br />
+ * Registered with
+ * {@link org.vaadin.teemu.clara.inflater.LayoutInflater#addBulkAttributeFilter(BulkAttributeFilter)}.
+ * The {@link AttributeFilter}s are applied to the values returned by the bulk
+ * filters.
+ */
+public interface BulkAttributeFilter {
+
+    /**
+     * Called once with the whole {@link LayoutTemplate} before it is inflated
+     * or used to update a component tree.
+     * 
+     * @param template
+     */
+    void prepare(LayoutTemplate template);
+
+    /**
+     * Returns the attributes of the given namespace to assign to the given
+     * {@link Component}. The given {@link Map} is shared by all inflations of
+     * the template and must not be modified: return it as is if nothing needs
+     * filtering, otherwise return a filtered copy.
+     * 
+     * @param component
+     * @param namespace
+     *            namespace of the attributes, empty for the component's own
+     *            attributes.
+     * @param attributes
+     *            attribute values by name, never empty.
+     * @return the attributes to assign.
+     */
+    Map<String, String> filter(Component component, String namespace,
+            Map<String, String> attributes);
+
+}
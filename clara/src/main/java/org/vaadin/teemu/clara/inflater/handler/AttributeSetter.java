@@ -0,0 +1,265 @@
+package org.vaadin.teemu.clara.inflater.handler;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import org.vaadin.teemu.clara.inflater.parser.AttributeParser;
+import org.vaadin.teemu.clara.inflater.parser.ConversionCache;
+import org.vaadin.teemu.clara.inflater.parser.PrimitiveAttributeParser;
+import org.vaadin.teemu.clara.inflater.parser.ShareableValueParser;
+
+import com.vaadin.ui.Component;
+
+/**
+ * Resolved setter of a single attribute for a single component class: the
+ * preferred setter {@link Method}, the type of the value it accepts and the
+ * {@link AttributeParser} that converts attribute values to that type.
+ * Instances are immutable and shared between all inflations.
+ *
+ * <br />
+ * <br />
+ * The setter is invoked through a {@link MethodHandle} instead of
+ * {@link Method#invoke(Object, Object...)}. Setters taking an {@code int},
+ * {@code float} or {@code boolean} additionally get an exactly typed handle so
+ * that literal values can be passed without boxing.
+ */
+public final class AttributeSetter {
+
+    /**
+     * Marker for attributes that have no setter in the component class.
+     */
+    static final AttributeSetter NONE = new AttributeSetter();
+
+    private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+    private final Method method;
+    private final Class<?> valueType;
+    private final AttributeParser parser;
+    private final boolean layoutSetter;
+    // Cache of the parser class the converted values are taken from, null
+    // unless the parser declares the values shareable.
+    private final ConversionCache conversionCache;
+
+    // Target and arguments erased to Object, returns void.
+    private final MethodHandle invoker;
+    // Primitive value kept exact, null unless valueType is int/float/boolean
+    // and values are converted by the PrimitiveAttributeParser.
+    private final MethodHandle primitiveInvoker;
+
+    private AttributeSetter() {
+        method = null;
+        valueType = null;
+        parser = null;
+        layoutSetter = false;
+        conversionCache = null;
+        invoker = null;
+        primitiveInvoker = null;
+    }
+
+    AttributeSetter(Method method, Class<?> valueType, AttributeParser parser)
+            throws IllegalAccessException {
+        this.method = method;
+        this.valueType = valueType;
+        this.parser = parser;
+        conversionCache = parser instanceof ShareableValueParser
+                && ((ShareableValueParser) parser).isShareable(valueType) ? ConversionCache
+                .forParser((ShareableValueParser) parser) : null;
+
+        int parameterCount = method.getParameterTypes().length;
+        layoutSetter = parameterCount == 2;
+
+        MethodHandle handle = unreflect(method);
+        invoker = handle.asType(MethodType.genericMethodType(
+                parameterCount + 1).changeReturnType(void.class));
+
+        if (isExactPrimitive(valueType, parser)) {
+            MethodType primitiveType = MethodType.genericMethodType(
+                    parameterCount).appendParameterTypes(valueType)
+                    .changeReturnType(void.class);
+            primitiveInvoker = handle.asType(primitiveType);
+        } else {
+            primitiveInvoker = null;
+        }
+    }
+
+    private static MethodHandle unreflect(Method method)
+            throws IllegalAccessException {
+        try {
+            return lookup.unreflect(method);
+        } catch (IllegalAccessException e) {
+            // Public method declared in a non-public class.
+            method.setAccessible(true);
+            return lookup.unreflect(method);
+        }
+    }
+
+    private static boolean isExactPrimitive(Class<?> valueType,
+            AttributeParser parser) {
+        return (valueType == Integer.TYPE || valueType == Float.TYPE || valueType == Boolean.TYPE)
+                && parser != null
+                && parser.getClass() == PrimitiveAttributeParser.class;
+    }
+
+    /**
+     * Returns the setter {@link Method}.
+     */
+    public Method getMethod() {
+        return method;
+    }
+
+    /**
+     * Returns the type of the attribute value accepted by the setter or
+     * {@code null} if the setter takes no value.
+     */
+    public Class<?> getValueType() {
+        return valueType;
+    }
+
+    /**
+     * Returns the {@link AttributeParser} for the value type or {@code null}
+     * if the setter takes no value or no parser supports the value type.
+     */
+    public AttributeParser getParser() {
+        return parser;
+    }
+
+    /**
+     * Converts the given literal to the value type with the
+     * {@link AttributeParser}. Values the parser declares shareable are
+     * taken from the {@link ConversionCache} of the parser class.
+     *
+     * @param literal
+     *            non-empty attribute value.
+     * @param component
+     *            the component the attribute belongs to.
+     * @return the converted value.
+     */
+    public Object getValueAs(String literal, Component component) {
+        if (conversionCache != null) {
+            return conversionCache.getValueAs((ShareableValueParser) parser,
+                    literal, valueType, component);
+        }
+        return parser.getValueAs(literal, valueType, component);
+    }
+
+    /**
+     * Returns {@code true} if converted values are taken from the
+     * {@link ConversionCache}.
+     */
+    boolean isShareable() {
+        return conversionCache != null;
+    }
+
+    /**
+     * Returns {@code true} if literal values can be passed to this setter
+     * with {@link #invokeLiteral(Object, Object, String)} without boxing.
+     */
+    public boolean hasPrimitiveInvoker() {
+        return primitiveInvoker != null;
+    }
+
+    /**
+     * Invokes a setter that takes no parameters.
+     *
+     * @param target
+     *            object to invoke the setter on.
+     * @throws InvocationTargetException
+     *             wrapping anything thrown by the setter.
+     */
+    public void invoke(Object target) throws InvocationTargetException {
+        try {
+            invoker.invokeExact(target);
+        } catch (Throwable t) {
+            throw new InvocationTargetException(t);
+        }
+    }
+
+    /**
+     * Invokes the setter with the given (already converted) value.
+     *
+     * @param target
+     *            object to invoke the setter on.
+     * @param component
+     *            the component passed as the first parameter of layout
+     *            setters, ignored by single parameter setters.
+     * @param value
+     *            value to set.
+     * @throws InvocationTargetException
+     *             wrapping anything thrown by the setter.
+     */
+    public void invoke(Object target, Object component, Object value)
+            throws InvocationTargetException {
+        try {
+            if (layoutSetter) {
+                invoker.invokeExact(target, component, value);
+            } else {
+                invoker.invokeExact(target, value);
+            }
+        } catch (Throwable t) {
+            throw new InvocationTargetException(t);
+        }
+    }
+
+    /**
+     * Parses the given literal straight into the primitive value type of this
+     * setter and invokes it without boxing. May only be called if
+     * {@link #hasPrimitiveInvoker()} returns {@code true}.
+     *
+     * @param target
+     *            object to invoke the setter on.
+     * @param component
+     *            the component passed as the first parameter of layout
+     *            setters, ignored by single parameter setters.
+     * @param literal
+     *            non-empty attribute value.
+     * @throws NumberFormatException
+     *             if the literal is not a valid number.
+     * @throws InvocationTargetException
+     *             wrapping anything thrown by the setter.
+     */
+    public void invokeLiteral(Object target, Object component, String literal)
+            throws InvocationTargetException {
+        if (valueType == Integer.TYPE) {
+            int value = Integer.parseInt(literal);
+            try {
+                if (layoutSetter) {
+                    primitiveInvoker.invokeExact(target, component, value);
+                } else {
+                    primitiveInvoker.invokeExact(target, value);
+                }
+            } catch (Throwable t) {
+                throw new InvocationTargetException(t);
+            }
+        } else if (valueType == Float.TYPE) {
+            float value = Float.parseFloat(literal);
+            try {
+                if (layoutSetter) {
+                    primitiveInvoker.invokeExact(target, component, value);
+                } else {
+                    primitiveInvoker.invokeExact(target, value);
+                }
+            } catch (Throwable t) {
+                throw new InvocationTargetException(t);
+            }
+        } else {
+            boolean value = Boolean.parseBoolean(literal);
+            try {
+                if (layoutSetter) {
+                    primitiveInvoker.invokeExact(target, component, value);
+                } else {
+                    primitiveInvoker.invokeExact(target, value);
+                }
+            } catch (Throwable t) {
+                throw new InvocationTargetException(t);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "AttributeSetter[" + method + "]";
+    }
+}
@@ -0,0 +1,32 @@
+package org.vaadin.teemu.clara.inflater.handler;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Per component class index from attribute name to the resolved
+ * {@link AttributeSetter}. The index is stored in a {@link ClassValue} so the
+ * entries live and die together with the component classes and don't keep
+ * redeployed applications in memory.
+ */
+class AttributeSetterIndex {
+
+    private final ClassValue<ConcurrentMap<String, AttributeSetter>> setters = new ClassValue<ConcurrentMap<String, AttributeSetter>>() {
+
+        @Override
+        protected ConcurrentMap<String, AttributeSetter> computeValue(
+                Class<?> componentClass) {
+            return new ConcurrentHashMap<String, AttributeSetter>();
+        }
+    };
+
+    /**
+     * Returns the attribute-to-setter map of the given component class. The
+     * map contains {@link AttributeSetter#NONE} for attributes known to have
+     * no setter.
+     */
+    ConcurrentMap<String, AttributeSetter> getSetters(Class<?> componentClass) {
+        return setters.get(componentClass);
+    }
+
+}
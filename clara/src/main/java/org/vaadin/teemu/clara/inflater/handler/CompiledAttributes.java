@@ -0,0 +1,139 @@
+package org.vaadin.teemu.clara.inflater.handler;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.vaadin.ui.Component;
+
+/**
+ * Attributes of a single element resolved against a known target class by a
+ * {@link DefaultAttributeHandler} or {@link LayoutAttributeHandler} without
+ * {@link org.vaadin.teemu.clara.inflater.filter.AttributeFilter}s. The setters
+ * are looked up once and the values of primitive and shareable types are
+ * converted once, so assigning the attributes only invokes the setters.
+ * Instances are immutable and shared between all inflations.
+ */
+public final class CompiledAttributes {
+
+    // Setter without parameters.
+    private static final byte NO_VALUE = 0;
+    // Value converted when compiled.
+    private static final byte CONSTANT = 1;
+    // Literal converted on each assignment.
+    private static final byte CONVERT = 2;
+
+    private final AttributeSetter[] setters;
+    private final byte[] kinds;
+    private final Object[] values;
+
+    private CompiledAttributes(List<AttributeSetter> setters,
+            List<Byte> kinds, List<Object> values) {
+        this.setters = setters.toArray(new AttributeSetter[setters.size()]);
+        this.kinds = new byte[kinds.size()];
+        for (int i = 0; i < this.kinds.length; i++) {
+            this.kinds[i] = kinds.get(i);
+        }
+        this.values = values.toArray();
+    }
+
+    /**
+     * Resolves the given attributes the way the given handler assigns them to
+     * instances of the given {@code targetClass}. Returns {@code null} if the
+     * attributes cannot be compiled, for example because a literal isn't a
+     * valid value of its setter. Assigning such attributes fails in the
+     * handler as well.
+     *
+     * @param handler
+     *            a {@link DefaultAttributeHandler} or
+     *            {@link LayoutAttributeHandler}, subclasses are not
+     *            supported.
+     * @param targetClass
+     *            class of the component, or of the parent container for
+     *            layout attributes.
+     * @param attributes
+     *            attributes of the namespace of the handler.
+     * @return the compiled attributes or {@code null}.
+     */
+    public static CompiledAttributes compile(DefaultAttributeHandler handler,
+            Class<? extends Component> targetClass,
+            Map<String, String> attributes) {
+        boolean layout = handler instanceof LayoutAttributeHandler;
+        List<AttributeSetter> setters = new ArrayList<AttributeSetter>();
+        List<Byte> kinds = new ArrayList<Byte>();
+        List<Object> values = new ArrayList<Object>();
+        try {
+            Map<String, AttributeSetter> index = handler
+                    .getSetters(targetClass);
+            for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+                AttributeSetter setter = handler.getSetter(index,
+                        attribute.getKey(), targetClass);
+                if (setter == null
+                        || (setter.getValueType() != null && setter
+                                .getParser() == null)) {
+                    continue;
+                }
+                String literal = attribute.getValue();
+                setters.add(setter);
+                if (setter.getValueType() == null) {
+                    kinds.add(NO_VALUE);
+                    values.add(null);
+                } else if (!layout
+                        && (literal == null || literal.length() == 0)) {
+                    // Passed to the setter without conversion.
+                    kinds.add(CONSTANT);
+                    values.add(literal);
+                } else if (setter.hasPrimitiveInvoker() || setter.isShareable()) {
+                    kinds.add(CONSTANT);
+                    values.add(setter.getValueAs(literal, null));
+                } else {
+                    kinds.add(CONVERT);
+                    values.add(literal);
+                }
+            }
+        } catch (RuntimeException e) {
+            // Left for the handler to report.
+            return null;
+        }
+        return new CompiledAttributes(setters, kinds, values);
+    }
+
+    /**
+     * Returns {@code true} if there are no setters to invoke.
+     */
+    public boolean isEmpty() {
+        return setters.length == 0;
+    }
+
+    /**
+     * Invokes the setters on the given target.
+     *
+     * @param target
+     *            the component, or its parent container for layout
+     *            attributes.
+     * @param component
+     *            the component the attributes belong to.
+     * @throws AttributeHandlerException
+     *             if a setter throws an exception.
+     */
+    public void assign(Object target, Component component) {
+        try {
+            for (int i = 0; i < setters.length; i++) {
+                switch (kinds[i]) {
+                case NO_VALUE:
+                    setters[i].invoke(target);
+                    break;
+                case CONSTANT:
+                    setters[i].invoke(target, component, values[i]);
+                    break;
+                default:
+                    setters[i].invoke(target, component, setters[i]
+                            .getValueAs((String) values[i], component));
+                }
+            }
+        } catch (InvocationTargetException e) {
+            throw new AttributeHandlerException(e);
+        }
+    }
+}
@@ -6,12 +6,11 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
-import org.vaadin.teemu.clara.inflater.filter.AttributeContext;
 import org.vaadin.teemu.clara.inflater.filter.AttributeFilter;
+import org.vaadin.teemu.clara.inflater.listener.InflationListener;
 import org.vaadin.teemu.clara.inflater.parser.AttributeParser;
 import org.vaadin.teemu.clara.inflater.parser.ComponentPositionParser;
 import org.vaadin.teemu.clara.inflater.parser.EnumAttributeParser;
@@ -29,9 +28,31 @@ public class DefaultAttributeHandler implements AttributeHandler {
 
     private final List<AttributeParser> attributeParsers = new ArrayList<AttributeParser>();
     private final List<AttributeFilter> attributeFilters;
+    // Snapshot of the attributeFilters, walked without copying and rebuilt
+    // when the list no longer matches it.
+    private volatile AttributeFilter[] compiledFilters;
+    private final AttributeSetterIndex setterIndex;
+    private InflationListener inflationListener;
 
+    private static final ClassValue<AttributeSetterIndex> setterIndexes = new ClassValue<AttributeSetterIndex>() {
+
+        @Override
+        protected AttributeSetterIndex computeValue(Class<?> handlerClass) {
+            return new AttributeSetterIndex();
+        }
+    };
+
+    /**
+     * Creates a handler applying the {@link AttributeFilter}s of the given
+     * list. The list is not copied, filters added to or removed from it later
+     * are applied to the attributes assigned after the change.
+     *
+     * @param attributeFilters
+     */
     public DefaultAttributeHandler(List<AttributeFilter> attributeFilters) {
         this.attributeFilters = attributeFilters;
+        this.setterIndex = setterIndexes.get(getClass());
+        updateAttributeFilters();
 
         // Setup the default AttributeHandlers.
         attributeParsers.add(new PrimitiveAttributeParser());
@@ -40,6 +61,57 @@ public class DefaultAttributeHandler implements AttributeHandler {
         attributeParsers.add(new ComponentPositionParser());
     }
 
+    /**
+     * Compiles the {@link AttributeFilter}s of the list given to the
+     * constructor into the filter chain. Changes to the list are also picked
+     * up when the next attribute is assigned, calling this only saves the
+     * comparison. The {@link org.vaadin.teemu.clara.inflater.LayoutInflater}
+     * this handler is added to calls it whenever its filters change.
+     */
+    public void updateAttributeFilters() {
+        compiledFilters = attributeFilters
+                .toArray(new AttributeFilter[attributeFilters.size()]);
+    }
+
+    /**
+     * Returns the compiled filter chain, compiled again first if the list
+     * given to the constructor has been modified since.
+     */
+    private AttributeFilter[] getAttributeFilters() {
+        AttributeFilter[] filters = compiledFilters;
+        if (!isCompiled(filters)) {
+            updateAttributeFilters();
+            filters = compiledFilters;
+        }
+        return filters;
+    }
+
+    private boolean isCompiled(AttributeFilter[] filters) {
+        if (filters.length != attributeFilters.size()) {
+            return false;
+        }
+        int i = 0;
+        for (AttributeFilter filter : attributeFilters) {
+            if (filters[i++] != filter) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sets the listener notified of the setter invocations ({@code null} for
+     * none). Set by the {@link org.vaadin.teemu.clara.inflater.LayoutInflater}
+     * this handler is added to.
+     */
+    public void setInflationListener(InflationListener inflationListener) {
+        this.inflationListener = inflationListener;
+    }
+
+    protected InflationListener getInflationListener() {
+        return inflationListener;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -67,80 +139,224 @@ public class DefaultAttributeHandler implements AttributeHandler {
             return;
         }
 
+        InflationListener listener = inflationListener;
         try {
+            Map<String, AttributeSetter> setters = getSetters(component
+                    .getClass());
             for (Map.Entry<String, String> attribute : attributes.entrySet()) {
-                Method setter = getWriteMethod(attribute.getKey(),
-                        component.getClass());
-                if (setter != null) {
-                    if (setter.getParameterTypes().length == 0) {
-                        // Setter method without any parameters.
-                        setter.invoke(component);
+                AttributeSetter setter = getSetter(setters,
+                        attribute.getKey(), component.getClass());
+                if (setter == null
+                        || (setter.getValueType() != null && setter
+                                .getParser() == null)) {
+                    continue;
+                }
+                long start = listener != null ? System.nanoTime() : 0;
+                long filterNanos = 0;
+                if (setter.getValueType() == null) {
+                    // Setter method without any parameters.
+                    setter.invoke(component);
+                } else if (setter.getParser() != null) {
+                    // We have a parser that knows how to handle conversion for
+                    // this property.
+                    String attributeValue = attribute.getValue();
+                    if (attributeValue == null || attributeValue.length() == 0) {
+                        // No need for conversion.
+                        filterNanos = invokeWithAttributeFilters(listener,
+                                setter, component, component, attributeValue);
+                    } else if (setter.hasPrimitiveInvoker()
+                            && !hasAttributeFilters()) {
+                        // Nothing can change the value -> skip boxing.
+                        setter.invokeLiteral(component, component,
+                                attributeValue);
                     } else {
-                        AttributeParser parser = getParserFor(setter
-                                .getParameterTypes()[0]);
-                        if (parser != null) {
-                            // We have a handler that knows how to handle
-                            // conversion
-                            // for this property.
-                            String attributeValue = attribute.getValue();
-                            if (attributeValue == null
-                                    || attributeValue.length() == 0) {
-                                // No need for conversion.
-                                invokeWithAttributeFilters(setter, component,
-                                        attributeValue);
-                            } else {
-                                // Ask the AttributeHandler to convert the
-                                // value.
-                                invokeWithAttributeFilters(setter, component,
-                                        parser.getValueAs(attributeValue,
-                                                setter.getParameterTypes()[0],
-                                                component));
-                            }
-                        }
+                        // Ask the AttributeParser to convert the value.
+                        filterNanos = invokeWithAttributeFilters(listener,
+                                setter, component, component,
+                                setter.getValueAs(attributeValue, component));
                     }
                 }
+                if (listener != null) {
+                    listener.setterInvoked(component, attribute.getKey(),
+                            setter.getMethod(), start, System.nanoTime(),
+                            filterNanos);
+                }
             }
         } catch (SecurityException e) {
             throw new AttributeHandlerException(e);
         } catch (IllegalArgumentException e) {
             throw new AttributeHandlerException(e);
-        } catch (IllegalAccessException e) {
-            throw new AttributeHandlerException(e);
         } catch (InvocationTargetException e) {
             throw new AttributeHandlerException(e);
         }
     }
 
+    /**
+     * Returns {@code true} if there are {@link AttributeFilter}s that may
+     * change attribute values before they are set.
+     */
+    protected boolean hasAttributeFilters() {
+        return getAttributeFilters().length > 0;
+    }
+
+    /**
+     * Invokes the given {@link AttributeSetter} with the given value after
+     * passing the value through all registered {@link AttributeFilter}s.
+     * 
+     * @param setter
+     *            setter to invoke.
+     * @param target
+     *            object to invoke the setter on.
+     * @param component
+     *            the component the attribute belongs to (passed as the first
+     *            parameter of layout setters).
+     * @param value
+     *            converted attribute value.
+     * @throws InvocationTargetException
+     *             if the setter throws an exception.
+     */
+    protected void invokeWithAttributeFilters(final AttributeSetter setter,
+            final Object target, final Object component, Object value)
+            throws InvocationTargetException {
+        AttributeFilter[] filters = getAttributeFilters();
+        if (filters.length == 0) {
+            setter.invoke(target, component, value);
+        } else {
+            new FilterChainContext(filters, setter.getMethod(), value) {
+
+                @Override
+                void invokeSetter(Object value) throws Exception {
+                    setter.invoke(target, component, value);
+                }
+            }.start();
+        }
+    }
+
+    /**
+     * Invokes the given {@link AttributeSetter} like
+     * {@link #invokeWithAttributeFilters(AttributeSetter, Object, Object, Object)}
+     * and returns the nanoseconds spent in the {@link AttributeFilter}s if a
+     * listener is given. Without a listener nothing is measured.
+     */
+    final long invokeWithAttributeFilters(InflationListener listener,
+            final AttributeSetter setter, final Object target,
+            final Object component, Object value)
+            throws InvocationTargetException {
+        if (listener == null) {
+            invokeWithAttributeFilters(setter, target, component, value);
+            return 0;
+        }
+        AttributeFilter[] filters = getAttributeFilters();
+        if (filters.length == 0) {
+            setter.invoke(target, component, value);
+            return 0;
+        }
+
+        long start = System.nanoTime();
+        // Time spent in the setter itself.
+        final long[] setterNanos = new long[1];
+        new FilterChainContext(filters, setter.getMethod(), value) {
+
+            @Override
+            void invokeSetter(Object value) throws Exception {
+                long setterStart = System.nanoTime();
+                try {
+                    setter.invoke(target, component, value);
+                } finally {
+                    setterNanos[0] = System.nanoTime() - setterStart;
+                }
+            }
+        }.start();
+        return System.nanoTime() - start - setterNanos[0];
+    }
+
+    /**
+     * Returns the index of already resolved {@link AttributeSetter}s of the
+     * given class. The setters are resolved with {@link #resolveSetter(String,
+     * Class)} and shared between all instances of the same handler class, so
+     * subclasses must resolve setters the same way regardless of instance
+     * state.
+     * 
+     * @param targetClass
+     *            class to look up setters from.
+     * @return attribute name to {@link AttributeSetter} map of the class.
+     */
+    protected final Map<String, AttributeSetter> getSetters(
+            Class<? extends Component> targetClass) {
+        return setterIndex.getSetters(targetClass);
+    }
+
+    /**
+     * Returns the {@link AttributeSetter} for the given attribute from the
+     * given index or resolves and stores it if the attribute hasn't been seen
+     * before for the class. Returns {@code null} if the class has no setter
+     * for the attribute.
+     */
+    protected final AttributeSetter getSetter(
+            Map<String, AttributeSetter> setters, String attributeName,
+            Class<? extends Component> targetClass) {
+        AttributeSetter setter = setters.get(attributeName);
+        if (setter == null) {
+            setter = resolveSetter(attributeName, targetClass);
+            if (setter == null) {
+                setter = AttributeSetter.NONE;
+            }
+            setters.put(attributeName, setter);
+        }
+        return setter != AttributeSetter.NONE ? setter : null;
+    }
+
+    /**
+     * Resolves the preferred setter for the given attribute of the given
+     * class. Called only once per handler class, target class and attribute
+     * name.
+     * 
+     * @param attributeName
+     * @param targetClass
+     * @return resolved {@link AttributeSetter} or {@code null} if no setter
+     *         exists.
+     */
+    protected AttributeSetter resolveSetter(String attributeName,
+            Class<? extends Component> targetClass) {
+        Method method = getWriteMethod(attributeName, targetClass);
+        if (method == null) {
+            return null;
+        }
+        try {
+            Class<?>[] parameterTypes = method.getParameterTypes();
+            if (parameterTypes.length == 0) {
+                return new AttributeSetter(method, null, null);
+            }
+            // The value is always the last parameter, layout setters take the
+            // Component as their first parameter.
+            Class<?> valueType = parameterTypes[parameterTypes.length - 1];
+            return new AttributeSetter(method, valueType,
+                    getParserFor(valueType));
+        } catch (IllegalAccessException e) {
+            throw new AttributeHandlerException(e);
+        }
+    }
+
     protected void invokeWithAttributeFilters(final Method methodToInvoke,
             final Object obj, final Object... args)
             throws IllegalArgumentException, IllegalAccessException,
             InvocationTargetException {
-
-        if (attributeFilters.isEmpty()) {
+        AttributeFilter[] filters = getAttributeFilters();
+        if (filters.length == 0) {
             methodToInvoke.invoke(obj, args);
         } else {
-            final LinkedList<AttributeFilter> filtersCopy = new LinkedList<AttributeFilter>(
-                    attributeFilters);
-            AttributeFilter firstFilter = filtersCopy.pop();
-            firstFilter.filter(new AttributeContext(methodToInvoke,
+            new FilterChainContext(filters, methodToInvoke,
                     args.length > 1 ? args[1] : args[0]) {
 
                 @Override
-                public void proceed() throws Exception {
-                    if (filtersCopy.size() > 0) {
-                        // More filters -> invoke them.
-                        filtersCopy.pop().filter(this);
+                void invokeSetter(Object value) throws Exception {
+                    if (args.length > 1) {
+                        methodToInvoke.invoke(obj, args[0], value);
                     } else {
-                        // No more filters -> time to invoke the actual
-                        // method.
-                        if (args.length > 1) {
-                            methodToInvoke.invoke(obj, args[0], this.getValue());
-                        } else {
-                            methodToInvoke.invoke(obj, this.getValue());
-                        }
+                        methodToInvoke.invoke(obj, value);
                     }
                 }
-            });
+            }.start();
         }
     }
 
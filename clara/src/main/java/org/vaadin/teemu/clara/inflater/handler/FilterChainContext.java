@@ -0,0 +1,45 @@
+package org.vaadin.teemu.clara.inflater.handler;
+
+import java.lang.reflect.Method;
+
+import org.vaadin.teemu.clara.inflater.filter.AttributeContext;
+import org.vaadin.teemu.clara.inflater.filter.AttributeFilter;
+
+/**
+ * {@link AttributeContext} that walks through a compiled array of
+ * {@link AttributeFilter}s and finally invokes the setter. The chain is
+ * started with {@link #start()} and must contain at least one filter.
+ */
+abstract class FilterChainContext extends AttributeContext {
+
+    private final AttributeFilter[] filters;
+    private int next;
+
+    FilterChainContext(AttributeFilter[] filters, Method setter, Object value) {
+        super(setter, value);
+        this.filters = filters;
+    }
+
+    /**
+     * Passes the value to the first filter.
+     */
+    void start() {
+        filters[next++].filter(this);
+    }
+
+    @Override
+    public void proceed() throws Exception {
+        if (next < filters.length) {
+            // More filters -> invoke them.
+            filters[next++].filter(this);
+        } else {
+            // No more filters -> time to invoke the actual method.
+            invokeSetter(getValue());
+        }
+    }
+
+    /**
+     * Invokes the setter with the filtered value.
+     */
+    abstract void invokeSetter(Object value) throws Exception;
+}
@@ -8,7 +8,7 @@ import java.util.List;
 import java.util.Map;
 
 import org.vaadin.teemu.clara.inflater.filter.AttributeFilter;
-import org.vaadin.teemu.clara.inflater.parser.AttributeParser;
+import org.vaadin.teemu.clara.inflater.listener.InflationListener;
 import org.vaadin.teemu.clara.util.AnyClassOrPrimitive;
 
 import com.vaadin.ui.Component;
@@ -46,24 +46,32 @@ public class LayoutAttributeHandler extends DefaultAttributeHandler {
 
         ComponentContainer container = (ComponentContainer) component
                 .getParent();
+        InflationListener listener = getInflationListener();
         try {
+            Map<String, AttributeSetter> setters = getSetters(container
+                    .getClass());
             for (Map.Entry<String, String> attribute : attributes.entrySet()) {
-                Method writeMethod = getWriteMethod(attribute.getKey(),
-                        container.getClass());
-                if (writeMethod != null) {
-                    AttributeParser parser = getParserFor(writeMethod
-                            .getParameterTypes()[1]);
-                    if (parser != null) {
-                        invokeWithAttributeFilters(writeMethod, container,
-                                component, parser.getValueAs(
-                                        attribute.getValue(),
-                                        writeMethod.getParameterTypes()[1],
-                                        component));
-                    }
+                AttributeSetter setter = getSetter(setters,
+                        attribute.getKey(), container.getClass());
+                if (setter == null || setter.getParser() == null) {
+                    continue;
+                }
+                long start = listener != null ? System.nanoTime() : 0;
+                long filterNanos = 0;
+                if (setter.hasPrimitiveInvoker() && !hasAttributeFilters()) {
+                    setter.invokeLiteral(container, component,
+                            attribute.getValue());
+                } else {
+                    filterNanos = invokeWithAttributeFilters(listener, setter,
+                            container, component, setter.getValueAs(
+                                    attribute.getValue(), component));
+                }
+                if (listener != null) {
+                    listener.setterInvoked(component, attribute.getKey(),
+                            setter.getMethod(), start, System.nanoTime(),
+                            filterNanos);
                 }
             }
-        } catch (IllegalAccessException e) {
-            throw new AttributeHandlerException(e);
         } catch (InvocationTargetException e) {
             throw new AttributeHandlerException(e);
         }
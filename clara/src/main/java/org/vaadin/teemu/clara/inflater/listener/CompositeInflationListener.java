@@ -0,0 +1,107 @@
+package org.vaadin.teemu.clara.inflater.listener;
+
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.util.List;
+
+import org.vaadin.teemu.clara.inflater.handler.AttributeHandler;
+import org.vaadin.teemu.clara.inflater.handler.AttributeHandler.Phase;
+import org.vaadin.teemu.clara.inflater.template.ElementTemplate;
+import org.vaadin.teemu.clara.inflater.template.LayoutTemplate;
+
+import com.vaadin.ui.Component;
+
+/**
+ * {@link InflationListener} forwarding the events to several listeners.
+ */
+public final class CompositeInflationListener implements InflationListener {
+
+    private final InflationListener[] listeners;
+
+    private CompositeInflationListener(InflationListener[] listeners) {
+        this.listeners = listeners;
+    }
+
+    /**
+     * Returns a listener forwarding the events to the given listeners:
+     * {@code null} if the list is empty, the listener itself if there's only
+     * one.
+     */
+    public static InflationListener of(List<InflationListener> listeners) {
+        if (listeners.isEmpty()) {
+            return null;
+        }
+        if (listeners.size() == 1) {
+            return listeners.get(0);
+        }
+        return new CompositeInflationListener(
+                listeners.toArray(new InflationListener[listeners.size()]));
+    }
+
+    @Override
+    public void parseStarted(String layoutName, long startNanos) {
+        for (InflationListener listener : listeners) {
+            listener.parseStarted(layoutName, startNanos);
+        }
+    }
+
+    @Override
+    public void parseFinished(LayoutTemplate template, long startNanos,
+            long endNanos) {
+        for (InflationListener listener : listeners) {
+            listener.parseFinished(template, startNanos, endNanos);
+        }
+    }
+
+    @Override
+    public void inflationStarted(LayoutTemplate template, long startNanos) {
+        for (InflationListener listener : listeners) {
+            listener.inflationStarted(template, startNanos);
+        }
+    }
+
+    @Override
+    public void inflationFinished(LayoutTemplate template, long startNanos,
+            long endNanos) {
+        for (InflationListener listener : listeners) {
+            listener.inflationFinished(template, startNanos, endNanos);
+        }
+    }
+
+    @Override
+    public void componentInstantiated(ElementTemplate element,
+            Component component, long startNanos, long endNanos) {
+        for (InflationListener listener : listeners) {
+            listener.componentInstantiated(element, component, startNanos,
+                    endNanos);
+        }
+    }
+
+    @Override
+    public void attributeHandlerFinished(ElementTemplate element,
+            AttributeHandler handler, Phase phase, long startNanos,
+            long endNanos) {
+        for (InflationListener listener : listeners) {
+            listener.attributeHandlerFinished(element, handler, phase,
+                    startNanos, endNanos);
+        }
+    }
+
+    @Override
+    public void setterInvoked(Component component, String attributeName,
+            Method setter, long startNanos, long endNanos, long filterNanos) {
+        for (InflationListener listener : listeners) {
+            listener.setterInvoked(component, attributeName, setter,
+                    startNanos, endNanos, filterNanos);
+        }
+    }
+
+    @Override
+    public void memberBound(Object controller, String componentId,
+            Member member, long startNanos, long endNanos) {
+        for (InflationListener listener : listeners) {
+            listener.memberBound(controller, componentId, member,
+                    startNanos, endNanos);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package org.vaadin.teemu.clara.inflater.listener;
+
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+
+import org.vaadin.teemu.clara.inflater.handler.AttributeHandler;
+import org.vaadin.teemu.clara.inflater.handler.AttributeHandler.Phase;
+import org.vaadin.teemu.clara.inflater.template.ElementTemplate;
+import org.vaadin.teemu.clara.inflater.template.LayoutTemplate;
+
+import com.vaadin.ui.Component;
+
+/**
+ * Listener notified of the steps of parsing, inflating and binding a layout,
+ * for example to find out where the inflation time goes. Listeners are
+ * registered with
+ * {@link org.vaadin.teemu.clara.inflater.LayoutInflater#addInflationListener(InflationListener)}
+ * or {@link org.vaadin.teemu.clara.Clara.Builder#addInflationListener}.
+ *
+ * All timestamps are values of {@link System#nanoTime()}. The listener is
+ * called in the inflating thread, so implementations shared between
+ * inflaters must be thread-safe. None of the timestamps are taken when no
+ * listener is registered.
+ *
+ * Layouts created by generated
+ * {@link org.vaadin.teemu.clara.LayoutFactory LayoutFactories} and templates
+ * parsed by a {@link org.vaadin.teemu.clara.inflater.template.LayoutTemplateCache}
+ * are not reported.
+ *
+ * @see InflationListenerAdapter
+ * @see InflationStatistics
+ */
+public interface InflationListener {
+
+    /**
+     * Called before a layout is parsed.
+     *
+     * @param layoutName
+     *            name of the layout or {@code null} if the layout is read
+     *            from an anonymous stream.
+     * @param startNanos
+     */
+    void parseStarted(String layoutName, long startNanos);
+
+    /**
+     * Called after a layout has been parsed.
+     *
+     * @param template
+     *            the parsed layout.
+     * @param startNanos
+     * @param endNanos
+     */
+    void parseFinished(LayoutTemplate template, long startNanos, long endNanos);
+
+    /**
+     * Called before the component tree of a layout is inflated.
+     *
+     * @param template
+     * @param startNanos
+     */
+    void inflationStarted(LayoutTemplate template, long startNanos);
+
+    /**
+     * Called after the component tree of a layout has been inflated.
+     *
+     * @param template
+     * @param startNanos
+     * @param endNanos
+     */
+    void inflationFinished(LayoutTemplate template, long startNanos,
+            long endNanos);
+
+    /**
+     * Called after the component of an element has been instantiated (or
+     * taken from the overrides) before any attributes are assigned.
+     *
+     * @param element
+     * @param component
+     * @param startNanos
+     * @param endNanos
+     */
+    void componentInstantiated(ElementTemplate element, Component component,
+            long startNanos, long endNanos);
+
+    /**
+     * Called after an {@link AttributeHandler} has assigned the attributes of
+     * an element.
+     *
+     * @param element
+     * @param handler
+     * @param phase
+     * @param startNanos
+     * @param endNanos
+     */
+    void attributeHandlerFinished(ElementTemplate element,
+            AttributeHandler handler, Phase phase, long startNanos,
+            long endNanos);
+
+    /**
+     * Called after a setter has been invoked for an attribute by a
+     * {@link org.vaadin.teemu.clara.inflater.handler.DefaultAttributeHandler}.
+     *
+     * @param component
+     *            the component the attribute belongs to.
+     * @param attributeName
+     * @param setter
+     *            the invoked setter method.
+     * @param startNanos
+     * @param endNanos
+     * @param filterNanos
+     *            nanoseconds of the total time spent in the
+     *            {@link org.vaadin.teemu.clara.inflater.filter.AttributeFilter
+     *            AttributeFilters} instead of the setter.
+     */
+    void setterInvoked(Component component, String attributeName,
+            Method setter, long startNanos, long endNanos, long filterNanos);
+
+    /**
+     * Called after a member of a controller has been bound to a component.
+     *
+     * @param controller
+     * @param componentId
+     * @param member
+     *            the bound {@link java.lang.reflect.Field} or {@link Method}.
+     * @param startNanos
+     * @param endNanos
+     */
+    void memberBound(Object controller, String componentId, Member member,
+            long startNanos, long endNanos);
+}
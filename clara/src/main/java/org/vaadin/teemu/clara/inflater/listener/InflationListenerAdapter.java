@@ -0,0 +1,57 @@
+package org.vaadin.teemu.clara.inflater.listener;
+
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+
+import org.vaadin.teemu.clara.inflater.handler.AttributeHandler;
+import org.vaadin.teemu.clara.inflater.handler.AttributeHandler.Phase;
+import org.vaadin.teemu.clara.inflater.template.ElementTemplate;
+import org.vaadin.teemu.clara.inflater.template.LayoutTemplate;
+
+import com.vaadin.ui.Component;
+
+/**
+ * {@link InflationListener} with empty methods, extend it to only listen to
+ * some of the events.
+ */
+public class InflationListenerAdapter implements InflationListener {
+
+    @Override
+    public void parseStarted(String layoutName, long startNanos) {
+    }
+
+    @Override
+    public void parseFinished(LayoutTemplate template, long startNanos,
+            long endNanos) {
+    }
+
+    @Override
+    public void inflationStarted(LayoutTemplate template, long startNanos) {
+    }
+
+    @Override
+    public void inflationFinished(LayoutTemplate template, long startNanos,
+            long endNanos) {
+    }
+
+    @Override
+    public void componentInstantiated(ElementTemplate element,
+            Component component, long startNanos, long endNanos) {
+    }
+
+    @Override
+    public void attributeHandlerFinished(ElementTemplate element,
+            AttributeHandler handler, Phase phase, long startNanos,
+            long endNanos) {
+    }
+
+    @Override
+    public void setterInvoked(Component component, String attributeName,
+            Method setter, long startNanos, long endNanos, long filterNanos) {
+    }
+
+    @Override
+    public void memberBound(Object controller, String componentId,
+            Member member, long startNanos, long endNanos) {
+    }
+}
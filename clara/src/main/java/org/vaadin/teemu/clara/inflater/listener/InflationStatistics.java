@@ -0,0 +1,304 @@
+package org.vaadin.teemu.clara.inflater.listener;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.vaadin.teemu.clara.inflater.template.LayoutTemplate;
+
+import com.vaadin.ui.Component;
+
+/**
+ * Thread-safe {@link InflationListener} that aggregates the inflation times
+ * into a latency histogram per layout and the time spent in each setter, so
+ * that the slowest setters can be listed. A single instance can be shared by
+ * all inflaters of an application.
+ */
+public class InflationStatistics extends InflationListenerAdapter {
+
+    /**
+     * Name used for the layouts read from anonymous streams.
+     */
+    public static final String ANONYMOUS_LAYOUT = "<anonymous>";
+
+    private final ConcurrentMap<String, LatencyHistogram> inflationLatencies = new ConcurrentHashMap<String, LatencyHistogram>();
+    private final ConcurrentMap<String, LatencyHistogram> parseLatencies = new ConcurrentHashMap<String, LatencyHistogram>();
+    private final ConcurrentMap<Method, SetterStatistics> setterStatistics = new ConcurrentHashMap<Method, SetterStatistics>();
+
+    @Override
+    public void parseFinished(LayoutTemplate template, long startNanos,
+            long endNanos) {
+        getHistogram(parseLatencies, getName(template)).record(
+                endNanos - startNanos);
+    }
+
+    @Override
+    public void inflationFinished(LayoutTemplate template, long startNanos,
+            long endNanos) {
+        getHistogram(inflationLatencies, getName(template)).record(
+                endNanos - startNanos);
+    }
+
+    @Override
+    public void setterInvoked(Component component, String attributeName,
+            Method setter, long startNanos, long endNanos, long filterNanos) {
+        SetterStatistics statistics = setterStatistics.get(setter);
+        if (statistics == null) {
+            SetterStatistics newStatistics = new SetterStatistics(setter);
+            statistics = setterStatistics.putIfAbsent(setter, newStatistics);
+            if (statistics == null) {
+                statistics = newStatistics;
+            }
+        }
+        statistics.record(endNanos - startNanos, filterNanos);
+    }
+
+    private static String getName(LayoutTemplate template) {
+        return template.getName() != null ? template.getName()
+                : ANONYMOUS_LAYOUT;
+    }
+
+    private static LatencyHistogram getHistogram(
+            ConcurrentMap<String, LatencyHistogram> histograms, String name) {
+        LatencyHistogram histogram = histograms.get(name);
+        if (histogram == null) {
+            LatencyHistogram newHistogram = new LatencyHistogram();
+            histogram = histograms.putIfAbsent(name, newHistogram);
+            if (histogram == null) {
+                histogram = newHistogram;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Returns the names of the inflated layouts in alphabetical order.
+     */
+    public Set<String> getLayoutNames() {
+        return Collections.unmodifiableSet(new TreeSet<String>(
+                inflationLatencies.keySet()));
+    }
+
+    /**
+     * Returns the histogram of the inflation times of the given layout or
+     * {@code null} if the layout hasn't been inflated.
+     *
+     * @param layoutName
+     *            name of the layout or {@link #ANONYMOUS_LAYOUT}.
+     */
+    public LatencyHistogram getInflationLatency(String layoutName) {
+        return inflationLatencies.get(layoutName);
+    }
+
+    /**
+     * Returns the histogram of the parse times of the given layout or
+     * {@code null} if the layout hasn't been parsed.
+     *
+     * @param layoutName
+     *            name of the layout or {@link #ANONYMOUS_LAYOUT}.
+     */
+    public LatencyHistogram getParseLatency(String layoutName) {
+        return parseLatencies.get(layoutName);
+    }
+
+    /**
+     * Returns the statistics of the setters with the most total time spent,
+     * slowest first.
+     *
+     * @param limit
+     *            maximum number of setters to return.
+     */
+    public List<SetterStatistics> getSlowestSetters(int limit) {
+        List<SetterStatistics> setters = new ArrayList<SetterStatistics>(
+                setterStatistics.values());
+        Collections.sort(setters, new Comparator<SetterStatistics>() {
+
+            @Override
+            public int compare(SetterStatistics o1, SetterStatistics o2) {
+                return Long.compare(o2.getTotalNanos(), o1.getTotalNanos());
+            }
+        });
+        return setters.size() > limit ? setters.subList(0, limit) : setters;
+    }
+
+    /**
+     * Discards all statistics collected so far.
+     */
+    public void reset() {
+        inflationLatencies.clear();
+        parseLatencies.clear();
+        setterStatistics.clear();
+    }
+
+    /**
+     * Returns a human readable summary of the statistics.
+     */
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder("Inflation latency:\n");
+        for (String layoutName : getLayoutNames()) {
+            report.append("  ").append(layoutName).append(": ")
+                    .append(getInflationLatency(layoutName)).append('\n');
+        }
+        report.append("Slowest setters:\n");
+        for (SetterStatistics setter : getSlowestSetters(10)) {
+            report.append("  ").append(setter).append('\n');
+        }
+        return report.toString();
+    }
+
+    /**
+     * Histogram of latencies with buckets of powers of two nanoseconds. The
+     * percentiles are accurate within a factor of two.
+     */
+    public static final class LatencyHistogram {
+
+        private static final int BUCKETS = 64;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        /**
+         * Records a single latency.
+         */
+        public void record(long nanos) {
+            nanos = Math.max(nanos, 0);
+            buckets.incrementAndGet(getBucket(nanos));
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            long max = maxNanos.get();
+            while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+                max = maxNanos.get();
+            }
+        }
+
+        private static int getBucket(long nanos) {
+            // Bucket i holds values from 2^(i-1) to 2^i - 1.
+            return BUCKETS - Long.numberOfLeadingZeros(nanos);
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getTotalNanos() {
+            return totalNanos.get();
+        }
+
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        public long getMeanNanos() {
+            long n = count.get();
+            return n == 0 ? 0 : totalNanos.get() / n;
+        }
+
+        /**
+         * Returns the upper bound of the bucket containing the given
+         * percentile or {@code 0} if nothing has been recorded.
+         *
+         * @param percentile
+         *            percentile between {@code 0} and {@code 100}.
+         */
+        public long getPercentileNanos(double percentile) {
+            long n = count.get();
+            if (n == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(percentile / 100.0 * n);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank && seen > 0) {
+                    return Math.min(i == 0 ? 0 : (1L << i) - 1, getMaxNanos());
+                }
+            }
+            return getMaxNanos();
+        }
+
+        /**
+         * Returns the number of latencies in each bucket. Bucket {@code i}
+         * holds the latencies from {@code 2^(i-1)} to {@code 2^i - 1}
+         * nanoseconds.
+         */
+        public long[] getBucketCounts() {
+            long[] counts = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets.get(i);
+            }
+            return counts;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "count=%d, mean=%dus, p50=%dus, p99=%dus, max=%dus",
+                    getCount(), getMeanNanos() / 1000,
+                    getPercentileNanos(50) / 1000,
+                    getPercentileNanos(99) / 1000, getMaxNanos() / 1000);
+        }
+    }
+
+    /**
+     * Time spent in a single setter method.
+     */
+    public static final class SetterStatistics {
+
+        private final Method setter;
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong filterNanos = new AtomicLong();
+
+        SetterStatistics(Method setter) {
+            this.setter = setter;
+        }
+
+        void record(long nanos, long filterNanos) {
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            this.filterNanos.addAndGet(filterNanos);
+        }
+
+        public Method getSetter() {
+            return setter;
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        /**
+         * Returns the total time spent in the setter including the
+         * attribute filters.
+         */
+        public long getTotalNanos() {
+            return totalNanos.get();
+        }
+
+        /**
+         * Returns the part of the total time spent in attribute filters.
+         */
+        public long getFilterNanos() {
+            return filterNanos.get();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s.%s: count=%d, total=%dus, filters=%dus",
+                    setter.getDeclaringClass().getSimpleName(),
+                    setter.getName(), getCount(), getTotalNanos() / 1000,
+                    getFilterNanos() / 1000);
+        }
+    }
+}
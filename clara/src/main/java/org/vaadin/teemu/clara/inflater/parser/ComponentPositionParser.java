@@ -26,10 +26,9 @@ public class ComponentPositionParser implements AttributeParser {
             AbsoluteLayout outerInstance = (AbsoluteLayout) component
                     .getParent();
             try {
-                // ComponentPosition is an inner class that requires
-                // an instance of the outer class as a parameter.
-                ComponentPosition position = ((ComponentPosition) valueType
-                        .getConstructors()[0].newInstance(outerInstance));
+                // ComponentPosition is an inner class of the layout, the
+                // position is mutable and can't be shared.
+                ComponentPosition position = outerInstance.new ComponentPosition();
                 position.setCSSString(value);
                 return position;
             } catch (Exception e) {
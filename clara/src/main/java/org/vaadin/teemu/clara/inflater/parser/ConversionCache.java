@@ -0,0 +1,87 @@
+package org.vaadin.teemu.clara.inflater.parser;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.vaadin.ui.Component;
+
+/**
+ * Cache of the converted attribute values of the types a
+ * {@link ShareableValueParser} declares shareable, keyed by the value type and
+ * the literal. There is one cache per parser class, shared by all instances
+ * of the class: shareable values depend only on the literal, so it doesn't
+ * matter which instance converted a value. The values are held per value
+ * type in a {@link ClassValue} and don't keep the class loader of the type
+ * from being garbage collected. At most {@value #MAX_VALUES_PER_TYPE} values
+ * are kept per value type, literals beyond the limit are converted on each
+ * use.
+ */
+public final class ConversionCache {
+
+    static final int MAX_VALUES_PER_TYPE = 256;
+
+    private static final ClassValue<ConversionCache> caches = new ClassValue<ConversionCache>() {
+
+        @Override
+        protected ConversionCache computeValue(Class<?> parserClass) {
+            return new ConversionCache();
+        }
+    };
+
+    // Value type -> literal -> value.
+    private final ClassValue<ConcurrentMap<String, Object>> values = new ClassValue<ConcurrentMap<String, Object>>() {
+
+        @Override
+        protected ConcurrentMap<String, Object> computeValue(
+                Class<?> valueType) {
+            return new ConcurrentHashMap<String, Object>();
+        }
+    };
+
+    private ConversionCache() {
+    }
+
+    /**
+     * Returns the cache shared by all instances of the class of the given
+     * {@code parser}.
+     *
+     * @param parser
+     * @return the cache of the parser class.
+     */
+    public static ConversionCache forParser(ShareableValueParser parser) {
+        return caches.get(parser.getClass());
+    }
+
+    /**
+     * Returns the cached value of the given literal or converts it with the
+     * given parser and caches the result. {@code null} results are not
+     * cached.
+     *
+     * @param parser
+     *            an instance of the parser class of this cache.
+     * @param value
+     * @param valueType
+     *            type the parser declares shareable.
+     * @param component
+     * @return the converted value.
+     */
+    public Object getValueAs(ShareableValueParser parser, String value,
+            Class<?> valueType, Component component) {
+        ConcurrentMap<String, Object> cached = values.get(valueType);
+        Object result = cached.get(value);
+        if (result == null) {
+            result = parser.getValueAs(value, valueType, component);
+            if (result != null && cached.size() < MAX_VALUES_PER_TYPE) {
+                cached.put(value, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of cached values of the given type.
+     */
+    int size(Class<?> valueType) {
+        return values.get(valueType).size();
+    }
+}
@@ -9,7 +9,7 @@ import com.vaadin.ui.Component;
  * {@link AttributeParser} that handles all primitive types (including boxed
  * representations), {@link String} and {@link Object}.
  */
-public class PrimitiveAttributeParser implements AttributeParser {
+public class PrimitiveAttributeParser implements ShareableValueParser {
 
     @SuppressWarnings("unchecked")
     private static final List<Class<?>> supportedClasses = Arrays.asList(
@@ -24,6 +24,16 @@ public class PrimitiveAttributeParser implements AttributeParser {
                         .contains(valueType));
     }
 
+    /**
+     * {@inheritDoc} The boxed values are immutable, {@link String} and
+     * {@link Object} values are the literals themselves and aren't worth
+     * caching.
+     */
+    @Override
+    public boolean isShareable(Class<?> valueType) {
+        return valueType != String.class && valueType != Object.class;
+    }
+
     @Override
     public Object getValueAs(String value, Class<?> type, Component component) {
         if (type == String.class || type == Object.class) {
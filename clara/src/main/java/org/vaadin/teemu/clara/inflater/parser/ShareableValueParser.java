@@ -0,0 +1,24 @@
+package org.vaadin.teemu.clara.inflater.parser;
+
+/**
+ * {@link AttributeParser} whose results can be shared. Values of types for
+ * which {@link #isShareable(Class)} returns {@code true} are converted once
+ * per literal and then reused from the {@link ConversionCache} of the parser
+ * class.
+ */
+public interface ShareableValueParser extends AttributeParser {
+
+    /**
+     * Returns {@code true} if the values of the given {@code valueType}
+     * returned by {@link #getValueAs(String, Class, com.vaadin.ui.Component)}
+     * are immutable and depend only on the literal, so that the same instance
+     * can be passed to every setter.
+     * 
+     * @param valueType
+     *            a type supported by this parser.
+     * @return {@code true} if the values of {@code valueType} can be cached
+     *         and shared.
+     */
+    boolean isShareable(Class<?> valueType);
+
+}
@@ -2,6 +2,8 @@ package org.vaadin.teemu.clara.inflater.parser;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import com.vaadin.shared.ui.MarginInfo;
 import com.vaadin.ui.Alignment;
@@ -11,7 +13,7 @@ import com.vaadin.ui.Component;
  * {@link AttributeParser} that parses Vaadin specific types (like
  * {@link MarginInfo} for example).
  */
-public class VaadinAttributeParser implements AttributeParser {
+public class VaadinAttributeParser implements ShareableValueParser {
 
     protected static final Map<String, Alignment> alignmentMap;
     static {
@@ -27,6 +29,10 @@ public class VaadinAttributeParser implements AttributeParser {
         alignmentMap.put("TOP_RIGHT", Alignment.TOP_RIGHT);
     }
 
+    // Bitmasks of the parsed margin literals. MarginInfo is mutable, so a new
+    // instance is still created for each value.
+    private static final ConcurrentMap<String, Integer> marginBitMasks = new ConcurrentHashMap<String, Integer>();
+
     @Override
     public boolean isSupported(Class<?> valueType) {
         return valueType != null
@@ -44,11 +50,30 @@ public class VaadinAttributeParser implements AttributeParser {
         return null;
     }
 
+    /**
+     * {@inheritDoc} {@link Alignment} is immutable, {@link MarginInfo} isn't.
+     */
+    @Override
+    public boolean isShareable(Class<?> valueType) {
+        return valueType == Alignment.class;
+    }
+
     private Object parseAlignment(String value) {
         return alignmentMap.get(value);
     }
 
     protected MarginInfo parseMarginInfo(String margin) {
+        Integer bitMask = marginBitMasks.get(margin);
+        if (bitMask == null) {
+            bitMask = parseMarginInfoUncached(margin).getBitMask();
+            if (marginBitMasks.size() < ConversionCache.MAX_VALUES_PER_TYPE) {
+                marginBitMasks.put(margin, bitMask);
+            }
+        }
+        return new MarginInfo(bitMask);
+    }
+
+    private MarginInfo parseMarginInfoUncached(String margin) {
         String[] margins = margin.split(" ");
         if (margins.length == 4) {
             return new MarginInfo(Boolean.valueOf(margins[0]),
@@ -0,0 +1,316 @@
+package org.vaadin.teemu.clara.inflater.template;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.vaadin.teemu.clara.inflater.LayoutInflaterException;
+
+/**
+ * Compact binary form of a {@link LayoutTemplate}. Layouts converted at build
+ * time are read without parsing XML: the {@link LayoutTemplateCache} loads
+ * the binary resource {@code <resource name>}{@value #RESOURCE_SUFFIX} instead
+ * of the XML whenever it exists and isn't {@link #isStale(URL, URL) stale}.
+ *
+ * <br />
+ * <br />
+ * The format starts with the magic number {@code CLT} and a version byte,
+ * followed by a table of all strings (namespaces, package, class and
+ * attribute names and values), the ids of the layout and the element tree.
+ * Elements refer to the strings by their index in the table and store the
+ * package name split from the namespace.
+ */
+public final class BinaryLayoutFormat {
+
+    /**
+     * Suffix appended to the name of the layout XML resource.
+     */
+    public static final String RESOURCE_SUFFIX = ".clt";
+
+    private static final byte[] MAGIC = { 'C', 'L', 'T' };
+    private static final int VERSION = 1;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // Private constructor to prevent instantiation and subclassing.
+    private BinaryLayoutFormat() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Returns the name of the binary resource of the given layout resource.
+     */
+    public static String getResourceName(String xmlResourceName) {
+        return xmlResourceName + RESOURCE_SUFFIX;
+    }
+
+    /**
+     * Returns {@code true} if the given binary layout is older than its XML
+     * layout, for example when the XML has been edited in an IDE without
+     * running the build. Only resources that are files are compared, binary
+     * layouts in JAR files are never stale.
+     *
+     * @param binary
+     *            URL of the binary layout, may be {@code null}.
+     * @param xml
+     *            URL of the XML layout, may be {@code null}.
+     * @return {@code true} if the XML should be read instead of the binary
+     *         layout.
+     */
+    public static boolean isStale(URL binary, URL xml) {
+        if (binary == null || xml == null
+                || !"file".equals(binary.getProtocol())
+                || !"file".equals(xml.getProtocol())) {
+            return false;
+        }
+        try {
+            return new File(xml.toURI()).lastModified() > new File(
+                    binary.toURI()).lastModified();
+        } catch (URISyntaxException e) {
+            return false;
+        } catch (IllegalArgumentException e) {
+            // Not a hierarchical file URI.
+            return false;
+        }
+    }
+
+    /**
+     * Writes the given {@link LayoutTemplate} in the binary format.
+     *
+     * @param template
+     * @param out
+     *            stream to write to, not closed.
+     * @throws IOException
+     */
+    public static void write(LayoutTemplate template, OutputStream out)
+            throws IOException {
+        StringTable strings = new StringTable();
+        if (template.getRoot() != null) {
+            strings.addAll(template.getRoot());
+        }
+        for (String id : template.getIds()) {
+            strings.add(id);
+        }
+
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(
+                out));
+        data.write(MAGIC);
+        data.writeByte(VERSION);
+        writeVarInt(data, strings.values.size());
+        for (String value : strings.values) {
+            byte[] bytes = value.getBytes(UTF_8);
+            writeVarInt(data, bytes.length);
+            data.write(bytes);
+        }
+        writeVarInt(data, template.getIds().size());
+        for (String id : template.getIds()) {
+            writeVarInt(data, strings.indexOf(id));
+        }
+        data.writeBoolean(template.getRoot() != null);
+        if (template.getRoot() != null) {
+            writeElement(data, template.getRoot(), strings);
+        }
+        data.flush();
+    }
+
+    private static void writeElement(DataOutputStream data,
+            ElementTemplate element, StringTable strings) throws IOException {
+        writeVarInt(data, strings.indexOf(element.getNamespace()));
+        writeVarInt(data, strings.indexOf(element.getPackageName()));
+        writeVarInt(data, strings.indexOf(element.getClassName()));
+        writeVarInt(data, strings.indexOf(element.getId()));
+        writeVarInt(data, element.getAttributeNamespaces().size());
+        for (String namespace : element.getAttributeNamespaces()) {
+            Map<String, String> attributes = element.getAttributes(namespace);
+            writeVarInt(data, strings.indexOf(namespace));
+            writeVarInt(data, attributes.size());
+            for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+                writeVarInt(data, strings.indexOf(attribute.getKey()));
+                writeVarInt(data, strings.indexOf(attribute.getValue()));
+            }
+        }
+        writeVarInt(data, element.getChildren().size());
+        for (ElementTemplate child : element.getChildren()) {
+            writeElement(data, child, strings);
+        }
+    }
+
+    /**
+     * Reads a {@link LayoutTemplate} written by
+     * {@link #write(LayoutTemplate, OutputStream)}.
+     *
+     * @param in
+     *            stream to read from, not closed.
+     * @param name
+     *            name of the layout ({@code null} allowed).
+     * @return the read {@link LayoutTemplate}.
+     *
+     * @throws LayoutInflaterException
+     *             if the stream cannot be read or is not in the binary
+     *             format.
+     */
+    public static LayoutTemplate read(InputStream in, String name) {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        try {
+            byte[] magic = new byte[MAGIC.length];
+            data.readFully(magic);
+            int version = data.readUnsignedByte();
+            if (magic[0] != MAGIC[0] || magic[1] != MAGIC[1]
+                    || magic[2] != MAGIC[2] || version != VERSION) {
+                throw new LayoutInflaterException("Layout " + name
+                        + " is not a binary layout of version " + VERSION
+                        + ".");
+            }
+            String[] strings = new String[readVarInt(data)];
+            for (int i = 0; i < strings.length; i++) {
+                byte[] bytes = new byte[readVarInt(data)];
+                data.readFully(bytes);
+                strings[i] = new String(bytes, UTF_8);
+            }
+            int idCount = readVarInt(data);
+            Set<String> ids = new LinkedHashSet<String>(idCount * 2);
+            for (int i = 0; i < idCount; i++) {
+                ids.add(readString(data, strings));
+            }
+            ElementTemplate root = null;
+            if (data.readBoolean()) {
+                root = readElement(data, strings);
+            }
+            return new LayoutTemplate(name, root, ids);
+        } catch (EOFException e) {
+            throw new LayoutInflaterException("Layout " + name
+                    + " is truncated.", e);
+        } catch (IOException e) {
+            throw new LayoutInflaterException(e);
+        }
+    }
+
+    private static ElementTemplate readElement(DataInputStream data,
+            String[] strings) throws IOException {
+        String namespace = readName(data, strings);
+        String packageName = readName(data, strings);
+        String className = readName(data, strings);
+        String id = readString(data, strings);
+        int namespaceCount = readVarInt(data);
+        Map<String, Map<String, String>> attributes = new LinkedHashMap<String, Map<String, String>>(
+                namespaceCount * 2);
+        for (int i = 0; i < namespaceCount; i++) {
+            String attributeNamespace = readName(data, strings);
+            int attributeCount = readVarInt(data);
+            Map<String, String> namespaceAttributes = new LinkedHashMap<String, String>(
+                    attributeCount * 2);
+            for (int j = 0; j < attributeCount; j++) {
+                namespaceAttributes.put(readName(data, strings),
+                        readString(data, strings));
+            }
+            attributes.put(attributeNamespace,
+                    Collections.unmodifiableMap(namespaceAttributes));
+        }
+        int childCount = readVarInt(data);
+        List<ElementTemplate> children = new ArrayList<ElementTemplate>(
+                childCount);
+        for (int i = 0; i < childCount; i++) {
+            children.add(readElement(data, strings));
+        }
+        return new ElementTemplate(namespace, packageName, className, id,
+                attributes, children);
+    }
+
+    private static String readString(DataInputStream data, String[] strings)
+            throws IOException {
+        int index = readVarInt(data);
+        if (index == 0) {
+            return null;
+        }
+        if (index > strings.length) {
+            throw new IOException("Invalid string index " + index + ".");
+        }
+        return strings[index - 1];
+    }
+
+    /**
+     * Reads a namespace, class or attribute name, interned like the names
+     * read by the {@link LayoutTemplateParser}.
+     */
+    private static String readName(DataInputStream data, String[] strings)
+            throws IOException {
+        String name = readString(data, strings);
+        return name != null ? name.intern() : null;
+    }
+
+    private static void writeVarInt(DataOutputStream data, int value)
+            throws IOException {
+        while ((value & ~0x7F) != 0) {
+            data.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream data) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = data.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length integer.");
+    }
+
+    /**
+     * Distinct strings of a template in the order of their first occurrence.
+     * Index {@code 0} stands for {@code null}.
+     */
+    private static class StringTable {
+
+        private final List<String> values = new ArrayList<String>();
+        private final Map<String, Integer> indexes = new HashMap<String, Integer>();
+
+        void add(String value) {
+            if (value != null && !indexes.containsKey(value)) {
+                values.add(value);
+                indexes.put(value, values.size());
+            }
+        }
+
+        void addAll(ElementTemplate element) {
+            add(element.getNamespace());
+            add(element.getPackageName());
+            add(element.getClassName());
+            add(element.getId());
+            for (String namespace : element.getAttributeNamespaces()) {
+                add(namespace);
+                for (Map.Entry<String, String> attribute : element
+                        .getAttributes(namespace).entrySet()) {
+                    add(attribute.getKey());
+                    add(attribute.getValue());
+                }
+            }
+            for (ElementTemplate child : element.getChildren()) {
+                addAll(child);
+            }
+        }
+
+        int indexOf(String value) {
+            return value == null ? 0 : indexes.get(value);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package org.vaadin.teemu.clara.inflater.template;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable parsed form of a single component element of a layout XML. An
+ * {@link ElementTemplate} knows the package and class name of the component
+ * to instantiate, its attributes grouped by their namespace and the templates
+ * of its child elements.
+ *
+ * @see LayoutTemplate
+ */
+@SuppressWarnings("serial")
+public final class ElementTemplate implements Serializable {
+
+    private final String namespace;
+    private final String packageName;
+    private final String className;
+    private final String id;
+    private final Map<String, Map<String, String>> attributes;
+    private final List<ElementTemplate> children;
+
+    ElementTemplate(String namespace, String packageName, String className,
+            String id, Map<String, Map<String, String>> attributes,
+            List<ElementTemplate> children) {
+        this.namespace = namespace;
+        this.packageName = packageName;
+        this.className = className;
+        this.id = id;
+        this.attributes = Collections.unmodifiableMap(attributes);
+        this.children = Collections.unmodifiableList(children);
+    }
+
+    /**
+     * Returns the namespace URI of this element (for example
+     * {@code urn:import:com.vaadin.ui}).
+     *
+     * @return namespace URI of this element.
+     */
+    public String getNamespace() {
+        return namespace;
+    }
+
+    /**
+     * Returns the name of the package that contains the component class of
+     * this element.
+     *
+     * @return package name of the component class or {@code null} for an
+     *         include element.
+     */
+    public String getPackageName() {
+        return packageName;
+    }
+
+    /**
+     * Returns the simple name of the component class of this element (the
+     * local name of the element).
+     *
+     * @return simple name of the component class.
+     */
+    public String getClassName() {
+        return className;
+    }
+
+    /**
+     * Returns the value of the {@code id} attribute of this element or
+     * {@code null} if the element has no id.
+     *
+     * @return id of this element or {@code null}.
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Returns an unmodifiable {@link Map} of the attributes of this element
+     * that belong to the given {@code namespace}. The attributes are in
+     * document order. An empty {@link Map} is returned if there are no
+     * attributes in the given namespace.
+     *
+     * @param namespace
+     *            namespace URI of the attributes ({@code ""} for the default
+     *            namespace).
+     * @return attributes from local name to value.
+     */
+    public Map<String, String> getAttributes(String namespace) {
+        Map<String, String> result = attributes.get(namespace);
+        if (result == null) {
+            return Collections.emptyMap();
+        }
+        return result;
+    }
+
+    /**
+     * Returns the namespace URIs of all attributes of this element.
+     *
+     * @return {@link Set} of namespace URIs.
+     */
+    public Set<String> getAttributeNamespaces() {
+        return attributes.keySet();
+    }
+
+    /**
+     * Returns the templates of the child component elements of this element
+     * in document order.
+     *
+     * @return unmodifiable {@link List} of child element templates.
+     */
+    public List<ElementTemplate> getChildren() {
+        return children;
+    }
+
+    /**
+     * Returns {@code true} if this is an {@code include} element of the
+     * {@code urn:vaadin:clara} namespace that hasn't been replaced with the
+     * included layout. Includes are resolved when the layout is loaded
+     * through a {@link LayoutTemplateCache}.
+     *
+     * @return {@code true} for an unresolved include element.
+     */
+    public boolean isInclude() {
+        return packageName == null
+                && LayoutTemplateParser.CLARA_NAMESPACE.equals(namespace)
+                && LayoutTemplateParser.INCLUDE_ELEMENT.equals(className);
+    }
+
+    @Override
+    public String toString() {
+        if (isInclude()) {
+            return "include["
+                    + getAttributes("").get(LayoutTemplateParser.SRC_ATTRIBUTE)
+                    + "]";
+        }
+        return packageName + "." + className
+                + (id != null ? "#" + id : "");
+    }
+}
@@ -0,0 +1,231 @@
+package org.vaadin.teemu.clara.inflater.template;
+
+import static org.vaadin.teemu.clara.inflater.template.LayoutTemplateParser.ID_ATTRIBUTE;
+import static org.vaadin.teemu.clara.inflater.template.LayoutTemplateParser.ID_PREFIX_ATTRIBUTE;
+import static org.vaadin.teemu.clara.inflater.template.LayoutTemplateParser.SRC_ATTRIBUTE;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.vaadin.teemu.clara.inflater.LayoutInflaterException;
+
+/**
+ * Replaces the include elements of a {@link LayoutTemplate} with the root
+ * elements of the included layouts. The included layouts are taken from the
+ * fragments of a {@link LayoutTemplateCache}, so each of them is parsed only
+ * once. Elements of an included layout are shared with the including
+ * template unless their ids are prefixed or they contain includes
+ * themselves.
+ *
+ * <br />
+ * <br />
+ * A {@code src} starting with {@code /} is an absolute resource name,
+ * otherwise it is resolved relative to the including layout (or the root of
+ * the classpath if the including layout has no name). The
+ * {@code idPrefix} attribute is prepended to all ids of the included layout.
+ * Attributes of other namespaces than the default one, like layout
+ * attributes, are assigned to the root of the included layout.
+ */
+final class IncludeResolver {
+
+    private final LayoutTemplateCache cache;
+    private final ClassLoader classLoader;
+    // Layouts being resolved, in include order.
+    private final Set<String> includeStack = new LinkedHashSet<String>();
+    private final Set<String> included = new LinkedHashSet<String>();
+
+    IncludeResolver(LayoutTemplateCache cache, ClassLoader classLoader) {
+        this.cache = cache;
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * Returns the given template with its includes resolved, or the template
+     * itself if it contains no includes.
+     *
+     * @param template
+     * @param resourceName
+     *            absolute resource name of the template ({@code null}
+     *            allowed).
+     * @throws LayoutInflaterException
+     *             if an included layout cannot be loaded, the layouts include
+     *             each other or an id is used more than once.
+     */
+    LayoutTemplate resolve(LayoutTemplate template, String resourceName) {
+        if (template.getRoot() == null) {
+            return template;
+        }
+        if (resourceName != null) {
+            includeStack.add(resourceName);
+        }
+        ElementTemplate root = resolve(template.getRoot(), resourceName, "");
+        if (root == template.getRoot()) {
+            return template;
+        }
+        Set<String> ids = new LinkedHashSet<String>();
+        collectIds(root, ids);
+        return new LayoutTemplate(template.getName(), root, ids);
+    }
+
+    /**
+     * Returns the absolute resource names of all layouts included by the
+     * resolved templates.
+     */
+    Set<String> getIncluded() {
+        return included;
+    }
+
+    private ElementTemplate resolve(ElementTemplate element,
+            String layoutName, String idPrefix) {
+        if (element.isInclude()) {
+            return include(element, layoutName, idPrefix);
+        }
+        boolean changed = idPrefix.length() > 0 && hasId(element);
+        List<ElementTemplate> children = new ArrayList<ElementTemplate>(
+                element.getChildren().size());
+        for (ElementTemplate child : element.getChildren()) {
+            ElementTemplate resolved = resolve(child, layoutName, idPrefix);
+            changed |= resolved != child;
+            children.add(resolved);
+        }
+        if (!changed) {
+            return element;
+        }
+        return copy(element, idPrefix, children, null);
+    }
+
+    private ElementTemplate include(ElementTemplate include,
+            String layoutName, String idPrefix) {
+        if (!include.getChildren().isEmpty()) {
+            throw new LayoutInflaterException("Include of "
+                    + include.getAttributes("").get(SRC_ATTRIBUTE)
+                    + " must not have child elements.");
+        }
+        String fragmentName = resolveName(layoutName, include
+                .getAttributes("").get(SRC_ATTRIBUTE));
+        if (!includeStack.add(fragmentName)) {
+            throw new LayoutInflaterException("Layout " + fragmentName
+                    + " includes itself: " + includeStack + " -> "
+                    + fragmentName + ".");
+        }
+        try {
+            included.add(fragmentName);
+            LayoutTemplate fragment = cache
+                    .getFragment(classLoader, fragmentName);
+            if (fragment.getRoot() == null) {
+                throw new LayoutInflaterException("Included layout "
+                        + fragmentName + " contains no components.");
+            }
+            String prefix = include.getAttributes("").get(ID_PREFIX_ATTRIBUTE);
+            if (prefix != null) {
+                idPrefix = idPrefix + prefix;
+            }
+            ElementTemplate root = resolve(fragment.getRoot(), fragmentName,
+                    idPrefix);
+            if (include.getAttributeNamespaces().size() > 1) {
+                root = copy(root, "", root.getChildren(), include);
+            }
+            return root;
+        } finally {
+            includeStack.remove(fragmentName);
+        }
+    }
+
+    private static boolean hasId(ElementTemplate element) {
+        return element.getId() != null && element.getId().length() > 0;
+    }
+
+    /**
+     * Copies the given element with the given children, prefixing its id and
+     * adding the attributes of other than the default namespace of the given
+     * include element.
+     */
+    private static ElementTemplate copy(ElementTemplate element,
+            String idPrefix, List<ElementTemplate> children,
+            ElementTemplate include) {
+        String id = element.getId();
+        if (idPrefix.length() > 0 && hasId(element)) {
+            id = idPrefix + id;
+        }
+        Map<String, Map<String, String>> attributes = new LinkedHashMap<String, Map<String, String>>();
+        for (String namespace : element.getAttributeNamespaces()) {
+            attributes.put(namespace, new LinkedHashMap<String, String>(
+                    element.getAttributes(namespace)));
+        }
+        if (id != element.getId()) {
+            attributes.get("").put(ID_ATTRIBUTE, id);
+        }
+        if (include != null) {
+            for (String namespace : include.getAttributeNamespaces()) {
+                if (namespace.length() == 0) {
+                    continue;
+                }
+                Map<String, String> namespaceAttributes = attributes
+                        .get(namespace);
+                if (namespaceAttributes == null) {
+                    namespaceAttributes = new LinkedHashMap<String, String>();
+                    attributes.put(namespace, namespaceAttributes);
+                }
+                namespaceAttributes.putAll(include.getAttributes(namespace));
+            }
+        }
+        for (Map.Entry<String, Map<String, String>> entry : attributes
+                .entrySet()) {
+            entry.setValue(Collections.unmodifiableMap(entry.getValue()));
+        }
+        return new ElementTemplate(element.getNamespace(),
+                element.getPackageName(), element.getClassName(), id,
+                attributes, new ArrayList<ElementTemplate>(children));
+    }
+
+    private static void collectIds(ElementTemplate element, Set<String> ids) {
+        if (hasId(element) && !ids.add(element.getId())) {
+            throw new LayoutInflaterException(String.format(
+                    "Given id %s has already been assigned.", element.getId()));
+        }
+        for (ElementTemplate child : element.getChildren()) {
+            collectIds(child, ids);
+        }
+    }
+
+    /**
+     * Resolves the {@code src} of an include element into an absolute
+     * resource name.
+     */
+    static String resolveName(String layoutName, String src) {
+        String name;
+        if (src.startsWith("/")) {
+            name = src.substring(1);
+        } else if (layoutName != null) {
+            name = layoutName.substring(0, layoutName.lastIndexOf('/') + 1)
+                    + src;
+        } else {
+            name = src;
+        }
+        List<String> segments = new ArrayList<String>();
+        for (String segment : name.split("/")) {
+            if (segment.equals("..")) {
+                if (segments.isEmpty()) {
+                    throw new LayoutInflaterException("Included layout " + src
+                            + " is outside of the classpath.");
+                }
+                segments.remove(segments.size() - 1);
+            } else if (segment.length() > 0 && !segment.equals(".")) {
+                segments.add(segment);
+            }
+        }
+        StringBuilder resolved = new StringBuilder();
+        for (String segment : segments) {
+            if (resolved.length() > 0) {
+                resolved.append('/');
+            }
+            resolved.append(segment);
+        }
+        return resolved.toString();
+    }
+}
@@ -0,0 +1,63 @@
+package org.vaadin.teemu.clara.inflater.template;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Set;
+
+import org.vaadin.teemu.clara.inflater.LayoutInflater;
+
+/**
+ * Immutable, thread-safe parsed form of a layout XML. A {@link LayoutTemplate}
+ * is created once by the {@link LayoutTemplateParser} and can then be inflated
+ * into new component hierarchies any number of times with a
+ * {@link LayoutInflater} without parsing the XML again.
+ *
+ * @see LayoutTemplateCache
+ */
+@SuppressWarnings("serial")
+public final class LayoutTemplate implements Serializable {
+
+    private final String name;
+    private final ElementTemplate root;
+    private final Set<String> ids;
+
+    LayoutTemplate(String name, ElementTemplate root, Set<String> ids) {
+        this.name = name;
+        this.root = root;
+        this.ids = Collections.unmodifiableSet(ids);
+    }
+
+    /**
+     * Returns the name of this layout (typically the resource name of the XML)
+     * or {@code null} if the layout was read from an anonymous stream.
+     *
+     * @return name of this layout or {@code null}.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the template of the root component or {@code null} if the
+     * layout contains no components.
+     *
+     * @return template of the root component or {@code null}.
+     */
+    public ElementTemplate getRoot() {
+        return root;
+    }
+
+    /**
+     * Returns all ids assigned to components in this layout.
+     *
+     * @return unmodifiable {@link Set} of ids.
+     */
+    public Set<String> getIds() {
+        return ids;
+    }
+
+    @Override
+    public String toString() {
+        return "LayoutTemplate[" + (name != null ? name : root) + "]";
+    }
+}
@@ -0,0 +1,603 @@
+package org.vaadin.teemu.clara.inflater.template;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.vaadin.teemu.clara.inflater.LayoutInflaterException;
+import org.vaadin.teemu.clara.jfr.ClaraEvents;
+
+/**
+ * Thread-safe, size-bounded cache of {@link LayoutTemplate}s parsed from
+ * classpath resources. Each resource is parsed only once even if several
+ * threads request the same cold entry at the same time; the other threads
+ * wait for the first one to finish parsing. When the cache is full the least
+ * recently used template is evicted.
+ *
+ * <br />
+ * <br />
+ * The {@code include} elements of the {@code urn:vaadin:clara} namespace are
+ * replaced with the included layouts when a template is loaded, so including
+ * a layout costs nothing when the template is inflated. Included layouts are
+ * parsed once per cache and shared by all layouts including them. Removing a
+ * layout from the cache also removes the layouts including it.
+ *
+ * <br />
+ * <br />
+ * The templates are keyed by their {@link ClassLoader} and resource name.
+ * The class loaders are only referenced weakly, the templates of a class
+ * loader that has been garbage collected (for example of an undeployed web
+ * application) are removed from the cache.
+ */
+public class LayoutTemplateCache {
+
+    /**
+     * Default maximum number of templates held by a cache.
+     */
+    public static final int DEFAULT_MAXIMUM_SIZE = 256;
+
+    private static final LayoutTemplateCache sharedInstance = new LayoutTemplateCache(
+            DEFAULT_MAXIMUM_SIZE);
+
+    private final int maximumSize;
+    private final LayoutTemplateParser parser;
+    private final Map<Key, FutureTask<LayoutTemplate>> entries;
+    // Unresolved templates of included layouts, locked after entries.
+    private final Map<Key, FutureTask<LayoutTemplate>> fragments;
+    // Included layout -> layouts including it, guarded by entries.
+    private final Map<Key, Set<Key>> includingLayouts = new HashMap<Key, Set<Key>>();
+    // Class loaders of the keys that have been garbage collected.
+    private final ReferenceQueue<ClassLoader> collectedClassLoaders = new ReferenceQueue<ClassLoader>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * Returns the cache shared by all {@link org.vaadin.teemu.clara.Clara}
+     * instances.
+     *
+     * @return the shared {@link LayoutTemplateCache}.
+     */
+    public static LayoutTemplateCache getSharedInstance() {
+        return sharedInstance;
+    }
+
+    public LayoutTemplateCache(int maximumSize) {
+        this(maximumSize, new LayoutTemplateParser());
+    }
+
+    /**
+     * Creates a cache that parses the templates with the given
+     * {@link LayoutTemplateParser}.
+     *
+     * @param maximumSize
+     *            maximum number of templates held by the cache.
+     * @param parser
+     *            parser used to parse the layouts (for example one using the
+     *            {@link LayoutTemplateParser.Backend#STAX StAX} backend).
+     */
+    public LayoutTemplateCache(int maximumSize, LayoutTemplateParser parser) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException(
+                    "Maximum size must be at least 1.");
+        }
+        if (parser == null) {
+            throw new IllegalArgumentException("Parser must not be null.");
+        }
+        this.maximumSize = maximumSize;
+        this.parser = parser;
+
+        entries = newLruMap(evictionCount);
+        fragments = newLruMap(null);
+    }
+
+    /**
+     * Creates a map evicting its least recently used entry when it holds more
+     * than the maximum size of this cache, counting the evictions to the
+     * given counter if not {@code null}.
+     */
+    private Map<Key, FutureTask<LayoutTemplate>> newLruMap(
+            final AtomicLong evictions) {
+        // Access ordered LinkedHashMap gives us the LRU eviction.
+        return new LinkedHashMap<Key, FutureTask<LayoutTemplate>>(16, 0.75f,
+                true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<Key, FutureTask<LayoutTemplate>> eldest) {
+                if (size() > maximumSize) {
+                    if (evictions != null) {
+                        evictions.incrementAndGet();
+                    }
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    protected Logger getLogger() {
+        return Logger.getLogger(LayoutTemplateCache.class.getName());
+    }
+
+    /**
+     * Returns the {@link LayoutTemplate} for the given resource name resolved
+     * relative to the given {@link Class} like
+     * {@link Class#getResourceAsStream(String)} does.
+     *
+     * @param relativeTo
+     *            {@link Class} to resolve relative resource names against.
+     * @param resourceName
+     *            relative or absolute ({@code /}-prefixed) resource name.
+     * @return the cached or newly parsed {@link LayoutTemplate}.
+     *
+     * @throws LayoutInflaterException
+     *             if the resource doesn't exist or cannot be parsed.
+     */
+    public LayoutTemplate get(Class<?> relativeTo, String resourceName) {
+        return get(relativeTo.getClassLoader(),
+                resolveName(relativeTo, resourceName));
+    }
+
+    /**
+     * Returns the {@link LayoutTemplate} for the given absolute resource name
+     * loaded with the given {@link ClassLoader}.
+     *
+     * @param classLoader
+     *            {@link ClassLoader} to load the resource with ({@code null}
+     *            for the system class loader).
+     * @param resourceName
+     *            absolute resource name without the leading {@code /}.
+     * @return the cached or newly parsed {@link LayoutTemplate}.
+     *
+     * @throws LayoutInflaterException
+     *             if the resource doesn't exist or cannot be parsed.
+     */
+    public LayoutTemplate get(final ClassLoader classLoader,
+            final String resourceName) {
+        Key key = newKey(classLoader, resourceName);
+        FutureTask<LayoutTemplate> task;
+        boolean owner = false;
+        synchronized (entries) {
+            removeCollectedClassLoaders();
+            task = entries.get(key);
+            if (task == null) {
+                task = new FutureTask<LayoutTemplate>(
+                        new Callable<LayoutTemplate>() {
+
+                            @Override
+                            public LayoutTemplate call() throws Exception {
+                                return loadResolved(classLoader, resourceName);
+                            }
+                        });
+                entries.put(key, task);
+                owner = true;
+            }
+        }
+
+        if (owner) {
+            missCount.incrementAndGet();
+            // Parse outside of the lock, concurrent requests for the same
+            // template wait for this task to complete.
+            Object event = ClaraEvents.get().beginTemplateCacheMiss();
+            task.run();
+            ClaraEvents.get().endTemplateCacheMiss(event, resourceName);
+        } else {
+            hitCount.incrementAndGet();
+        }
+
+        return await(entries, key, task);
+    }
+
+    /**
+     * Waits for the given task of the given map to complete and returns its
+     * template. A failed task is removed from the map.
+     */
+    private LayoutTemplate await(Map<Key, FutureTask<LayoutTemplate>> map,
+            Key key, FutureTask<LayoutTemplate> task) {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LayoutInflaterException(
+                    "Interrupted while waiting for layout " + key.resourceName
+                            + ".", e);
+        } catch (ExecutionException e) {
+            // Don't cache failures, next request will try again.
+            remove(map, key, task);
+            if (e.getCause() instanceof LayoutInflaterException) {
+                throw (LayoutInflaterException) e.getCause();
+            }
+            throw new LayoutInflaterException(e.getCause());
+        }
+    }
+
+    /**
+     * Loads and parses the given resource without resolving its includes.
+     * Called at most once per cache entry and included layout. If the
+     * resource has been converted to the {@link BinaryLayoutFormat} at build
+     * time, the binary resource is read instead of the XML unless it's
+     * {@link BinaryLayoutFormat#isStale(java.net.URL, java.net.URL) stale}.
+     *
+     * @param classLoader
+     * @param resourceName
+     * @return the parsed {@link LayoutTemplate}.
+     */
+    protected LayoutTemplate load(ClassLoader classLoader, String resourceName) {
+        String binaryName = BinaryLayoutFormat.getResourceName(resourceName);
+        InputStream binary = null;
+        if (BinaryLayoutFormat.isStale(getResource(classLoader, binaryName),
+                getResource(classLoader, resourceName))) {
+            getLogger().info(
+                    "Ignoring binary layout template " + resourceName
+                            + " older than its XML.");
+        } else {
+            binary = getResourceAsStream(classLoader, binaryName);
+        }
+        if (binary != null) {
+            try {
+                getLogger().fine(
+                        "Reading binary layout template " + resourceName
+                                + ".");
+                return BinaryLayoutFormat.read(binary, resourceName);
+            } finally {
+                close(binary, resourceName);
+            }
+        }
+
+        InputStream xml = getResourceAsStream(classLoader, resourceName);
+        if (xml == null) {
+            throw new LayoutInflaterException("Layout resource "
+                    + resourceName + " not found.");
+        }
+        try {
+            getLogger().fine("Parsing layout template " + resourceName + ".");
+            return parser.parse(xml, resourceName);
+        } finally {
+            close(xml, resourceName);
+        }
+    }
+
+    private LayoutTemplate loadResolved(ClassLoader classLoader,
+            String resourceName) {
+        IncludeResolver resolver = new IncludeResolver(this, classLoader);
+        LayoutTemplate template = resolver.resolve(
+                load(classLoader, resourceName), resourceName);
+        if (!resolver.getIncluded().isEmpty()) {
+            Key key = newKey(classLoader, resourceName);
+            synchronized (entries) {
+                for (String included : resolver.getIncluded()) {
+                    Key includedKey = newKey(classLoader, included);
+                    Set<Key> including = includingLayouts.get(includedKey);
+                    if (including == null) {
+                        including = new HashSet<Key>();
+                        includingLayouts.put(includedKey, including);
+                    }
+                    including.add(key);
+                }
+            }
+        }
+        return template;
+    }
+
+    /**
+     * Replaces the {@code include} elements of the given template, for
+     * example one parsed from a stream, with the included layouts loaded with
+     * the given {@link ClassLoader}. The included layouts are cached, the
+     * returned template isn't.
+     *
+     * @param classLoader
+     *            {@link ClassLoader} to load the included layouts with.
+     * @param resourceName
+     *            absolute resource name to resolve relative includes
+     *            against, {@code null} for the root of the classpath.
+     * @param template
+     * @return the template with its includes resolved or the given template
+     *         if it has none.
+     *
+     * @throws LayoutInflaterException
+     *             if an included layout cannot be loaded, the layouts include
+     *             each other or an id is used more than once.
+     */
+    public LayoutTemplate resolveIncludes(ClassLoader classLoader,
+            String resourceName, LayoutTemplate template) {
+        return new IncludeResolver(this, classLoader).resolve(template,
+                resourceName);
+    }
+
+    /**
+     * Returns the unresolved template of an included layout, loading it on
+     * the first request. Like the templates, the fragments are loaded once
+     * even if requested concurrently and the least recently used fragment is
+     * evicted when there are more than the maximum size of this cache.
+     */
+    LayoutTemplate getFragment(final ClassLoader classLoader,
+            final String resourceName) {
+        Key key = newKey(classLoader, resourceName);
+        FutureTask<LayoutTemplate> task;
+        boolean owner = false;
+        synchronized (fragments) {
+            task = fragments.get(key);
+            if (task == null) {
+                task = new FutureTask<LayoutTemplate>(
+                        new Callable<LayoutTemplate>() {
+
+                            @Override
+                            public LayoutTemplate call() throws Exception {
+                                return load(classLoader, resourceName);
+                            }
+                        });
+                fragments.put(key, task);
+                owner = true;
+            }
+        }
+        if (owner) {
+            task.run();
+        }
+        return await(fragments, key, task);
+    }
+
+    private Key newKey(ClassLoader classLoader, String resourceName) {
+        return new Key(classLoader, resourceName, collectedClassLoaders);
+    }
+
+    /**
+     * Removes the templates of the garbage collected class loaders, called
+     * holding the lock of the entries.
+     */
+    private void removeCollectedClassLoaders() {
+        if (collectedClassLoaders.poll() == null) {
+            return;
+        }
+        while (collectedClassLoaders.poll() != null) {
+            // Drain, all the stale keys are removed below.
+        }
+        removeStaleKeys(entries.keySet().iterator());
+        synchronized (fragments) {
+            removeStaleKeys(fragments.keySet().iterator());
+        }
+        for (Iterator<Map.Entry<Key, Set<Key>>> i = includingLayouts
+                .entrySet().iterator(); i.hasNext();) {
+            Map.Entry<Key, Set<Key>> entry = i.next();
+            removeStaleKeys(entry.getValue().iterator());
+            if (entry.getKey().isStale() || entry.getValue().isEmpty()) {
+                i.remove();
+            }
+        }
+    }
+
+    private static void removeStaleKeys(Iterator<Key> keys) {
+        while (keys.hasNext()) {
+            if (keys.next().isStale()) {
+                keys.remove();
+            }
+        }
+    }
+
+    private static URL getResource(ClassLoader classLoader,
+            String resourceName) {
+        return classLoader != null ? classLoader.getResource(resourceName)
+                : ClassLoader.getSystemResource(resourceName);
+    }
+
+    private static InputStream getResourceAsStream(ClassLoader classLoader,
+            String resourceName) {
+        return classLoader != null ? classLoader
+                .getResourceAsStream(resourceName) : ClassLoader
+                .getSystemResourceAsStream(resourceName);
+    }
+
+    private void close(InputStream stream, String resourceName) {
+        try {
+            stream.close();
+        } catch (IOException e) {
+            getLogger().log(Level.WARNING,
+                    "Exception while closing " + resourceName + ".", e);
+        }
+    }
+
+    /**
+     * Returns the parser used to parse the templates of this cache.
+     */
+    protected LayoutTemplateParser getParser() {
+        return parser;
+    }
+
+    private static void remove(Map<Key, FutureTask<LayoutTemplate>> map,
+            Key key, FutureTask<LayoutTemplate> task) {
+        synchronized (map) {
+            if (map.get(key) == task) {
+                map.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Removes the template of the given absolute resource name from this
+     * cache.
+     *
+     * @param classLoader
+     * @param resourceName
+     */
+    public void invalidate(ClassLoader classLoader, String resourceName) {
+        invalidate(new Key(classLoader, resourceName));
+    }
+
+    /**
+     * Removes the template of the given key and the templates including it
+     * from this cache.
+     *
+     * @return keys of the removed templates, the given key first.
+     */
+    Set<Key> invalidate(Key key) {
+        Set<Key> invalidated = new LinkedHashSet<Key>();
+        synchronized (entries) {
+            invalidate(key, invalidated);
+        }
+        return invalidated;
+    }
+
+    private void invalidate(Key key, Set<Key> invalidated) {
+        if (!invalidated.add(key)) {
+            return;
+        }
+        entries.remove(key);
+        synchronized (fragments) {
+            fragments.remove(key);
+        }
+        Set<Key> including = includingLayouts.remove(key);
+        if (including != null) {
+            for (Key includingKey : including) {
+                invalidate(includingKey, invalidated);
+            }
+        }
+    }
+
+    /**
+     * Removes all templates from this cache.
+     */
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+            synchronized (fragments) {
+                fragments.clear();
+            }
+            includingLayouts.clear();
+        }
+    }
+
+    /**
+     * Returns the number of templates currently in this cache.
+     */
+    public int size() {
+        synchronized (entries) {
+            removeCollectedClassLoaders();
+            return entries.size();
+        }
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Returns the number of requests served from this cache.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Returns the number of requests that required parsing a template.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Returns the number of templates evicted because the cache was full.
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * Resolves the given resource name into an absolute resource name the same
+     * way {@link Class#getResourceAsStream(String)} does.
+     */
+    public static String resolveName(Class<?> relativeTo, String name) {
+        if (name.startsWith("/")) {
+            return name.substring(1);
+        }
+        Class<?> outermost = relativeTo;
+        while (outermost.isArray()) {
+            outermost = outermost.getComponentType();
+        }
+        String className = outermost.getName();
+        int index = className.lastIndexOf('.');
+        if (index != -1) {
+            return className.substring(0, index).replace('.', '/') + "/"
+                    + name;
+        }
+        return name;
+    }
+
+    /**
+     * Class loader and resource name of a template. The class loader is
+     * referenced weakly, a key whose class loader has been garbage collected
+     * is only equal to itself.
+     */
+    static class Key {
+
+        // null for the system class loader.
+        private final WeakReference<ClassLoader> classLoader;
+        final String resourceName;
+        private final int hash;
+
+        Key(ClassLoader classLoader, String resourceName) {
+            this(classLoader, resourceName, null);
+        }
+
+        Key(ClassLoader classLoader, String resourceName,
+                ReferenceQueue<ClassLoader> queue) {
+            this.classLoader = classLoader != null ? new WeakReference<ClassLoader>(
+                    classLoader, queue) : null;
+            this.resourceName = resourceName;
+            hash = 31 * System.identityHashCode(classLoader)
+                    + resourceName.hashCode();
+        }
+
+        /**
+         * Returns the class loader of this key, {@code null} for the system
+         * class loader or if the class loader has been garbage collected.
+         */
+        ClassLoader getClassLoader() {
+            return classLoader != null ? classLoader.get() : null;
+        }
+
+        /**
+         * Returns {@code true} if the class loader of this key has been
+         * garbage collected.
+         */
+        boolean isStale() {
+            return classLoader != null && classLoader.get() == null;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return !isStale() && !other.isStale()
+                    && getClassLoader() == other.getClassLoader()
+                    && resourceName.equals(other.resourceName);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
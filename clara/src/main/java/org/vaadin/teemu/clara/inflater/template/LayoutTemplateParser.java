@@ -0,0 +1,314 @@
+package org.vaadin.teemu.clara.inflater.template;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Stack;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.vaadin.teemu.clara.inflater.LayoutInflaterException;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Parses layout XML into immutable {@link LayoutTemplate}s. The parser never
+ * loads DTDs or external entities referenced by the XML. Instances are
+ * thread-safe.
+ */
+public class LayoutTemplateParser {
+
+    /**
+     * XML parser implementations a {@link LayoutTemplateParser} can read the
+     * layouts with. Both produce identical templates.
+     */
+    public enum Backend {
+
+        /**
+         * SAX parser. Parser instances are pooled and reused between parses.
+         */
+        SAX,
+
+        /**
+         * Streaming StAX {@link XMLStreamReader}.
+         */
+        STAX
+    }
+
+    static final String URN_NAMESPACE_ID = "import";
+    static final String IMPORT_NAMESPACE_PREFIX = "urn:" + URN_NAMESPACE_ID
+            + ":";
+    static final String DEFAULT_NAMESPACE = IMPORT_NAMESPACE_PREFIX
+            + "com.vaadin.ui";
+    static final String ID_ATTRIBUTE = "id";
+    static final String CLARA_NAMESPACE = "urn:vaadin:clara";
+    static final String INCLUDE_ELEMENT = "include";
+    static final String SRC_ATTRIBUTE = "src";
+    static final String ID_PREFIX_ATTRIBUTE = "idPrefix";
+
+    private static final SaxReaderPool saxReaderPool = new SaxReaderPool(
+            Runtime.getRuntime().availableProcessors());
+
+    private static final XMLInputFactory staxInputFactory = createStaxInputFactory();
+
+    private final Backend backend;
+
+    /**
+     * Creates a parser using the {@link Backend#SAX SAX} backend.
+     */
+    public LayoutTemplateParser() {
+        this(Backend.SAX);
+    }
+
+    public LayoutTemplateParser(Backend backend) {
+        if (backend == null) {
+            throw new IllegalArgumentException("Backend must not be null.");
+        }
+        this.backend = backend;
+    }
+
+    private static XMLInputFactory createStaxInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+                false);
+        return factory;
+    }
+
+    public Backend getBackend() {
+        return backend;
+    }
+
+    /**
+     * Parses the given {@code xml} into a {@link LayoutTemplate}.
+     *
+     * @param xml
+     *            XML representation of the layout.
+     * @param name
+     *            name of the layout used in diagnostics ({@code null}
+     *            allowed).
+     * @return the parsed {@link LayoutTemplate}.
+     *
+     * @throws LayoutInflaterException
+     *             if the XML cannot be read or is not a valid layout.
+     */
+    public LayoutTemplate parse(InputStream xml, String name) {
+        TemplateContentHandler contentHandler = new TemplateContentHandler();
+        try {
+            if (backend == Backend.STAX) {
+                parseStax(xml, contentHandler);
+            } else {
+                parseSax(xml, contentHandler);
+            }
+        } catch (SAXException e) {
+            throw new LayoutInflaterException(e);
+        } catch (IOException e) {
+            throw new LayoutInflaterException(e);
+        } catch (XMLStreamException e) {
+            throw new LayoutInflaterException(e);
+        }
+        return new LayoutTemplate(name, contentHandler.root,
+                contentHandler.assignedIds);
+    }
+
+    private void parseSax(InputStream xml, DefaultHandler contentHandler)
+            throws SAXException, IOException {
+        XMLReader reader = saxReaderPool.acquire();
+        reader.setContentHandler(contentHandler);
+        reader.parse(new InputSource(xml));
+        // Not reached if the parse fails, the reader is discarded then.
+        saxReaderPool.release(reader);
+    }
+
+    /**
+     * Reads the given {@code xml} with a {@link XMLStreamReader} and reports
+     * the elements to the given {@code contentHandler} like a SAX parser
+     * would.
+     */
+    private void parseStax(InputStream xml, DefaultHandler contentHandler)
+            throws XMLStreamException, SAXException {
+        XMLStreamReader reader;
+        // Implementations aren't required to be thread-safe.
+        synchronized (staxInputFactory) {
+            reader = staxInputFactory.createXMLStreamReader(xml);
+        }
+        try {
+            AttributesImpl attributes = new AttributesImpl();
+            contentHandler.startDocument();
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    attributes.clear();
+                    for (int i = 0; i < reader.getAttributeCount(); i++) {
+                        String localName = reader.getAttributeLocalName(i)
+                                .intern();
+                        attributes.addAttribute(
+                                internUri(reader.getAttributeNamespace(i)),
+                                localName, localName, "CDATA",
+                                reader.getAttributeValue(i));
+                    }
+                    String localName = reader.getLocalName().intern();
+                    contentHandler.startElement(
+                            internUri(reader.getNamespaceURI()), localName,
+                            localName, attributes);
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    String localName = reader.getLocalName().intern();
+                    contentHandler.endElement(
+                            internUri(reader.getNamespaceURI()), localName,
+                            localName);
+                }
+            }
+            contentHandler.endDocument();
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static String internUri(String uri) {
+        // StAX reports a missing namespace as null, SAX as "".
+        return uri == null ? "" : uri.intern();
+    }
+
+    private static class TemplateContentHandler extends DefaultHandler {
+
+        // Non-component elements are pushed as null so that their child
+        // components end up in the closest component ancestor.
+        private final Stack<ElementBuilder> elementStack = new Stack<ElementBuilder>();
+        private final Set<String> assignedIds = new HashSet<String>();
+        private ElementTemplate root;
+
+        @Override
+        public void startDocument() throws SAXException {
+            super.startDocument();
+            assignedIds.clear();
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName,
+                Attributes attributes) throws SAXException {
+            super.startElement(uri, localName, qName, attributes);
+
+            if (uri.length() == 0) {
+                uri = DEFAULT_NAMESPACE;
+            }
+
+            if (uri.startsWith(IMPORT_NAMESPACE_PREFIX)) {
+                // Throw an exception if the id is already used.
+                verifyUniqueId(attributes);
+
+                elementStack.push(new ElementBuilder(uri, localName,
+                        attributes));
+            } else if (uri.equals(CLARA_NAMESPACE)
+                    && localName.equals(INCLUDE_ELEMENT)) {
+                String src = attributes.getValue(SRC_ATTRIBUTE);
+                if (src == null || src.length() == 0) {
+                    throw new LayoutInflaterException(
+                            "Include element without a src attribute.");
+                }
+                // Resolved when the layout is loaded.
+                elementStack.push(new ElementBuilder(uri, localName,
+                        attributes));
+            } else {
+                elementStack.push(null);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName)
+                throws SAXException {
+            super.endElement(uri, localName, qName);
+            ElementBuilder builder = elementStack.pop();
+            if (builder == null) {
+                return;
+            }
+
+            ElementTemplate element = builder.build();
+            ElementBuilder parent = findParent();
+            if (parent != null) {
+                parent.children.add(element);
+            } else if (root == null) {
+                // This was the first component element -> root.
+                root = element;
+            }
+        }
+
+        private ElementBuilder findParent() {
+            for (int i = elementStack.size() - 1; i >= 0; i--) {
+                if (elementStack.get(i) != null) {
+                    return elementStack.get(i);
+                }
+            }
+            return null;
+        }
+
+        private void verifyUniqueId(Attributes attributes)
+                throws LayoutInflaterException {
+            String id = attributes.getValue(ID_ATTRIBUTE);
+            if (id != null && id.length() > 0) {
+                boolean unique = assignedIds.add(id);
+                if (!unique) {
+                    throw new LayoutInflaterException(String.format(
+                            "Given id %s has already been assigned.", id));
+                }
+            }
+        }
+    }
+
+    private static class ElementBuilder {
+
+        private final String namespace;
+        private final String className;
+        private final String id;
+        private final Map<String, Map<String, String>> attributes = new LinkedHashMap<String, Map<String, String>>();
+        private final List<ElementTemplate> children = new ArrayList<ElementTemplate>();
+
+        ElementBuilder(String namespace, String className,
+                Attributes attributes) {
+            this.namespace = namespace;
+            this.className = className;
+            this.id = attributes.getValue(ID_ATTRIBUTE);
+
+            for (int i = 0; i < attributes.getLength(); i++) {
+                String attributeNamespace = attributes.getURI(i);
+                Map<String, String> attributeMap = this.attributes
+                        .get(attributeNamespace);
+                if (attributeMap == null) {
+                    attributeMap = new LinkedHashMap<String, String>();
+                    this.attributes.put(attributeNamespace, attributeMap);
+                }
+                attributeMap.put(attributes.getLocalName(i),
+                        attributes.getValue(i));
+            }
+        }
+
+        ElementTemplate build() {
+            Map<String, Map<String, String>> frozenAttributes = new LinkedHashMap<String, Map<String, String>>();
+            for (Map.Entry<String, Map<String, String>> entry : attributes
+                    .entrySet()) {
+                frozenAttributes.put(entry.getKey(),
+                        Collections.unmodifiableMap(entry.getValue()));
+            }
+            String packageName = null;
+            if (namespace.startsWith(IMPORT_NAMESPACE_PREFIX)) {
+                packageName = namespace.substring(IMPORT_NAMESPACE_PREFIX
+                        .length());
+            }
+            return new ElementTemplate(namespace, packageName, className, id,
+                    frozenAttributes, children);
+        }
+    }
+}
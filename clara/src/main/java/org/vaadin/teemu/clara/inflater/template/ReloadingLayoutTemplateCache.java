@@ -0,0 +1,392 @@
+package org.vaadin.teemu.clara.inflater.template;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import org.vaadin.teemu.clara.inflater.LayoutInflaterException;
+
+import com.vaadin.shared.Registration;
+
+/**
+ * {@link LayoutTemplateCache} for development that reads layouts from source
+ * directories instead of the classpath and reloads them when they are edited.
+ *
+ * A resource is read from the first source root that contains it, resources
+ * not found in any source root are loaded from the classpath as usual. The
+ * directories of the layouts read from the source roots are watched with a
+ * {@link WatchService}. When a layout file changes, only the templates read
+ * from that file are invalidated and parsed again, after which the
+ * {@link ReloadListener}s are notified. Deleted files stay watched, so a
+ * layout is reloaded when its file is created again, and layouts that failed
+ * to reload are retried whenever another layout file changes.
+ *
+ * The watcher thread is started when the first layout is read from a source
+ * root and stopped by {@link #close()}. Cache hits never access the file
+ * system.
+ *
+ * @see org.vaadin.teemu.clara.Clara#enableDevelopmentMode(File...)
+ */
+public class ReloadingLayoutTemplateCache extends LayoutTemplateCache
+        implements Closeable {
+
+    // Editors often write a file in several steps, wait for them to finish.
+    private static final long QUIET_PERIOD_MILLIS = 100;
+
+    private final List<File> sourceRoots;
+    private final List<ReloadListener> listeners = new CopyOnWriteArrayList<ReloadListener>();
+
+    // Guarded by itself.
+    private final Map<Path, Set<Key>> keysByFile = new HashMap<Path, Set<Key>>();
+    // Layouts that couldn't be parsed again, guarded by keysByFile.
+    private final Set<Key> failedKeys = new LinkedHashSet<Key>();
+    private final Map<WatchKey, Path> watchedDirectories = new HashMap<WatchKey, Path>();
+    private WatchService watchService;
+    private Thread watcherThread;
+    private boolean closed;
+
+    public ReloadingLayoutTemplateCache(File... sourceRoots) {
+        this(DEFAULT_MAXIMUM_SIZE, Arrays.asList(sourceRoots));
+    }
+
+    public ReloadingLayoutTemplateCache(int maximumSize, List<File> sourceRoots) {
+        super(maximumSize);
+        if (sourceRoots.isEmpty()) {
+            throw new IllegalArgumentException(
+                    "At least one source root is required.");
+        }
+        this.sourceRoots = Collections.unmodifiableList(new ArrayList<File>(
+                sourceRoots));
+    }
+
+    /**
+     * Returns the directories layouts are read from.
+     */
+    public List<File> getSourceRoots() {
+        return sourceRoots;
+    }
+
+    /**
+     * Reads the given resource from the first source root containing it and
+     * starts watching it. Falls back to the classpath if no source root
+     * contains the resource.
+     */
+    @Override
+    protected LayoutTemplate load(ClassLoader classLoader, String resourceName) {
+        File file = findSourceFile(resourceName);
+        if (file == null) {
+            return super.load(classLoader, resourceName);
+        }
+        watch(file.toPath().toAbsolutePath(), new Key(classLoader,
+                resourceName));
+
+        InputStream xml;
+        try {
+            xml = new FileInputStream(file);
+        } catch (FileNotFoundException e) {
+            throw new LayoutInflaterException("Layout file " + file
+                    + " not found.", e);
+        }
+        try {
+            getLogger().fine("Parsing layout template " + file + ".");
+            return getParser().parse(xml, resourceName);
+        } finally {
+            try {
+                xml.close();
+            } catch (IOException e) {
+                getLogger().log(Level.WARNING,
+                        "Exception while closing " + file + ".", e);
+            }
+        }
+    }
+
+    private File findSourceFile(String resourceName) {
+        for (File root : sourceRoots) {
+            File file = new File(root, resourceName);
+            if (file.isFile()) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    private void watch(Path file, Key key) {
+        synchronized (keysByFile) {
+            if (closed) {
+                return;
+            }
+            Set<Key> keys = keysByFile.get(file);
+            if (keys == null) {
+                keys = new LinkedHashSet<Key>();
+                keysByFile.put(file, keys);
+            }
+            keys.add(key);
+
+            Path directory = file.getParent();
+            if (watchedDirectories.containsValue(directory)) {
+                return;
+            }
+            try {
+                if (watchService == null) {
+                    watchService = FileSystems.getDefault().newWatchService();
+                    startWatcherThread();
+                }
+                WatchKey watchKey = directory.register(watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE);
+                watchedDirectories.put(watchKey, directory);
+            } catch (IOException e) {
+                getLogger().log(Level.WARNING,
+                        "Can't watch " + directory + " for changes.", e);
+            }
+        }
+    }
+
+    private void startWatcherThread() {
+        watcherThread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                watchForChanges();
+            }
+        }, "Clara layout watcher");
+        watcherThread.setDaemon(true);
+        watcherThread.start();
+    }
+
+    private void watchForChanges() {
+        WatchService service;
+        synchronized (keysByFile) {
+            service = watchService;
+        }
+        try {
+            while (true) {
+                Set<Path> changedFiles = new LinkedHashSet<Path>();
+                WatchKey watchKey = service.take();
+                while (watchKey != null) {
+                    collectChangedFiles(watchKey, changedFiles);
+                    watchKey = service.poll(QUIET_PERIOD_MILLIS,
+                            TimeUnit.MILLISECONDS);
+                }
+                for (Path file : changedFiles) {
+                    reload(file);
+                }
+            }
+        } catch (InterruptedException e) {
+            // Closed.
+        } catch (ClosedWatchServiceException e) {
+            // Closed.
+        }
+    }
+
+    private void collectChangedFiles(WatchKey watchKey, Set<Path> changedFiles) {
+        Path directory;
+        synchronized (keysByFile) {
+            directory = watchedDirectories.get(watchKey);
+        }
+        for (WatchEvent<?> event : watchKey.pollEvents()) {
+            if (directory != null && event.context() instanceof Path) {
+                changedFiles.add(directory.resolve((Path) event.context()));
+            }
+        }
+        watchKey.reset();
+    }
+
+    /**
+     * Invalidates the templates read from the given file and the templates
+     * including them and parses them again unless the file has been deleted.
+     * The layouts that failed to reload earlier are parsed again too, they
+     * may have failed because of a layout they include.
+     */
+    private void reload(Path file) {
+        Set<Key> keys;
+        Set<Key> retried;
+        synchronized (keysByFile) {
+            Set<Key> watched = keysByFile.get(file);
+            if (watched == null) {
+                // Not a layout of this cache.
+                return;
+            }
+            // The keys stay registered until the cache is closed, so that a
+            // deleted file is reloaded when it's created again.
+            keys = new LinkedHashSet<Key>(watched);
+            retried = new LinkedHashSet<Key>(failedKeys);
+            failedKeys.clear();
+        }
+        // The layouts including a changed layout are parsed again as well.
+        Set<Key> invalidated = new LinkedHashSet<Key>();
+        for (Key key : keys) {
+            invalidated.addAll(invalidate(key));
+            getLogger().info("Layout " + key.resourceName + " changed.");
+        }
+        invalidated.addAll(retried);
+        for (Key key : invalidated) {
+            if (keys.contains(key) && !file.toFile().isFile()) {
+                continue;
+            }
+            ClassLoader classLoader = key.getClassLoader();
+            if (key.isStale()) {
+                // The application of the layout has been undeployed.
+                synchronized (keysByFile) {
+                    Set<Key> watched = keysByFile.get(file);
+                    if (watched != null) {
+                        watched.remove(key);
+                    }
+                }
+                continue;
+            }
+            LayoutTemplate template;
+            try {
+                template = get(classLoader, key.resourceName);
+            } catch (LayoutInflaterException e) {
+                // Typically a layout that is being edited. Its own file is
+                // still watched, and it's retried on the next change.
+                synchronized (keysByFile) {
+                    if (!closed) {
+                        failedKeys.add(key);
+                    }
+                }
+                getLogger().log(Level.WARNING,
+                        "Can't reload layout " + key.resourceName + ".", e);
+                continue;
+            }
+            fireReload(new ReloadEvent(this, classLoader,
+                    key.resourceName, template));
+        }
+    }
+
+    private void fireReload(ReloadEvent event) {
+        for (ReloadListener listener : listeners) {
+            try {
+                listener.layoutReloaded(event);
+            } catch (RuntimeException e) {
+                getLogger().log(Level.WARNING,
+                        "Exception from listener " + listener + ".", e);
+            }
+        }
+    }
+
+    /**
+     * Adds a listener notified after a changed layout has been parsed again.
+     * Listeners are called in the watcher thread, so they must lock the
+     * session (for example with {@link com.vaadin.ui.UI#access(Runnable)})
+     * before re-inflating any components.
+     */
+    public Registration addReloadListener(final ReloadListener listener) {
+        listeners.add(listener);
+        return new Registration() {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void remove() {
+                listeners.remove(listener);
+            }
+        };
+    }
+
+    /**
+     * Returns {@code true} if the watcher thread is running.
+     */
+    public boolean isWatching() {
+        synchronized (keysByFile) {
+            return watcherThread != null && watcherThread.isAlive();
+        }
+    }
+
+    /**
+     * Stops watching the layout files. The templates already in this cache
+     * stay there.
+     */
+    @Override
+    public void close() {
+        Thread thread;
+        synchronized (keysByFile) {
+            closed = true;
+            thread = watcherThread;
+            if (watchService != null) {
+                try {
+                    watchService.close();
+                } catch (IOException e) {
+                    getLogger().log(Level.WARNING,
+                            "Exception while closing the watch service.", e);
+                }
+            }
+            keysByFile.clear();
+            failedKeys.clear();
+            watchedDirectories.clear();
+        }
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Event fired after a changed layout has been parsed again.
+     */
+    public static class ReloadEvent {
+
+        private final ReloadingLayoutTemplateCache source;
+        private final ClassLoader classLoader;
+        private final String resourceName;
+        private final LayoutTemplate template;
+
+        public ReloadEvent(ReloadingLayoutTemplateCache source,
+                ClassLoader classLoader, String resourceName,
+                LayoutTemplate template) {
+            this.source = source;
+            this.classLoader = classLoader;
+            this.resourceName = resourceName;
+            this.template = template;
+        }
+
+        public ReloadingLayoutTemplateCache getSource() {
+            return source;
+        }
+
+        public ClassLoader getClassLoader() {
+            return classLoader;
+        }
+
+        /**
+         * Returns the absolute resource name of the changed layout.
+         */
+        public String getResourceName() {
+            return resourceName;
+        }
+
+        /**
+         * Returns the new template of the changed layout.
+         */
+        public LayoutTemplate getTemplate() {
+            return template;
+        }
+    }
+
+    public interface ReloadListener {
+
+        void layoutReloaded(ReloadEvent event);
+    }
+}
@@ -0,0 +1,119 @@
+package org.vaadin.teemu.clara.inflater.template;
+
+import java.io.StringReader;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.SAXNotSupportedException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Bounded pool of namespace aware {@link XMLReader}s. The readers never load
+ * DTDs or external entities and intern the element and attribute names they
+ * report. A reader is only used by one thread at a time, so idle readers are
+ * shared between threads instead of being held per thread.
+ */
+final class SaxReaderPool {
+
+    private static final Logger logger = Logger.getLogger(SaxReaderPool.class
+            .getName());
+
+    private static final String FEATURE_PREFIX = "http://xml.org/sax/features/";
+    private static final String XERCES_FEATURE_PREFIX = "http://apache.org/xml/features/";
+
+    // Clears the reference to the content handler of the last parse.
+    private static final DefaultHandler NO_OP_HANDLER = new DefaultHandler();
+
+    private static final EntityResolver NO_OP_RESOLVER = new EntityResolver() {
+
+        @Override
+        public InputSource resolveEntity(String publicId, String systemId) {
+            // Replace any external entity that is still resolved with nothing.
+            return new InputSource(new StringReader(""));
+        }
+    };
+
+    private final SAXParserFactory parserFactory;
+    private final BlockingQueue<XMLReader> idleReaders;
+
+    SaxReaderPool(int maximumIdle) {
+        idleReaders = new ArrayBlockingQueue<XMLReader>(maximumIdle);
+        parserFactory = SAXParserFactory.newInstance();
+        parserFactory.setNamespaceAware(true);
+        parserFactory.setValidating(false);
+        setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        setFeature(FEATURE_PREFIX + "external-general-entities", false);
+        setFeature(FEATURE_PREFIX + "external-parameter-entities", false);
+        setFeature(XERCES_FEATURE_PREFIX + "nonvalidating/load-external-dtd",
+                false);
+        setFeature(FEATURE_PREFIX + "string-interning", true);
+    }
+
+    private void setFeature(String name, boolean value) {
+        try {
+            parserFactory.setFeature(name, value);
+        } catch (SAXNotRecognizedException e) {
+            logUnsupported(name);
+        } catch (SAXNotSupportedException e) {
+            logUnsupported(name);
+        } catch (ParserConfigurationException e) {
+            logUnsupported(name);
+        }
+    }
+
+    private void logUnsupported(String feature) {
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine(String.format("%s doesn't support feature %s.",
+                    parserFactory.getClass().getName(), feature));
+        }
+    }
+
+    /**
+     * Returns an idle reader or a new one if there are no idle readers.
+     *
+     * @throws SAXException
+     *             if a new reader cannot be created.
+     */
+    XMLReader acquire() throws SAXException {
+        XMLReader reader = idleReaders.poll();
+        if (reader == null) {
+            reader = createReader();
+        }
+        return reader;
+    }
+
+    /**
+     * Returns the given reader to this pool. Readers that failed to parse
+     * their input must not be returned, they are simply discarded.
+     */
+    void release(XMLReader reader) {
+        reader.setContentHandler(NO_OP_HANDLER);
+        // Dropped if the pool is full.
+        idleReaders.offer(reader);
+    }
+
+    private XMLReader createReader() throws SAXException {
+        XMLReader reader;
+        try {
+            // SAXParserFactory isn't thread-safe.
+            synchronized (parserFactory) {
+                reader = parserFactory.newSAXParser().getXMLReader();
+            }
+        } catch (ParserConfigurationException e) {
+            throw new SAXException(e);
+        }
+        reader.setEntityResolver(NO_OP_RESOLVER);
+        return reader;
+    }
+}
@@ -0,0 +1,153 @@
+package org.vaadin.teemu.clara.jfr;
+
+import java.lang.reflect.Method;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Emits the Java Flight Recorder events of Clara. The events are disabled by
+ * default and must be enabled in the recording settings, for example with
+ * {@code org.vaadin.teemu.clara.Inflation#enabled=true}:
+ * <ul>
+ * <li>{@code org.vaadin.teemu.clara.Inflation}</li>
+ * <li>{@code org.vaadin.teemu.clara.Binding}</li>
+ * <li>{@code org.vaadin.teemu.clara.HandlerDispatch}</li>
+ * <li>{@code org.vaadin.teemu.clara.TemplateCacheMiss}</li>
+ * </ul>
+ *
+ * The event classes are only loaded if the JVM has the {@code jdk.jfr} API,
+ * on other JVMs nothing is emitted. The {@code begin} methods return
+ * {@code null} when the event isn't enabled, the matching {@code end} methods
+ * ignore {@code null} events.
+ */
+public abstract class ClaraEvents {
+
+    private static final ClaraEvents instance = load();
+
+    /**
+     * Returns the instance used by Clara.
+     */
+    public static ClaraEvents get() {
+        return instance;
+    }
+
+    private static ClaraEvents load() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return (ClaraEvents) Class.forName(
+                    "org.vaadin.teemu.clara.jfr.FlightRecorderEvents")
+                    .newInstance();
+        } catch (ClassNotFoundException e) {
+            // No Flight Recorder in this JVM.
+        } catch (Exception e) {
+            logFailure(e);
+        } catch (LinkageError e) {
+            logFailure(e);
+        }
+        return new DisabledEvents();
+    }
+
+    private static void logFailure(Throwable e) {
+        Logger.getLogger(ClaraEvents.class.getName()).log(Level.FINE,
+                "Flight Recorder events are not available.", e);
+    }
+
+    /**
+     * Returns {@code true} if the events of this JVM can be recorded.
+     */
+    public abstract boolean isAvailable();
+
+    /**
+     * Begins an inflation event.
+     */
+    public abstract Object beginInflation();
+
+    public abstract void endInflation(Object event, String layoutName,
+            int componentCount, int attributeCount);
+
+    /**
+     * Begins a binding event.
+     */
+    public abstract Object beginBinding();
+
+    public abstract void endBinding(Object event, Class<?> controllerClass,
+            int fieldCount, int handlerCount);
+
+    /**
+     * Returns {@code true} if the handler dispatch event is enabled. The
+     * dispatches of all handlers are recorded while the event is enabled,
+     * regardless of when the handlers were bound.
+     */
+    public abstract boolean isHandlerDispatchEnabled();
+
+    /**
+     * Begins a handler dispatch event.
+     */
+    public abstract Object beginHandlerDispatch();
+
+    public abstract void endHandlerDispatch(Object event, String componentId,
+            Class<?> eventType, Method handler);
+
+    /**
+     * Begins a template cache miss event, the duration covers parsing the
+     * template.
+     */
+    public abstract Object beginTemplateCacheMiss();
+
+    public abstract void endTemplateCacheMiss(Object event, String resourceName);
+
+    /**
+     * Used when the JVM has no Flight Recorder.
+     */
+    private static final class DisabledEvents extends ClaraEvents {
+
+        @Override
+        public boolean isAvailable() {
+            return false;
+        }
+
+        @Override
+        public Object beginInflation() {
+            return null;
+        }
+
+        @Override
+        public void endInflation(Object event, String layoutName,
+                int componentCount, int attributeCount) {
+        }
+
+        @Override
+        public Object beginBinding() {
+            return null;
+        }
+
+        @Override
+        public void endBinding(Object event, Class<?> controllerClass,
+                int fieldCount, int handlerCount) {
+        }
+
+        @Override
+        public boolean isHandlerDispatchEnabled() {
+            return false;
+        }
+
+        @Override
+        public Object beginHandlerDispatch() {
+            return null;
+        }
+
+        @Override
+        public void endHandlerDispatch(Object event, String componentId,
+                Class<?> eventType, Method handler) {
+        }
+
+        @Override
+        public Object beginTemplateCacheMiss() {
+            return null;
+        }
+
+        @Override
+        public void endTemplateCacheMiss(Object event, String resourceName) {
+        }
+    }
+}
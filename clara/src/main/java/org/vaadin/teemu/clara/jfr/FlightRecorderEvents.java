@@ -0,0 +1,213 @@
+package org.vaadin.teemu.clara.jfr;
+
+import java.lang.reflect.Method;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * {@link ClaraEvents} backed by the {@code jdk.jfr} API. Only loaded
+ * reflectively by {@link ClaraEvents#get()} so that Clara still runs on JVMs
+ * without the Flight Recorder.
+ *
+ * <br />
+ * <br />
+ * The {@link EventType}s are looked up once, so checking whether an event is
+ * enabled allocates nothing and the {@code begin} methods only create an
+ * event while it's being recorded.
+ */
+final class FlightRecorderEvents extends ClaraEvents {
+
+    private final EventType inflationType = EventType
+            .getEventType(InflationEvent.class);
+    private final EventType bindingType = EventType
+            .getEventType(BindingEvent.class);
+    private final EventType handlerDispatchType = EventType
+            .getEventType(HandlerDispatchEvent.class);
+    private final EventType templateCacheMissType = EventType
+            .getEventType(TemplateCacheMissEvent.class);
+
+    @Override
+    public boolean isAvailable() {
+        return true;
+    }
+
+    @Override
+    public Object beginInflation() {
+        if (!inflationType.isEnabled()) {
+            return null;
+        }
+        InflationEvent event = new InflationEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void endInflation(Object event, String layoutName,
+            int componentCount, int attributeCount) {
+        if (event == null) {
+            return;
+        }
+        InflationEvent inflation = (InflationEvent) event;
+        inflation.end();
+        if (inflation.shouldCommit()) {
+            inflation.layoutName = layoutName;
+            inflation.componentCount = componentCount;
+            inflation.attributeCount = attributeCount;
+            inflation.commit();
+        }
+    }
+
+    @Override
+    public Object beginBinding() {
+        if (!bindingType.isEnabled()) {
+            return null;
+        }
+        BindingEvent event = new BindingEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void endBinding(Object event, Class<?> controllerClass,
+            int fieldCount, int handlerCount) {
+        if (event == null) {
+            return;
+        }
+        BindingEvent binding = (BindingEvent) event;
+        binding.end();
+        if (binding.shouldCommit()) {
+            binding.controllerClass = controllerClass;
+            binding.fieldCount = fieldCount;
+            binding.handlerCount = handlerCount;
+            binding.commit();
+        }
+    }
+
+    @Override
+    public boolean isHandlerDispatchEnabled() {
+        return handlerDispatchType.isEnabled();
+    }
+
+    @Override
+    public Object beginHandlerDispatch() {
+        if (!handlerDispatchType.isEnabled()) {
+            return null;
+        }
+        HandlerDispatchEvent event = new HandlerDispatchEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void endHandlerDispatch(Object event, String componentId,
+            Class<?> eventType, Method handler) {
+        if (event == null) {
+            return;
+        }
+        HandlerDispatchEvent dispatch = (HandlerDispatchEvent) event;
+        dispatch.end();
+        if (dispatch.shouldCommit()) {
+            dispatch.componentId = componentId;
+            dispatch.eventType = eventType;
+            dispatch.handler = handler.getDeclaringClass().getName() + "."
+                    + handler.getName();
+            dispatch.commit();
+        }
+    }
+
+    @Override
+    public Object beginTemplateCacheMiss() {
+        if (!templateCacheMissType.isEnabled()) {
+            return null;
+        }
+        TemplateCacheMissEvent event = new TemplateCacheMissEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void endTemplateCacheMiss(Object event, String resourceName) {
+        if (event == null) {
+            return;
+        }
+        TemplateCacheMissEvent miss = (TemplateCacheMissEvent) event;
+        miss.end();
+        if (miss.shouldCommit()) {
+            miss.resourceName = resourceName;
+            miss.commit();
+        }
+    }
+
+    @Name("org.vaadin.teemu.clara.Inflation")
+    @Label("Layout Inflation")
+    @Category("Clara")
+    @Description("Component tree inflated from a layout template")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class InflationEvent extends Event {
+
+        @Label("Layout Name")
+        String layoutName;
+
+        @Label("Component Count")
+        int componentCount;
+
+        @Label("Attribute Count")
+        int attributeCount;
+    }
+
+    @Name("org.vaadin.teemu.clara.Binding")
+    @Label("Controller Binding")
+    @Category("Clara")
+    @Description("Controller bound to an inflated component tree")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class BindingEvent extends Event {
+
+        @Label("Controller Class")
+        Class<?> controllerClass;
+
+        @Label("Fields Bound")
+        int fieldCount;
+
+        @Label("Handlers Bound")
+        int handlerCount;
+    }
+
+    @Name("org.vaadin.teemu.clara.HandlerDispatch")
+    @Label("Handler Dispatch")
+    @Category("Clara")
+    @Description("Event dispatched to a @UiHandler method")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class HandlerDispatchEvent extends Event {
+
+        @Label("Component Id")
+        String componentId;
+
+        @Label("Event Type")
+        Class<?> eventType;
+
+        @Label("Handler")
+        String handler;
+    }
+
+    @Name("org.vaadin.teemu.clara.TemplateCacheMiss")
+    @Label("Template Cache Miss")
+    @Category("Clara")
+    @Description("Layout template parsed because it wasn't cached")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class TemplateCacheMissEvent extends Event {
+
+        @Label("Resource Name")
+        String resourceName;
+    }
+}
@@ -5,6 +5,7 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.regex.Pattern;
 
 import com.vaadin.ui.Component;
 
@@ -50,10 +51,12 @@ public class ReflectionUtils {
     public static List<Method> findMethods(Class<?> clazz, String nameRegex,
             ParamCount numberOfParams) {
         List<Method> methods = new ArrayList<Method>();
+        Pattern namePattern = Pattern.compile(nameRegex);
         for (Method method : clazz.getMethods()) {
-            if (method.getName().matches(nameRegex)
-                    && method.getParameterTypes().length >= numberOfParams.min
-                    && method.getParameterTypes().length <= numberOfParams.max) {
+            int paramCount = method.getParameterTypes().length;
+            if (paramCount >= numberOfParams.min
+                    && paramCount <= numberOfParams.max
+                    && namePattern.matcher(method.getName()).matches()) {
                 methods.add(method);
             }
         }
@@ -4,8 +4,22 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -15,15 +29,27 @@ import org.vaadin.teemu.clara.inflater.LayoutInflaterException;
 import org.vaadin.teemu.clara.inflater.filter.AttributeContext;
 import org.vaadin.teemu.clara.inflater.filter.AttributeFilter;
 
+import com.vaadin.server.ErrorHandlingRunnable;
+import com.vaadin.server.VaadinRequest;
 import com.vaadin.ui.Button;
 import com.vaadin.ui.Component;
 import com.vaadin.ui.Layout;
+import com.vaadin.ui.UI;
+import com.vaadin.ui.UIDetachedException;
 import com.vaadin.ui.VerticalLayout;
 import java.util.Map;
 import org.vaadin.teemu.clara.inflater.handler.AttributeHandler;
 
 public class ClaraTest {
 
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
     private InputStream xml;
     private Controller controller;
     private AttributeFilter firstFilter;
@@ -153,6 +179,123 @@ public class ClaraTest {
         assertEquals("{i18n:test}", button200px.getCaption());
     }
 
+    @Test
+    public void testBuildAsync_usingExecutor_componentInflatedAndBound()
+            throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Component layout = new Clara.Builder().readFromStream(xml)
+                    .bindToController(controller).buildAsync(executor)
+                    .get(10, TimeUnit.SECONDS);
+
+            Button button200px = (Button) Clara.findComponentById(layout,
+                    "button200px");
+            button200px.click();
+            assertTrue(controller.clicked);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testBuildAsync_usingUI_boundInUIAccess() throws Exception {
+        final AtomicBoolean accessed = new AtomicBoolean();
+        UI ui = new UI() {
+
+            @Override
+            protected void init(VaadinRequest request) {
+            }
+
+            @Override
+            public Future<Void> access(Runnable runnable) {
+                accessed.set(true);
+                FutureTask<Void> task = new FutureTask<Void>(runnable, null);
+                task.run();
+                return task;
+            }
+        };
+        CompletableFuture<Component> future = new Clara.Builder()
+                .readFromStream(xml).bindToController(controller)
+                .buildAsync(DIRECT_EXECUTOR, ui);
+
+        assertTrue(future.isDone());
+        assertTrue(accessed.get());
+        assertEquals(VerticalLayout.class, future.get().getClass());
+    }
+
+    @Test
+    public void testBuildAsync_detachedUI_completedExceptionally()
+            throws Exception {
+        UI ui = new UI() {
+
+            @Override
+            protected void init(VaadinRequest request) {
+            }
+
+            @Override
+            public Future<Void> access(Runnable runnable) {
+                // Like a UI detached before the session runs the task.
+                ((ErrorHandlingRunnable) runnable)
+                        .handleError(new UIDetachedException());
+                return new FutureTask<Void>(runnable, null);
+            }
+        };
+
+        CompletableFuture<Component> future = new Clara.Builder()
+                .readFromStream(xml).bindToController(controller)
+                .buildAsync(DIRECT_EXECUTOR, ui);
+
+        try {
+            future.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof UIDetachedException);
+        }
+    }
+
+    @Test
+    public void testBuildAsync_cancelled_accessCancelled() throws Exception {
+        final List<FutureTask<Void>> pending = new ArrayList<FutureTask<Void>>();
+        UI ui = new UI() {
+
+            @Override
+            protected void init(VaadinRequest request) {
+            }
+
+            @Override
+            public Future<Void> access(Runnable runnable) {
+                // Session not locked yet.
+                FutureTask<Void> task = new FutureTask<Void>(runnable, null);
+                pending.add(task);
+                return task;
+            }
+        };
+
+        CompletableFuture<Component> future = new Clara.Builder()
+                .readFromStream(xml).bindToController(controller)
+                .buildAsync(DIRECT_EXECUTOR, ui);
+        assertFalse(future.isDone());
+        future.cancel(false);
+
+        assertTrue(pending.get(0).isCancelled());
+    }
+
+    @Test
+    public void testBuildAsync_usingNonExistingFilenameInClasspath_completedExceptionally()
+            throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            new Clara.Builder().readFromFile("non-existing-file.xml")
+                    .bindToController(controller).buildAsync(executor)
+                    .get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof LayoutInflaterException);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void testFindComponentById_nullComponent_exceptionThrown() {
         Clara.findComponentById(null, "foobar");
@@ -227,6 +370,89 @@ public class ClaraTest {
         };
     }
 
+    @Test
+    public void update_buttonReplaced_onlyNewButtonBound() throws Exception {
+        UpdateController updateController = new UpdateController();
+        Component layout = new Clara.Builder()
+                .readFromStream(
+                        toStream("<Button id=\"first\" /><Button id=\"second\" caption=\"Old\" />"))
+                .bindToController(updateController).enableUpdates().build();
+        Button first = updateController.first;
+        Button second = updateController.second;
+
+        Component updated = Clara.update(layout,
+                toStream("<Button id=\"first\" /><Button id=\"second\" />"),
+                updateController);
+        updateController.first.click();
+        updateController.second.click();
+
+        assertTrue(updated == layout);
+        assertTrue(first == updateController.first);
+        assertFalse(second == updateController.second);
+        assertEquals(2, updateController.clicks);
+    }
+
+    @Test
+    public void update_updatesNotEnabled_newRootCreated() throws Exception {
+        UpdateController updateController = new UpdateController();
+        Component layout = Clara.create(
+                toStream("<Button id=\"first\" /><Button id=\"second\" />"),
+                updateController);
+
+        Component updated = Clara.update(layout,
+                toStream("<Button id=\"first\" /><Button id=\"second\" />"),
+                updateController);
+        Component updatedAgain = Clara.update(updated,
+                toStream("<Button id=\"first\" /><Button id=\"second\" caption=\"New\" />"),
+                updateController);
+
+        assertFalse(updated == layout);
+        assertTrue(updatedAgain == updated);
+        assertEquals("New", ((Button) Clara.findComponentById(updatedAgain,
+                "second")).getCaption());
+    }
+
+    @Test
+    public void update_notCreatedByClara_newRootCreated() throws Exception {
+        VerticalLayout layout = new VerticalLayout();
+        UpdateController updateController = new UpdateController();
+
+        Component updated = Clara.update(layout,
+                toStream("<Button id=\"first\" /><Button id=\"second\" />"),
+                updateController);
+
+        assertFalse(updated == layout);
+        assertTrue(updateController.second.getParent() == updated);
+    }
+
+    private static InputStream toStream(String content)
+            throws UnsupportedEncodingException {
+        return new ByteArrayInputStream(
+                ("<VerticalLayout xmlns=\"urn:import:com.vaadin.ui\">"
+                        + content + "</VerticalLayout>").getBytes("UTF-8"));
+    }
+
+    public static class UpdateController {
+
+        @UiField("first")
+        Button first;
+
+        @UiField("second")
+        Button second;
+
+        int clicks;
+
+        @UiHandler("first")
+        public void firstClicked(Button.ClickEvent event) {
+            clicks++;
+        }
+
+        @UiHandler("second")
+        public void secondClicked(Button.ClickEvent event) {
+            clicks++;
+        }
+    }
+
     public AttributeFilter getSecondFilter() {
         return new AttributeFilter() {
 
@@ -0,0 +1,123 @@
+package org.vaadin.teemu.clara;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vaadin.ui.AbstractOrderedLayout;
+import com.vaadin.ui.Button;
+import com.vaadin.ui.Component;
+import com.vaadin.ui.CssLayout;
+import com.vaadin.ui.HorizontalLayout;
+import com.vaadin.ui.Label;
+import com.vaadin.ui.Panel;
+import com.vaadin.ui.VerticalLayout;
+
+public class ComponentIndexTest {
+
+    private VerticalLayout root;
+    private Button button;
+    private Label label;
+    private HorizontalLayout row;
+
+    @Before
+    public void setUp() {
+        root = new VerticalLayout();
+        button = new Button();
+        button.setId("button");
+        button.addStyleName("primary small");
+        label = new Label();
+        label.setId("label");
+        label.addStyleName("small");
+        row = new HorizontalLayout();
+        row.addComponent(label);
+        Panel panel = new Panel();
+        panel.setContent(row);
+        root.addComponents(button, panel);
+    }
+
+    @Test
+    public void of_sameRoot_sameIndex() {
+        assertSame(ComponentIndex.of(root), ComponentIndex.of(root));
+    }
+
+    @Test
+    public void get_builtIndex_componentsFound() {
+        ComponentIndex index = ComponentIndex.of(root);
+
+        assertSame(label, index.getById("label"));
+        assertNull(index.getById("missing"));
+        assertEquals(Arrays.asList(button), index.getByType(Button.class));
+        assertEquals(Arrays.<AbstractOrderedLayout> asList(root, row),
+                index.getByType(AbstractOrderedLayout.class));
+        assertEquals(Arrays.<Component> asList(button, label),
+                index.getByStyleName("small"));
+        assertEquals(Arrays.<Component> asList(button),
+                index.getByStyleName("primary"));
+    }
+
+    @Test
+    public void get_componentsAddedAndRemoved_indexUpdated() {
+        ComponentIndex index = ComponentIndex.of(root);
+        CssLayout added = new CssLayout();
+        Button nested = new Button();
+        nested.setId("nested");
+        added.addComponent(nested);
+
+        row.addComponent(added);
+        assertSame(nested, index.getById("nested"));
+        assertEquals(2, index.getByType(Button.class).size());
+
+        row.removeComponent(label);
+        added.removeComponent(nested);
+        assertNull(index.getById("label"));
+        assertNull(index.getById("nested"));
+        assertEquals(Arrays.asList(button), index.getByType(Button.class));
+        assertEquals(Arrays.<Component> asList(button),
+                index.getByStyleName("small"));
+    }
+
+    @Test
+    public void getById_idChanged_treeWalked() {
+        ComponentIndex index = ComponentIndex.of(root);
+
+        label.setId("renamed");
+
+        assertSame(label, index.getById("renamed"));
+        assertNull(index.getById("label"));
+    }
+
+    @Test
+    public void refresh_styleNameChanged_reindexed() {
+        ComponentIndex index = ComponentIndex.of(root);
+        label.addStyleName("large");
+        assertTrue(index.getByStyleName("large").isEmpty());
+
+        index.refresh();
+
+        assertEquals(Arrays.<Component> asList(label),
+                index.getByStyleName("large"));
+    }
+
+    @Test
+    public void findComponentById_deepTree_noStackOverflow() {
+        Label leaf = new Label();
+        leaf.setId("leaf");
+        Component deep = leaf;
+        // Built bottom up as adding checks the ancestors of the container.
+        for (int i = 0; i < 100000; i++) {
+            CssLayout parent = new CssLayout();
+            parent.addComponent(deep);
+            deep = parent;
+        }
+
+        assertSame(leaf, Clara.findComponentById(deep, "leaf"));
+        assertSame(leaf, ComponentIndex.of(deep).getById("leaf"));
+    }
+}
@@ -0,0 +1,208 @@
+package org.vaadin.teemu.clara;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vaadin.ui.Button;
+import com.vaadin.ui.Component;
+import com.vaadin.ui.CssLayout;
+import com.vaadin.ui.CustomComponent;
+import com.vaadin.ui.HorizontalLayout;
+import com.vaadin.ui.Label;
+import com.vaadin.ui.Panel;
+import com.vaadin.ui.VerticalLayout;
+
+public class ComponentSelectorTest {
+
+    private VerticalLayout root;
+    private HorizontalLayout toolbar;
+    private Button save;
+    private Button cancel;
+    private Panel panel;
+    private Label label;
+    private Button nested;
+
+    @Before
+    public void setUp() {
+        root = new VerticalLayout();
+        toolbar = new HorizontalLayout();
+        toolbar.setId("toolbar");
+        save = new Button("Save all");
+        save.setId("save");
+        save.addStyleName("primary small");
+        cancel = new Button("Cancel");
+        cancel.addStyleName("small");
+        toolbar.addComponents(save, cancel);
+        label = new Label("Saved");
+        label.addStyleName("small");
+        nested = new Button("Save draft");
+        CssLayout content = new CssLayout();
+        content.addComponents(label, nested);
+        panel = new Panel();
+        panel.setContent(content);
+        root.addComponents(toolbar, panel);
+    }
+
+    @Test
+    public void select_simpleSelectors_componentsInTreeOrder() {
+        assertEquals(Arrays.<Component> asList(save, cancel, nested),
+                Clara.select(root, "Button"));
+        assertEquals(Arrays.<Component> asList(save),
+                Clara.select(root, "#save"));
+        assertEquals(Arrays.<Component> asList(save, cancel, label),
+                Clara.select(root, ".small"));
+        assertEquals(Arrays.<Component> asList(save),
+                Clara.select(root, "Button.small.primary"));
+        assertEquals(Arrays.<Component> asList(root, toolbar),
+                Clara.select(root, "AbstractOrderedLayout"));
+        assertEquals(8, Clara.select(root, "*").size());
+        assertTrue(Clara.select(root, "TextField").isEmpty());
+    }
+
+    @Test
+    public void select_combinators_ancestorsMatched() {
+        assertEquals(Arrays.<Component> asList(save, cancel),
+                Clara.select(root, "#toolbar > Button"));
+        assertEquals(Arrays.<Component> asList(nested),
+                Clara.select(root, "Panel Button"));
+        assertTrue(Clara.select(root, "Panel > Button").isEmpty());
+        assertEquals(Arrays.<Component> asList(label),
+                Clara.select(root, "VerticalLayout Panel > CssLayout .small"));
+        assertTrue(Clara.select(toolbar, "VerticalLayout Button").isEmpty());
+        assertEquals(Arrays.<Component> asList(save, cancel),
+                Clara.select(toolbar, "HorizontalLayout Button"));
+    }
+
+    @Test
+    public void select_attributes_valuesCompared() {
+        assertEquals(Arrays.<Component> asList(save, nested),
+                Clara.select(root, "Button[caption^=Save]"));
+        assertEquals(Arrays.<Component> asList(cancel),
+                Clara.select(root, "[caption=\"Cancel\"]"));
+        assertEquals(Arrays.<Component> asList(nested),
+                Clara.select(root, "[caption$='draft']"));
+        assertEquals(Arrays.<Component> asList(save, nested),
+                Clara.select(root, "[caption*=ave]"));
+        assertEquals(Arrays.<Component> asList(label),
+                Clara.select(root, "Label[value=Saved]"));
+        assertEquals(Arrays.<Component> asList(save),
+                Clara.select(root, "[styleName~=primary]"));
+        assertEquals(Arrays.<Component> asList(save, cancel, nested),
+                Clara.select(root, "Button[enabled=true]"));
+        assertEquals(Arrays.<Component> asList(toolbar, save),
+                Clara.select(root, "[id]"));
+        assertTrue(Clara.select(root, "[missing]").isEmpty());
+    }
+
+    @Test
+    public void select_groups_mergedInTreeOrder() {
+        assertEquals(Arrays.<Component> asList(toolbar, save, cancel, panel),
+                Clara.select(root, "Panel, #toolbar, #toolbar Button"));
+    }
+
+    @Test
+    public void selectFirst_firstInTreeOrder() {
+        assertSame(save, Clara.selectFirst(root, "Button"));
+        assertSame(label, Clara.selectFirst(root, "Panel .small"));
+        assertNull(Clara.selectFirst(root, "TextField"));
+    }
+
+    @Test
+    public void select_treeChanged_indexUsed() {
+        Button added = new Button();
+        added.addStyleName("small");
+        toolbar.addComponent(added);
+        panel.setContent(null);
+
+        assertEquals(Arrays.<Component> asList(save, cancel, added),
+                Clara.select(root, ".small"));
+        assertEquals(Collections.emptyList(), Clara.select(root, "Label"));
+    }
+
+    @Test
+    public void select_styleNameChanged_noRefreshNeeded() {
+        assertEquals(Arrays.<Component> asList(save),
+                Clara.select(root, ".primary"));
+
+        save.removeStyleName("primary");
+        nested.addStyleName("primary");
+
+        assertEquals(Arrays.<Component> asList(nested),
+                Clara.select(root, ".primary"));
+        assertEquals(Arrays.<Component> asList(nested),
+                Clara.select(root, "Button.primary"));
+    }
+
+    @Test
+    public void select_untrackedContainerChanged_treeWalked() {
+        Composite custom = new Composite(new Label());
+        toolbar.addComponent(custom);
+        assertEquals(3, Clara.select(root, "Button").size());
+
+        Button replaced = new Button();
+        custom.replaceRoot(replaced);
+
+        assertEquals(Arrays.<Component> asList(save, cancel, replaced,
+                nested), Clara.select(root, "Button"));
+    }
+
+    @Test
+    public void compile_sameSelector_cached() {
+        assertSame(ComponentSelector.compile("Panel > Button"),
+                ComponentSelector.compile("Panel > Button"));
+    }
+
+    @Test
+    public void compile_invalidSelectors_exceptionThrown() {
+        for (String selector : Arrays.asList("", "Button >", "#", ".a..b",
+                "[caption", "[caption!=a]", "Button,", "Button)")) {
+            try {
+                ComponentSelector.compile(selector);
+                fail("Expected IllegalArgumentException for " + selector);
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage().contains("at position"));
+            }
+        }
+    }
+
+    @Test
+    public void select_largeTree_indexedLookups() {
+        VerticalLayout large = new VerticalLayout();
+        for (int i = 0; i < 1000; i++) {
+            CssLayout row = new CssLayout();
+            row.addStyleName("row");
+            Label rowLabel = new Label("Row " + i);
+            Button rowButton = new Button("Edit");
+            rowButton.setId("edit-" + i);
+            rowButton.addStyleName(i % 2 == 0 ? "even" : "odd");
+            row.addComponents(rowLabel, rowButton);
+            large.addComponent(row);
+        }
+
+        assertEquals(500, Clara.select(large, ".row > Button.even").size());
+        assertEquals(1,
+                Clara.select(large, "VerticalLayout > .row #edit-999").size());
+        assertEquals("Row 0", ((Label) Clara.selectFirst(large, ".row Label"))
+                .getValue());
+    }
+
+    private static class Composite extends CustomComponent {
+
+        Composite(Component compositionRoot) {
+            super(compositionRoot);
+        }
+
+        void replaceRoot(Component compositionRoot) {
+            setCompositionRoot(compositionRoot);
+        }
+    }
+}
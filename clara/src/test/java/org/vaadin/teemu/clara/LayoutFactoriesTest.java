@@ -0,0 +1,23 @@
+package org.vaadin.teemu.clara;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class LayoutFactoriesTest {
+
+    @Test
+    public void get_noGeneratedFactory_null() {
+        assertNull(LayoutFactories.get(LayoutFactoriesTest.class));
+        assertNull(LayoutFactories.get(LayoutFactoriesTest.class));
+    }
+
+    @Test
+    public void getFactoryClassName_nestedClass_dollarKept() {
+        assertEquals("org.vaadin.teemu.clara.ClaraTest$UpdateController"
+                + LayoutFactory.FACTORY_SUFFIX,
+                LayoutFactories
+                        .getFactoryClassName(ClaraTest.UpdateController.class));
+    }
+}
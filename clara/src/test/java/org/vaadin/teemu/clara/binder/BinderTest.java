@@ -5,18 +5,22 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.InputStream;
 import java.lang.reflect.Method;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Map;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.vaadin.teemu.clara.binder.annotation.UiDataSource;
 import org.vaadin.teemu.clara.binder.annotation.UiField;
 import org.vaadin.teemu.clara.binder.annotation.UiHandler;
+import org.vaadin.teemu.clara.inflater.InflationResult;
 import org.vaadin.teemu.clara.inflater.LayoutInflater;
 
 import com.vaadin.v7.data.Property;
 import com.vaadin.ui.Button;
 import com.vaadin.ui.Button.ClickEvent;
+import com.vaadin.ui.Component;
 import com.vaadin.v7.ui.DateField;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -72,6 +76,32 @@ public class BinderTest {
         assertTrue(controller.myButton == button);
     }
 
+    @Test
+    public void bind_inflationResult_fieldSetFromIndex() {
+        Button button = (Button) inflater.inflate(getXml("single-button.xml"));
+        Button indexed = new Button();
+        InflationResult result = new InflationResult(button,
+                Collections.<String, Component> singletonMap("myButton",
+                        indexed));
+
+        ControllerWithFieldBinding controller = new ControllerWithFieldBinding();
+        new Binder().bind(result, controller);
+
+        // the index wins over the component tree
+        assertTrue(controller.myButton == indexed);
+    }
+
+    @Test
+    public void bind_inflationResultWithoutId_fieldSetFromTree() {
+        Button button = (Button) inflater.inflate(getXml("single-button.xml"));
+        Map<String, Component> noIndex = Collections.emptyMap();
+
+        ControllerWithFieldBinding controller = new ControllerWithFieldBinding();
+        new Binder().bind(new InflationResult(button, noIndex), controller);
+
+        assertTrue(controller.myButton == button);
+    }
+
     @Test
     public void bind_field_fieldOfSuperclassSetCorrectly() {
         Button button = (Button) inflater.inflate(getXml("single-button.xml"));
@@ -0,0 +1,140 @@
+package org.vaadin.teemu.clara.binder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.junit.Test;
+import org.vaadin.teemu.clara.binder.BinderTest.ControllerWithFieldBinding;
+import org.vaadin.teemu.clara.binder.BinderTest.SubcontrollerWithoutFieldBinding;
+import org.vaadin.teemu.clara.binder.BindingPlan.FieldBinding;
+import org.vaadin.teemu.clara.binder.BindingPlan.MethodBinding;
+import org.vaadin.teemu.clara.binder.annotation.UiField;
+import org.vaadin.teemu.clara.binder.annotation.UiHandler;
+
+import com.vaadin.ui.Button;
+import com.vaadin.ui.Button.ClickEvent;
+import com.vaadin.ui.Component;
+
+public class BindingPlanTest {
+
+    @Test
+    public void of_sameClassTwice_sameInstance() {
+        assertSame(BindingPlan.of(ControllerWithFieldBinding.class),
+                BindingPlan.of(ControllerWithFieldBinding.class));
+    }
+
+    @Test
+    public void of_subclass_superclassFieldsIncluded() {
+        BindingPlan plan = BindingPlan.of(SubcontrollerWithoutFieldBinding.class);
+
+        assertEquals(1, plan.getFieldBindings().size());
+        assertEquals("myButton", plan.getFieldBindings().get(0)
+                .getComponentId());
+    }
+
+    @Test
+    public void of_fieldsAndHandlers_allComponentIdsResolved() {
+        BindingPlan plan = BindingPlan.of(ControllerWithFieldsAndHandler.class);
+
+        assertEquals(
+                new HashSet<String>(Arrays.asList("first", "second", "button")),
+                plan.getComponentIds());
+
+        MethodBinding handler = plan.getMethodBindings().get(0);
+        assertTrue(handler.isHandler());
+        assertEquals(ClickEvent.class, handler.getEventType());
+    }
+
+    @Test
+    public void fieldBinding_getAndSet_fieldAccessed() {
+        ControllerWithFieldsAndHandler controller = new ControllerWithFieldsAndHandler();
+        FieldBinding field = BindingPlan
+                .of(ControllerWithFieldsAndHandler.class).getFieldBindings()
+                .get(0);
+        Button button = new Button();
+
+        assertNull(field.get(controller));
+        field.set(controller, button);
+        assertSame(button, field.get(controller));
+    }
+
+    @Test(expected = BinderException.class)
+    public void fieldBinding_setWrongType_exceptionThrown() {
+        FieldBinding field = BindingPlan
+                .of(ControllerWithFieldsAndHandler.class).getFieldBindings()
+                .get(0);
+        field.set(new ControllerWithFieldsAndHandler(), "not a button");
+    }
+
+    @Test
+    public void getAlreadyAssignedFields_superclassField_included() {
+        SubcontrollerWithoutFieldBinding controller = new SubcontrollerWithoutFieldBinding();
+        Button button = new Button();
+        BindingPlan.of(SubcontrollerWithoutFieldBinding.class)
+                .getFieldBindings().get(0).set(controller, button);
+
+        Map<String, Component> assigned = new Binder()
+                .getAlreadyAssignedFields(controller);
+
+        assertEquals(1, assigned.size());
+        assertSame(button, assigned.get("myButton"));
+    }
+
+    @Test
+    public void getAlreadyAssignedFields_nullFields_notIncluded() {
+        assertFalse(new Binder().getAlreadyAssignedFields(
+                new ControllerWithFieldsAndHandler()).containsKey("first"));
+    }
+
+    @Test
+    public void getHandlerIndex_handlersInSignatureOrder() throws Exception {
+        BindingPlan plan = BindingPlan.of(ControllerWithTwoHandlers.class);
+        Method first = ControllerWithTwoHandlers.class.getMethod("onFirst",
+                ClickEvent.class);
+        Method second = ControllerWithTwoHandlers.class.getMethod(
+                "onSecond", ClickEvent.class);
+
+        assertEquals(0, plan.getHandlerIndex(first));
+        assertEquals(1, plan.getHandlerIndex(second));
+        assertEquals(-1, plan.getHandlerIndex(Object.class.getMethod(
+                "toString")));
+        assertEquals(second, plan.getHandler(1, plan.getHandlerSignature(1)));
+        assertNull(plan.getHandler(1, plan.getHandlerSignature(0)));
+        assertNull(plan.getHandler(2, plan.getHandlerSignature(1)));
+    }
+
+    public static class ControllerWithTwoHandlers {
+
+        @UiHandler("second")
+        public void onSecond(ClickEvent event) {
+            // NOP
+        }
+
+        @UiHandler("first")
+        public void onFirst(ClickEvent event) {
+            // NOP
+        }
+    }
+
+    public static class ControllerWithFieldsAndHandler {
+
+        @UiField("first")
+        private Button firstButton;
+
+        @UiField
+        private Button second;
+
+        @UiHandler("button")
+        public void onClick(ClickEvent event) {
+            // NOP
+        }
+    }
+}
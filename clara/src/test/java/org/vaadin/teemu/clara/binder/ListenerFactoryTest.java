@@ -0,0 +1,184 @@
+package org.vaadin.teemu.clara.binder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.junit.Test;
+import org.vaadin.teemu.clara.binder.annotation.UiHandler;
+
+import com.vaadin.ui.Button;
+import com.vaadin.ui.Button.ClickEvent;
+import com.vaadin.ui.Button.ClickListener;
+
+public class ListenerFactoryTest {
+
+    @Test
+    public void create_functionalInterface_callsHandler() throws Exception {
+        Controller controller = new Controller();
+        ClickListener listener = (ClickListener) ListenerFactory.create(
+                ClickListener.class, ClickEvent.class,
+                getHandlerMethod("handleClick"), controller);
+
+        listener.buttonClick(new ClickEvent(new Button()));
+        assertEquals(1, controller.clicks);
+    }
+
+    @Test
+    public void create_sameHandler_listenerClassReused() throws Exception {
+        Object first = ListenerFactory.create(ClickListener.class,
+                ClickEvent.class, getHandlerMethod("handleClick"),
+                new Controller());
+        Object second = ListenerFactory.create(ClickListener.class,
+                ClickEvent.class, getHandlerMethod("handleClick"),
+                new Controller());
+        assertSame(first.getClass(), second.getClass());
+    }
+
+    @Test
+    public void create_listener_callsHandlerAfterDeserialization()
+            throws Exception {
+        Controller controller = new Controller();
+        ClickListener listener = (ClickListener) ListenerFactory.create(
+                ClickListener.class, ClickEvent.class,
+                getHandlerMethod("handleClick"), controller);
+
+        Object[] deserialized = (Object[]) serializeAndDeserialize(new Object[] {
+                listener, controller });
+        ((ClickListener) deserialized[0]).buttonClick(new ClickEvent(
+                new Button()));
+        assertEquals(1, ((Controller) deserialized[1]).clicks);
+    }
+
+    @Test
+    public void create_listenerForUiHandler_serializedAsHandlerIndex()
+            throws Exception {
+        Controller controller = new Controller();
+        Object listener = ListenerFactory.create(ClickListener.class,
+                ClickEvent.class, getHandlerMethod("handleAnnotatedClick"),
+                controller);
+
+        byte[] bytes = serialize(new Object[] { listener, controller });
+        // The handler isn't named.
+        String content = new String(bytes, "ISO-8859-1");
+        assertFalse(content.contains("handleAnnotatedClick"));
+
+        Object[] deserialized = (Object[]) new ObjectInputStream(
+                new ByteArrayInputStream(bytes)).readObject();
+        assertTrue(Proxy.isProxyClass(deserialized[0].getClass()));
+        ((ClickListener) deserialized[0]).buttonClick(new ClickEvent(
+                new Button()));
+        assertEquals(1, ((Controller) deserialized[1]).annotatedClicks);
+    }
+
+    @Test
+    public void create_multipleAbstractMethods_callsHandler() throws Exception {
+        Controller controller = new Controller();
+        TwoMethodListener listener = (TwoMethodListener) ListenerFactory
+                .create(TwoMethodListener.class, ClickEvent.class,
+                        getHandlerMethod("handleClick"), controller);
+
+        listener.buttonClick(new ClickEvent(new Button()));
+        assertEquals(1, controller.clicks);
+    }
+
+    @Test
+    public void create_proxy_callsHandlerAfterDeserialization()
+            throws Exception {
+        Controller controller = new Controller();
+        TwoMethodListener listener = (TwoMethodListener) ListenerFactory
+                .create(TwoMethodListener.class, ClickEvent.class,
+                        getHandlerMethod("handleClick"), controller);
+
+        Object[] deserialized = (Object[]) serializeAndDeserialize(new Object[] {
+                listener, controller });
+        ((TwoMethodListener) deserialized[0]).buttonClick(new ClickEvent(
+                new Button()));
+        assertEquals(1, ((Controller) deserialized[1]).clicks);
+    }
+
+    @Test
+    public void create_proxyForUiHandler_serializedAsHandlerIndex()
+            throws Exception {
+        Controller controller = new Controller();
+        Object plain = ListenerFactory.create(TwoMethodListener.class,
+                ClickEvent.class, getHandlerMethod("handleClick"), controller);
+        Object indexed = ListenerFactory.create(TwoMethodListener.class,
+                ClickEvent.class, getHandlerMethod("handleAnnotatedClick"),
+                controller);
+
+        byte[] indexedBytes = serialize(new Object[] { indexed, controller });
+        assertTrue(indexedBytes.length < serialize(new Object[] { plain,
+                controller }).length);
+
+        Object[] deserialized = (Object[]) new ObjectInputStream(
+                new ByteArrayInputStream(indexedBytes)).readObject();
+        ((TwoMethodListener) deserialized[0]).buttonClick(new ClickEvent(
+                new Button()));
+        assertEquals(0, ((Controller) deserialized[1]).clicks);
+        assertEquals(1, ((Controller) deserialized[1]).annotatedClicks);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void create_handlerThrows_exceptionPropagated() throws Exception {
+        ClickListener listener = (ClickListener) ListenerFactory.create(
+                ClickListener.class, ClickEvent.class,
+                getHandlerMethod("handleClickAndFail"), new Controller());
+        listener.buttonClick(new ClickEvent(new Button()));
+    }
+
+    private static Method getHandlerMethod(String name)
+            throws NoSuchMethodException {
+        return Controller.class.getMethod(name, ClickEvent.class);
+    }
+
+    private static Object serializeAndDeserialize(Object object)
+            throws IOException, ClassNotFoundException {
+        return new ObjectInputStream(new ByteArrayInputStream(
+                serialize(object))).readObject();
+    }
+
+    private static byte[] serialize(Object object) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(object);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    public interface TwoMethodListener extends Serializable {
+
+        void buttonClick(ClickEvent event);
+
+        void somethingElse(String value);
+    }
+
+    public static class Controller implements Serializable {
+
+        int clicks;
+        int annotatedClicks;
+
+        public void handleClick(ClickEvent event) {
+            clicks++;
+        }
+
+        @UiHandler("button")
+        public void handleAnnotatedClick(ClickEvent event) {
+            annotatedClicks++;
+        }
+
+        public void handleClickAndFail(ClickEvent event) {
+            throw new IllegalStateException();
+        }
+    }
+}
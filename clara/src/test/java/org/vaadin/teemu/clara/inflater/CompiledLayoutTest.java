@@ -0,0 +1,163 @@
+package org.vaadin.teemu.clara.inflater;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.vaadin.teemu.clara.inflater.filter.AttributeContext;
+import org.vaadin.teemu.clara.inflater.filter.AttributeFilter;
+import org.vaadin.teemu.clara.inflater.handler.AttributeHandlerException;
+import org.vaadin.teemu.clara.inflater.template.LayoutTemplate;
+
+import com.vaadin.server.Sizeable.Unit;
+import com.vaadin.shared.ui.MarginInfo;
+import com.vaadin.ui.Alignment;
+import com.vaadin.ui.Button;
+import com.vaadin.ui.Component;
+import com.vaadin.ui.Label;
+import com.vaadin.ui.Panel;
+import com.vaadin.ui.TabSheet;
+import com.vaadin.ui.VerticalLayout;
+
+public class CompiledLayoutTest {
+
+    private static final String XML = "<VerticalLayout xmlns=\"urn:import:com.vaadin.ui\" xmlns:l=\"urn:vaadin:parent\""
+            + " id=\"layout\" margin=\"true false true false\" spacing=\"true\" sizeFull=\"\">"
+            + "<Button id=\"button\" caption=\"Click\" enabled=\"false\" width=\"200px\""
+            + " l:expandRatio=\"1.0\" l:componentAlignment=\"MIDDLE_CENTER\" />"
+            + "<Panel id=\"panel\"><Label id=\"label\" value=\"Text\" /></Panel>"
+            + "</VerticalLayout>";
+
+    private LayoutInflater inflater;
+
+    @Before
+    public void setUp() {
+        inflater = new LayoutInflater();
+        inflater.setCompileThreshold(2);
+    }
+
+    private LayoutTemplate parse(String xml) {
+        return inflater.parse(new ByteArrayInputStream(xml.getBytes()), null);
+    }
+
+    private InputStream getXml(String fileName) {
+        return getClass().getClassLoader().getResourceAsStream(fileName);
+    }
+
+    @Test
+    public void inflate_thresholdReached_compiledTreeEqual() {
+        LayoutTemplate template = parse(XML);
+        Map<String, Component> noOverrides = Collections.emptyMap();
+
+        InflationResult interpreted = inflater.inflateWithIndex(template,
+                noOverrides);
+        assertFalse(CompiledLayout.isCompiled(template));
+        inflater.inflate(template);
+        assertTrue(CompiledLayout.isCompiled(template));
+        InflationResult compiled = inflater.inflateWithIndex(template,
+                noOverrides);
+
+        assertEquals(interpreted.getComponentsById().keySet(),
+                compiled.getComponentsById().keySet());
+        VerticalLayout layout = (VerticalLayout) compiled.getRoot();
+        assertEquals(new MarginInfo(true, false, true, false),
+                layout.getMargin());
+        assertTrue(layout.isSpacing());
+        assertEquals(100, layout.getWidth(), 0);
+        assertEquals(Unit.PERCENTAGE, layout.getWidthUnits());
+        Button button = (Button) compiled.getComponentById("button");
+        assertSame(layout, button.getParent());
+        assertEquals("Click", button.getCaption());
+        assertFalse(button.isEnabled());
+        assertEquals(200, button.getWidth(), 0);
+        assertEquals(1.0f, layout.getExpandRatio(button), 0);
+        assertEquals(Alignment.MIDDLE_CENTER,
+                layout.getComponentAlignment(button));
+        Panel panel = (Panel) compiled.getComponentById("panel");
+        Label label = (Label) compiled.getComponentById("label");
+        assertSame(label, panel.getContent());
+        assertEquals("Text", label.getValue());
+    }
+
+    @Test
+    public void inflate_compiledWithOverride_overrideUsed() {
+        LayoutTemplate template = parse(XML);
+        inflater.inflate(template);
+        inflater.inflate(template);
+        assertTrue(CompiledLayout.isCompiled(template));
+        Button override = new Button();
+
+        InflationResult result = inflater.inflateWithIndex(template,
+                Collections.<String, Component> singletonMap("button",
+                        override));
+
+        assertSame(override, result.getComponentById("button"));
+        assertSame(result.getRoot(), override.getParent());
+        assertEquals("Click", override.getCaption());
+    }
+
+    @Test
+    public void inflate_lazyElements_placeholdersCreated() {
+        LayoutTemplate template = inflater.parse(getXml("lazy-tabsheet.xml"),
+                null);
+        inflater.inflate(template);
+        inflater.inflate(template);
+        assertTrue(CompiledLayout.isCompiled(template));
+
+        InflationResult result = inflater.inflateWithIndex(template,
+                Collections.<String, Component> emptyMap());
+
+        TabSheet tabs = (TabSheet) result.getRoot();
+        assertEquals(3, tabs.getComponentCount());
+        assertEquals(2, result.getLazyComponents().size());
+        assertEquals("Second", result.getLazyComponents().get(0)
+                .getCaption());
+    }
+
+    @Test
+    public void inflate_attributeFilter_notCompiled() {
+        inflater.addAttributeFilter(new AttributeFilter() {
+
+            @Override
+            public void filter(AttributeContext attributeContext) {
+                try {
+                    attributeContext.proceed();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        LayoutTemplate template = parse(XML);
+
+        for (int i = 0; i < 3; i++) {
+            inflater.inflate(template);
+        }
+
+        assertFalse(CompiledLayout.isCompiled(template));
+    }
+
+    @Test
+    public void inflate_invalidValue_interpreted() {
+        LayoutTemplate template = parse("<Button xmlns=\"urn:import:com.vaadin.ui\" tabIndex=\"first\" />");
+
+        for (int i = 0; i < 3; i++) {
+            try {
+                inflater.inflate(template);
+                fail("Expected AttributeHandlerException");
+            } catch (AttributeHandlerException e) {
+                // Reported by the interpreter on every inflation.
+            }
+        }
+
+        assertFalse(CompiledLayout.isCompiled(template));
+    }
+}
@@ -0,0 +1,69 @@
+package org.vaadin.teemu.clara.inflater;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vaadin.ui.Button;
+import com.vaadin.ui.Component;
+import com.vaadin.ui.Label;
+
+public class ComponentFactoryTest {
+
+    private ComponentFactory factory;
+
+    @Before
+    public void setUp() {
+        factory = new ComponentFactory();
+    }
+
+    @Test
+    public void createComponent_sameClassTwice_newInstances() {
+        Component first = factory.createComponent("com.vaadin.ui", "Button");
+        Component second = factory.createComponent("com.vaadin.ui", "Button");
+
+        assertEquals(Button.class, first.getClass());
+        assertEquals(Button.class, second.getClass());
+        assertNotSame(first, second);
+    }
+
+    @Test(expected = ComponentInstantiationException.class)
+    public void createComponent_nonExistingClass_exceptionThrown() {
+        factory.createComponent("com.vaadin.ui", "NonExisting");
+    }
+
+    @Test(expected = ComponentInstantiationException.class)
+    public void createComponent_notAComponent_exceptionThrown() {
+        factory.createComponent("java.lang", "Object");
+    }
+
+    @Test
+    public void createComponent_alias_aliasResolved() {
+        factory.addNamespaceAlias("v", "com.vaadin.ui");
+
+        assertEquals(Label.class, factory.createComponent("v", "Label")
+                .getClass());
+    }
+
+    @Test
+    public void createComponent_provider_providedInstanceUsed() {
+        final Button provided = new Button("provided");
+        factory.addNamespaceAlias("v", "com.vaadin.ui");
+        factory.addComponentProvider("com.vaadin.ui", new ComponentProvider() {
+
+            @Override
+            public Component createComponent(String packageName,
+                    String className) {
+                return "Button".equals(className) ? provided : null;
+            }
+        });
+
+        assertSame(provided, factory.createComponent("v", "Button"));
+        // null from the provider falls back to the constructor
+        assertEquals(Label.class,
+                factory.createComponent("com.vaadin.ui", "Label").getClass());
+    }
+}
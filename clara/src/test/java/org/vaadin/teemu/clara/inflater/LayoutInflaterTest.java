@@ -1,11 +1,18 @@
 package org.vaadin.teemu.clara.inflater;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import com.vaadin.shared.ui.ContentMode;
 import org.junit.Before;
@@ -13,7 +20,9 @@ import org.junit.Test;
 import org.vaadin.teemu.clara.Clara;
 import org.vaadin.teemu.clara.inflater.filter.AttributeContext;
 import org.vaadin.teemu.clara.inflater.filter.AttributeFilter;
+import org.vaadin.teemu.clara.inflater.filter.BulkAttributeFilter;
 import org.vaadin.teemu.clara.inflater.handler.AttributeHandlerException;
+import org.vaadin.teemu.clara.inflater.template.LayoutTemplate;
 
 import com.vaadin.server.Sizeable.Unit;
 import com.vaadin.shared.ui.MarginInfo;
@@ -218,6 +227,65 @@ public class LayoutInflaterTest {
         assertEquals("{i18n:test}", button200px.getCaption());
     }
 
+    @Test
+    public void inflate_addBulkAttributeFilter_attributesFilteredPerElement() {
+        final List<LayoutTemplate> prepared = new ArrayList<LayoutTemplate>();
+        inflater.addBulkAttributeFilter(new BulkAttributeFilter() {
+
+            @Override
+            public void prepare(LayoutTemplate template) {
+                prepared.add(template);
+            }
+
+            @Override
+            public Map<String, String> filter(Component component,
+                    String namespace, Map<String, String> attributes) {
+                String caption = attributes.get("caption");
+                if (caption == null || !caption.startsWith("{i18n:")) {
+                    return attributes;
+                }
+                Map<String, String> filtered = new HashMap<String, String>(
+                        attributes);
+                filtered.put("caption", "translated");
+                return filtered;
+            }
+        });
+        Component view = inflater.inflate(getXml("attributefilter-test.xml"));
+
+        Button button200px = (Button) Clara.findComponentById(view,
+                "button200px");
+        assertEquals("translated", button200px.getCaption());
+        assertEquals(200, button200px.getWidth(), 0.0f);
+        assertEquals(1, prepared.size());
+    }
+
+    @Test
+    public void inflate_attributeFilterRemoved_notApplied() {
+        AttributeFilter filter = new AttributeFilter() {
+
+            @Override
+            public void filter(AttributeContext attributeContext) {
+                if (attributeContext.getSetter().getName()
+                        .equals("setCaption")) {
+                    attributeContext.setValue("filteredValue");
+                }
+                try {
+                    attributeContext.proceed();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        inflater.addAttributeFilter(filter);
+        inflater.inflate(getXml("attributefilter-test.xml"));
+        inflater.removeAttributeFilter(filter);
+        Component view = inflater.inflate(getXml("attributefilter-test.xml"));
+
+        Button button200px = (Button) Clara.findComponentById(view,
+                "button200px");
+        assertEquals("{i18n:test}", button200px.getCaption());
+    }
+
     @Test
     public void inflate_singleButton_findByIdWorks() {
         Component view = inflater.inflate(getXml("single-button.xml"));
@@ -230,6 +298,19 @@ public class LayoutInflaterTest {
         assertEquals(null, Clara.findComponentById(view, "non-existing-id"));
     }
 
+    @Test
+    public void inflateWithIndex_layoutWithIds_componentsIndexed() {
+        Map<String, Component> noOverrides = Collections.emptyMap();
+        InflationResult result = inflater.inflateWithIndex(
+                getXml("integration-test.xml"), noOverrides);
+
+        assertEquals(VerticalLayout.class, result.getRoot().getClass());
+        assertEquals(1, result.getComponentsById().size());
+        assertSame(Clara.findComponentById(result.getRoot(), "button200px"),
+                result.getComponentById("button200px"));
+        assertNull(result.getComponentById("non-existing-id"));
+    }
+
     @Test(expected = LayoutInflaterException.class)
     public void inflate_nonComponent_exceptionThrown() {
         inflater.inflate(getXml("non-component.xml"));
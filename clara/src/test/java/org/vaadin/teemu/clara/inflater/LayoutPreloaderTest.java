@@ -0,0 +1,133 @@
+package org.vaadin.teemu.clara.inflater;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.vaadin.teemu.clara.inflater.template.LayoutTemplateCache;
+
+public class LayoutPreloaderTest {
+
+    private static final String VALID = "<VerticalLayout xmlns=\"urn:import:com.vaadin.ui\" xmlns:l=\"urn:vaadin:parent\">"
+            + "<Button id=\"button\" caption=\"Click\" l:expandRatio=\"1\" /></VerticalLayout>";
+
+    private File root;
+    private LayoutTemplateCache cache;
+    private LayoutPreloader preloader;
+
+    @Before
+    public void setUp() throws IOException {
+        root = File.createTempFile("clara", "");
+        root.delete();
+        root.mkdir();
+        cache = new LayoutTemplateCache(10);
+        preloader = new LayoutPreloader(new URLClassLoader(
+                new URL[] { root.toURI().toURL() }, null));
+        preloader.setTemplateCache(cache);
+        preloader.setParallelism(2);
+    }
+
+    @After
+    public void tearDown() {
+        delete(root);
+    }
+
+    @Test
+    public void findLayouts_claraNamespacesOnly() throws IOException {
+        write("ui/valid.xml", VALID);
+        write("ui/sub/fragment.xml",
+                "<c:include xmlns:c=\"urn:vaadin:clara\" src=\"../valid.xml\" />");
+        write("ui/config.xml", "<configuration><debug /></configuration>");
+        write("ui/readme.txt", "urn:import:com.vaadin.ui");
+        write("other/outside.xml", VALID);
+
+        assertEquals(Arrays.asList("ui/sub/fragment.xml", "ui/valid.xml"),
+                preloader.findLayouts("ui"));
+    }
+
+    @Test
+    public void preload_brokenLayout_errorsReported() throws IOException {
+        write("ui/valid.xml", VALID);
+        write("ui/broken.xml",
+                "<VerticalLayout xmlns=\"urn:import:com.vaadin.ui\">"
+                        + "<Buton id=\"button\" /><Button id=\"other\" tabIndex=\"first\" />"
+                        + "</VerticalLayout>");
+
+        PreloadReport report = preloader.preload("ui");
+
+        assertEquals(2, report.getLayouts().size());
+        assertFalse(report.isSuccessful());
+        assertTrue(report.getLayouts().get(1).isSuccessful());
+        List<PreloadReport.Layout> failures = report.getFailures();
+        assertEquals(1, failures.size());
+        assertEquals("ui/broken.xml", failures.get(0).getName());
+        assertEquals(Arrays.asList(
+                "Component class com.vaadin.ui.Buton not found.",
+                "Invalid value \"first\" of attribute tabIndex of Button#other."),
+                failures.get(0).getErrors());
+        assertEquals(2, cache.size());
+        try {
+            report.throwIfFailed();
+            fail("Expected LayoutInflaterException");
+        } catch (LayoutInflaterException e) {
+            assertTrue(e.getMessage().startsWith(
+                    "1 of 2 layouts failed to preload:"));
+        }
+    }
+
+    @Test
+    public void preload_unparseableLayout_errorReported() throws IOException {
+        write("ui/invalid.xml", "<VerticalLayout xmlns=\"urn:import:com.vaadin.ui\">");
+
+        PreloadReport report = preloader.preload("ui");
+
+        assertEquals(1, report.getFailures().size());
+    }
+
+    @Test
+    public void preload_warmUpInflations_successful() throws IOException {
+        write("ui/valid.xml", VALID);
+        preloader.setWarmUpInflations(3);
+
+        PreloadReport report = preloader.preload(Collections
+                .singleton("ui/valid.xml"));
+
+        assertTrue(report.isSuccessful());
+        report.throwIfFailed();
+    }
+
+    private void write(String path, String content) throws IOException {
+        File file = new File(root, path);
+        file.getParentFile().mkdirs();
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
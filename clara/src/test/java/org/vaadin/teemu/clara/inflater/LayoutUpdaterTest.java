@@ -0,0 +1,197 @@
+package org.vaadin.teemu.clara.inflater;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.vaadin.teemu.clara.inflater.template.LayoutTemplate;
+import org.vaadin.teemu.clara.inflater.template.LayoutTemplateParser;
+
+import com.vaadin.ui.Alignment;
+import com.vaadin.ui.Button;
+import com.vaadin.ui.Component;
+import com.vaadin.ui.Label;
+import com.vaadin.ui.Panel;
+import com.vaadin.ui.VerticalLayout;
+
+public class LayoutUpdaterTest {
+
+    private static final String HEADER = "<VerticalLayout xmlns=\"urn:import:com.vaadin.ui\""
+            + " xmlns:l=\"urn:vaadin:parent\">";
+    private static final String FOOTER = "</VerticalLayout>";
+
+    private LayoutInflater inflater;
+    private LayoutTemplate previous;
+    private Map<String, Component> noOverrides;
+
+    @Before
+    public void setUp() {
+        inflater = new LayoutInflater();
+        noOverrides = Collections.emptyMap();
+    }
+
+    private static LayoutTemplate parse(String content) {
+        try {
+            return new LayoutTemplateParser().parse(new ByteArrayInputStream(
+                    (HEADER + content + FOOTER).getBytes("UTF-8")), null);
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private VerticalLayout inflate(String content) {
+        previous = parse(content);
+        return (VerticalLayout) inflater.inflate(previous, noOverrides);
+    }
+
+    private InflationResult update(Component root, String content) {
+        LayoutTemplate template = parse(content);
+        InflationResult result = inflater.update(root, previous, template);
+        previous = template;
+        return result;
+    }
+
+    @Test
+    public void update_attributeChanged_componentKept() {
+        VerticalLayout layout = inflate("<Button id=\"button\" caption=\"Before\" />");
+        Button button = (Button) layout.getComponent(0);
+
+        InflationResult result = update(layout,
+                "<Button id=\"button\" caption=\"After\" />");
+
+        assertSame(layout, result.getRoot());
+        assertSame(button, layout.getComponent(0));
+        assertEquals("After", button.getCaption());
+        assertTrue(result.getComponentsById().isEmpty());
+    }
+
+    @Test
+    public void update_attributeUnchanged_setterNotCalled() {
+        VerticalLayout layout = inflate("<Button caption=\"Before\" /><Label />");
+        layout.getComponent(0).setCaption("Changed by the user");
+
+        update(layout, "<Button caption=\"Before\" /><Label value=\"New\" />");
+
+        assertEquals("Changed by the user", layout.getComponent(0)
+                .getCaption());
+        assertEquals("New", ((Label) layout.getComponent(1)).getValue());
+    }
+
+    @Test
+    public void update_childInserted_othersKept() {
+        VerticalLayout layout = inflate("<Label id=\"first\" /><Label id=\"second\" />");
+        Component first = layout.getComponent(0);
+        Component second = layout.getComponent(1);
+
+        InflationResult result = update(layout,
+                "<Label id=\"first\" /><Button id=\"new\" /><Label id=\"second\" />");
+
+        assertEquals(3, layout.getComponentCount());
+        assertSame(first, layout.getComponent(0));
+        assertEquals(Button.class, layout.getComponent(1).getClass());
+        assertSame(second, layout.getComponent(2));
+        assertSame(layout.getComponent(1), result.getComponentById("new"));
+        assertEquals(1, result.getComponentsById().size());
+    }
+
+    @Test
+    public void update_childRemoved_componentRemoved() {
+        VerticalLayout layout = inflate("<Label /><Button /><Label />");
+        Component last = layout.getComponent(2);
+
+        update(layout, "<Label /><Label />");
+
+        assertEquals(2, layout.getComponentCount());
+        assertSame(last, layout.getComponent(1));
+    }
+
+    @Test
+    public void update_childrenReordered_componentsMoved() {
+        VerticalLayout layout = inflate("<Button id=\"a\" l:componentAlignment=\"MIDDLE_CENTER\" />"
+                + "<Button id=\"b\" />");
+        Component a = layout.getComponent(0);
+        Component b = layout.getComponent(1);
+
+        update(layout, "<Button id=\"b\" />"
+                + "<Button id=\"a\" l:componentAlignment=\"MIDDLE_CENTER\" />");
+
+        assertSame(b, layout.getComponent(0));
+        assertSame(a, layout.getComponent(1));
+        assertEquals(Alignment.MIDDLE_CENTER, layout.getComponentAlignment(a));
+    }
+
+    @Test
+    public void update_layoutAttributeChanged_assigned() {
+        VerticalLayout layout = inflate("<Button l:expandRatio=\"1.0\" />");
+
+        update(layout, "<Button l:expandRatio=\"2.0\" />");
+
+        assertEquals(2.0f,
+                layout.getExpandRatio(layout.getComponent(0)), 0.0f);
+    }
+
+    @Test
+    public void update_attributeRemoved_componentReplaced() {
+        VerticalLayout layout = inflate("<Button caption=\"Before\" />");
+        Component button = layout.getComponent(0);
+
+        update(layout, "<Button />");
+
+        assertNotSame(button, layout.getComponent(0));
+        assertEquals(null, layout.getComponent(0).getCaption());
+    }
+
+    @Test
+    public void update_typeChanged_componentReplaced() {
+        VerticalLayout layout = inflate("<Button id=\"component\" />");
+
+        InflationResult result = update(layout, "<Label id=\"component\" />");
+
+        assertEquals(Label.class, layout.getComponent(0).getClass());
+        assertSame(layout.getComponent(0), result.getComponentById("component"));
+    }
+
+    @Test
+    public void update_panelContentChanged_contentReplaced() {
+        VerticalLayout layout = inflate("<Panel caption=\"Panel\"><Label /></Panel>");
+        Panel panel = (Panel) layout.getComponent(0);
+
+        update(layout, "<Panel caption=\"Panel\"><Button /></Panel>");
+
+        assertSame(panel, layout.getComponent(0));
+        assertEquals(Button.class, panel.getContent().getClass());
+    }
+
+    @Test
+    public void update_componentAddedByApplication_containerReplaced() {
+        VerticalLayout layout = inflate("<VerticalLayout><Label /></VerticalLayout>");
+        VerticalLayout nested = (VerticalLayout) layout.getComponent(0);
+        nested.addComponent(new Button());
+
+        update(layout, "<VerticalLayout><Label /></VerticalLayout>");
+
+        assertNotSame(nested, layout.getComponent(0));
+        assertEquals(1, ((VerticalLayout) layout.getComponent(0))
+                .getComponentCount());
+    }
+
+    @Test
+    public void update_rootTypeChanged_newRootInflated() {
+        VerticalLayout layout = inflate("<Label />");
+
+        InflationResult result = inflater.update(layout, previous,
+                new LayoutTemplateParser().parse(new ByteArrayInputStream(
+                        "<Button xmlns=\"urn:import:com.vaadin.ui\" />"
+                                .getBytes()), null));
+
+        assertEquals(Button.class, result.getRoot().getClass());
+    }
+}
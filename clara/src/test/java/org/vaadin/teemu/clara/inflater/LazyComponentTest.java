@@ -0,0 +1,149 @@
+package org.vaadin.teemu.clara.inflater;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.vaadin.teemu.clara.Clara;
+import org.vaadin.teemu.clara.binder.BinderException;
+import org.vaadin.teemu.clara.binder.annotation.UiField;
+import org.vaadin.teemu.clara.binder.annotation.UiHandler;
+
+import com.vaadin.server.Sizeable.Unit;
+import com.vaadin.ui.Button;
+import com.vaadin.ui.Button.ClickEvent;
+import com.vaadin.ui.Component;
+import com.vaadin.ui.Label;
+import com.vaadin.ui.Panel;
+import com.vaadin.ui.TabSheet;
+import com.vaadin.ui.VerticalLayout;
+
+public class LazyComponentTest {
+
+    private LayoutInflater inflater;
+    private Map<String, Component> noOverrides;
+
+    @Before
+    public void setUp() {
+        inflater = new LayoutInflater();
+        noOverrides = Collections.emptyMap();
+    }
+
+    private InputStream getXml(String fileName) {
+        return getClass().getClassLoader().getResourceAsStream(fileName);
+    }
+
+    @Test
+    public void inflate_lazyTabs_placeholdersCreated() {
+        InflationResult result = inflater.inflateWithIndex(
+                getXml("lazy-tabsheet.xml"), noOverrides);
+        TabSheet tabs = (TabSheet) result.getRoot();
+
+        assertEquals(VerticalLayout.class, tabs.getTab(0).getComponent()
+                .getClass());
+        LazyComponent second = (LazyComponent) tabs.getTab(1).getComponent();
+        assertFalse(second.isInflated());
+        assertEquals("Second", tabs.getTab(1).getCaption());
+        assertEquals(100, second.getWidth(), 0);
+        assertEquals(Unit.PERCENTAGE, second.getWidthUnits());
+
+        assertEquals(2, result.getLazyComponents().size());
+        assertNull(result.getComponentById("lazyButton"));
+        assertTrue(result.isDeferred("lazyButton"));
+        assertTrue(result.isDeferred("nestedLabel"));
+        assertFalse(result.isDeferred("firstLabel"));
+        assertNull(Clara.findComponentById(tabs, "lazyButton"));
+    }
+
+    @Test
+    public void selectTab_lazyTab_inflated() {
+        TabSheet tabs = (TabSheet) inflater.inflate(getXml("lazy-tabsheet.xml"));
+        LazyComponent second = (LazyComponent) tabs.getTab(1).getComponent();
+
+        tabs.setSelectedTab(second);
+
+        assertTrue(second.isInflated());
+        assertFalse(second.isDeferred("lazyButton"));
+        VerticalLayout layout = (VerticalLayout) second.getInflatedComponent();
+        assertSame(layout, Clara.findComponentById(tabs, "second"));
+        assertEquals("Lazy",
+                Clara.findComponentById(tabs, "lazyButton").getCaption());
+        // the nested lazy element is still a placeholder
+        assertNull(Clara.findComponentById(tabs, "nestedLabel"));
+        assertFalse(((LazyComponent) layout.getComponent(1)).isInflated());
+    }
+
+    @Test
+    public void inflate_nestedLazy_inflatedOnDemand() {
+        TabSheet tabs = (TabSheet) inflater.inflate(getXml("lazy-tabsheet.xml"));
+        LazyComponent second = (LazyComponent) tabs.getTab(1).getComponent();
+        second.inflate();
+        LazyComponent nested = (LazyComponent) ((VerticalLayout) second
+                .getInflatedComponent()).getComponent(1);
+
+        nested.beforeClientResponse(true);
+
+        assertEquals(Panel.class, nested.getInflatedComponent().getClass());
+        assertEquals("Nested", ((Label) Clara.findComponentById(tabs,
+                "nestedLabel")).getValue());
+    }
+
+    @Test
+    public void bind_lazyTab_boundWhenInflated() {
+        LazyController controller = new LazyController();
+        TabSheet tabs = (TabSheet) Clara.create(getXml("lazy-tabsheet.xml"),
+                controller);
+        assertNull(controller.lazyButton);
+        assertTrue(controller.firstLabel != null);
+
+        tabs.setSelectedTab(1);
+        assertTrue(controller.lazyButton != null);
+        assertNull(controller.nestedLabel);
+
+        controller.lazyButton.click();
+        assertEquals(1, controller.clicks);
+
+        // inflating again doesn't bind again
+        ((LazyComponent) tabs.getTab(1).getComponent()).inflate();
+        controller.lazyButton.click();
+        assertEquals(2, controller.clicks);
+    }
+
+    @Test(expected = BinderException.class)
+    public void bind_unknownId_exceptionThrown() {
+        Clara.create(getXml("lazy-tabsheet.xml"), new UnknownIdController());
+    }
+
+    public static class LazyController {
+
+        @UiField("firstLabel")
+        Label firstLabel;
+
+        @UiField("lazyButton")
+        Button lazyButton;
+
+        @UiField("nestedLabel")
+        Label nestedLabel;
+
+        int clicks;
+
+        @UiHandler("lazyButton")
+        public void handleClick(ClickEvent event) {
+            clicks++;
+        }
+    }
+
+    public static class UnknownIdController {
+
+        @UiField("unknown")
+        Label unknown;
+    }
+}
@@ -0,0 +1,163 @@
+package org.vaadin.teemu.clara.inflater.handler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.vaadin.teemu.clara.inflater.CustomVerticalLayout;
+import org.vaadin.teemu.clara.inflater.filter.AttributeContext;
+import org.vaadin.teemu.clara.inflater.filter.AttributeFilter;
+import org.vaadin.teemu.clara.inflater.parser.PrimitiveAttributeParser;
+import org.vaadin.teemu.clara.inflater.parser.VaadinAttributeParser;
+
+import com.vaadin.ui.Alignment;
+import com.vaadin.ui.Button;
+import com.vaadin.ui.Component;
+
+public class AttributeSetterIndexTest {
+
+    private DefaultAttributeHandler defaultHandler;
+    private LayoutAttributeHandler layoutHandler;
+
+    @Before
+    public void setUp() {
+        defaultHandler = new DefaultAttributeHandler(
+                new ArrayList<AttributeFilter>());
+        layoutHandler = new LayoutAttributeHandler(
+                new ArrayList<AttributeFilter>());
+    }
+
+    @Test
+    public void getSetter_sameAttributeTwice_resolvedOnce() {
+        AttributeSetter first = getSetter(defaultHandler, Button.class,
+                "caption");
+        AttributeSetter second = getSetter(new DefaultAttributeHandler(
+                new ArrayList<AttributeFilter>()), Button.class, "caption");
+
+        assertSame(first, second);
+        assertEquals("setCaption", first.getMethod().getName());
+        assertEquals(String.class, first.getValueType());
+        assertTrue(first.getParser() instanceof PrimitiveAttributeParser);
+    }
+
+    @Test
+    public void getSetter_unknownAttribute_nullReturnedAndRemembered() {
+        assertNull(getSetter(defaultHandler, Button.class, "nonExisting"));
+        assertSame(AttributeSetter.NONE,
+                defaultHandler.getSetters(Button.class).get("nonExisting"));
+    }
+
+    @Test
+    public void getSetter_noArgumentSetter_noValueType() {
+        AttributeSetter setter = getSetter(defaultHandler, Button.class,
+                "sizeFull");
+
+        assertEquals(0, setter.getMethod().getParameterTypes().length);
+        assertNull(setter.getValueType());
+    }
+
+    @Test
+    public void getSetter_layoutSetter_valueTypeIsSecondParameter() {
+        AttributeSetter setter = getSetter(layoutHandler,
+                CustomVerticalLayout.class, "componentAlignment");
+
+        assertEquals(Alignment.class, setter.getValueType());
+        assertTrue(setter.getParser() instanceof VaadinAttributeParser);
+    }
+
+    @Test
+    public void getSetter_deprecatedLayoutSetter_notPreferred() {
+        AttributeSetter setter = getSetter(layoutHandler,
+                CustomVerticalLayout.class, "expandRatio");
+
+        assertEquals(Float.TYPE, setter.getValueType());
+    }
+
+    @Test
+    public void getSetter_differentHandlerClasses_separateIndexes() {
+        // The default handler only knows single parameter setters.
+        assertNull(getSetter(defaultHandler, CustomVerticalLayout.class,
+                "expandRatio"));
+
+        assertEquals(Float.TYPE, getSetter(layoutHandler,
+                CustomVerticalLayout.class, "expandRatio").getValueType());
+    }
+
+    @Test
+    public void invokeLiteral_booleanSetter_valueSet()
+            throws InvocationTargetException {
+        Button button = new Button();
+        AttributeSetter setter = getSetter(defaultHandler, Button.class,
+                "enabled");
+
+        assertTrue(setter.hasPrimitiveInvoker());
+        setter.invokeLiteral(button, button, "false");
+        assertFalse(button.isEnabled());
+    }
+
+    @Test
+    public void invokeLiteral_layoutSetter_componentPassedAsFirstParameter()
+            throws InvocationTargetException {
+        CustomVerticalLayout layout = new CustomVerticalLayout();
+        Button button = new Button();
+        layout.addComponent(button);
+        AttributeSetter setter = getSetter(layoutHandler,
+                CustomVerticalLayout.class, "expandRatio");
+
+        assertTrue(setter.hasPrimitiveInvoker());
+        setter.invokeLiteral(layout, button, "0.5");
+        assertEquals(0.5f, layout.getExpandRatio(button), 0.0f);
+    }
+
+    @Test
+    public void hasPrimitiveInvoker_objectValueType_false() {
+        assertFalse(getSetter(defaultHandler, Button.class, "caption")
+                .hasPrimitiveInvoker());
+    }
+
+    @Test
+    public void assignAttributes_filterAddedAfterConstruction_filterApplied() {
+        List<AttributeFilter> filters = new ArrayList<AttributeFilter>();
+        DefaultAttributeHandler handler = new DefaultAttributeHandler(filters);
+        Button button = new Button();
+        handler.assignAttributes(button,
+                Collections.singletonMap("caption", "first"));
+
+        filters.add(new AttributeFilter() {
+
+            @Override
+            public void filter(AttributeContext attributeContext) {
+                attributeContext.setValue("filtered");
+                try {
+                    attributeContext.proceed();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        handler.assignAttributes(button,
+                Collections.singletonMap("caption", "second"));
+        assertEquals("filtered", button.getCaption());
+
+        filters.clear();
+        handler.assignAttributes(button,
+                Collections.singletonMap("caption", "third"));
+        assertEquals("third", button.getCaption());
+    }
+
+    private AttributeSetter getSetter(DefaultAttributeHandler handler,
+            Class<? extends Component> componentClass,
+            String attributeName) {
+        return handler.getSetter(handler.getSetters(componentClass),
+                attributeName, componentClass);
+    }
+}
@@ -0,0 +1,141 @@
+package org.vaadin.teemu.clara.inflater.listener;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.vaadin.teemu.clara.inflater.LayoutInflater;
+import org.vaadin.teemu.clara.inflater.handler.AttributeHandler;
+import org.vaadin.teemu.clara.inflater.handler.AttributeHandler.Phase;
+import org.vaadin.teemu.clara.inflater.listener.InflationStatistics.LatencyHistogram;
+import org.vaadin.teemu.clara.inflater.listener.InflationStatistics.SetterStatistics;
+import org.vaadin.teemu.clara.inflater.template.ElementTemplate;
+import org.vaadin.teemu.clara.inflater.template.LayoutTemplate;
+
+import com.vaadin.ui.Component;
+
+public class InflationStatisticsTest {
+
+    private static final String XML = "<VerticalLayout xmlns=\"urn:import:com.vaadin.ui\""
+            + " xmlns:l=\"urn:vaadin:parent\" caption=\"Root\">"
+            + "<Button caption=\"First\" l:expandRatio=\"1.0\" />"
+            + "<Button caption=\"Second\" />" + "</VerticalLayout>";
+
+    private LayoutInflater inflater;
+    private InflationStatistics statistics;
+
+    @Before
+    public void setUp() {
+        inflater = new LayoutInflater();
+        statistics = new InflationStatistics();
+        inflater.addInflationListener(statistics);
+    }
+
+    private Component inflate() {
+        return inflater.inflate(new ByteArrayInputStream(XML.getBytes()));
+    }
+
+    @Test
+    public void inflate_withStatistics_latencyRecordedPerLayout() {
+        inflate();
+        inflate();
+
+        LatencyHistogram inflation = statistics
+                .getInflationLatency(InflationStatistics.ANONYMOUS_LAYOUT);
+        assertEquals(2, inflation.getCount());
+        assertEquals(2, statistics.getParseLatency(
+                InflationStatistics.ANONYMOUS_LAYOUT).getCount());
+        assertTrue(inflation.getPercentileNanos(50) <= inflation
+                .getMaxNanos());
+    }
+
+    @Test
+    public void inflate_withStatistics_settersRecorded() {
+        inflate();
+
+        List<SetterStatistics> setters = statistics.getSlowestSetters(10);
+        long setCaptionCount = 0;
+        boolean expandRatioFound = false;
+        for (SetterStatistics setter : setters) {
+            if (setter.getSetter().getName().equals("setCaption")) {
+                setCaptionCount += setter.getCount();
+            } else if (setter.getSetter().getName().equals("setExpandRatio")) {
+                expandRatioFound = true;
+            }
+        }
+        assertEquals(3, setCaptionCount);
+        assertTrue(expandRatioFound);
+    }
+
+    @Test
+    public void getSlowestSetters_limit_sortedByTotalTime() {
+        inflate();
+
+        List<SetterStatistics> setters = statistics.getSlowestSetters(1);
+        assertEquals(1, setters.size());
+        for (SetterStatistics setter : statistics.getSlowestSetters(10)) {
+            assertTrue(setter.getTotalNanos() <= setters.get(0)
+                    .getTotalNanos());
+        }
+    }
+
+    @Test
+    public void reset_statisticsDiscarded() {
+        inflate();
+        statistics.reset();
+
+        assertNull(statistics
+                .getInflationLatency(InflationStatistics.ANONYMOUS_LAYOUT));
+        assertTrue(statistics.getSlowestSetters(10).isEmpty());
+    }
+
+    @Test
+    public void removeInflationListener_noEventsReported() {
+        inflater.removeInflationListener(statistics);
+        inflate();
+
+        assertNull(inflater.getInflationListener());
+        assertTrue(statistics.getLayoutNames().isEmpty());
+        assertTrue(statistics.getSlowestSetters(10).isEmpty());
+    }
+
+    @Test
+    public void inflate_twoListeners_bothNotified() {
+        final List<String> events = new ArrayList<String>();
+        inflater.addInflationListener(new InflationListenerAdapter() {
+
+            @Override
+            public void componentInstantiated(ElementTemplate element,
+                    Component component, long startNanos, long endNanos) {
+                events.add("instantiated " + element.getClassName());
+            }
+
+            @Override
+            public void attributeHandlerFinished(ElementTemplate element,
+                    AttributeHandler handler, Phase phase, long startNanos,
+                    long endNanos) {
+                assertTrue(endNanos >= startNanos);
+            }
+
+            @Override
+            public void inflationFinished(LayoutTemplate template,
+                    long startNanos, long endNanos) {
+                events.add("finished");
+            }
+        });
+        inflate();
+
+        assertEquals(4, events.size());
+        assertEquals("instantiated VerticalLayout", events.get(0));
+        assertEquals("finished", events.get(3));
+        assertNotNull(statistics
+                .getInflationLatency(InflationStatistics.ANONYMOUS_LAYOUT));
+    }
+}
@@ -0,0 +1,113 @@
+package org.vaadin.teemu.clara.inflater.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.vaadin.shared.ui.MarginInfo;
+import com.vaadin.ui.AbsoluteLayout;
+import com.vaadin.ui.AbsoluteLayout.ComponentPosition;
+import com.vaadin.ui.Alignment;
+import com.vaadin.ui.Button;
+import com.vaadin.ui.Component;
+
+public class ConversionCacheTest {
+
+    private static class CountingParser extends PrimitiveAttributeParser {
+
+        int conversions;
+
+        @Override
+        public Object getValueAs(String value, Class<?> type,
+                Component component) {
+            conversions++;
+            return super.getValueAs(value, type, component);
+        }
+    }
+
+    @Test
+    public void getValueAs_sameLiteral_convertedOnce() {
+        CountingParser parser = new CountingParser();
+
+        ConversionCache cache = ConversionCache.forParser(parser);
+        Object first = cache.getValueAs(parser, "1234.5", Double.class, null);
+        Object second = cache.getValueAs(parser, "1234.5", Double.class, null);
+
+        assertEquals(1234.5, first);
+        assertSame(first, second);
+        assertEquals(1, parser.conversions);
+    }
+
+    @Test
+    public void getValueAs_manyLiterals_sizeBoundedAndFirstValuesKept() {
+        CountingParser parser = new CountingParser();
+        ConversionCache cache = ConversionCache.forParser(parser);
+        for (int i = 0; i < ConversionCache.MAX_VALUES_PER_TYPE * 2; i++) {
+            cache.getValueAs(parser, String.valueOf(i), Long.class, null);
+        }
+        int conversions = parser.conversions;
+        cache.getValueAs(parser, "0", Long.class, null);
+
+        assertEquals(ConversionCache.MAX_VALUES_PER_TYPE,
+                cache.size(Long.class));
+        assertEquals(conversions, parser.conversions);
+    }
+
+    @Test
+    public void getValueAs_sameParserClass_sharedCache() {
+        CountingParser first = new CountingParser();
+        CountingParser second = new CountingParser();
+
+        ConversionCache.forParser(first).getValueAs(first, "12", Short.class,
+                null);
+        ConversionCache.forParser(second).getValueAs(second, "12",
+                Short.class, null);
+
+        assertSame(ConversionCache.forParser(first),
+                ConversionCache.forParser(second));
+        assertEquals(1, first.conversions);
+        assertEquals(0, second.conversions);
+        assertEquals(0, ConversionCache.forParser(
+                new PrimitiveAttributeParser()).size(Short.class));
+    }
+
+    @Test
+    public void isShareable_immutableTypes() {
+        assertTrue(new PrimitiveAttributeParser().isShareable(Boolean.class));
+        assertFalse(new PrimitiveAttributeParser().isShareable(String.class));
+        assertFalse(new EnumAttributeParser() instanceof ShareableValueParser);
+        assertTrue(new VaadinAttributeParser().isShareable(Alignment.class));
+        assertFalse(new VaadinAttributeParser().isShareable(MarginInfo.class));
+    }
+
+    @Test
+    public void parseMarginInfo_sameLiteral_newInstances() {
+        VaadinAttributeParser parser = new VaadinAttributeParser();
+
+        MarginInfo first = (MarginInfo) parser.getValueAs(
+                "true false true false", MarginInfo.class, null);
+        MarginInfo second = (MarginInfo) parser.getValueAs(
+                "true false true false", MarginInfo.class, null);
+
+        assertNotSame(first, second);
+        assertEquals(new MarginInfo(true, false, true, false), second);
+    }
+
+    @Test
+    public void getValueAs_componentPosition_positionOfParent() {
+        AbsoluteLayout layout = new AbsoluteLayout();
+        Button button = new Button();
+        layout.addComponent(button);
+
+        ComponentPosition position = (ComponentPosition) new ComponentPositionParser()
+                .getValueAs("top: 10px; left: 20px", ComponentPosition.class,
+                        button);
+
+        assertEquals(10.0f, position.getTopValue(), 0.0f);
+        assertEquals(20.0f, position.getLeftValue(), 0.0f);
+    }
+}
@@ -0,0 +1,188 @@
+package org.vaadin.teemu.clara.inflater.template;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.vaadin.teemu.clara.inflater.LayoutInflaterException;
+
+public class BinaryLayoutFormatTest {
+
+    private static LayoutTemplate parse(String resourceName) {
+        InputStream xml = BinaryLayoutFormatTest.class.getClassLoader()
+                .getResourceAsStream(resourceName);
+        return new LayoutTemplateParser().parse(xml, resourceName);
+    }
+
+    private static byte[] write(LayoutTemplate template) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryLayoutFormat.write(template, out);
+        return out.toByteArray();
+    }
+
+    private static void assertSameElement(ElementTemplate expected,
+            ElementTemplate actual) {
+        assertEquals(expected.getNamespace(), actual.getNamespace());
+        assertEquals(expected.getPackageName(), actual.getPackageName());
+        assertEquals(expected.getClassName(), actual.getClassName());
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getAttributeNamespaces(),
+                actual.getAttributeNamespaces());
+        for (String namespace : expected.getAttributeNamespaces()) {
+            // Compare as lists to check the order.
+            assertEquals(
+                    Arrays.asList(expected.getAttributes(namespace).entrySet()
+                            .toArray()),
+                    Arrays.asList(actual.getAttributes(namespace).entrySet()
+                            .toArray()));
+        }
+        assertEquals(expected.getChildren().size(), actual.getChildren()
+                .size());
+        for (int i = 0; i < expected.getChildren().size(); i++) {
+            assertSameElement(expected.getChildren().get(i), actual
+                    .getChildren().get(i));
+        }
+    }
+
+    @Test
+    public void read_writtenTemplate_identicalTemplate() throws IOException {
+        for (String resourceName : new String[] { "integration-test.xml",
+                "layout-attributes.xml", "lazy-tabsheet.xml", "panel.xml" }) {
+            LayoutTemplate template = parse(resourceName);
+
+            LayoutTemplate read = BinaryLayoutFormat.read(
+                    new ByteArrayInputStream(write(template)), resourceName);
+
+            assertEquals(resourceName, read.getName());
+            assertEquals(template.getIds(), read.getIds());
+            assertSameElement(template.getRoot(), read.getRoot());
+        }
+    }
+
+    @Test
+    public void read_names_interned() throws IOException {
+        LayoutTemplate read = BinaryLayoutFormat.read(new ByteArrayInputStream(
+                write(parse("single-button.xml"))), null);
+
+        assertSame("Button", read.getRoot().getClassName());
+    }
+
+    @Test
+    public void read_emptyLayout_noRoot() throws IOException {
+        LayoutTemplate template = new LayoutTemplateParser().parse(
+                new ByteArrayInputStream("<layout xmlns=\"urn:other\" />"
+                        .getBytes()), null);
+
+        LayoutTemplate read = BinaryLayoutFormat.read(new ByteArrayInputStream(
+                write(template)), null);
+
+        assertNull(read.getRoot());
+        assertTrue(read.getIds().isEmpty());
+    }
+
+    @Test(expected = LayoutInflaterException.class)
+    public void read_xml_exceptionThrown() {
+        BinaryLayoutFormat.read(new ByteArrayInputStream(
+                "<Button xmlns=\"urn:import:com.vaadin.ui\" />".getBytes()),
+                null);
+    }
+
+    @Test(expected = LayoutInflaterException.class)
+    public void read_truncated_exceptionThrown() throws IOException {
+        byte[] bytes = write(parse("integration-test.xml"));
+
+        BinaryLayoutFormat.read(
+                new ByteArrayInputStream(Arrays.copyOf(bytes,
+                        bytes.length / 2)), null);
+    }
+
+    @Test
+    public void cacheGet_binaryResourceExists_binaryPreferred()
+            throws IOException {
+        File root = File.createTempFile("clara", "");
+        root.delete();
+        root.mkdir();
+        File xml = new File(root, "layout.xml");
+        File binary = new File(root,
+                BinaryLayoutFormat.getResourceName("layout.xml"));
+        try {
+            OutputStream out = new FileOutputStream(xml);
+            try {
+                out.write("<Label xmlns=\"urn:import:com.vaadin.ui\" />"
+                        .getBytes("UTF-8"));
+            } finally {
+                out.close();
+            }
+            out = new FileOutputStream(binary);
+            try {
+                BinaryLayoutFormat.write(parse("single-button.xml"), out);
+            } finally {
+                out.close();
+            }
+            xml.setLastModified(binary.lastModified() - 10000);
+            ClassLoader classLoader = new URLClassLoader(new URL[] { root
+                    .toURI().toURL() }, null);
+
+            LayoutTemplate template = new LayoutTemplateCache(10).get(
+                    classLoader, "layout.xml");
+
+            assertEquals("Button", template.getRoot().getClassName());
+            assertEquals("layout.xml", template.getName());
+        } finally {
+            xml.delete();
+            binary.delete();
+            root.delete();
+        }
+    }
+
+    @Test
+    public void cacheGet_xmlNewerThanBinary_xmlRead() throws IOException {
+        File root = File.createTempFile("clara", "");
+        root.delete();
+        root.mkdir();
+        File xml = new File(root, "layout.xml");
+        File binary = new File(root,
+                BinaryLayoutFormat.getResourceName("layout.xml"));
+        try {
+            OutputStream out = new FileOutputStream(binary);
+            try {
+                BinaryLayoutFormat.write(parse("single-button.xml"), out);
+            } finally {
+                out.close();
+            }
+            out = new FileOutputStream(xml);
+            try {
+                out.write("<Label xmlns=\"urn:import:com.vaadin.ui\" />"
+                        .getBytes("UTF-8"));
+            } finally {
+                out.close();
+            }
+            binary.setLastModified(xml.lastModified() - 10000);
+            ClassLoader classLoader = new URLClassLoader(new URL[] { root
+                    .toURI().toURL() }, null);
+
+            assertTrue(BinaryLayoutFormat.isStale(
+                    classLoader.getResource(binary.getName()),
+                    classLoader.getResource(xml.getName())));
+            assertEquals("Label", new LayoutTemplateCache(10)
+                    .get(classLoader, "layout.xml").getRoot().getClassName());
+        } finally {
+            xml.delete();
+            binary.delete();
+            root.delete();
+        }
+    }
+}
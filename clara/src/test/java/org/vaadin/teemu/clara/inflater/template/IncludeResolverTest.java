@@ -0,0 +1,256 @@
+package org.vaadin.teemu.clara.inflater.template;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.vaadin.teemu.clara.inflater.LayoutInflaterException;
+
+public class IncludeResolverTest {
+
+    private static final String HEADER = "<HorizontalLayout xmlns=\"urn:import:com.vaadin.ui\" id=\"header\">"
+            + "<Label id=\"title\" value=\"Title\" /></HorizontalLayout>";
+
+    private File root;
+    private ClassLoader classLoader;
+    private LayoutTemplateCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        root = File.createTempFile("clara", "");
+        root.delete();
+        root.mkdir();
+        classLoader = new URLClassLoader(new URL[] { root.toURI().toURL() },
+                null);
+        cache = new LayoutTemplateCache(10);
+    }
+
+    @After
+    public void tearDown() {
+        delete(root);
+    }
+
+    @Test
+    public void get_includes_fragmentsMerged() throws IOException {
+        write("screens/common/header.xml", HEADER);
+        write("screens/main.xml",
+                "<VerticalLayout xmlns=\"urn:import:com.vaadin.ui\" xmlns:c=\"urn:vaadin:clara\""
+                        + " xmlns:l=\"urn:vaadin:parent\" id=\"main\">"
+                        + "<c:include src=\"common/header.xml\" l:expandRatio=\"1\" />"
+                        + "<Button id=\"button\" />"
+                        + "<c:include src=\"/screens/common/header.xml\" idPrefix=\"footer-\" />"
+                        + "</VerticalLayout>");
+
+        LayoutTemplate template = cache.get(classLoader, "screens/main.xml");
+
+        ElementTemplate layout = template.getRoot();
+        assertEquals(3, layout.getChildren().size());
+        ElementTemplate header = layout.getChildren().get(0);
+        assertEquals("HorizontalLayout", header.getClassName());
+        assertEquals("header", header.getId());
+        assertEquals("1", header.getAttributes("urn:vaadin:parent").get(
+                "expandRatio"));
+        ElementTemplate footer = layout.getChildren().get(2);
+        assertEquals("footer-header", footer.getId());
+        assertEquals("footer-header", footer.getAttributes("").get("id"));
+        assertEquals("footer-title", footer.getChildren().get(0).getId());
+        assertEquals(
+                new HashSet<String>(Arrays.asList("main", "header", "title",
+                        "button", "footer-header", "footer-title")),
+                template.getIds());
+    }
+
+    @Test
+    public void get_includedTwice_fragmentParsedOnceAndShared()
+            throws IOException {
+        write("header.xml", HEADER);
+        write("first.xml", "<c:include xmlns:c=\"urn:vaadin:clara\" src=\"header.xml\" />");
+        write("second.xml",
+                "<VerticalLayout xmlns=\"urn:import:com.vaadin.ui\" xmlns:c=\"urn:vaadin:clara\">"
+                        + "<c:include src=\"header.xml\" /></VerticalLayout>");
+
+        LayoutTemplate first = cache.get(classLoader, "first.xml");
+        LayoutTemplate second = cache.get(classLoader, "second.xml");
+
+        assertSame(first.getRoot(), second.getRoot().getChildren().get(0));
+    }
+
+    @Test
+    public void get_sameIdIncludedTwice_exceptionThrown() throws IOException {
+        write("header.xml", HEADER);
+        write("main.xml",
+                "<VerticalLayout xmlns=\"urn:import:com.vaadin.ui\" xmlns:c=\"urn:vaadin:clara\">"
+                        + "<c:include src=\"header.xml\" /><c:include src=\"header.xml\" />"
+                        + "</VerticalLayout>");
+
+        try {
+            cache.get(classLoader, "main.xml");
+            fail("Expected LayoutInflaterException");
+        } catch (LayoutInflaterException e) {
+            assertEquals("Given id header has already been assigned.",
+                    e.getMessage());
+        }
+    }
+
+    @Test
+    public void get_cyclicIncludes_exceptionThrown() throws IOException {
+        write("a.xml",
+                "<VerticalLayout xmlns=\"urn:import:com.vaadin.ui\" xmlns:c=\"urn:vaadin:clara\">"
+                        + "<c:include src=\"b.xml\" /></VerticalLayout>");
+        write("b.xml",
+                "<VerticalLayout xmlns=\"urn:import:com.vaadin.ui\" xmlns:c=\"urn:vaadin:clara\">"
+                        + "<c:include src=\"./a.xml\" idPrefix=\"b-\" /></VerticalLayout>");
+
+        try {
+            cache.get(classLoader, "a.xml");
+            fail("Expected LayoutInflaterException");
+        } catch (LayoutInflaterException e) {
+            assertEquals(
+                    "Layout a.xml includes itself: [a.xml, b.xml] -> a.xml.",
+                    e.getMessage());
+        }
+    }
+
+    @Test
+    public void invalidate_includedLayout_includingLayoutRemoved()
+            throws IOException {
+        write("header.xml", HEADER);
+        write("main.xml",
+                "<VerticalLayout xmlns=\"urn:import:com.vaadin.ui\" xmlns:c=\"urn:vaadin:clara\">"
+                        + "<c:include src=\"header.xml\" /></VerticalLayout>");
+        LayoutTemplate template = cache.get(classLoader, "main.xml");
+
+        cache.invalidate(classLoader, "header.xml");
+
+        assertNotSame(template, cache.get(classLoader, "main.xml"));
+    }
+
+    @Test
+    public void get_classLoaderCollected_templatesRemoved()
+            throws IOException, InterruptedException {
+        write("header.xml", HEADER);
+        write("main.xml",
+                "<VerticalLayout xmlns=\"urn:import:com.vaadin.ui\" xmlns:c=\"urn:vaadin:clara\">"
+                        + "<c:include src=\"header.xml\" /></VerticalLayout>");
+        cache.get(classLoader, "main.xml");
+        assertEquals(1, cache.size());
+
+        WeakReference<ClassLoader> collected = new WeakReference<ClassLoader>(
+                classLoader);
+        classLoader = null;
+        for (int i = 0; i < 50 && cache.size() > 0; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+
+        assertNull(collected.get());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void get_moreFragmentsThanMaximumSize_leastRecentlyUsedEvicted()
+            throws IOException {
+        final List<String> loaded = new ArrayList<String>();
+        LayoutTemplateCache smallCache = new LayoutTemplateCache(2) {
+            @Override
+            protected LayoutTemplate load(ClassLoader classLoader,
+                    String resourceName) {
+                loaded.add(resourceName);
+                return super.load(classLoader, resourceName);
+            }
+        };
+        for (String header : Arrays.asList("h1", "h2", "h3")) {
+            write(header + ".xml", HEADER);
+        }
+        write("a.xml", include("h1"));
+        write("b.xml", include("h2"));
+        write("c.xml", include("h1", "h3"));
+        write("d.xml", include("h1", "h2"));
+
+        smallCache.get(classLoader, "a.xml");
+        smallCache.get(classLoader, "b.xml");
+        smallCache.get(classLoader, "c.xml");
+        smallCache.get(classLoader, "d.xml");
+
+        assertEquals(Arrays.asList("a.xml", "h1.xml", "b.xml", "h2.xml",
+                "c.xml", "h3.xml", "d.xml", "h2.xml"), loaded);
+    }
+
+    @Test
+    public void resolveIncludes_streamTemplate_resolvedAgainstClasspathRoot()
+            throws IOException {
+        write("header.xml", HEADER);
+        LayoutTemplate template = new LayoutTemplateParser().parse(
+                new ByteArrayInputStream(
+                        "<Panel xmlns=\"urn:import:com.vaadin.ui\" xmlns:c=\"urn:vaadin:clara\"><c:include src=\"header.xml\" /></Panel>"
+                                .getBytes()), null);
+        assertTrue(template.getRoot().getChildren().get(0).isInclude());
+
+        LayoutTemplate resolved = cache.resolveIncludes(classLoader, null,
+                template);
+
+        assertEquals("HorizontalLayout", resolved.getRoot().getChildren()
+                .get(0).getClassName());
+        assertTrue(resolved.getIds().contains("title"));
+    }
+
+    @Test
+    public void resolveName_relativeSegments() {
+        assertEquals("a/c.xml", IncludeResolver.resolveName("a/b/main.xml",
+                "../c.xml"));
+        assertEquals("c.xml", IncludeResolver.resolveName("a/main.xml",
+                "/c.xml"));
+        assertEquals("c.xml", IncludeResolver.resolveName(null, "./c.xml"));
+    }
+
+    private static String include(String... layouts) {
+        StringBuilder xml = new StringBuilder(
+                "<VerticalLayout xmlns=\"urn:import:com.vaadin.ui\" xmlns:c=\"urn:vaadin:clara\">");
+        for (String layout : layouts) {
+            xml.append("<c:include src=\"").append(layout)
+                    .append(".xml\" idPrefix=\"").append(layout)
+                    .append("-\" />");
+        }
+        return xml.append("</VerticalLayout>").toString();
+    }
+
+    private void write(String path, String content) throws IOException {
+        File file = new File(root, path);
+        file.getParentFile().mkdirs();
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,142 @@
+package org.vaadin.teemu.clara.inflater.template;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.vaadin.teemu.clara.ClaraTest;
+import org.vaadin.teemu.clara.inflater.LayoutInflater;
+import org.vaadin.teemu.clara.inflater.LayoutInflaterException;
+
+import com.vaadin.ui.Button;
+import com.vaadin.ui.Component;
+
+public class LayoutTemplateCacheTest {
+
+    private LayoutTemplateCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new LayoutTemplateCache(2);
+    }
+
+    @Test
+    public void get_sameResourceTwice_parsedOnce() {
+        LayoutTemplate first = cache.get(getClass(), "/single-button.xml");
+        LayoutTemplate second = cache.get(getClass(), "/single-button.xml");
+
+        assertSame(first, second);
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void get_relativeName_resolvedAgainstClass() {
+        LayoutTemplate template = cache.get(ClaraTest.class,
+                "xml-file-for-classpath-testing.xml");
+
+        assertEquals("org/vaadin/teemu/clara/xml-file-for-classpath-testing.xml",
+                template.getName());
+    }
+
+    @Test
+    public void get_moreResourcesThanMaximumSize_leastRecentlyUsedEvicted() {
+        LayoutTemplate button = cache.get(getClass(), "/single-button.xml");
+        cache.get(getClass(), "/single-layout.xml");
+        cache.get(getClass(), "/single-button.xml");
+        cache.get(getClass(), "/panel.xml");
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertSame(button, cache.get(getClass(), "/single-button.xml"));
+    }
+
+    @Test(expected = LayoutInflaterException.class)
+    public void get_nonExistingResource_exceptionThrown() {
+        cache.get(getClass(), "/non-existing-file.xml");
+    }
+
+    @Test
+    public void get_nonExistingResource_failureNotCached() {
+        try {
+            cache.get(getClass(), "/non-existing-file.xml");
+        } catch (LayoutInflaterException e) {
+            // expected
+        }
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void get_concurrentRequestsForColdEntry_parsedOnce()
+            throws InterruptedException {
+        final AtomicInteger loadCount = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        final LayoutTemplateCache countingCache = new LayoutTemplateCache(2) {
+            @Override
+            protected LayoutTemplate load(ClassLoader classLoader,
+                    String resourceName) {
+                loadCount.incrementAndGet();
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.load(classLoader, resourceName);
+            }
+        };
+
+        final List<LayoutTemplate> results = new ArrayList<LayoutTemplate>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    LayoutTemplate template = countingCache.get(
+                            LayoutTemplateCacheTest.class,
+                            "/single-button.xml");
+                    synchronized (results) {
+                        results.add(template);
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, loadCount.get());
+        assertEquals(8, results.size());
+        for (LayoutTemplate template : results) {
+            assertSame(results.get(0), template);
+        }
+    }
+
+    @Test
+    public void inflate_sameTemplateTwice_newComponentsCreated() {
+        LayoutTemplate template = cache.get(getClass(), "/single-button.xml");
+        LayoutInflater inflater = new LayoutInflater();
+
+        Component first = inflater.inflate(template);
+        Component second = inflater.inflate(template);
+
+        assertNotSame(first, second);
+        assertEquals(Button.class, second.getClass());
+        assertEquals("My Button", second.getCaption());
+    }
+
+}
@@ -0,0 +1,146 @@
+package org.vaadin.teemu.clara.inflater.template;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+
+import org.junit.Test;
+import org.vaadin.teemu.clara.inflater.LayoutInflaterException;
+import org.vaadin.teemu.clara.inflater.template.LayoutTemplateParser.Backend;
+
+public class LayoutTemplateParserTest {
+
+    private static final String EXTERNAL_DTD = "<?xml version=\"1.0\"?>"
+            + "<!DOCTYPE VerticalLayout SYSTEM \"http://clara.invalid/layout.dtd\">"
+            + "<VerticalLayout xmlns=\"urn:import:com.vaadin.ui\">"
+            + "<Button id=\"button\" caption=\"Button\" /></VerticalLayout>";
+
+    private InputStream getXml(String fileName) {
+        return getClass().getClassLoader().getResourceAsStream(fileName);
+    }
+
+    private static InputStream toStream(String xml)
+            throws UnsupportedEncodingException {
+        return new ByteArrayInputStream(xml.getBytes("UTF-8"));
+    }
+
+    @Test
+    public void parse_staxBackend_sameTemplateAsSax() {
+        for (String fileName : new String[] { "integration-test.xml",
+                "lazy-tabsheet.xml", "non-component.xml",
+                "single-button-no-namespace.xml" }) {
+            LayoutTemplate sax = new LayoutTemplateParser(Backend.SAX).parse(
+                    getXml(fileName), fileName);
+            LayoutTemplate stax = new LayoutTemplateParser(Backend.STAX)
+                    .parse(getXml(fileName), fileName);
+
+            assertEquals(sax.getIds(), stax.getIds());
+            assertSameElement(sax.getRoot(), stax.getRoot());
+        }
+    }
+
+    private static void assertSameElement(ElementTemplate expected,
+            ElementTemplate actual) {
+        assertEquals(expected.getNamespace(), actual.getNamespace());
+        assertEquals(expected.getClassName(), actual.getClassName());
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getAttributeNamespaces(),
+                actual.getAttributeNamespaces());
+        for (String namespace : expected.getAttributeNamespaces()) {
+            assertEquals(expected.getAttributes(namespace),
+                    actual.getAttributes(namespace));
+        }
+        assertEquals(expected.getChildren().size(), actual.getChildren()
+                .size());
+        for (int i = 0; i < expected.getChildren().size(); i++) {
+            assertSameElement(expected.getChildren().get(i), actual
+                    .getChildren().get(i));
+        }
+    }
+
+    @Test
+    public void parse_namesInterned() {
+        for (Backend backend : Backend.values()) {
+            LayoutTemplate template = new LayoutTemplateParser(backend).parse(
+                    getXml("integration-test.xml"), null);
+            ElementTemplate button = template.getRoot().getChildren().get(0);
+
+            assertSame("Button", button.getClassName());
+            assertSame("urn:import:com.vaadin.ui", button.getNamespace());
+            for (String attribute : button.getAttributes("").keySet()) {
+                assertSame(attribute.intern(), attribute);
+            }
+        }
+    }
+
+    @Test
+    public void parse_externalDtd_notLoaded() throws Exception {
+        for (Backend backend : Backend.values()) {
+            LayoutTemplate template = new LayoutTemplateParser(backend)
+                    .parse(toStream(EXTERNAL_DTD), null);
+
+            assertEquals("VerticalLayout", template.getRoot().getClassName());
+            assertEquals("Button", template.getRoot().getChildren().get(0)
+                    .getAttributes("").get("caption"));
+        }
+    }
+
+    @Test
+    public void parse_externalEntity_notResolved() throws Exception {
+        String xml = "<?xml version=\"1.0\"?>"
+                + "<!DOCTYPE VerticalLayout ["
+                + "<!ENTITY external SYSTEM \"file:///clara/non-existing.txt\">]>"
+                + "<VerticalLayout xmlns=\"urn:import:com.vaadin.ui\">"
+                + "<Label>&external;</Label></VerticalLayout>";
+
+        LayoutTemplate template = new LayoutTemplateParser(Backend.SAX)
+                .parse(toStream(xml), null);
+        assertEquals(1, template.getRoot().getChildren().size());
+    }
+
+    @Test
+    public void parse_malformedXml_exceptionThrown() throws Exception {
+        for (Backend backend : Backend.values()) {
+            try {
+                new LayoutTemplateParser(backend).parse(
+                        toStream("<VerticalLayout>"), null);
+                fail("Expected LayoutInflaterException for " + backend);
+            } catch (LayoutInflaterException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void parse_duplicateId_exceptionThrown() {
+        for (Backend backend : Backend.values()) {
+            try {
+                new LayoutTemplateParser(backend).parse(
+                        getXml("duplicate-id.xml"), null);
+                fail("Expected LayoutInflaterException for " + backend);
+            } catch (LayoutInflaterException e) {
+                assertEquals("Given id my-button has already been assigned.",
+                        e.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void parse_afterFailedParse_nextParseSucceeds() throws Exception {
+        LayoutTemplateParser parser = new LayoutTemplateParser();
+        for (int i = 0; i < 3; i++) {
+            try {
+                parser.parse(getXml("duplicate-id.xml"), null);
+            } catch (LayoutInflaterException e) {
+                // expected
+            }
+            assertEquals("VerticalLayout",
+                    parser.parse(getXml("integration-test.xml"), null)
+                            .getRoot().getClassName());
+        }
+    }
+}
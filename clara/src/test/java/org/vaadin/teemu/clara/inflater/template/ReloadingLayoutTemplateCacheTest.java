@@ -0,0 +1,194 @@
+package org.vaadin.teemu.clara.inflater.template;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.vaadin.teemu.clara.Clara;
+import org.vaadin.teemu.clara.inflater.template.ReloadingLayoutTemplateCache.ReloadEvent;
+import org.vaadin.teemu.clara.inflater.template.ReloadingLayoutTemplateCache.ReloadListener;
+
+import com.vaadin.ui.Button;
+
+public class ReloadingLayoutTemplateCacheTest {
+
+    private static final String LAYOUT = "org/vaadin/teemu/clara/reload-test.xml";
+
+    private File sourceRoot;
+    private ReloadingLayoutTemplateCache cache;
+    private final BlockingQueue<ReloadEvent> events = new ArrayBlockingQueue<ReloadEvent>(
+            10);
+
+    @Before
+    public void setUp() throws IOException {
+        sourceRoot = File.createTempFile("clara", "");
+        sourceRoot.delete();
+        sourceRoot.mkdir();
+        cache = new ReloadingLayoutTemplateCache(sourceRoot);
+        cache.addReloadListener(new ReloadListener() {
+
+            @Override
+            public void layoutReloaded(ReloadEvent event) {
+                events.add(event);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        cache.close();
+        Clara.disableDevelopmentMode();
+        delete(sourceRoot);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private void writeButton(String caption) throws IOException {
+        write(LAYOUT, "<Button xmlns=\"urn:import:com.vaadin.ui\" caption=\""
+                + caption + "\" />");
+    }
+
+    private void write(String resourceName, String content) throws IOException {
+        File file = new File(sourceRoot, resourceName);
+        file.getParentFile().mkdirs();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file),
+                "UTF-8");
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static String getCaption(LayoutTemplate template) {
+        return getCaption(template.getRoot());
+    }
+
+    private static String getCaption(ElementTemplate element) {
+        return element.getAttributes("").get("caption");
+    }
+
+    @Test
+    public void get_resourceNotInSourceRoot_loadedFromClasspath() {
+        LayoutTemplate template = cache.get(getClass(), "/single-button.xml");
+
+        assertEquals("My Button", getCaption(template));
+        assertFalse(cache.isWatching());
+    }
+
+    @Test
+    public void get_resourceInSourceRoot_loadedFromFile() throws IOException {
+        writeButton("From source");
+
+        LayoutTemplate template = cache.get(getClass().getClassLoader(),
+                LAYOUT);
+
+        assertEquals("From source", getCaption(template));
+        assertTrue(cache.isWatching());
+    }
+
+    @Test
+    public void fileChanged_templateReloadedAndListenersNotified()
+            throws Exception {
+        writeButton("Before");
+        LayoutTemplate before = cache.get(getClass().getClassLoader(), LAYOUT);
+        LayoutTemplate other = cache.get(getClass(), "/single-button.xml");
+
+        writeButton("After");
+        ReloadEvent event = events.poll(10, TimeUnit.SECONDS);
+
+        assertEquals(LAYOUT, event.getResourceName());
+        assertEquals("After", getCaption(event.getTemplate()));
+        LayoutTemplate after = cache.get(getClass().getClassLoader(), LAYOUT);
+        assertNotSame(before, after);
+        assertSame(event.getTemplate(), after);
+        // other layouts stay cached
+        assertSame(other, cache.get(getClass(), "/single-button.xml"));
+    }
+
+    @Test
+    public void includedFileBrokenAndFixed_includingLayoutReloaded()
+            throws Exception {
+        String including = "org/vaadin/teemu/clara/including-test.xml";
+        write(including, "<VerticalLayout xmlns=\"urn:import:com.vaadin.ui\""
+                + " xmlns:c=\"urn:vaadin:clara\">"
+                + "<c:include src=\"reload-test.xml\" /></VerticalLayout>");
+        writeButton("Before");
+        cache.get(getClass().getClassLoader(), including);
+
+        write(LAYOUT, "<Button xmlns=\"urn:import:com.vaadin.ui\"");
+        // Neither layout can be parsed, no events.
+        assertEquals(null, events.poll(1, TimeUnit.SECONDS));
+        writeButton("Fixed");
+
+        ReloadEvent first = events.poll(10, TimeUnit.SECONDS);
+        ReloadEvent second = events.poll(10, TimeUnit.SECONDS);
+        assertEquals(LAYOUT, first.getResourceName());
+        assertEquals(including, second.getResourceName());
+        assertEquals("Fixed", getCaption(second.getTemplate().getRoot()
+                .getChildren().get(0)));
+    }
+
+    @Test
+    public void fileDeletedAndCreated_templateReloaded() throws Exception {
+        writeButton("Before");
+        cache.get(getClass().getClassLoader(), LAYOUT);
+
+        assertTrue(new File(sourceRoot, LAYOUT).delete());
+        // A deleted layout isn't parsed.
+        assertEquals(null, events.poll(1, TimeUnit.SECONDS));
+        writeButton("Created");
+
+        ReloadEvent event = events.poll(10, TimeUnit.SECONDS);
+        assertEquals("Created", getCaption(event.getTemplate()));
+    }
+
+    @Test
+    public void close_watcherStopped() throws IOException,
+            InterruptedException {
+        writeButton("Before");
+        cache.get(getClass().getClassLoader(), LAYOUT);
+
+        cache.close();
+        for (int i = 0; i < 50 && cache.isWatching(); i++) {
+            Thread.sleep(10);
+        }
+
+        assertFalse(cache.isWatching());
+    }
+
+    @Test
+    public void create_developmentMode_layoutReadFromSourceRoot()
+            throws IOException {
+        writeButton("Development");
+        Clara.enableDevelopmentMode(sourceRoot);
+
+        Button button = (Button) Clara.create("reload-test.xml",
+                new Clara());
+
+        assertTrue(Clara.isDevelopmentMode());
+        assertEquals("Development", button.getCaption());
+    }
+}
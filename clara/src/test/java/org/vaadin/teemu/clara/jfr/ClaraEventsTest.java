@@ -0,0 +1,163 @@
+package org.vaadin.teemu.clara.jfr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Test;
+import org.vaadin.teemu.clara.Clara;
+import org.vaadin.teemu.clara.binder.annotation.UiField;
+import org.vaadin.teemu.clara.binder.annotation.UiHandler;
+import org.vaadin.teemu.clara.inflater.template.LayoutTemplateCache;
+
+import com.vaadin.ui.Button;
+import com.vaadin.ui.Component;
+import com.vaadin.ui.Label;
+
+public class ClaraEventsTest {
+
+    private static final String XML = "<VerticalLayout xmlns=\"urn:import:com.vaadin.ui\">"
+            + "<Button id=\"button\" caption=\"Click\" />"
+            + "<Label id=\"label\" />" + "</VerticalLayout>";
+
+    public static class Controller {
+
+        @UiField("label")
+        Label label;
+
+        int clicks;
+
+        @UiHandler("button")
+        public void clicked(Button.ClickEvent event) {
+            clicks++;
+        }
+    }
+
+    @Test
+    public void beginInflation_notRecording_disabled() {
+        assertTrue(ClaraEvents.get().isAvailable());
+        assertNull(ClaraEvents.get().beginInflation());
+        assertNull(ClaraEvents.get().beginBinding());
+        assertNull(ClaraEvents.get().beginHandlerDispatch());
+        assertNull(ClaraEvents.get().beginTemplateCacheMiss());
+        assertTrue(!ClaraEvents.get().isHandlerDispatchEnabled());
+    }
+
+    @Test
+    public void create_recording_inflationAndBindingRecorded()
+            throws IOException {
+        Controller controller = new Controller();
+        Recording recording = startRecording();
+        try {
+            Component root = Clara.create(
+                    new ByteArrayInputStream(XML.getBytes()), controller);
+            ((Button) Clara.findComponentById(root, "button")).click();
+        } finally {
+            recording.stop();
+        }
+        List<RecordedEvent> events = readEvents(recording);
+
+        RecordedEvent inflation = find(events,
+                "org.vaadin.teemu.clara.Inflation");
+        assertEquals(3, inflation.getInt("componentCount"));
+        assertEquals(3, inflation.getInt("attributeCount"));
+
+        RecordedEvent binding = find(events, "org.vaadin.teemu.clara.Binding");
+        assertEquals(Controller.class.getName(),
+                binding.getClass("controllerClass").getName());
+        assertEquals(1, binding.getInt("fieldCount"));
+        assertEquals(1, binding.getInt("handlerCount"));
+
+        RecordedEvent dispatch = find(events,
+                "org.vaadin.teemu.clara.HandlerDispatch");
+        assertEquals("button", dispatch.getString("componentId"));
+        assertEquals(Button.ClickEvent.class.getName(),
+                dispatch.getClass("eventType").getName());
+        assertEquals(1, controller.clicks);
+    }
+
+    @Test
+    public void click_boundBeforeRecording_handlerDispatchRecorded()
+            throws IOException {
+        Controller controller = new Controller();
+        Component root = Clara.create(new ByteArrayInputStream(XML.getBytes()),
+                controller);
+        Recording recording = startRecording();
+        try {
+            ((Button) Clara.findComponentById(root, "button")).click();
+        } finally {
+            recording.stop();
+        }
+
+        RecordedEvent dispatch = find(readEvents(recording),
+                "org.vaadin.teemu.clara.HandlerDispatch");
+        assertEquals("button", dispatch.getString("componentId"));
+        assertEquals(1, controller.clicks);
+    }
+
+    @Test
+    public void get_recording_templateCacheMissRecorded() throws IOException {
+        LayoutTemplateCache cache = new LayoutTemplateCache(10);
+        Recording recording = startRecording();
+        try {
+            cache.get(getClass(),
+                    "/org/vaadin/teemu/clara/xml-file-for-classpath-testing.xml");
+            cache.get(getClass(),
+                    "/org/vaadin/teemu/clara/xml-file-for-classpath-testing.xml");
+        } finally {
+            recording.stop();
+        }
+        List<RecordedEvent> misses = new ArrayList<RecordedEvent>();
+        for (RecordedEvent event : readEvents(recording)) {
+            if (event.getEventType().getName()
+                    .equals("org.vaadin.teemu.clara.TemplateCacheMiss")) {
+                misses.add(event);
+            }
+        }
+
+        assertEquals(1, misses.size());
+        assertEquals("org/vaadin/teemu/clara/xml-file-for-classpath-testing.xml",
+                misses.get(0).getString("resourceName"));
+    }
+
+    private static Recording startRecording() {
+        Recording recording = new Recording();
+        recording.enable("org.vaadin.teemu.clara.Inflation");
+        recording.enable("org.vaadin.teemu.clara.Binding");
+        recording.enable("org.vaadin.teemu.clara.HandlerDispatch");
+        recording.enable("org.vaadin.teemu.clara.TemplateCacheMiss");
+        recording.start();
+        return recording;
+    }
+
+    private static List<RecordedEvent> readEvents(Recording recording)
+            throws IOException {
+        File file = File.createTempFile("clara", ".jfr");
+        try {
+            recording.dump(file.toPath());
+            return RecordingFile.readAllEvents(file.toPath());
+        } finally {
+            recording.close();
+            file.delete();
+        }
+    }
+
+    private static RecordedEvent find(List<RecordedEvent> events, String name) {
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals(name)) {
+                return event;
+            }
+        }
+        throw new AssertionError("No " + name + " event recorded.");
+    }
+}